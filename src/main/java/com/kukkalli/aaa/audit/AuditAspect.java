@@ -8,15 +8,28 @@ import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.core.ParameterNameDiscoverer;
 import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Audits {@link Audited} methods after they return. Everything derivable from the method alone
+ * (parsed expressions, parameter names, short signature) is worked out on the first call and
+ * cached per {@link Method}; later calls only evaluate. Expressions are compiled to bytecode
+ * once they have run in interpreted mode ({@link SpelCompilerMode#MIXED}, which falls back to
+ * interpreting if a compiled expression meets different types) and are evaluated against a
+ * read-only {@link SimpleEvaluationContext} (variables, property reads and instance methods; no
+ * type references, bean references or assignment).
+ */
 @Aspect
 @Component
 @RequiredArgsConstructor
@@ -24,26 +37,27 @@ public class AuditAspect {
 
     private final AuditService auditService;
 
-    private static final ExpressionParser PARSER = new SpelExpressionParser();
+    private static final ExpressionParser PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, AuditAspect.class.getClassLoader()));
     private static final ParameterNameDiscoverer NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
 
+    private final Map<Method, Plan> plans = new ConcurrentHashMap<>();
+
     @Around("@annotation(audited)")
     public Object around(ProceedingJoinPoint pjp, Audited audited) throws Throwable {
         Object result = pjp.proceed(); // only audit on success
 
         MethodSignature sig = (MethodSignature) pjp.getSignature();
-        Method method = sig.getMethod();
-        Object[] args = pjp.getArgs();
-
-        EvaluationContext ctx = buildContext(method, args, result);
+        Plan plan = plans.computeIfAbsent(sig.getMethod(), m -> Plan.of(m, audited, sig.toShortString()));
+        EvaluationContext ctx = plan.dynamic() ? plan.context(pjp.getArgs(), result) : null;
 
-        // Allow SpEL in action/targetType/targetId if they start with '#', else treat as literals
-        String action     = resolve(audited.action(), ctx);
-        String targetType = resolve(audited.targetType(), ctx);
-        String targetId   = resolve(audited.targetId(), ctx);
+        // SpEL in action/targetType/targetId if they start with '#', else literals
+        String action     = plan.action().resolve(ctx);
+        String targetType = plan.targetType().resolve(ctx);
+        String targetId   = plan.targetId().resolve(ctx);
 
         Map<String, Object> details = new LinkedHashMap<>();
-        details.put("method", sig.toShortString());
+        details.put("method", plan.signature());
         if (!isBlank(targetType)) details.put("targetType", targetType);
         if (!isBlank(targetId))   details.put("targetId", targetId);
 
@@ -51,35 +65,51 @@ public class AuditAspect {
         return result;
     }
 
-    // ---------------------------- helpers ----------------------------
+    // ---------------------------- per-method plan ----------------------------
 
-    private static EvaluationContext buildContext(Method method, Object[] args, Object result) {
-        StandardEvaluationContext ctx = new StandardEvaluationContext();
-        // by index: #p0, #p1 ...
-        for (int i = 0; i < args.length; i++) {
-            ctx.setVariable("p" + i, args[i]);
+    /** One attribute of {@link Audited}: a literal, or a parsed (compilable) expression. */
+    record Attribute(String literal, Expression expression) {
+
+        static Attribute of(String value) {
+            if (isBlank(value) || !value.startsWith("#")) return new Attribute(value, null);
+            return new Attribute(null, PARSER.parseExpression(value));
         }
-        // by name: #argName (if debug info / -parameters present or Lombok recorded)
-        String[] paramNames = NAME_DISCOVERER.getParameterNames(method);
-        if (paramNames != null) {
-            for (int i = 0; i < paramNames.length; i++) {
-                ctx.setVariable(paramNames[i], args[i]);
-            }
+
+        String resolve(EvaluationContext ctx) {
+            if (expression == null) return literal;
+            Object evaluated = expression.getValue(ctx);
+            return evaluated == null ? null : String.valueOf(evaluated);
         }
-        // whole args array
-        ctx.setVariable("args", args);
-        // return value
-        ctx.setVariable("result", result);
-        return ctx;
     }
 
-    private static String resolve(String value, EvaluationContext ctx) {
-        if (isBlank(value)) return value;
-        if (value.startsWith("#")) {
-            Object evaluated = PARSER.parseExpression(value).getValue(ctx);
-            return evaluated == null ? null : String.valueOf(evaluated);
+    /** What is fixed per method; {@code paramNames} is null without -parameters / debug info. */
+    record Plan(String signature, String[] paramNames, Attribute action, Attribute targetType, Attribute targetId) {
+
+        static Plan of(Method method, Audited audited, String signature) {
+            return new Plan(signature, NAME_DISCOVERER.getParameterNames(method),
+                    Attribute.of(audited.action()), Attribute.of(audited.targetType()), Attribute.of(audited.targetId()));
+        }
+
+        boolean dynamic() {
+            return action.expression() != null || targetType.expression() != null || targetId.expression() != null;
+        }
+
+        EvaluationContext context(Object[] args, Object result) {
+            SimpleEvaluationContext ctx = SimpleEvaluationContext.forReadOnlyDataBinding().withInstanceMethods().build();
+            // by index: #p0, #p1 ...
+            for (int i = 0; i < args.length; i++) {
+                ctx.setVariable("p" + i, args[i]);
+            }
+            // by name: #argName
+            if (paramNames != null) {
+                for (int i = 0; i < paramNames.length; i++) {
+                    ctx.setVariable(paramNames[i], args[i]);
+                }
+            }
+            ctx.setVariable("args", args);
+            ctx.setVariable("result", result);
+            return ctx;
         }
-        return value; // literal
     }
 
     private static boolean isBlank(String s) {
@@ -0,0 +1,238 @@
+package com.kukkalli.aaa.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes a batch of audit events as one multi-row {@code INSERT INTO audit_log ... VALUES (...),(...)}:
+ * one statement and one round trip per batch, followed by the batch's {@link AuditRollups} increments,
+ * all in one short transaction. Ids are assigned at capture time, so a retried batch that had in fact
+ * been committed is a no-op rather than a duplicate; it inserts no row and is not counted again
+ * (the audit pool reports affected rows, not matched rows: {@code useAffectedRows}).
+ *
+ * With integrity on, the rows also get a fresh {@code batch_id}, and the batch's Merkle root is
+ * appended to the {@code audit_batches} hash chain in the same transaction ({@link AuditMerkle}).
+ * Leaves are hashed before the transaction; the chain tip ({@code audit_batch_head}) is locked
+ * last, only for the two statements that append to it. If a retried batch turns out to be partly
+ * committed already, rollups and the tree cover just the rows this attempt inserted.
+ *
+ * Rows the insert skipped are compared with what is stored under their ids: a matching row is a
+ * replay ({@code aaa.audit.duplicates{kind=replay}}); anything else means two nodes minted the same
+ * id ({@code kind=collision}, logged at ERROR with the lost event), i.e. {@code aaa.ids.node-id} is
+ * not unique.
+ *
+ * (Connector/J 3.x no longer rewrites JDBC batches into multi-row statements, hence the explicit SQL.)
+ */
+public final class AuditBatchWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditBatchWriter.class);
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO audit_log (id, occurred_at, actor_user_id, actor_client_id, action, target_type, " +
+            "target_id, request_id, ip_address, user_agent, details, batch_id) VALUES ";
+    private static final String ROW = "(?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String IDEMPOTENT_SUFFIX = " ON DUPLICATE KEY UPDATE id = id";
+    private static final int COLUMNS = 12;
+
+    private static final String STORED_ROWS =
+            "SELECT id, occurred_at, action, request_id FROM audit_log WHERE id IN (%s)";
+    private static final String OWN_ROWS =
+            "SELECT id FROM audit_log WHERE occurred_at >= ? AND occurred_at <= ? AND batch_id = ?";
+    private static final String LOCK_HEAD = "SELECT seq, chain_hash FROM audit_batch_head WHERE id = 1 FOR UPDATE";
+    private static final String INSERT_BATCH = "INSERT INTO audit_batches " +
+            "(seq, batch_id, leaf_count, first_at, last_at, merkle_root, prev_hash, chain_hash) VALUES (?,?,?,?,?,?,?,?)";
+    private static final String UPDATE_HEAD = "UPDATE audit_batch_head SET seq = ?, chain_hash = ? WHERE id = 1";
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper json;
+    private final TransactionTemplate tx;
+    private final AuditRollups rollups;
+    private final boolean integrity;
+    private final Counter replays;
+    private final Counter collisions;
+    /** SQL text per row count; batches are capped, so this stays small. */
+    private final ConcurrentHashMap<Integer, String> sqlByRows = new ConcurrentHashMap<>();
+
+    public AuditBatchWriter(JdbcTemplate jdbc, ObjectMapper json, boolean integrity, MeterRegistry meters) {
+        this.jdbc = Objects.requireNonNull(jdbc);
+        this.json = Objects.requireNonNull(json);
+        this.tx = new TransactionTemplate(new DataSourceTransactionManager(Objects.requireNonNull(jdbc.getDataSource())));
+        this.rollups = new AuditRollups(jdbc);
+        this.integrity = integrity;
+        this.replays = duplicates(meters, "replay");
+        this.collisions = duplicates(meters, "collision");
+    }
+
+    private static Counter duplicates(MeterRegistry meters, String kind) {
+        return Counter.builder("aaa.audit.duplicates")
+                .description("Audit rows the insert skipped because their id was already stored")
+                .tag("kind", kind)
+                .register(meters);
+    }
+
+    public void write(List<AuditEnvelope> batch) {
+        if (batch.isEmpty()) return;
+        String sql = sqlByRows.computeIfAbsent(batch.size(), AuditBatchWriter::insertSql);
+        long batchId = TimeOrderedIds.next();
+        String[] details = new String[batch.size()];
+        for (int i = 0; i < details.length; i++) details[i] = toJson(batch.get(i));
+        List<Row> rows = integrity ? rows(batch, details) : null;
+
+        List<AuditEnvelope> skipped = tx.execute(status -> {
+            int inserted = jdbc.update(sql, ps -> {
+                int i = 1;
+                for (int r = 0; r < details.length; r++) {
+                    bind(ps, i, batch.get(r), details[r], batchId);
+                    i += COLUMNS;
+                }
+            });
+            if (inserted == batch.size()) {
+                rollups.add(batch);
+                if (integrity) chain(batchId, rows);
+                return List.of();
+            }
+            Set<Long> own = inserted == 0 ? Set.of() : ownIds(batchId, batch);
+            if (!own.isEmpty()) {
+                rollups.add(batch.stream().filter(e -> own.contains(e.id())).toList());
+                if (integrity) chain(batchId, rows.stream().filter(r -> own.contains(r.id())).toList());
+            }
+            return batch.stream().filter(e -> !own.contains(e.id())).toList();
+        });
+        if (skipped != null && !skipped.isEmpty()) countSkipped(skipped);
+    }
+
+    /** Splits rows the insert skipped into replays of a committed attempt and id collisions. */
+    private void countSkipped(List<AuditEnvelope> skipped) {
+        Map<Long, Object[]> stored = new HashMap<>();
+        String in = String.join(",", Collections.nCopies(skipped.size(), "?"));
+        jdbc.query(STORED_ROWS.formatted(in), rs -> {
+            stored.put(rs.getLong(1), new Object[]{rs.getTimestamp(2).toInstant(), rs.getString(3), rs.getString(4)});
+        }, skipped.stream().map(AuditEnvelope::id).toArray());
+        for (AuditEnvelope e : skipped) {
+            Object[] row = stored.get(e.id());
+            if (row != null && row[0].equals(storedAt(e.occurredAt())) && Objects.equals(row[1], e.action())
+                    && Objects.equals(row[2], e.requestId())) {
+                replays.increment();
+            } else {
+                collisions.increment();
+                log.error("Audit id {} collided with a different stored event; skipped {} (request {}) - " +
+                        "check that aaa.ids.node-id is unique per instance", e.id(), e.action(), e.requestId());
+            }
+        }
+    }
+
+    /** One row of the batch with its leaf hash, as needed for the tree. */
+    private record Row(long id, Instant storedAt, byte[] leaf) { }
+
+    private static List<Row> rows(List<AuditEnvelope> batch, String[] details) {
+        List<Row> rows = new ArrayList<>(batch.size());
+        for (int i = 0; i < details.length; i++) {
+            AuditEnvelope e = batch.get(i);
+            Instant at = storedAt(e.occurredAt());
+            rows.add(new Row(e.id(), at, AuditMerkle.leaf(e.id(), at.getEpochSecond(), e.actorUserId(),
+                    e.actorClientId(), e.action(), e.targetType(), e.targetId(), e.requestId(), e.ipAddress(),
+                    e.userAgent(), details[i])));
+        }
+        rows.sort(Comparator.comparingLong(Row::id));
+        return rows;
+    }
+
+    /** Appends the batch's root to the hash chain; rows are sorted by id. */
+    private void chain(long batchId, List<Row> rows) {
+        byte[] root = AuditMerkle.root(rows.stream().map(Row::leaf).toList());
+        Instant first = rows.stream().map(Row::storedAt).min(Comparator.naturalOrder()).orElseThrow();
+        Instant last = rows.stream().map(Row::storedAt).max(Comparator.naturalOrder()).orElseThrow();
+
+        Object[] head = jdbc.queryForObject(LOCK_HEAD, (rs, n) -> new Object[]{rs.getLong(1), rs.getBytes(2)});
+        long seq = (Long) Objects.requireNonNull(head)[0] + 1;
+        byte[] prev = (byte[]) head[1];
+        byte[] chain = AuditMerkle.chain(prev, root);
+        jdbc.update(INSERT_BATCH, seq, batchId, rows.size(), Timestamp.from(first), Timestamp.from(last), root, prev, chain);
+        jdbc.update(UPDATE_HEAD, seq, chain);
+    }
+
+    /** Ids of the batch that carry this attempt's batch id (the rest were committed earlier). */
+    private Set<Long> ownIds(long batchId, List<AuditEnvelope> batch) {
+        Instant first = batch.stream().map(e -> storedAt(e.occurredAt())).min(Comparator.naturalOrder()).orElseThrow();
+        Instant last = batch.stream().map(e -> storedAt(e.occurredAt())).max(Comparator.naturalOrder()).orElseThrow();
+        return new HashSet<>(jdbc.queryForList(OWN_ROWS, Long.class, Timestamp.from(first), Timestamp.from(last), batchId));
+    }
+
+    /** occurred_at as the column keeps it (whole seconds), so row and leaf hash agree. */
+    static Instant storedAt(Instant occurredAt) {
+        return occurredAt.truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    private void bind(PreparedStatement ps, int i, AuditEnvelope e, String details, long batchId) throws SQLException {
+        ps.setLong(i, e.id());
+        ps.setTimestamp(i + 1, Timestamp.from(storedAt(e.occurredAt())));
+        setId(ps, i + 2, e.actorUserId());
+        setId(ps, i + 3, e.actorClientId());
+        ps.setString(i + 4, e.action());
+        ps.setString(i + 5, e.targetType());
+        ps.setString(i + 6, e.targetId());
+        ps.setString(i + 7, e.requestId());
+        ps.setString(i + 8, e.ipAddress());
+        ps.setString(i + 9, e.userAgent());
+        ps.setString(i + 10, details);
+        ps.setLong(i + 11, batchId);
+    }
+
+    private static void setId(PreparedStatement ps, int i, Long id) throws SQLException {
+        if (id != null) ps.setLong(i, id);
+        else ps.setNull(i, Types.BIGINT);
+    }
+
+    private String toJson(AuditEnvelope e) {
+        if (e.details() == null) return null;
+        try {
+            return json.writeValueAsString(e.details());
+        } catch (JsonProcessingException ex) {
+            // never lose the event over an odd detail value
+            return "{\"_unserializable\":" + quote(ex.getOriginalMessage()) + "}";
+        }
+    }
+
+    private String quote(String s) {
+        try {
+            return json.writeValueAsString(s);
+        } catch (JsonProcessingException ex) {
+            return "null";
+        }
+    }
+
+    private static String insertSql(int rows) {
+        var sb = new StringBuilder(INSERT_PREFIX.length() + rows * (ROW.length() + 1) + IDEMPOTENT_SUFFIX.length());
+        sb.append(INSERT_PREFIX);
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) sb.append(',');
+            sb.append(ROW);
+        }
+        return sb.append(IDEMPOTENT_SUFFIX).toString();
+    }
+}
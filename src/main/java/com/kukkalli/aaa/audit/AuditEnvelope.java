@@ -0,0 +1,50 @@
+package com.kukkalli.aaa.audit;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable audit event, captured completely on the calling thread. It holds only ids and strings
+ * (no entities, no servlet request, no security context), so writer threads touch nothing
+ * request-scoped and nothing the request would otherwise release stays reachable.
+ *
+ * @param id      time-ordered row id ({@link com.kukkalli.aaa.domain.id.TimeOrderedIds}), assigned at capture
+ * @param details already defensively copied by the producer (may be null)
+ */
+public record AuditEnvelope(long id,
+                            Instant occurredAt,
+                            Long actorUserId,
+                            Long actorClientId,
+                            String action,
+                            String targetType,
+                            String targetId,
+                            String requestId,
+                            String ipAddress,
+                            String userAgent,
+                            Map<String, Object> details) {
+
+    /**
+     * Strings are clipped to their audit_log column widths here, at capture: header-derived values
+     * (User-Agent, X-Request-Id, addresses) are client-controlled, and one oversized value would
+     * otherwise fail the whole multi-row INSERT its batch goes into. Clipping before the writer also
+     * keeps the stored row identical to what gets hashed (see {@link AuditMerkle#leaf}).
+     */
+    public AuditEnvelope {
+        Objects.requireNonNull(occurredAt, "occurredAt must not be null");
+        Objects.requireNonNull(action, "action must not be null");
+        action = clip(action, 128);
+        targetType = clip(targetType, 128);
+        targetId = clip(targetId, 191);
+        requestId = clip(requestId, 64);
+        ipAddress = clip(ipAddress, 64);
+        userAgent = clip(userAgent, 255);
+    }
+
+    /** At most {@code max} UTF-16 units (so at most {@code max} characters), never splitting a surrogate pair. */
+    static String clip(String s, int max) {
+        if (s == null || s.length() <= max) return s;
+        int end = Character.isHighSurrogate(s.charAt(max - 1)) ? max - 1 : max;
+        return s.substring(0, end);
+    }
+}
@@ -0,0 +1,339 @@
+package com.kukkalli.aaa.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Sits in front of the {@link AuditPipeline} and keeps high-volume event types (bad tokens, HTTP
+ * errors) from turning one scanner into thousands of inserts per second. Actions without a rule
+ * pass straight through; for configured actions, in this order:
+ * <ol>
+ *   <li><b>coalescing</b>: within a window per (action, actor or IP, path), the first event is
+ *       written as usual and the rest are folded into one summary row, emitted when the window
+ *       closes, with {@code coalesced} (events folded in), {@code firstAt} and {@code lastAt};</li>
+ *   <li><b>cap</b>: at most N rows per action per minute, across all keys;</li>
+ *   <li><b>sampling</b>: 1 in N rows kept, marked with {@code sampleRate}.</li>
+ * </ol>
+ * Summary rows are never capped or sampled. {@link #weight} turns a row back into the number of
+ * events it stands for (used by the rollups).
+ *
+ * Metrics: {@code aaa.audit.suppressed} (counter; tags {@code action}, {@code reason} =
+ * coalesced | capped | sampled) and {@code aaa.audit.flood.windows} (gauge, open windows).
+ */
+@Component
+public class AuditFloodControl implements SmartLifecycle {
+
+    static final String COALESCED = "coalesced";
+    static final String FIRST_AT = "firstAt";
+    static final String LAST_AT = "lastAt";
+    static final String SAMPLE_RATE = "sampleRate";
+
+    private final Consumer<AuditEnvelope> downstream;
+    private final Clock clock;
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxWindows;
+    private final Map<String, Rule> rules;
+    private final Map<Key, Window> windows = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+
+    @Autowired
+    public AuditFloodControl(AuditPipeline pipeline,
+                             MeterRegistry meters,
+                             Clock clock,
+                             @Value("${aaa.audit.flood.enabled:true}") boolean enabled,
+                             @Value("${aaa.audit.flood.window:PT10S}") Duration window,
+                             @Value("${aaa.audit.flood.max-windows:10000}") int maxWindows,
+                             @Value("${aaa.audit.flood.coalesce:}") String coalesce,
+                             @Value("${aaa.audit.flood.sample-rates:}") String sampleRates,
+                             @Value("${aaa.audit.flood.caps-per-minute:}") String caps) {
+        this(pipeline::submit, meters, clock, enabled, window, maxWindows,
+                actions(coalesce), perAction(sampleRates), perAction(caps));
+    }
+
+    /** Core constructor; {@code downstream} receives every row that is to be written. */
+    AuditFloodControl(Consumer<AuditEnvelope> downstream,
+                      MeterRegistry meters,
+                      Clock clock,
+                      boolean enabled,
+                      Duration window,
+                      int maxWindows,
+                      Set<String> coalesce,
+                      Map<String, Integer> sampleRates,
+                      Map<String, Integer> caps) {
+        if (window.isNegative() || window.isZero() || maxWindows < 0) {
+            throw new IllegalArgumentException("audit flood window must be positive and max-windows not negative");
+        }
+        this.downstream = Objects.requireNonNull(downstream);
+        this.clock = Objects.requireNonNull(clock);
+        this.enabled = enabled;
+        this.window = window;
+        this.maxWindows = maxWindows;
+
+        Map<String, Rule> rules = new HashMap<>();
+        var actions = new TreeSet<>(coalesce);
+        actions.addAll(sampleRates.keySet());
+        actions.addAll(caps.keySet());
+        for (String action : actions) {
+            rules.put(action, new Rule(meters, action, coalesce.contains(action),
+                    sampleRates.getOrDefault(action, 1), caps.getOrDefault(action, 0)));
+        }
+        this.rules = Map.copyOf(rules);
+
+        Gauge.builder("aaa.audit.flood.windows", windows, Map::size)
+                .description("Open audit coalescing windows")
+                .register(meters);
+    }
+
+    // ---------------------------------------------------------------------
+    // Submission (request threads)
+    // ---------------------------------------------------------------------
+
+    /** Passes the event on, folds it into a window, or suppresses it; never throws. */
+    public void submit(AuditEnvelope event) {
+        Objects.requireNonNull(event, "event");
+        Rule rule = enabled ? rules.get(event.action()) : null;
+        if (rule == null) {
+            downstream.accept(event);
+            return;
+        }
+        Instant now = clock.instant();
+        if (rule.coalesce && running && absorbed(event, now, rule)) return;
+
+        if (rule.cap > 0 && !rule.withinCap(now)) {
+            rule.capped.increment();
+            return;
+        }
+        if (rule.sampleRate > 1) {
+            if (rule.sampleTicket.getAndIncrement() % rule.sampleRate != 0) {
+                rule.sampled.increment();
+                return;
+            }
+            event = withDetails(event, Map.of(SAMPLE_RATE, rule.sampleRate));
+        }
+        downstream.accept(event);
+    }
+
+    /** True if the event went into an open window; emits the previous window's summary if it had closed. */
+    private boolean absorbed(AuditEnvelope event, Instant now, Rule rule) {
+        Key key = Key.of(event);
+        if (windows.size() >= maxWindows && !windows.containsKey(key)) return false;   // full: no coalescing
+
+        AuditEnvelope[] closed = new AuditEnvelope[1];
+        boolean[] folded = new boolean[1];
+        windows.compute(key, (k, w) -> {
+            if (w != null && !now.isBefore(w.closesAt)) {
+                closed[0] = w.summary(window);
+                w = null;
+            }
+            if (w == null) return new Window(now.plus(window));
+            w.fold(event);
+            folded[0] = true;
+            return w;
+        });
+        if (closed[0] != null) downstream.accept(closed[0]);
+        if (folded[0]) rule.coalesced.increment();
+        return folded[0];
+    }
+
+    // ---------------------------------------------------------------------
+    // Window maintenance
+    // ---------------------------------------------------------------------
+
+    /** Closes windows past their end and emits their summaries (called periodically from housekeeping). */
+    public int flushExpired() {
+        return flush(clock.instant());
+    }
+
+    /** Closes windows with {@code closesAt <= now}; {@code now == null} closes all of them. */
+    private int flush(Instant now) {
+        List<AuditEnvelope> summaries = new ArrayList<>();
+        for (Key key : windows.keySet()) {
+            windows.computeIfPresent(key, (k, w) -> {
+                if (now != null && now.isBefore(w.closesAt)) return w;
+                AuditEnvelope summary = w.summary(window);
+                if (summary != null) summaries.add(summary);
+                return null;
+            });
+        }
+        summaries.forEach(downstream);
+        return summaries.size();
+    }
+
+    /**
+     * How many events a stored row stands for: the folded count of a summary row, the rate of a
+     * sampled row, otherwise 1.
+     */
+    static long weight(AuditEnvelope e) {
+        Map<String, Object> d = e.details();
+        if (d == null) return 1;
+        if (d.get(COALESCED) instanceof Number n) return Math.max(1, n.longValue());
+        if (d.get(SAMPLE_RATE) instanceof Number n) return Math.max(1, n.longValue());
+        return 1;
+    }
+
+    // ---------------------------------------------------------------------
+    // Lifecycle
+    // ---------------------------------------------------------------------
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /** Emits the summaries of all open windows while the pipeline is still accepting events. */
+    @Override
+    public void stop() {
+        running = false;
+        flush(null);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Above the pipeline's phase: starts after it and stops before it. */
+    @Override
+    public int getPhase() {
+        return 1;
+    }
+
+    // ---------------------------------------------------------------------
+    // Rules, keys and windows
+    // ---------------------------------------------------------------------
+
+    /** Per-action settings and counters; {@code cap} 0 means uncapped. */
+    private static final class Rule {
+        final boolean coalesce;
+        final int sampleRate;
+        final int cap;
+        final AtomicLong sampleTicket = new AtomicLong();
+        /** (minute since epoch) << 32 | rows in that minute. */
+        final AtomicLong capState = new AtomicLong();
+        final Counter coalesced;
+        final Counter capped;
+        final Counter sampled;
+
+        Rule(MeterRegistry meters, String action, boolean coalesce, int sampleRate, int cap) {
+            this.coalesce = coalesce;
+            this.sampleRate = sampleRate;
+            this.cap = cap;
+            this.coalesced = suppressed(meters, action, "coalesced");
+            this.capped = suppressed(meters, action, "capped");
+            this.sampled = suppressed(meters, action, "sampled");
+        }
+
+        boolean withinCap(Instant now) {
+            long minute = now.getEpochSecond() / 60;
+            long state = capState.updateAndGet(s -> (s >>> 32) == minute ? s + 1 : (minute << 32) | 1);
+            return (state & 0xFFFF_FFFFL) <= cap;
+        }
+
+        private static Counter suppressed(MeterRegistry meters, String action, String reason) {
+            return Counter.builder("aaa.audit.suppressed")
+                    .description("Audit events not written individually by flood control")
+                    .tag("action", action)
+                    .tag("reason", reason)
+                    .register(meters);
+        }
+    }
+
+    /** Coalescing key: the actor is the user, else the API client, else the IP. */
+    record Key(String action, String actor, String path) {
+
+        static Key of(AuditEnvelope e) {
+            String actor = e.actorUserId() != null ? "u:" + e.actorUserId()
+                    : e.actorClientId() != null ? "c:" + e.actorClientId()
+                    : "ip:" + e.ipAddress();
+            Object path = e.details() == null ? null : e.details().get("path");
+            return new Key(e.action(), actor, path == null ? null : path.toString());
+        }
+    }
+
+    /** Events folded in after the first; only touched inside {@code ConcurrentHashMap.compute}. */
+    private static final class Window {
+        final Instant closesAt;
+        long folded;
+        Instant firstAt;
+        AuditEnvelope last;
+
+        Window(Instant closesAt) {
+            this.closesAt = closesAt;
+        }
+
+        void fold(AuditEnvelope e) {
+            if (folded++ == 0) firstAt = e.occurredAt();
+            last = e;
+        }
+
+        /** One row for the folded events, reusing the last one's id and request data; null if none. */
+        AuditEnvelope summary(Duration window) {
+            if (folded == 0) return null;
+            Map<String, Object> extra = new LinkedHashMap<>();
+            extra.put(COALESCED, folded);
+            extra.put(FIRST_AT, firstAt.toString());
+            extra.put(LAST_AT, last.occurredAt().toString());
+            extra.put("window", window.toString());
+            return withDetails(last, extra);
+        }
+    }
+
+    private static AuditEnvelope withDetails(AuditEnvelope e, Map<String, Object> extra) {
+        Map<String, Object> details = e.details() == null ? new LinkedHashMap<>() : new LinkedHashMap<>(e.details());
+        details.putAll(extra);
+        return new AuditEnvelope(e.id(), e.occurredAt(), e.actorUserId(), e.actorClientId(), e.action(),
+                e.targetType(), e.targetId(), e.requestId(), e.ipAddress(), e.userAgent(),
+                Collections.unmodifiableMap(details));
+    }
+
+    // ---------------------------------------------------------------------
+    // Config parsing
+    // ---------------------------------------------------------------------
+
+    /** "A,B" -> {A, B}. */
+    static Set<String> actions(String csv) {
+        if (csv == null || csv.isBlank()) return Set.of();
+        return Arrays.stream(csv.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /** "A=10,B=5" -> {A: 10, B: 5}; values must be positive. */
+    static Map<String, Integer> perAction(String csv) {
+        Map<String, Integer> out = new HashMap<>();
+        for (String entry : actions(csv)) {
+            int eq = entry.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("expected ACTION=N, got '" + entry + "'");
+            int n = Integer.parseInt(entry.substring(eq + 1).trim());
+            if (n <= 0) throw new IllegalArgumentException("audit flood value must be positive: '" + entry + "'");
+            out.put(entry.substring(0, eq).trim(), n);
+        }
+        return Map.copyOf(out);
+    }
+}
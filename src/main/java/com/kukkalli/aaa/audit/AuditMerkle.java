@@ -0,0 +1,138 @@
+package com.kukkalli.aaa.audit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashing for tamper-evident audit batches (V13). Every batch the writer inserts becomes a binary
+ * SHA-256 Merkle tree over its rows, ordered by id; only the root is stored, in {@code audit_batches},
+ * chained to the previous batch's chain hash. Hashes are domain-separated (RFC 6962 style) so a leaf
+ * can never be passed off as an inner node:
+ * <pre>
+ *   leaf  = H(0x00 || row)           row: the stored column values, length-prefixed, see {@link #leaf}
+ *   node  = H(0x01 || left || right)  an odd node at the end of a level moves up unchanged
+ *   chain = H(0x02 || previous chain || root)   the first batch chains to 32 zero bytes
+ * </pre>
+ * An inclusion proof is the sibling hash at every level from the leaf up: ceil(log2 n) hashes.
+ */
+public final class AuditMerkle {
+
+    public static final int HASH_BYTES = 32;
+
+    private static final byte LEAF = 0x00;
+    private static final byte NODE = 0x01;
+    private static final byte CHAIN = 0x02;
+
+    private AuditMerkle() { }
+
+    /** One level of an inclusion proof: the sibling hash and whether it sits on the left. */
+    public record Step(boolean left, byte[] hash) { }
+
+    /**
+     * Leaf hash of an audit row as stored: {@code occurred_at} in whole seconds (the column's
+     * precision) and {@code details} as the exact JSON text written. Strings are UTF-8 with a length
+     * prefix; null is length -1.
+     */
+    public static byte[] leaf(long id, long occurredAtEpochSecond, Long actorUserId, Long actorClientId,
+                              String action, String targetType, String targetId, String requestId,
+                              String ipAddress, String userAgent, String detailsJson) {
+        MessageDigest sha = sha256();
+        sha.update(LEAF);
+        var buf = ByteBuffer.allocate(8 * 4 + 2);
+        buf.putLong(id).putLong(occurredAtEpochSecond);
+        putId(buf, actorUserId);
+        putId(buf, actorClientId);
+        sha.update(buf.array(), 0, buf.position());
+        for (String s : new String[]{action, targetType, targetId, requestId, ipAddress, userAgent, detailsJson}) {
+            putString(sha, s);
+        }
+        return sha.digest();
+    }
+
+    /** Merkle root of the leaves (in order); at least one leaf. */
+    public static byte[] root(List<byte[]> leaves) {
+        if (leaves.isEmpty()) throw new IllegalArgumentException("a Merkle tree needs at least one leaf");
+        List<byte[]> level = leaves;
+        MessageDigest sha = sha256();
+        while (level.size() > 1) level = parents(sha, level);
+        return level.get(0);
+    }
+
+    /** Sibling hashes from leaf {@code index} up to the root. */
+    public static List<Step> proof(List<byte[]> leaves, int index) {
+        if (index < 0 || index >= leaves.size()) throw new IndexOutOfBoundsException(index);
+        List<Step> steps = new ArrayList<>();
+        List<byte[]> level = leaves;
+        MessageDigest sha = sha256();
+        while (level.size() > 1) {
+            int sibling = index ^ 1;
+            if (sibling < level.size()) steps.add(new Step(sibling < index, level.get(sibling)));
+            level = parents(sha, level);
+            index >>= 1;
+        }
+        return steps;
+    }
+
+    /** The root a proof leads to from {@code leaf}; compare it with the stored root. */
+    public static byte[] rootFromProof(byte[] leaf, List<Step> steps) {
+        MessageDigest sha = sha256();
+        byte[] h = leaf;
+        for (Step s : steps) {
+            h = s.left() ? node(sha, s.hash(), h) : node(sha, h, s.hash());
+        }
+        return h;
+    }
+
+    public static byte[] chain(byte[] previous, byte[] root) {
+        MessageDigest sha = sha256();
+        sha.update(CHAIN);
+        sha.update(previous);
+        sha.update(root);
+        return sha.digest();
+    }
+
+    /** What the first batch chains to. */
+    public static byte[] genesis() {
+        return new byte[HASH_BYTES];
+    }
+
+    public static boolean equal(byte[] a, byte[] b) {
+        return MessageDigest.isEqual(a, b);
+    }
+
+    private static List<byte[]> parents(MessageDigest sha, List<byte[]> level) {
+        List<byte[]> up = new ArrayList<>((level.size() + 1) / 2);
+        for (int i = 0; i + 1 < level.size(); i += 2) up.add(node(sha, level.get(i), level.get(i + 1)));
+        if (level.size() % 2 == 1) up.add(level.get(level.size() - 1));
+        return up;
+    }
+
+    private static byte[] node(MessageDigest sha, byte[] left, byte[] right) {
+        sha.update(NODE);
+        sha.update(left);
+        sha.update(right);
+        return sha.digest();
+    }
+
+    private static void putId(ByteBuffer buf, Long id) {
+        buf.put((byte) (id == null ? 0 : 1)).putLong(id == null ? 0 : id);
+    }
+
+    private static void putString(MessageDigest sha, String s) {
+        byte[] bytes = s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+        sha.update(ByteBuffer.allocate(4).putInt(bytes == null ? -1 : bytes.length).array());
+        if (bytes != null) sha.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.kukkalli.aaa.audit;
+
+/** What {@link AuditPipeline#submit} does when the buffer is full (or, for SAMPLE, filling up). */
+public enum AuditOverflowPolicy {
+    /** Wait up to {@code block-timeout} for space, then drop the new event. */
+    BLOCK,
+    /** Evict the oldest queued event to make room. */
+    DROP_OLDEST,
+    /** Above the high-water mark keep only 1 in {@code sample-rate} events; drop when full. */
+    SAMPLE
+}
@@ -0,0 +1,536 @@
+package com.kukkalli.aaa.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, batched audit write path. Request threads {@link #submit} into a lock-free ring buffer;
+ * a few writer threads drain it and insert each batch with one multi-row statement.
+ *
+ * Writers use their own small connection pool (one connection per writer, built from
+ * {@code spring.datasource.*}), so audit volume never competes with request traffic for the
+ * application pool. When the buffer is full, {@link AuditOverflowPolicy} decides what gives.
+ *
+ * With the {@link AuditWal} enabled, events are appended to the local WAL instead and a single writer
+ * thread copies them from there into the table, checkpointing after each batch. While the database
+ * is unavailable it retries the same batch (backing off) instead of dropping it; on shutdown the rest
+ * stays in the WAL and is replayed on the next start. Events the WAL cannot take (full or failed)
+ * fall back to the ring buffer, which the same thread drains.
+ *
+ * A batch that keeps failing for any other reason is written in halves down to single rows, so a
+ * row the table rejects costs only that row ({@code write_error}), not its batch.
+ *
+ * Metrics: {@code aaa.audit.queue.depth} (gauge), {@code aaa.audit.batch.size} (summary),
+ * {@code aaa.audit.flush.latency} (timer), {@code aaa.audit.written} and
+ * {@code aaa.audit.dropped} (counters; tag {@code reason} = overflow | sampled | write_error | shutdown),
+ * {@code aaa.audit.wal.bypassed} (counter, events the WAL could not take).
+ */
+@Component
+public class AuditPipeline implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditPipeline.class);
+
+    private static final long BLOCK_PARK_NANOS = 100_000;       // 100µs between retries while blocked
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5_000;
+    private static final long INTERRUPT_GRACE_MILLIS = 2_000;    // after shutdown-timeout, for interrupted writers
+
+    private final MpmcRingBuffer<AuditEnvelope> buffer;
+    private final Consumer<List<AuditEnvelope>> sink;
+    private final AutoCloseable resources;
+    private final AuditWal wal;
+    private final int writers;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final AuditOverflowPolicy policy;
+    private final long blockTimeoutNanos;
+    private final int highWater;
+    private final int sampleRate;
+    private final Duration shutdownTimeout;
+
+    private final DistributionSummary batchSize;
+    private final Timer flushLatency;
+    private final Counter written;
+    private final Counter droppedOverflow;
+    private final Counter droppedSampled;
+    private final Counter droppedWriteError;
+    private final Counter droppedShutdown;
+    private final Counter walBypassed;
+
+    /** Events accepted into the buffer / events that left it (written, failed or evicted). */
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong sampleTicket = new AtomicLong();
+
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private volatile boolean stopped;
+
+    @Autowired
+    public AuditPipeline(ObjectMapper json,
+                         MeterRegistry meters,
+                         AuditWal wal,
+                         @Value("${spring.datasource.url}") String url,
+                         @Value("${spring.datasource.username:}") String username,
+                         @Value("${spring.datasource.password:}") String password,
+                         @Value("${aaa.audit.pipeline.capacity:8192}") int capacity,
+                         @Value("${aaa.audit.pipeline.writers:1}") int writers,
+                         @Value("${aaa.audit.pipeline.max-batch:500}") int maxBatch,
+                         @Value("${aaa.audit.pipeline.linger:PT0.05S}") Duration linger,
+                         @Value("${aaa.audit.pipeline.overflow-policy:BLOCK}") AuditOverflowPolicy policy,
+                         @Value("${aaa.audit.pipeline.block-timeout:PT0.05S}") Duration blockTimeout,
+                         @Value("${aaa.audit.pipeline.sample.high-water:0.75}") double highWater,
+                         @Value("${aaa.audit.pipeline.sample.rate:10}") int sampleRate,
+                         @Value("${aaa.audit.pipeline.shutdown-timeout:PT10S}") Duration shutdownTimeout,
+                         @Value("${aaa.audit.integrity.enabled:true}") boolean integrity) {
+        this(dataSource(url, username, password, writers), json, integrity, meters, wal.isEnabled() ? wal : null,
+                capacity, writers, maxBatch, linger, policy, blockTimeout, highWater, sampleRate, shutdownTimeout);
+    }
+
+    private AuditPipeline(HikariDataSource ds, ObjectMapper json, boolean integrity, MeterRegistry meters,
+                          AuditWal wal, int capacity, int writers, int maxBatch, Duration linger,
+                          AuditOverflowPolicy policy, Duration blockTimeout, double highWater, int sampleRate,
+                          Duration shutdownTimeout) {
+        this(new AuditBatchWriter(new JdbcTemplate(ds), json, integrity, meters)::write, ds, wal, meters, capacity, writers,
+                maxBatch, linger, policy, blockTimeout, highWater, sampleRate, shutdownTimeout);
+    }
+
+    /**
+     * Core constructor; {@code sink} writes one batch (and throws if it could not).
+     * @param wal null to queue in memory only
+     */
+    AuditPipeline(Consumer<List<AuditEnvelope>> sink,
+                  AutoCloseable resources,
+                  AuditWal wal,
+                  MeterRegistry meters,
+                  int capacity,
+                  int writers,
+                  int maxBatch,
+                  Duration linger,
+                  AuditOverflowPolicy policy,
+                  Duration blockTimeout,
+                  double highWater,
+                  int sampleRate,
+                  Duration shutdownTimeout) {
+        if (writers <= 0 || maxBatch <= 0 || sampleRate <= 0) {
+            throw new IllegalArgumentException("audit pipeline writers, max-batch and sample rate must be positive");
+        }
+        if (!(highWater > 0 && highWater <= 1)) {
+            throw new IllegalArgumentException("audit pipeline sample high-water must be in (0,1]");
+        }
+        this.buffer = new MpmcRingBuffer<>(capacity);
+        this.sink = Objects.requireNonNull(sink);
+        this.resources = resources;
+        this.wal = wal;
+        this.writers = writers;
+        this.maxBatch = maxBatch;
+        this.lingerNanos = Math.max(1, linger.toNanos());
+        this.policy = Objects.requireNonNull(policy);
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        this.highWater = (int) Math.ceil(buffer.capacity() * highWater);
+        this.sampleRate = sampleRate;
+        this.shutdownTimeout = Objects.requireNonNull(shutdownTimeout);
+
+        Gauge.builder("aaa.audit.queue.depth", buffer, MpmcRingBuffer::size)
+                .description("Audit events waiting to be written")
+                .register(meters);
+        this.batchSize = DistributionSummary.builder("aaa.audit.batch.size")
+                .description("Rows per audit insert")
+                .register(meters);
+        this.flushLatency = Timer.builder("aaa.audit.flush.latency")
+                .description("Time to write one audit batch")
+                .register(meters);
+        this.written = Counter.builder("aaa.audit.written").register(meters);
+        this.droppedOverflow = dropped(meters, "overflow");
+        this.droppedSampled = dropped(meters, "sampled");
+        this.droppedWriteError = dropped(meters, "write_error");
+        this.droppedShutdown = dropped(meters, "shutdown");
+        this.walBypassed = Counter.builder("aaa.audit.wal.bypassed")
+                .description("Audit events queued in memory because the WAL could not take them")
+                .register(meters);
+    }
+
+    private static Counter dropped(MeterRegistry meters, String reason) {
+        return Counter.builder("aaa.audit.dropped")
+                .description("Audit events that were not persisted")
+                .tag("reason", reason)
+                .register(meters);
+    }
+
+    private static HikariDataSource dataSource(String url, String username, String password, int writers) {
+        var cfg = new HikariConfig();
+        cfg.setPoolName("audit-writer");
+        cfg.setJdbcUrl(url);
+        cfg.setUsername(username);
+        cfg.setPassword(password);
+        cfg.setMaximumPoolSize(Math.max(1, writers));
+        cfg.setMinimumIdle(1);
+        cfg.setAutoCommit(true);
+        cfg.addDataSourceProperty("useAffectedRows", "true");   // replayed batches report 0 rows (see AuditBatchWriter)
+        cfg.setInitializationFailTimeout(-1);   // don't fail startup if the DB is briefly unavailable
+        return new HikariDataSource(cfg);
+    }
+
+    // ---------------------------------------------------------------------
+    // Producer side (request threads)
+    // ---------------------------------------------------------------------
+
+    /** Enqueues an event; never throws and never touches the database. */
+    public void submit(AuditEnvelope event) {
+        Objects.requireNonNull(event, "event");
+        if (stopped) {
+            droppedShutdown.increment();
+            return;
+        }
+        if (wal != null) {
+            if (wal.append(event)) return;
+            walBypassed.increment();
+        }
+        boolean ok = switch (policy) {
+            case BLOCK -> offerBlocking(event);
+            case DROP_OLDEST -> offerEvictingOldest(event);
+            case SAMPLE -> offerSampled(event);
+        };
+        if (ok) accepted.incrementAndGet();
+    }
+
+    /** Events a failed WAL write had accepted; queued in memory like events the WAL refused. */
+    private void requeue(List<AuditEnvelope> events) {
+        walBypassed.increment(events.size());
+        for (AuditEnvelope event : events) {
+            if (offerBlocking(event)) accepted.incrementAndGet();
+        }
+    }
+
+    private boolean offerBlocking(AuditEnvelope event) {
+        if (buffer.offer(event)) return true;
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        do {
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            if (buffer.offer(event)) return true;
+        } while (System.nanoTime() < deadline);
+        droppedOverflow.increment();
+        return false;
+    }
+
+    private boolean offerEvictingOldest(AuditEnvelope event) {
+        while (!buffer.offer(event)) {
+            if (buffer.poll() != null) {
+                droppedOverflow.increment();
+                processed.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    private boolean offerSampled(AuditEnvelope event) {
+        if (buffer.size() >= highWater && sampleTicket.incrementAndGet() % sampleRate != 0) {
+            droppedSampled.increment();
+            return false;
+        }
+        if (buffer.offer(event)) return true;
+        droppedOverflow.increment();
+        return false;
+    }
+
+    /**
+     * Waits until every event accepted before this call has been written (or dropped).
+     * @return false on timeout
+     */
+    public boolean flush(Duration timeout) {
+        long target = accepted.get();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        AuditWal.Position walTarget = wal != null ? wal.syncedEnd(timeout) : null;
+        while (processed.get() < target || walTarget != null && wal.checkpoint().compareTo(walTarget) < 0) {
+            if (System.nanoTime() >= deadline) return false;
+            threads.forEach(LockSupport::unpark);
+            LockSupport.parkNanos(1_000_000);
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------
+    // Writer side
+    // ---------------------------------------------------------------------
+
+    private void drainLoop() {
+        List<AuditEnvelope> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            if (interruptedByStop()) return;
+            buffer.drainTo(batch, maxBatch);
+            if (batch.isEmpty()) {
+                if (!running) return;
+                LockSupport.parkNanos(this, lingerNanos);
+                continue;
+            }
+            writeBatch(batch);
+            processed.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    /** WAL mode: batches come from the WAL (checkpointed once written), then from the in-memory fallback. */
+    private void walDrainLoop() {
+        List<AuditEnvelope> batch = new ArrayList<>(maxBatch);
+        long failures = 0;
+        while (true) {
+            if (interruptedByStop()) return;   // the rest stays in the WAL
+            try {
+                AuditWal.Position end = wal.read(batch, maxBatch);
+                if (!batch.isEmpty()) {
+                    if (!writeDurably(batch)) return;   // stopping while the database is unavailable
+                    wal.checkpoint(end);
+                    batch.clear();
+                    failures = 0;
+                    continue;
+                }
+                if (end.compareTo(wal.checkpoint()) > 0) wal.checkpoint(end);   // skipped past empty segments
+            } catch (IOException e) {
+                batch.clear();
+                if (!running) return;
+                log.error("Reading the audit WAL failed; retrying", e);
+                LockSupport.parkNanos(Duration.ofMillis(backoffMillis(++failures)).toNanos());
+                continue;
+            }
+            buffer.drainTo(batch, maxBatch);
+            if (batch.isEmpty()) {
+                if (!running) return;
+                LockSupport.parkNanos(this, lingerNanos);
+                continue;
+            }
+            writeBatch(batch);
+            processed.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    /** {@link #stop} interrupts writers still busy at its deadline; they give up what is left. */
+    private boolean interruptedByStop() {
+        return stopped && Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Writes a batch read from the WAL. An unavailable database is waited out for as long as the
+     * pipeline runs; any other failure is retried {@code MAX_WRITE_ATTEMPTS} times and then the
+     * batch is written in halves (see {@link #writeInHalves}), as {@link #writeBatch} does.
+     * @return false if the pipeline stopped before the batch could be written (it stays in the WAL)
+     */
+    private boolean writeDurably(List<AuditEnvelope> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                accept(batch);
+                return true;
+            } catch (RuntimeException e) {
+                boolean unavailable = unavailable(e);
+                if (!unavailable && attempt >= MAX_WRITE_ATTEMPTS) return writeInHalves(batch, e, true);
+                if (!running) return false;
+                if (attempt == 1 && unavailable) {
+                    log.warn("Audit database unavailable, holding events in the WAL: {}", e.toString());
+                } else {
+                    log.debug("Audit batch write failed (attempt {}), retrying", attempt, e);
+                }
+                LockSupport.parkNanos(Duration.ofMillis(backoffMillis(attempt)).toNanos());
+            }
+        }
+    }
+
+    /** Failures worth waiting out: no connection, timeouts, deadlocks and the like. */
+    static boolean unavailable(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private static long backoffMillis(long attempt) {
+        return Math.min(MAX_RETRY_BACKOFF_MILLIS, RETRY_BACKOFF_MILLIS * attempt);
+    }
+
+    private void writeBatch(List<AuditEnvelope> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                accept(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_WRITE_ATTEMPTS) {
+                    if (unavailable(e)) {
+                        drop(batch, attempt, e);
+                    } else {
+                        writeInHalves(batch, e, false);
+                    }
+                    return;
+                }
+                log.debug("Audit batch write failed (attempt {}), retrying", attempt, e);
+                LockSupport.parkNanos(Duration.ofMillis(RETRY_BACKOFF_MILLIS * attempt).toNanos());
+            }
+        }
+    }
+
+    /**
+     * A batch that keeps failing for a reason other than availability is usually failing because of
+     * one row the table rejects, and the multi-row INSERT fails as a whole. Bisect it, one attempt per
+     * half, down to single rows, so only the offending rows are dropped and the rest of the batch
+     * (other users' events) is written. An unavailable database during the split is handled like in
+     * the caller: waited out in WAL mode, otherwise the half is dropped.
+     * @return false if the pipeline stopped while waiting (WAL mode only)
+     */
+    private boolean writeInHalves(List<AuditEnvelope> batch, RuntimeException failure, boolean durable) {
+        if (batch.size() == 1) {
+            drop(batch, MAX_WRITE_ATTEMPTS, failure);
+            return true;
+        }
+        int mid = batch.size() >>> 1;
+        for (List<AuditEnvelope> half : List.of(batch.subList(0, mid), batch.subList(mid, batch.size()))) {
+            try {
+                accept(half);
+            } catch (RuntimeException e) {
+                if (!unavailable(e)) {
+                    if (!writeInHalves(half, e, durable)) return false;
+                } else if (durable) {
+                    if (!writeDurably(half)) return false;
+                } else {
+                    drop(half, 1, e);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void accept(List<AuditEnvelope> batch) {
+        long start = System.nanoTime();
+        sink.accept(batch);
+        flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSize.record(batch.size());
+        written.increment(batch.size());
+    }
+
+    private void drop(List<AuditEnvelope> batch, int attempts, RuntimeException e) {
+        droppedWriteError.increment(batch.size());
+        if (batch.size() == 1) {
+            AuditEnvelope event = batch.get(0);
+            log.warn("Dropping audit event {} ({}) after {} failed attempts: {}", event.id(), event.action(),
+                    attempts, e.toString());
+        } else {
+            log.warn("Dropping {} audit events after {} failed attempts: {}", batch.size(), attempts, e.toString());
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Lifecycle
+    // ---------------------------------------------------------------------
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        stopped = false;
+        if (wal != null) {
+            wal.open(this::requeue);
+            Thread t = new Thread(this::walDrainLoop, "audit-writer-wal");
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+            return;
+        }
+        for (int i = 0; i < writers; i++) {
+            Thread t = new Thread(this::drainLoop, "audit-writer-" + i);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * Stops accepting events and drains what is queued, bounded by {@code shutdown-timeout}. Writers
+     * still busy then are interrupted and given a short grace to exit; the WAL and the pool are closed
+     * only once every writer is gone, never under a write in progress.
+     */
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        stopped = true;
+        running = false;
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        boolean interrupted = !joinAll(deadline);
+        if (!interrupted && threads.stream().anyMatch(Thread::isAlive)) {
+            threads.forEach(Thread::interrupt);
+            interrupted = !joinAll(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(INTERRUPT_GRACE_MILLIS));
+        }
+        List<Thread> alive = threads.stream().filter(Thread::isAlive).toList();
+        threads.clear();
+        if (interrupted) Thread.currentThread().interrupt();
+        int left = buffer.size();
+        if (left > 0) {
+            droppedShutdown.increment(left);
+            log.warn("Audit pipeline stopped with {} unwritten events", left);
+        }
+        if (!alive.isEmpty()) {
+            // a writer stuck in a statement; closing its connection or the WAL under it could lose or
+            // corrupt the write, so leave both to the JVM exit (the writers are daemon threads)
+            log.warn("Audit writers {} did not stop; leaving the WAL and writer pool open", alive);
+            return;
+        }
+        if (wal != null) wal.close();
+        if (resources != null) {
+            try {
+                resources.close();
+            } catch (Exception e) {
+                log.debug("Closing audit writer pool failed", e);
+            }
+        }
+    }
+
+    /** Unparks and joins the writers until {@code deadline}; false if this thread was interrupted. */
+    private boolean joinAll(long deadline) {
+        for (Thread t : threads) {
+            LockSupport.unpark(t);
+            try {
+                long millis = (deadline - System.nanoTime()) / 1_000_000;
+                if (millis > 0) t.join(millis);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Starts before and stops after the web server (which stops early), so in-flight requests can still audit. */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+}
@@ -0,0 +1,60 @@
+package com.kukkalli.aaa.audit;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Small dedicated connection pool for the long-running admin reads over {@code audit_log}: range
+ * verification (every worker holds a connection while it re-hashes rows) and exports (a streaming
+ * cursor held for the whole download, up to {@code net-write-timeout}). Keeping them off the
+ * application pool means a few admin calls can't take the connections logins and token refreshes
+ * need; when this pool is busy, further verify chunks wait here for up to {@code connection-timeout}.
+ */
+@Component
+public class AuditReadPool {
+
+    private final HikariDataSource ds;
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate namedJdbc;
+
+    public AuditReadPool(@Value("${spring.datasource.url}") String url,
+                         @Value("${spring.datasource.username:}") String username,
+                         @Value("${spring.datasource.password:}") String password,
+                         @Value("${aaa.audit.read-pool.size:2}") int size,
+                         @Value("${aaa.audit.read-pool.connection-timeout:PT30S}") Duration connectionTimeout) {
+        if (size <= 0) throw new IllegalArgumentException("aaa.audit.read-pool.size must be positive");
+        var cfg = new HikariConfig();
+        cfg.setPoolName("audit-reader");
+        cfg.setJdbcUrl(url);
+        cfg.setUsername(username);
+        cfg.setPassword(password);
+        cfg.setMaximumPoolSize(size);
+        cfg.setMinimumIdle(0);                  // idle between admin calls
+        cfg.setReadOnly(true);
+        cfg.setConnectionTimeout(connectionTimeout.toMillis());
+        cfg.setInitializationFailTimeout(-1);   // don't fail startup if the DB is briefly unavailable
+        this.ds = new HikariDataSource(cfg);
+        this.jdbc = new JdbcTemplate(ds);
+        this.namedJdbc = new NamedParameterJdbcTemplate(jdbc);
+    }
+
+    public JdbcTemplate jdbc() {
+        return jdbc;
+    }
+
+    public NamedParameterJdbcTemplate namedJdbc() {
+        return namedJdbc;
+    }
+
+    @PreDestroy
+    void close() {
+        ds.close();
+    }
+}
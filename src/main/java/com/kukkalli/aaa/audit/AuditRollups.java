@@ -0,0 +1,94 @@
+package com.kukkalli.aaa.audit;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Folds a batch of audit events into per-(action, minute) and per-(action, ip, hour) counts and adds
+ * them to the rollup tables (V12) with one multi-row upsert per table. A batch of hundreds of events
+ * usually touches a handful of buckets, so this costs two short statements per batch.
+ *
+ * Keys are upserted in sorted order: concurrent writers then lock rollup rows in the same order
+ * and cannot deadlock on them.
+ */
+final class AuditRollups {
+
+    /** (action, minute) bucket. */
+    record MinuteKey(String action, Instant bucket) { }
+
+    /** (action, ip, hour) bucket; ip is '' when the event had none. */
+    record IpHourKey(String action, Instant bucket, String ipAddress) { }
+
+    static final Comparator<MinuteKey> MINUTE_ORDER =
+            Comparator.comparing(MinuteKey::action).thenComparing(MinuteKey::bucket);
+    static final Comparator<IpHourKey> IP_HOUR_ORDER =
+            Comparator.comparing(IpHourKey::action).thenComparing(IpHourKey::bucket).thenComparing(IpHourKey::ipAddress);
+
+    private static final String MINUTE_PREFIX = "INSERT INTO audit_rollup_minute (action, bucket, events) VALUES ";
+    private static final String IP_HOUR_PREFIX =
+            "INSERT INTO audit_rollup_ip_hour (action, bucket, ip_address, events) VALUES ";
+    private static final String INCREMENT = " ON DUPLICATE KEY UPDATE events = events + VALUES(events)";
+
+    private final JdbcTemplate jdbc;
+    private final ConcurrentHashMap<Integer, String> minuteSql = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> ipHourSql = new ConcurrentHashMap<>();
+
+    AuditRollups(JdbcTemplate jdbc) {
+        this.jdbc = Objects.requireNonNull(jdbc);
+    }
+
+    /** Adds the batch's counts; runs on the caller's connection / transaction. */
+    void add(Iterable<AuditEnvelope> batch) {
+        var minutes = new TreeMap<MinuteKey, long[]>(MINUTE_ORDER);
+        var ipHours = new TreeMap<IpHourKey, long[]>(IP_HOUR_ORDER);
+        count(batch, minutes, ipHours);
+
+        String sql1 = minuteSql.computeIfAbsent(minutes.size(), n -> upsert(MINUTE_PREFIX, "(?,?,?)", n));
+        jdbc.update(sql1, ps -> {
+            int i = 1;
+            for (Map.Entry<MinuteKey, long[]> e : minutes.entrySet()) {
+                ps.setString(i++, e.getKey().action());
+                ps.setTimestamp(i++, Timestamp.from(e.getKey().bucket()));
+                ps.setLong(i++, e.getValue()[0]);
+            }
+        });
+        String sql2 = ipHourSql.computeIfAbsent(ipHours.size(), n -> upsert(IP_HOUR_PREFIX, "(?,?,?,?)", n));
+        jdbc.update(sql2, ps -> {
+            int i = 1;
+            for (Map.Entry<IpHourKey, long[]> e : ipHours.entrySet()) {
+                ps.setString(i++, e.getKey().action());
+                ps.setTimestamp(i++, Timestamp.from(e.getKey().bucket()));
+                ps.setString(i++, e.getKey().ipAddress());
+                ps.setLong(i++, e.getValue()[0]);
+            }
+        });
+    }
+
+    static void count(Iterable<AuditEnvelope> batch, Map<MinuteKey, long[]> minutes, Map<IpHourKey, long[]> ipHours) {
+        for (AuditEnvelope e : batch) {
+            Instant minute = e.occurredAt().truncatedTo(ChronoUnit.MINUTES);
+            Instant hour = e.occurredAt().truncatedTo(ChronoUnit.HOURS);
+            String ip = e.ipAddress() == null ? "" : e.ipAddress();
+            long n = AuditFloodControl.weight(e);   // coalesced / sampled rows stand for several events
+            minutes.computeIfAbsent(new MinuteKey(e.action(), minute), k -> new long[1])[0] += n;
+            ipHours.computeIfAbsent(new IpHourKey(e.action(), hour, ip), k -> new long[1])[0] += n;
+        }
+    }
+
+    private static String upsert(String prefix, String row, int rows) {
+        var sb = new StringBuilder(prefix.length() + rows * (row.length() + 1) + INCREMENT.length()).append(prefix);
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) sb.append(',');
+            sb.append(row);
+        }
+        return sb.append(INCREMENT).toString();
+    }
+}
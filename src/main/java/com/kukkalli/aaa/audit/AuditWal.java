@@ -0,0 +1,590 @@
+package com.kukkalli.aaa.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Local write-ahead log for audit events, used by the {@link AuditPipeline} when enabled: events are
+ * made durable on local disk first and copied into {@code audit_log} afterwards, so a database stall
+ * or outage costs neither request latency nor events.
+ *
+ * <ul>
+ *   <li><b>Append</b> (request threads): the event is framed as {@code [length][crc32c][json]} and
+ *       queued; one sync thread writes everything queued with a single gathering write and one
+ *       {@code force}, then wakes the waiting producers (group commit). A producer waits at most
+ *       {@code commit-timeout}; the record is written either way.</li>
+ *   <li><b>Failure</b>: once a write fails (disk full, I/O error) the WAL takes no more records.
+ *       Producers still waiting get {@code false} and queue the event in memory themselves; records
+ *       whose producer already gave up waiting go to the handler passed to {@link #open}.</li>
+ *   <li><b>Segments</b>: {@code NNNNNNNNNNNNNNNN.wal} files of about {@code segment-size}; a segment
+ *       is forced before the next one is started, so only the newest can end in a torn record.</li>
+ *   <li><b>Drain</b> (the pipeline's single writer thread): {@link #read} returns durable records
+ *       after the last {@link #checkpoint}; once a batch is in the table the writer checkpoints
+ *       past it, and segments wholly before the checkpoint are deleted.</li>
+ *   <li><b>Recovery</b>: {@link #open} cuts a torn tail off the newest segment, starts a fresh
+ *       segment and resumes reading at the checkpoint, which replays whatever had not been drained.
+ *       The checkpoint file is written without {@code force}: losing it only replays more, and
+ *       replays are idempotent because ids are assigned at capture ({@link AuditBatchWriter}).</li>
+ * </ul>
+ *
+ * Metrics: {@code aaa.audit.wal.size} (gauge, bytes on disk), {@code aaa.audit.wal.sync.latency}
+ * (timer, one write + force) and {@code aaa.audit.wal.group.size} (summary, records per force).
+ */
+@Component
+public class AuditWal {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditWal.class);
+
+    private static final String SUFFIX = ".wal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int HEADER = 8;                    // int length, int crc32c
+    private static final int MAX_RECORD = 16 << 20;
+    private static final int READ_CHUNK = 1 << 20;
+
+    /** A point in the log: segment number and byte offset within it. */
+    public record Position(long segment, long offset) implements Comparable<Position> {
+        @Override
+        public int compareTo(Position o) {
+            int c = Long.compare(segment, o.segment);
+            return c != 0 ? c : Long.compare(offset, o.offset);
+        }
+    }
+
+    private final ObjectMapper json;
+    private final boolean enabled;
+    private final Path dir;
+    private final long segmentSize;
+    private final long maxSize;
+    private final long commitTimeoutNanos;
+    private final Timer syncLatency;
+    private final DistributionSummary groupSize;
+
+    /** Segment number -> size in bytes, for every segment on disk. */
+    private final NavigableMap<Long, Long> segments = new ConcurrentSkipListMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    // append side, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition synced = lock.newCondition();
+    private List<Pending> pending = new ArrayList<>();
+    private long pendingBytes;
+    private long appendSeq;
+    private long syncedSeq;
+    private boolean open;
+    private boolean failed;
+
+    // sync thread only
+    private Consumer<List<AuditEnvelope>> orphans;
+    private FileChannel out;
+    private long outSegment;
+    private long outOffset;
+    private Thread syncThread;
+
+    /** End of what has been forced to disk; the drain side never reads past it. */
+    private volatile Position durable;
+    private volatile Position checkpoint;
+
+    // drain side (the pipeline's writer thread) only
+    private FileChannel in;
+    private long inSegment = -1;
+    private Position readPos;
+    private ByteBuffer readBuf = ByteBuffer.allocate(READ_CHUNK);
+    private FileChannel checkpointFile;
+
+    public AuditWal(ObjectMapper json,
+                    MeterRegistry meters,
+                    @Value("${aaa.audit.wal.enabled:false}") boolean enabled,
+                    @Value("${aaa.audit.wal.dir:./data/audit-wal}") String dir,
+                    @Value("${aaa.audit.wal.segment-size:64MB}") DataSize segmentSize,
+                    @Value("${aaa.audit.wal.max-size:2GB}") DataSize maxSize,
+                    @Value("${aaa.audit.wal.commit-timeout:PT0.2S}") Duration commitTimeout) {
+        if (segmentSize.toBytes() <= 0 || maxSize.toBytes() < segmentSize.toBytes()) {
+            throw new IllegalArgumentException("aaa.audit.wal.segment-size must be positive and at most max-size");
+        }
+        this.json = Objects.requireNonNull(json);
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.segmentSize = segmentSize.toBytes();
+        this.maxSize = maxSize.toBytes();
+        this.commitTimeoutNanos = commitTimeout.toNanos();
+
+        Gauge.builder("aaa.audit.wal.size", diskBytes, AtomicLong::get)
+                .description("Bytes in audit WAL segments")
+                .baseUnit("bytes")
+                .register(meters);
+        this.syncLatency = Timer.builder("aaa.audit.wal.sync.latency")
+                .description("Time to write and force one group of audit WAL records")
+                .register(meters);
+        this.groupSize = DistributionSummary.builder("aaa.audit.wal.group.size")
+                .description("Audit WAL records made durable per force")
+                .register(meters);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ---------------------------------------------------------------------
+    // Lifecycle
+    // ---------------------------------------------------------------------
+
+    /** A queued record and its event; {@code abandoned} once its producer stopped waiting (guarded by lock). */
+    private static final class Pending {
+        final ByteBuffer frame;
+        final AuditEnvelope event;
+        boolean abandoned;
+
+        Pending(ByteBuffer frame, AuditEnvelope event) {
+            this.frame = frame;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Recovers the directory and starts the sync thread; reading resumes at the checkpoint.
+     * @param orphans takes the events of a failed write that no producer is waiting for any more
+     */
+    void open(Consumer<List<AuditEnvelope>> orphans) {
+        this.orphans = Objects.requireNonNull(orphans);
+        try {
+            Files.createDirectories(dir);
+            segments.clear();
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path p : files.toList()) {
+                    String name = p.getFileName().toString();
+                    if (name.endsWith(SUFFIX)) {
+                        segments.put(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), Files.size(p));
+                    }
+                }
+            }
+            if (!segments.isEmpty()) truncateTornTail(segments.lastKey());
+            diskBytes.set(segments.values().stream().mapToLong(Long::longValue).sum());
+
+            checkpointFile = FileChannel.open(dir.resolve(CHECKPOINT),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Position saved = readCheckpoint();
+            Position first = segments.isEmpty() ? null : new Position(segments.firstKey(), 0);
+            Position start = saved == null ? first : first == null || saved.compareTo(first) > 0 ? saved : first;
+
+            outSegment = Math.max(segments.isEmpty() ? 0 : segments.lastKey(), start == null ? 0 : start.segment()) + 1;
+            out = newSegment(outSegment);
+            outOffset = 0;
+            durable = new Position(outSegment, 0);
+            checkpoint = start == null ? durable : start;
+            readPos = checkpoint;
+            deleteSegmentsBefore(checkpoint.segment());
+            if (diskBytes.get() > 0) {
+                log.info("Audit WAL at {}: replaying from segment {} offset {} ({} bytes on disk)",
+                        dir, checkpoint.segment(), checkpoint.offset(), diskBytes.get());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open audit WAL at " + dir, e);
+        }
+        lock.lock();
+        try {
+            open = true;
+            failed = false;
+        } finally {
+            lock.unlock();
+        }
+        syncThread = new Thread(this::syncLoop, "audit-wal-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    /** Writes what is still queued, then closes the files; undrained records stay for the next start. */
+    void close() {
+        lock.lock();
+        try {
+            if (!open) return;
+            open = false;
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            syncThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeQuietly(out);
+        closeQuietly(in);
+        closeQuietly(checkpointFile);
+        in = null;
+        inSegment = -1;
+        long left = diskBytes.get();
+        if (left > 0 && checkpoint.compareTo(durable) < 0) {
+            log.warn("Audit WAL closed with undrained events ({} bytes on disk); they are replayed on the next start", left);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Append side (request threads)
+    // ---------------------------------------------------------------------
+
+    /**
+     * Queues the event and waits (at most {@code commit-timeout}) until it is on disk.
+     * @return false if the WAL is closed, full or failed; the event was not logged
+     */
+    boolean append(AuditEnvelope event) {
+        var record = new Pending(frame(serialize(event)), event);
+        int size = record.frame.remaining();
+        lock.lock();
+        try {
+            if (!open || failed) return false;
+            if (diskBytes.get() + pendingBytes + size > maxSize) return false;
+            pending.add(record);
+            pendingBytes += size;
+            long ticket = ++appendSeq;
+            work.signal();
+            long nanos = commitTimeoutNanos;
+            try {
+                while (syncedSeq < ticket && nanos > 0 && !failed) {
+                    nanos = synced.awaitNanos(nanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (syncedSeq >= ticket) return true;
+            if (failed) return false;   // never reached the disk: the caller queues it in memory
+            record.abandoned = true;    // still queued; written later, or handed to orphans if the WAL fails
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Waits until everything appended so far is durable (bounded by {@code timeout}); returns the end of it. */
+    Position syncedEnd(Duration timeout) {
+        lock.lock();
+        try {
+            long target = appendSeq;
+            long nanos = timeout.toNanos();
+            while (syncedSeq < target && nanos > 0 && !failed && open) {
+                nanos = synced.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        return durable;
+    }
+
+    private byte[] serialize(AuditEnvelope e) {
+        try {
+            return json.writeValueAsBytes(e);
+        } catch (JsonProcessingException ex) {
+            // never lose the event over an odd detail value (same fallback as AuditBatchWriter)
+            var plain = new AuditEnvelope(e.id(), e.occurredAt(), e.actorUserId(), e.actorClientId(), e.action(),
+                    e.targetType(), e.targetId(), e.requestId(), e.ipAddress(), e.userAgent(),
+                    Map.of("_unserializable", String.valueOf(ex.getOriginalMessage())));
+            try {
+                return json.writeValueAsBytes(plain);
+            } catch (JsonProcessingException impossible) {
+                throw new IllegalStateException(impossible);
+            }
+        }
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        var crc = new CRC32C();
+        crc.update(payload);
+        return ByteBuffer.allocate(HEADER + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .flip();
+    }
+
+    private void syncLoop() {
+        while (true) {
+            List<Pending> group;
+            long groupBytes;
+            long lastTicket;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && open) work.awaitUninterruptibly();
+                if (pending.isEmpty()) return;   // closed and nothing left
+                group = pending;
+                groupBytes = pendingBytes;
+                lastTicket = appendSeq;
+                pending = new ArrayList<>();
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            boolean ok = true;
+            try {
+                writeGroup(group.stream().map(r -> r.frame).toList());
+            } catch (IOException | RuntimeException e) {
+                ok = false;
+                log.error("Audit WAL write failed; audit events now bypass it (in-memory queue only)", e);
+            }
+            syncLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            groupSize.record(group.size());
+
+            List<AuditEnvelope> lost = new ArrayList<>();
+            lock.lock();
+            try {
+                pendingBytes -= groupBytes;
+                if (ok) {
+                    syncedSeq = lastTicket;
+                    durable = new Position(outSegment, outOffset);
+                } else {
+                    // waiting producers see failed and fall back themselves; the rest is handed back
+                    failed = true;
+                    for (List<Pending> records : List.of(group, pending)) {
+                        for (Pending r : records) if (r.abandoned) lost.add(r.event);
+                    }
+                    pending = new ArrayList<>();
+                    pendingBytes = 0;
+                }
+                synced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (!ok) {
+                if (!lost.isEmpty()) {
+                    log.warn("Handing {} audit event(s) from the failed WAL write back to the in-memory queue", lost.size());
+                    orphans.accept(lost);
+                }
+                return;
+            }
+        }
+    }
+
+    /** Writes the group, rolling to a new segment (after forcing the old one) when it is full. */
+    private void writeGroup(List<ByteBuffer> group) throws IOException {
+        int from = 0;
+        long bytes = 0;
+        for (int i = 0; i < group.size(); i++) {
+            int size = group.get(i).remaining();
+            if (outOffset + bytes + size > segmentSize && outOffset + bytes > 0) {
+                writeFully(group.subList(from, i), bytes);
+                out.force(false);
+                out.close();
+                out = newSegment(++outSegment);
+                outOffset = 0;
+                from = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        writeFully(group.subList(from, group.size()), bytes);
+        out.force(false);
+    }
+
+    private void writeFully(List<ByteBuffer> records, long bytes) throws IOException {
+        if (records.isEmpty()) return;
+        ByteBuffer[] srcs = records.toArray(ByteBuffer[]::new);
+        long left = bytes;
+        while (left > 0) left -= out.write(srcs);
+        outOffset += bytes;
+        segments.merge(outSegment, bytes, Long::sum);
+        diskBytes.addAndGet(bytes);
+    }
+
+    private FileChannel newSegment(long n) throws IOException {
+        FileChannel ch = FileChannel.open(segmentPath(n), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.put(n, 0L);
+        return ch;
+    }
+
+    // ---------------------------------------------------------------------
+    // Drain side (single writer thread)
+    // ---------------------------------------------------------------------
+
+    /**
+     * Reads up to {@code max} durable records following the previous read into {@code out}.
+     * @return the position after the last record read (pass it to {@link #checkpoint} once written)
+     */
+    Position read(List<AuditEnvelope> out, int max) throws IOException {
+        Position limit = durable;
+        while (out.size() < max && readPos.compareTo(limit) < 0) {
+            long seg = readPos.segment();
+            if (!segments.containsKey(seg)) {
+                Long next = segments.higherKey(seg);
+                if (next == null || next > limit.segment()) break;
+                readPos = new Position(next, 0);
+                continue;
+            }
+            long end = seg < limit.segment() ? segments.get(seg) : limit.offset();
+            if (readPos.offset() >= end) {
+                Long next = segments.higherKey(seg);
+                if (seg >= limit.segment() || next == null) break;
+                readPos = new Position(next, 0);
+                continue;
+            }
+            if (!readRecords(seg, end, out, max)) {
+                log.error("Corrupt audit WAL record in segment {} at offset {}; skipping the rest of the segment",
+                        seg, readPos.offset());
+                readPos = new Position(seg, end);
+            }
+        }
+        return readPos;
+    }
+
+    /** Parses records from {@code readPos} up to {@code end}; false if the data there is corrupt. */
+    private boolean readRecords(long seg, long end, List<AuditEnvelope> out, int max) throws IOException {
+        if (inSegment != seg) {
+            closeQuietly(in);
+            in = FileChannel.open(segmentPath(seg), StandardOpenOption.READ);
+            inSegment = seg;
+        }
+        long offset = readPos.offset();
+        readBuf.clear().limit((int) Math.min(readBuf.capacity(), end - offset));
+        while (readBuf.hasRemaining()) {
+            if (in.read(readBuf, offset + readBuf.position()) < 0) break;
+        }
+        readBuf.flip();
+        boolean progress = false;
+        while (out.size() < max && readBuf.remaining() >= HEADER) {
+            int start = readBuf.position();
+            int len = readBuf.getInt(start);
+            if (len < 0 || len > MAX_RECORD || offset + HEADER + len > end) return false;
+            if (readBuf.remaining() < HEADER + len) {
+                if (HEADER + len > readBuf.capacity()) {
+                    readBuf = ByteBuffer.allocate(HEADER + len);
+                    progress = true;
+                }
+                break;   // the next call reads on from here
+            }
+            if (!crcMatches(readBuf.array(), start + HEADER, len, readBuf.getInt(start + 4))) return false;
+            try {
+                out.add(json.readValue(readBuf.array(), start + HEADER, len, AuditEnvelope.class));
+            } catch (JsonProcessingException e) {
+                log.error("Skipping undecodable audit WAL record in segment {} at offset {}: {}", seg, offset,
+                        e.getOriginalMessage());
+            }
+            readBuf.position(start + HEADER + len);
+            offset += HEADER + len;
+            progress = true;
+        }
+        readPos = new Position(seg, offset);
+        return progress;
+    }
+
+    /** Records up to {@code p} are in the table: remembers that and deletes fully drained segments. */
+    void checkpoint(Position p) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(20).putLong(p.segment()).putLong(p.offset());
+        var crc = new CRC32C();
+        crc.update(buf.array(), 0, 16);
+        buf.putInt((int) crc.getValue()).flip();
+        while (buf.hasRemaining()) checkpointFile.write(buf, buf.position());
+        checkpoint = p;
+        deleteSegmentsBefore(p.segment());
+    }
+
+    Position checkpoint() {
+        return checkpoint;
+    }
+
+    private Position readCheckpoint() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        while (buf.hasRemaining() && checkpointFile.read(buf, buf.position()) > 0) { }
+        if (buf.hasRemaining()) return null;
+        var crc = new CRC32C();
+        crc.update(buf.array(), 0, 16);
+        if ((int) crc.getValue() != buf.getInt(16)) {
+            log.warn("Audit WAL checkpoint is unreadable; replaying from the oldest segment");
+            return null;
+        }
+        return new Position(buf.getLong(0), buf.getLong(8));
+    }
+
+    private void deleteSegmentsBefore(long segment) throws IOException {
+        for (Long n : List.copyOf(segments.headMap(segment).keySet())) {
+            if (n == inSegment) {
+                closeQuietly(in);
+                in = null;
+                inSegment = -1;
+            }
+            Files.deleteIfExists(segmentPath(n));
+            Long size = segments.remove(n);
+            if (size != null) diskBytes.addAndGet(-size);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------
+
+    /** Cuts the segment after its last complete, intact record (a crash mid-write leaves a torn one). */
+    private void truncateTornTail(long n) throws IOException {
+        Path p = segmentPath(n);
+        long size = Files.size(p);
+        long valid = 0;
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (valid + HEADER <= size) {
+                header.clear();
+                while (header.hasRemaining() && ch.read(header, valid + header.position()) > 0) { }
+                int len = header.getInt(0);
+                if (len < 0 || len > MAX_RECORD || valid + HEADER + len > size) break;
+                ByteBuffer payload = ByteBuffer.allocate(len);
+                while (payload.hasRemaining() && ch.read(payload, valid + HEADER + payload.position()) > 0) { }
+                if (!crcMatches(payload.array(), 0, len, header.getInt(4))) break;
+                valid += HEADER + len;
+            }
+            if (valid < size) {
+                log.warn("Audit WAL segment {} ends in a torn record; truncating {} -> {} bytes", n, size, valid);
+                ch.truncate(valid);
+                ch.force(true);
+            }
+        }
+        segments.put(n, valid);
+    }
+
+    private static boolean crcMatches(byte[] buf, int off, int len, int expected) {
+        var crc = new CRC32C();
+        crc.update(buf, off, len);
+        return (int) crc.getValue() == expected;
+    }
+
+    private Path segmentPath(long n) {
+        return dir.resolve(String.format("%016d%s", n, SUFFIX));
+    }
+
+    private static void closeQuietly(FileChannel ch) {
+        if (ch == null) return;
+        try {
+            ch.close();
+        } catch (IOException e) {
+            log.debug("Closing audit WAL file failed", e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.kukkalli.aaa.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer (Vyukov's bounded MPMC queue). Every slot carries a sequence number:
+ * producers claim a slot with one CAS on the tail, consumers with one CAS on the head, so request
+ * threads never take a lock. Safe for many producers and a few consumers; producers may also
+ * {@link #poll()} (used to drop the oldest element when full).
+ */
+public final class MpmcRingBuffer<E> {
+
+    private final int mask;
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /** @param capacity rounded up to a power of two */
+    public MpmcRingBuffer(int capacity) {
+        if (capacity < 2) throw new IllegalArgumentException("capacity must be >= 2");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    /** @return false if the buffer is full */
+    public boolean offer(E e) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[idx] = e;
+                    sequences.set(idx, pos + 1);           // publish
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;                              // full
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /** @return the oldest element, or null if empty */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = (E) slots[idx];
+                    slots[idx] = null;
+                    sequences.set(idx, pos + mask + 1);    // free the slot for the next lap
+                    return e;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null;                               // empty
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /** Moves up to {@code max} elements into {@code sink}; @return number moved */
+    public int drainTo(List<? super E> sink, int max) {
+        int n = 0;
+        E e;
+        while (n < max && (e = poll()) != null) {
+            sink.add(e);
+            n++;
+        }
+        return n;
+    }
+
+    /** Approximate number of queued elements. */
+    public int size() {
+        long s = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(s, capacity()));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,78 @@
+package com.kukkalli.aaa.audit.archive;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Small Bloom filter over the action names present in one segment, so a search for an action
+ * skips segments that never saw it without inflating a single block. Actions are a low-cardinality
+ * set, so the filter is sized at ~10 bits per distinct action (about 1% false positives).
+ */
+final class ActionBloomFilter {
+
+    static final int HASHES = 7;
+    private static final int BITS_PER_ENTRY = 10;
+
+    private final byte[] bits;
+    private final int numHashes;
+
+    ActionBloomFilter(byte[] bits, int numHashes) {
+        if (bits.length == 0 || numHashes <= 0) throw new IllegalArgumentException("empty bloom filter");
+        this.bits = bits;
+        this.numHashes = numHashes;
+    }
+
+    static ActionBloomFilter of(Collection<String> actions) {
+        int bytes = Math.max(8, (actions.size() * BITS_PER_ENTRY + 7) / 8);
+        var filter = new ActionBloomFilter(new byte[bytes], HASHES);
+        actions.forEach(filter::add);
+        return filter;
+    }
+
+    void add(String action) {
+        long h1 = hash(action);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        long numBits = bits.length * 8L;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            bits[(int) (bit >>> 3)] |= (byte) (1 << (bit & 7));
+        }
+    }
+
+    boolean mightContain(String action) {
+        long h1 = hash(action);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        long numBits = bits.length * 8L;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[(int) (bit >>> 3)] & (1 << (bit & 7))) == 0) return false;
+        }
+        return true;
+    }
+
+    byte[] bits() { return bits; }
+    int numHashes() { return numHashes; }
+
+    /**
+     * FNV-1a over the lower-cased UTF-8 bytes, finalized with the MurmurHash3 mixer
+     * (case-insensitive, like the action column's collation).
+     */
+    private static long hash(String s) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : s.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85B53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,422 @@
+package com.kukkalli.aaa.audit.archive;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kukkalli.aaa.service.AuditQueryService;
+import com.kukkalli.aaa.web.dto.AuditLogEntry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier of the audit log: months older than {@code aaa.audit.archive.after} are moved out of
+ * {@code audit_log} into immutable {@link AuditSegment} files on local disk (by
+ * {@code AuditLogPartitions}, just before it drops their partition), and stay searchable and
+ * exportable from there until {@code aaa.audit.retention}.
+ *
+ * Readers work on a {@link Snapshot}: everything before {@link Snapshot#archivedUntil()} is served
+ * from segments and everything from it on from the table, so a month that is briefly in both
+ * (archived, partition not yet dropped) is never returned twice.
+ */
+@Component
+public class AuditArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditArchive.class);
+
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".seg";
+    private static final String TMP_SUFFIX = ".seg.tmp";
+    private static final int FETCH_SIZE = 1000;
+    private static final Comparator<AuditSegment> ORDER = Comparator
+            .comparing(AuditSegment::rangeTo)
+            .thenComparing(s -> s.path().getFileName().toString());
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper json;
+    private final boolean enabled;
+    private final Path dir;
+    private final Duration after;
+    private final int blockRows;
+    private final long maxSegmentBytes;
+
+    private volatile List<AuditSegment> segments = List.of();   // ascending, see ORDER
+
+    public AuditArchive(JdbcTemplate jdbc,
+                        ObjectMapper json,
+                        @Value("${aaa.audit.archive.enabled:false}") boolean enabled,
+                        @Value("${aaa.audit.archive.dir:./data/audit-archive}") String dir,
+                        @Value("${aaa.audit.archive.after:P90D}") Duration after,
+                        @Value("${aaa.audit.archive.block-rows:4096}") int blockRows,
+                        @Value("${aaa.audit.archive.max-segment-size:512MB}") DataSize maxSegmentSize) {
+        if (after.isNegative() || after.isZero() || blockRows <= 0) {
+            throw new IllegalArgumentException("aaa.audit.archive.after and block-rows must be positive");
+        }
+        if (maxSegmentSize.toBytes() <= 0 || maxSegmentSize.toBytes() >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("aaa.audit.archive.max-segment-size must be between 1 byte and 2 GB");
+        }
+        this.jdbc = Objects.requireNonNull(jdbc);
+        this.json = Objects.requireNonNull(json);
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.after = after;
+        this.blockRows = blockRows;
+        this.maxSegmentBytes = maxSegmentSize.toBytes();
+    }
+
+    @PostConstruct
+    void load() throws IOException {
+        if (!enabled) return;
+        Files.createDirectories(dir);
+        List<AuditSegment> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : files.toList()) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(TMP_SUFFIX)) {
+                    Files.deleteIfExists(p);   // an archive run that never finished; its rows are still in the table
+                } else if (name.endsWith(SUFFIX)) {
+                    try {
+                        found.add(AuditSegment.open(p));
+                    } catch (IOException e) {
+                        log.error("Skipping unreadable audit segment {}: {}", p, e.getMessage());
+                    }
+                }
+            }
+        }
+        found.sort(ORDER);
+        segments = List.copyOf(found);
+        log.info("Audit archive at {}: {} segment(s), archived until {}", dir, found.size(), snapshot().archivedUntil());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Age after which a month moves from the table to the archive. */
+    public Duration after() {
+        return after;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(segments);
+    }
+
+    /** A consistent view of the archived segments, ascending by range. */
+    public record Snapshot(List<AuditSegment> segments) {
+
+        /** Upper bound of the archived time range; null if nothing is archived. */
+        public Instant archivedUntil() {
+            return segments.isEmpty() ? null : segments.get(segments.size() - 1).rangeTo();
+        }
+
+        /** Segments whose range intersects [from, to) (null bounds are open), ascending. */
+        public List<AuditSegment> overlapping(Instant from, Instant to) {
+            return segments.stream().filter(s -> s.overlaps(from, to)).toList();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Writing / retention
+    // ---------------------------------------------------------------------
+
+    /**
+     * Copies all rows with {@code from <= occurred_at < to} into new segment file(s) named after
+     * {@code name}, replacing segments a previous, interrupted run left under that name. Segments
+     * under that name that start earlier than {@code from} are kept and nothing is copied: they hold
+     * rows a narrower copy would lose. The rows are not deleted; the caller drops the partition afterwards.
+     * @param from inclusive lower bound, null = everything before {@code to}
+     * @return rows archived
+     */
+    public synchronized long archive(String name, Instant from, Instant to) throws IOException {
+        if (!enabled) throw new IllegalStateException("audit archive is disabled");
+        if (!StringUtils.hasText(name) || !name.matches("[A-Za-z0-9_]+")) {
+            throw new IllegalArgumentException("Invalid segment name: " + name);
+        }
+        if (coversMore(name, from)) {
+            log.warn("Audit segment(s) '{}' already cover more than [{}, {}); keeping them", name, from, to);
+            return 0;
+        }
+        long rangeFrom = from == null ? Long.MIN_VALUE : AuditNdjson.micros(from);
+        var parts = new Parts(name, rangeFrom, AuditNdjson.micros(to));
+        try {
+            copyRows(from, to, parts);
+            parts.finish();
+        } catch (UncheckedIOException e) {
+            parts.abort();
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            parts.abort();
+            throw e;
+        }
+
+        List<AuditSegment> next = new ArrayList<>(dropNamed(name));
+        for (Path tmp : parts.files) {
+            Path target = dir.resolve(tmp.getFileName().toString().replace(TMP_SUFFIX, SUFFIX));
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            target.toFile().setReadOnly();
+            next.add(AuditSegment.open(target));
+        }
+        next.sort(ORDER);
+        segments = List.copyOf(next);
+        log.info("Archived {} audit row(s) before {} into {} segment(s) '{}'", parts.rows, to, parts.files.size(), name);
+        return parts.rows;
+    }
+
+    /**
+     * Deletes segments whose whole range is before {@code cutoff} (retention).
+     * @return deleted file names
+     */
+    public synchronized List<String> deleteBefore(Instant cutoff) throws IOException {
+        List<String> deleted = new ArrayList<>();
+        List<AuditSegment> keep = new ArrayList<>();
+        for (AuditSegment s : segments) {
+            if (!s.rangeTo().isAfter(cutoff)) {
+                deleted.add(s.path().getFileName().toString());
+            } else {
+                keep.add(s);
+            }
+        }
+        if (deleted.isEmpty()) return deleted;
+        segments = List.copyOf(keep);   // readers holding an older snapshot keep their mappings
+        for (String f : deleted) Files.deleteIfExists(dir.resolve(f));
+        log.info("Deleted audit segment(s) {}", deleted);
+        return deleted;
+    }
+
+    private void copyRows(Instant from, Instant to, Parts parts) {
+        String sql = AuditQueryService.SELECT + " WHERE occurred_at < ?"
+                + (from != null ? " AND occurred_at >= ?" : "") + " ORDER BY occurred_at, id";
+        jdbc.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(FETCH_SIZE);
+                ps.setTimestamp(1, Timestamp.from(to));
+                if (from != null) ps.setTimestamp(2, Timestamp.from(from));
+                var line = new LineBuffer();
+                JsonGenerator gen = AuditNdjson.generator(json, line);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        line.reset();
+                        AuditNdjson.writeRow(gen, rs);
+                        gen.flush();
+                        parts.append(AuditNdjson.micros(rs.getTimestamp(2).toInstant()), rs.getLong(1),
+                                rs.getString(5), line.buf(), line.size());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    /** Whether an existing segment named {@code name} starts before {@code from}. */
+    private boolean coversMore(String name, Instant from) {
+        String prefix = PREFIX + name + "-";
+        for (AuditSegment s : segments) {
+            if (!s.path().getFileName().toString().startsWith(prefix)) continue;
+            Instant existing = s.rangeFrom();
+            if (from != null && (existing == null || existing.isBefore(from))) return true;
+        }
+        return false;
+    }
+
+    /** Deletes the files of earlier segments named {@code name}; returns the other segments. */
+    private List<AuditSegment> dropNamed(String name) throws IOException {
+        String prefix = PREFIX + name + "-";
+        List<AuditSegment> keep = new ArrayList<>();
+        for (AuditSegment s : segments) {
+            if (s.path().getFileName().toString().startsWith(prefix)) {
+                Files.deleteIfExists(s.path());
+            } else {
+                keep.add(s);
+            }
+        }
+        return keep;
+    }
+
+    /** Segment files for one archive run, rolled at {@code maxSegmentBytes}. */
+    private final class Parts {
+
+        final String name;
+        final long rangeFrom, rangeTo;
+        final List<Path> files = new ArrayList<>();
+        AuditSegmentWriter current;
+        long rows;
+
+        Parts(String name, long rangeFrom, long rangeTo) {
+            this.name = name;
+            this.rangeFrom = rangeFrom;
+            this.rangeTo = rangeTo;
+        }
+
+        void append(long ts, long id, String action, byte[] line, int len) throws IOException {
+            if (current == null || current.bytes() >= maxSegmentBytes) roll();
+            current.append(ts, id, action, line, 0, len);
+            rows++;
+        }
+
+        /** Finishes the last part; an empty range still gets one (empty) segment, which marks it archived. */
+        void finish() throws IOException {
+            if (current == null) roll();
+            current.finish();
+            current.close();
+        }
+
+        void abort() {
+            try {
+                if (current != null) current.close();
+                for (Path f : files) Files.deleteIfExists(f);
+            } catch (IOException e) {
+                log.warn("Could not clean up partial audit segment(s) {}: {}", files, e.getMessage());
+            }
+        }
+
+        private void roll() throws IOException {
+            if (current != null) {
+                current.finish();
+                current.close();
+            }
+            Path file = dir.resolve(String.format("%s%s-%03d%s", PREFIX, name, files.size(), TMP_SUFFIX));
+            Files.deleteIfExists(file);
+            files.add(file);
+            current = new AuditSegmentWriter(file, rangeFrom, rangeTo, blockRows);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Reading
+    // ---------------------------------------------------------------------
+
+    /**
+     * Archived rows matching {@code filter}, newest first, strictly before the key
+     * ({@code beforeTs}, {@code beforeId}) when given; at most {@code limit}.
+     */
+    public List<AuditLogEntry> search(Snapshot snapshot, AuditQueryService.Filter filter,
+                                      Instant beforeTs, Long beforeId, int limit) {
+        long boundTs = beforeTs == null ? Long.MAX_VALUE : AuditNdjson.micros(beforeTs);
+        long boundId = beforeId == null ? Long.MAX_VALUE : beforeId;
+        long fromTs = filter.from() == null ? Long.MIN_VALUE : AuditNdjson.micros(filter.from());
+        long toTs = filter.to() == null ? Long.MAX_VALUE : AuditNdjson.micros(filter.to());
+        List<AuditLogEntry> out = new ArrayList<>();
+        try {
+            List<AuditSegment> segs = snapshot.overlapping(filter.from(), filter.to());
+            for (int s = segs.size() - 1; s >= 0 && out.size() < limit; s--) {
+                AuditSegment seg = segs.get(s);
+                if (!mightMatch(seg, filter)) continue;
+                for (int b = seg.lastBlockBefore(boundTs, boundId); b >= 0 && out.size() < limit; b--) {
+                    if (seg.lastTs(b) < fromTs) break;
+                    if (seg.firstTs(b) >= toTs) continue;
+                    byte[] data = seg.inflate(b);
+                    int[] starts = lineStarts(data);
+                    for (int i = starts.length - 1; i >= 0 && out.size() < limit; i--) {
+                        int end = i + 1 < starts.length ? starts[i + 1] : data.length;
+                        AuditLogEntry e = AuditNdjson.read(json, data, starts[i], end - starts[i] - 1);
+                        long ts = AuditNdjson.micros(e.occurredAt());
+                        boolean before = ts < boundTs || (ts == boundTs && e.id() < boundId);
+                        if (before && matches(filter, e)) out.add(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading audit archive failed", e);
+        }
+        return out;
+    }
+
+    /** Receives archived rows: the parsed entry and its encoded line (newline included). */
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(AuditLogEntry entry, byte[] buf, int off, int len) throws IOException;
+    }
+
+    /**
+     * Feeds the rows of {@code segment} matching {@code filter} to {@code consumer}, oldest first.
+     * @return rows passed
+     */
+    public long scan(AuditSegment segment, AuditQueryService.Filter filter, RowConsumer consumer) throws IOException {
+        if (!mightMatch(segment, filter)) return 0;
+        long toTs = filter.to() == null ? Long.MAX_VALUE : AuditNdjson.micros(filter.to());
+        int b = filter.from() == null ? 0 : segment.firstBlockFrom(AuditNdjson.micros(filter.from()));
+        long n = 0;
+        for (; b < segment.blockCount() && segment.firstTs(b) < toTs; b++) {
+            byte[] data = segment.inflate(b);
+            for (int start = 0; start < data.length; ) {
+                int end = indexOf(data, start) + 1;
+                AuditLogEntry e = AuditNdjson.read(json, data, start, end - start - 1);
+                if (matches(filter, e)) {
+                    consumer.accept(e, data, start, end - start);
+                    n++;
+                }
+                start = end;
+            }
+        }
+        return n;
+    }
+
+    /** True when only the time range is constrained (whole segments can then be served as they are). */
+    public static boolean timeOnly(AuditQueryService.Filter f) {
+        return f.actorUserId() == null && f.actorClientId() == null && !StringUtils.hasText(f.action())
+                && !StringUtils.hasText(f.targetType()) && !StringUtils.hasText(f.targetId());
+    }
+
+    // ---------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------
+
+    private static boolean mightMatch(AuditSegment seg, AuditQueryService.Filter f) {
+        return !StringUtils.hasText(f.action()) || seg.mightContainAction(f.action());
+    }
+
+    /** In-memory equivalent of {@code AuditQueryService.where} (string columns compare case-insensitively, as collated). */
+    static boolean matches(AuditQueryService.Filter f, AuditLogEntry e) {
+        return (f.from() == null || !e.occurredAt().isBefore(f.from()))
+                && (f.to() == null || e.occurredAt().isBefore(f.to()))
+                && (f.actorUserId() == null || f.actorUserId().equals(e.actorUserId()))
+                && (f.actorClientId() == null || f.actorClientId().equals(e.actorClientId()))
+                && (!StringUtils.hasText(f.action()) || f.action().equalsIgnoreCase(e.action()))
+                && (!StringUtils.hasText(f.targetType()) || f.targetType().equalsIgnoreCase(e.targetType()))
+                && (!StringUtils.hasText(f.targetId()) || f.targetId().equalsIgnoreCase(e.targetId()));
+    }
+
+    private static int[] lineStarts(byte[] data) {
+        int count = 0;
+        for (byte b : data) if (b == '\n') count++;
+        int[] starts = new int[count];
+        for (int i = 0, pos = 0; i < count; i++) {
+            starts[i] = pos;
+            pos = indexOf(data, pos) + 1;
+        }
+        return starts;
+    }
+
+    private static int indexOf(byte[] data, int from) {
+        for (int i = from; i < data.length; i++) if (data[i] == '\n') return i;
+        return data.length - 1;
+    }
+
+    /** ByteArrayOutputStream with access to its buffer, to avoid a copy per row. */
+    private static final class LineBuffer extends ByteArrayOutputStream {
+        byte[] buf() {
+            return buf;
+        }
+    }
+}
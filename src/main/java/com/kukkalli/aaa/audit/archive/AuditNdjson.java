@@ -0,0 +1,74 @@
+package com.kukkalli.aaa.audit.archive;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kukkalli.aaa.web.dto.AuditLogEntry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+
+/**
+ * The one NDJSON line format for audit rows, shared by exports and archive segments, so archived
+ * blocks can be served byte-for-byte as export output. Field names are those of {@link AuditLogEntry};
+ * null fields are omitted and {@code details} (a JSON column) is embedded as-is.
+ */
+public final class AuditNdjson {
+
+    private AuditNdjson() { }
+
+    /** A generator for NDJSON output: no root-value separator, and flush() does not reach {@code out}. */
+    public static JsonGenerator generator(ObjectMapper json, OutputStream out) throws IOException {
+        JsonGenerator gen = json.getFactory().createGenerator(out);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        gen.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        gen.setRootValueSeparator(null);
+        return gen;
+    }
+
+    /**
+     * Writes the current row of an audit_log SELECT in the column order of
+     * {@code AuditQueryService.SELECT} as one line, newline included.
+     */
+    public static void writeRow(JsonGenerator gen, ResultSet rs) throws SQLException, IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", rs.getLong(1));
+        gen.writeStringField("occurredAt", rs.getTimestamp(2).toInstant().toString());
+        writeLong(gen, "actorUserId", rs, 3);
+        writeLong(gen, "actorClientId", rs, 4);
+        gen.writeStringField("action", rs.getString(5));
+        writeString(gen, "targetType", rs.getString(6));
+        writeString(gen, "targetId", rs.getString(7));
+        writeString(gen, "requestId", rs.getString(8));
+        writeString(gen, "ipAddress", rs.getString(9));
+        writeString(gen, "userAgent", rs.getString(10));
+        String details = rs.getString(11);
+        if (details != null) {
+            gen.writeFieldName("details");
+            gen.writeRawValue(details);
+        }
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+    }
+
+    /** Parses one line (without its newline). */
+    public static AuditLogEntry read(ObjectMapper json, byte[] buf, int off, int len) throws IOException {
+        return json.readValue(buf, off, len, AuditLogEntry.class);
+    }
+
+    /** Microseconds since the epoch: the key resolution of segment indexes. */
+    static long micros(Instant t) {
+        return Math.addExact(Math.multiplyExact(t.getEpochSecond(), 1_000_000L), t.getNano() / 1_000);
+    }
+
+    private static void writeLong(JsonGenerator gen, String name, ResultSet rs, int col) throws SQLException, IOException {
+        long v = rs.getLong(col);
+        if (!rs.wasNull()) gen.writeNumberField(name, v);
+    }
+
+    private static void writeString(JsonGenerator gen, String name, String v) throws IOException {
+        if (v != null) gen.writeStringField(name, v);
+    }
+}
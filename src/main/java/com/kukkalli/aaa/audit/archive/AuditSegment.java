@@ -0,0 +1,224 @@
+package com.kukkalli.aaa.audit.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * One immutable, memory-mapped archive segment: audit rows of a time range as NDJSON
+ * ({@link AuditNdjson}), in ascending (occurred_at, id) order, cut into blocks that are each one
+ * gzip member. Concatenated members are themselves a valid gzip stream, so the data region of a
+ * segment is a ready-made gzip NDJSON export.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   0  int   magic 'AASG'
+ *   4  int   version (1)
+ *   8  ...   blocks (gzip members), back to back
+ *      footer:
+ *        long  rangeFrom (epoch micros, inclusive; Long.MIN_VALUE = unbounded)
+ *        long  rangeTo   (epoch micros, exclusive)
+ *        long  rows
+ *        int   blockCount
+ *        blockCount x { long offset, int length, int rows,
+ *                       long firstTs, long firstId, long lastTs, long lastId }   sparse index
+ *        int   bloomHashes
+ *        int   bloomBytes
+ *        byte[bloomBytes] action Bloom filter
+ *   trailer (last 16 bytes): long footerOffset, int footerLength, int magic
+ * </pre>
+ * The whole file is mapped read-only and the channel closed right away; the mapping outlives both
+ * the channel and a later delete of the file, so readers never race retention.
+ */
+public final class AuditSegment {
+
+    static final int MAGIC = 0x41415347; // "AASG"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 16;
+    static final int BLOCK_ENTRY_SIZE = 8 + 4 + 4 + 8 * 4;
+
+    private final Path path;
+    private final MappedByteBuffer map;
+    private final long dataEnd;
+    private final long rangeFrom;
+    private final long rangeTo;
+    private final long rows;
+    private final long[] blockOffset;
+    private final int[] blockLength;
+    private final long[] firstTs, firstId, lastTs, lastId;
+    private final ActionBloomFilter actions;
+
+    private AuditSegment(Path path, MappedByteBuffer map) throws IOException {
+        this.path = path;
+        this.map = map;
+        int size = map.capacity();
+        if (size < HEADER_SIZE + TRAILER_SIZE || map.getInt(0) != MAGIC || map.getInt(size - 4) != MAGIC) {
+            throw new IOException("Not a complete audit segment: " + path);
+        }
+        if (map.getInt(4) != VERSION) throw new IOException("Unsupported segment version " + map.getInt(4) + ": " + path);
+        long footerOffset = map.getLong(size - TRAILER_SIZE);
+        int footerLength = map.getInt(size - TRAILER_SIZE + 8);
+        if (footerOffset < HEADER_SIZE || footerOffset + footerLength != size - TRAILER_SIZE) {
+            throw new IOException("Corrupt segment trailer: " + path);
+        }
+        ByteBuffer f = map.slice((int) footerOffset, footerLength);
+        this.dataEnd = footerOffset;
+        this.rangeFrom = f.getLong();
+        this.rangeTo = f.getLong();
+        this.rows = f.getLong();
+        int blocks = f.getInt();
+        blockOffset = new long[blocks];
+        blockLength = new int[blocks];
+        firstTs = new long[blocks];
+        firstId = new long[blocks];
+        lastTs = new long[blocks];
+        lastId = new long[blocks];
+        for (int b = 0; b < blocks; b++) {
+            blockOffset[b] = f.getLong();
+            blockLength[b] = f.getInt();
+            f.getInt();   // rows in block
+            firstTs[b] = f.getLong();
+            firstId[b] = f.getLong();
+            lastTs[b] = f.getLong();
+            lastId[b] = f.getLong();
+        }
+        int hashes = f.getInt();
+        byte[] bits = new byte[f.getInt()];
+        f.get(bits);
+        this.actions = new ActionBloomFilter(bits, hashes);
+    }
+
+    public static AuditSegment open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Segment too large to map: " + path);
+            return new AuditSegment(path, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    public Path path() { return path; }
+    public long rows() { return rows; }
+
+    /** Inclusive lower bound of the archived range; null if unbounded. */
+    public Instant rangeFrom() {
+        return rangeFrom == Long.MIN_VALUE ? null : fromMicros(rangeFrom);
+    }
+
+    /** Exclusive upper bound of the archived range. */
+    public Instant rangeTo() {
+        return fromMicros(rangeTo);
+    }
+
+    /** False means no row in this segment has {@code action}; true may be a false positive. */
+    public boolean mightContainAction(String action) {
+        return actions.mightContain(action);
+    }
+
+    /** Whether the whole archived range lies within [from, to). */
+    public boolean within(Instant from, Instant to) {
+        return rangeFrom != Long.MIN_VALUE && rangeFrom >= AuditNdjson.micros(from) && rangeTo <= AuditNdjson.micros(to);
+    }
+
+    /** Whether the archived range intersects [from, to); null bounds are open. */
+    public boolean overlaps(Instant from, Instant to) {
+        return (from == null || rangeTo > AuditNdjson.micros(from))
+                && (to == null || rangeFrom < AuditNdjson.micros(to));
+    }
+
+    /**
+     * Copies the data region (all blocks: one gzip NDJSON stream) to {@code target} with
+     * {@link FileChannel#transferTo}, which the kernel performs without a user-space copy when the
+     * target is a file or socket channel.
+     * @return rows in the segment
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long pos = HEADER_SIZE;
+            while (pos < dataEnd) {
+                long n = ch.transferTo(pos, dataEnd - pos, target);
+                if (n <= 0) throw new IOException("Segment truncated: " + path);
+                pos += n;
+            }
+        }
+        return rows;
+    }
+
+    // ---------------------------------------------------------------------
+    // Sparse index
+    // ---------------------------------------------------------------------
+
+    int blockCount() {
+        return blockOffset.length;
+    }
+
+    long firstTs(int block) { return firstTs[block]; }
+    long lastTs(int block) { return lastTs[block]; }
+
+    /** Index of the first block that may hold a row at or after {@code tsMicros}. */
+    int firstBlockFrom(long tsMicros) {
+        int lo = 0, hi = blockOffset.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (lastTs[mid] < tsMicros) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Index of the last block that may hold a row with key before (tsMicros, id); -1 if none. */
+    int lastBlockBefore(long tsMicros, long id) {
+        int lo = 0, hi = blockOffset.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            boolean startsBefore = firstTs[mid] < tsMicros || (firstTs[mid] == tsMicros && firstId[mid] < id);
+            if (startsBefore) lo = mid + 1; else hi = mid;
+        }
+        return lo - 1;
+    }
+
+    /** Decompresses one block: NDJSON lines, each ending in '\n'. */
+    byte[] inflate(int block) throws IOException {
+        ByteBuffer src = map.slice((int) blockOffset[block], blockLength[block]);
+        try (var in = new GZIPInputStream(new BufferInput(src), 8 * 1024)) {
+            return in.readAllBytes();
+        }
+    }
+
+    static Instant fromMicros(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+    }
+
+    /** InputStream over a (mapped) buffer slice. */
+    private static final class BufferInput extends InputStream {
+
+        private final ByteBuffer buf;
+
+        BufferInput(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.kukkalli.aaa.audit.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static com.kukkalli.aaa.audit.archive.AuditSegment.*;
+
+/**
+ * Writes one segment file (layout in {@link AuditSegment}). Rows must be appended in ascending
+ * (occurred_at, id) order; every {@code blockRows} rows are compressed into one gzip member and
+ * indexed by their first and last key. {@link #finish} appends the footer and fsyncs; a writer that
+ * is closed without finishing leaves a file that {@link AuditSegment#open} rejects.
+ */
+final class AuditSegmentWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final long rangeFrom;
+    private final long rangeTo;
+    private final int blockRows;
+
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(64 * 1024);
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(16 * 1024);
+    private final List<long[]> index = new ArrayList<>();   // {offset, length, rows, firstTs, firstId, lastTs, lastId}
+    private final Set<String> actions = new HashSet<>();
+
+    private long position = HEADER_SIZE;
+    private long rows;
+    private int blockCount;
+    private long firstTs, firstId, lastTs = Long.MIN_VALUE, lastId = Long.MIN_VALUE;
+    private boolean finished;
+
+    /**
+     * @param rangeFrom inclusive lower bound of the archived range (epoch micros, {@code Long.MIN_VALUE} = unbounded)
+     * @param rangeTo   exclusive upper bound (epoch micros)
+     */
+    AuditSegmentWriter(Path file, long rangeFrom, long rangeTo, int blockRows) throws IOException {
+        if (blockRows <= 0) throw new IllegalArgumentException("blockRows must be positive");
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.rangeFrom = rangeFrom;
+        this.rangeTo = rangeTo;
+        this.blockRows = blockRows;
+        writeFully(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip(), 0);
+    }
+
+    /** Appends one encoded NDJSON line (newline included). */
+    void append(long tsMicros, long id, String action, byte[] line, int off, int len) throws IOException {
+        if (tsMicros < lastTs || (tsMicros == lastTs && id <= lastId)) {
+            throw new IllegalArgumentException("rows must be appended in ascending (occurred_at, id) order");
+        }
+        if (tsMicros < rangeFrom || tsMicros >= rangeTo) {
+            throw new IllegalArgumentException("row outside the segment range");
+        }
+        if (blockCount == 0) {
+            firstTs = tsMicros;
+            firstId = id;
+        }
+        block.write(line, off, len);
+        actions.add(action);
+        lastTs = tsMicros;
+        lastId = id;
+        rows++;
+        if (++blockCount == blockRows) flushBlock();
+    }
+
+    /** Bytes written so far (callers roll to a new segment past a size limit). */
+    long bytes() {
+        return position + block.size();
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    /** Writes the pending block, the index, the action filter and the trailer, then fsyncs. */
+    void finish() throws IOException {
+        flushBlock();
+        var bloom = ActionBloomFilter.of(actions);
+        int footerLength = 8 + 8 + 8 + 4 + index.size() * BLOCK_ENTRY_SIZE + 4 + 4 + bloom.bits().length;
+        ByteBuffer footer = ByteBuffer.allocate(footerLength + TRAILER_SIZE)
+                .putLong(rangeFrom).putLong(rangeTo).putLong(rows).putInt(index.size());
+        for (long[] e : index) {
+            footer.putLong(e[0]).putInt((int) e[1]).putInt((int) e[2])
+                    .putLong(e[3]).putLong(e[4]).putLong(e[5]).putLong(e[6]);
+        }
+        footer.putInt(bloom.numHashes()).putInt(bloom.bits().length).put(bloom.bits());
+        footer.putLong(position).putInt(footerLength).putInt(MAGIC).flip();
+        writeFully(footer, position);
+        channel.force(true);
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    // ---------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------
+
+    private void flushBlock() throws IOException {
+        if (blockCount == 0) return;
+        compressed.reset();
+        try (var gz = new GZIPOutputStream(compressed, 8 * 1024)) {
+            block.writeTo(gz);
+        }
+        int length = compressed.size();
+        writeFully(ByteBuffer.wrap(compressed.toByteArray()), position);
+        index.add(new long[]{position, length, blockCount, firstTs, firstId, lastTs, lastId});
+        position += length;
+        block.reset();
+        blockCount = 0;
+    }
+
+    private void writeFully(ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) at += channel.write(buf, at);
+    }
+}
@@ -1,5 +1,7 @@
 package com.kukkalli.aaa.config;
 
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.domain.AuditorAware;
@@ -7,11 +9,57 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.time.Clock;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Configuration
 public class AuditConfig {
+
+    /** StatefulSet pod names end in "-<ordinal>"; Deployment pods end in a 5-character hash instead. */
+    private static final Pattern POD_ORDINAL = Pattern.compile("-(\\d{1,4})$");
+
+    /**
+     * Node id for time-ordered row ids; must differ between instances sharing a database, since two
+     * nodes with the same id can mint the same id and the audit writer skips the second row.
+     * Negative = derive it from the StatefulSet pod ordinal in the hostname; where there is none, keep
+     * the random node id chosen at startup, allowed only with {@code aaa.ids.single-instance}.
+     */
+    public AuditConfig(@Value("${aaa.ids.node-id:-1}") int nodeId,
+                       @Value("${aaa.ids.single-instance:false}") boolean singleInstance) {
+        if (nodeId < 0) nodeId = podOrdinal(hostname()).orElse(-1);
+        if (nodeId >= 0) {
+            TimeOrderedIds.setNodeId(nodeId);
+        } else if (!singleInstance) {
+            throw new IllegalStateException("aaa.ids.node-id (AAA_NODE_ID) must be set to a value unique per " +
+                    "instance, unless the hostname ends in a StatefulSet pod ordinal; set " +
+                    "aaa.ids.single-instance=true to use a random one");
+        }
+    }
+
+    /** Ordinal at the end of a StatefulSet pod name ("aaa-service-3" -> 3), if it is a valid node id. */
+    static OptionalInt podOrdinal(String hostname) {
+        if (hostname == null) return OptionalInt.empty();
+        Matcher m = POD_ORDINAL.matcher(hostname);
+        if (!m.find()) return OptionalInt.empty();
+        int ordinal = Integer.parseInt(m.group(1));
+        return ordinal <= TimeOrderedIds.MAX_NODE ? OptionalInt.of(ordinal) : OptionalInt.empty();
+    }
+
+    private static String hostname() {
+        String env = System.getenv("HOSTNAME");
+        if (env != null && !env.isBlank()) return env.trim();
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
     /**
      * Supplies the "current auditor" for JPA auditing annotations
      * like @CreatedBy and @LastModifiedBy.
@@ -2,6 +2,7 @@ package com.kukkalli.aaa.config;
 
 import com.kukkalli.aaa.domain.entity.Permission;
 import com.kukkalli.aaa.domain.repository.UserRepository;
+import com.kukkalli.aaa.security.AaaUserDetails;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -80,16 +81,8 @@ public class SecurityConfig {
                             })
                             .collect(Collectors.toSet());
 
-            // Use Spring Security's User (not your domain User)
-            return User.builder()
-                    .username(user.getUsername())
-                    .password(user.getPasswordHash())
-                    .disabled(!user.isEnabled())
-                    .accountLocked(!user.isAccountNonLocked())
-                    .accountExpired(!user.isAccountNonExpired())
-                    .credentialsExpired(!user.isCredentialsNonExpired())
-                    .authorities(authorities)
-                    .build();
+            // Spring Security's User plus the numeric id (not your domain User)
+            return AaaUserDetails.of(user, authorities);
         };
     }
 
@@ -1,5 +1,6 @@
 package com.kukkalli.aaa.domain.entity;
 
+import com.kukkalli.aaa.domain.id.TimeOrderedId;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
@@ -12,15 +13,16 @@ import java.util.Map;
 
 /**
  * Persisted audit events for security-relevant actions.
- * Matches Flyway V1__init_schema.sql (audit_log table).
+ * Matches Flyway V1__init_schema.sql (audit_log table), ids per V9, indexes per V10, keys per V11.
  */
 @Entity
 @Table(name = "audit_log",
         indexes = {
                 @Index(name = "idx_audit_log_time", columnList = "occurred_at"),
-                @Index(name = "idx_audit_log_action", columnList = "action"),
-                @Index(name = "idx_audit_log_actor_user", columnList = "actor_user_id"),
-                @Index(name = "idx_audit_log_actor_client", columnList = "actor_client_id")
+                @Index(name = "idx_audit_log_action_time", columnList = "action, occurred_at"),
+                @Index(name = "idx_audit_log_actor_user_time", columnList = "actor_user_id, occurred_at"),
+                @Index(name = "idx_audit_log_actor_client_time", columnList = "actor_client_id, occurred_at"),
+                @Index(name = "idx_audit_log_target_time", columnList = "target_type, target_id, occurred_at")
         })
 @Getter @Setter
 @NoArgsConstructor
@@ -28,27 +30,28 @@ import java.util.Map;
 @Builder
 public class AuditLog {
 
+    /** Time-ordered, assigned before insert (V9); keeps inserts batchable. */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @TimeOrderedId
     private Long id;
 
-    /** Event time in UTC (distinct from created_at which is insertion time). */
-    @Column(name = "occurred_at", nullable = false)
+    /** Event time in UTC (distinct from created_at which is insertion time); partition key (V11). */
+    @Column(name = "occurred_at", nullable = false, updatable = false)
     private Instant occurredAt;
 
-    /** User who performed the action (nullable for system/M2M events). */
+    /** User who performed the action (nullable for system/M2M events; may since have been deleted, no FK). */
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(
             name = "actor_user_id",
-            foreignKey = @ForeignKey(name = "fk_audit_log_actor_user")
+            foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT)
     )
     private User actorUser;
 
-    /** API client (M2M) that performed the action (nullable). */
+    /** API client (M2M) that performed the action (nullable; no FK). */
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(
             name = "actor_client_id",
-            foreignKey = @ForeignKey(name = "fk_audit_log_actor_client")
+            foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT)
     )
     private ApiClient actorClient;
 
@@ -1,14 +1,17 @@
 package com.kukkalli.aaa.domain.entity;
 
 import jakarta.persistence.*;
-import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import java.time.Instant;
-import java.util.Objects;
+import java.util.Arrays;
+import java.util.UUID;
 
 @Entity
 @Table(name = "refresh_tokens",
@@ -16,8 +19,10 @@ import java.util.Objects;
                 @UniqueConstraint(name = "uk_refresh_tokens_token_hash", columnNames = "token_hash")
         },
         indexes = {
-                @Index(name = "idx_refresh_tokens_user", columnList = "user_id"),
-                @Index(name = "idx_refresh_tokens_expires", columnList = "expires_at")
+                @Index(name = "idx_refresh_tokens_user_revoked", columnList = "user_id, revoked"),
+                @Index(name = "idx_refresh_tokens_family", columnList = "family_id, revoked"),
+                @Index(name = "idx_refresh_tokens_expires", columnList = "expires_at"),
+                @Index(name = "idx_refresh_tokens_revoked_at", columnList = "revoked_at")
         })
 @EntityListeners(AuditingEntityListener.class)
 @Getter @Setter
@@ -30,24 +35,34 @@ public class RefreshToken {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    /** Owner of this token. */
+    /** Owner of this token (no FK, V15: the table may be partitioned; see UserService.delete). */
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "user_id",
-            foreignKey = @ForeignKey(name = "fk_refresh_tokens_user"),
+            foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT),
             nullable = false)
     private User user;
 
-    /** SHA-256 hash of the opaque refresh token string. */
-    @NotBlank
-    @Size(max = 64)
-    @Column(name = "token_hash", nullable = false, length = 64, unique = true)
-    private String tokenHash;
+    /** Rotation lineage: every token descended from one login shares the family (one per device). */
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "family_id", nullable = false, columnDefinition = "binary(16)")
+    private UUID familyId;
+
+    /** Token this one was rotated from (null for the family root). */
+    @Column(name = "parent_id")
+    private Long parentId;
+
+    /** Raw SHA-256 digest (32 bytes) of the opaque refresh token string. */
+    @NotNull
+    @Size(min = 32, max = 32)
+    @Column(name = "token_hash", nullable = false, length = 32, unique = true, columnDefinition = "binary(32)")
+    private byte[] tokenHash;
 
     @CreatedDate
     @Column(name = "issued_at", nullable = false, updatable = false)
     private Instant issuedAt;
 
-    @Column(name = "expires_at", nullable = false)
+    /** Partition key when partitioning is enabled; never updated. */
+    @Column(name = "expires_at", nullable = false, updatable = false)
     private Instant expiresAt;
 
     @Column(nullable = false)
@@ -56,6 +71,11 @@ public class RefreshToken {
     @Column(name = "revoked_at")
     private Instant revokedAt;
 
+    /** Why the token was revoked (V16); null while live. */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "revoke_reason", length = 16)
+    private RevokeReason revokeReason;
+
     @Column(name = "ip_address", length = 64)
     private String ipAddress;
 
@@ -70,6 +90,19 @@ public class RefreshToken {
     public void revoke() {
         this.revoked = true;
         this.revokedAt = Instant.now();
+        this.revokeReason = RevokeReason.REVOKED;
+    }
+
+    /** Only {@link #ROTATED} tokens count as reuse when presented again (see TokenService.rotate). */
+    public enum RevokeReason {
+        /** Replaced by its successor in the family. */
+        ROTATED,
+        /** Session signed out by its owner or an admin. */
+        REVOKED,
+        /** Evicted by the per-user cap on live sessions. */
+        SESSION_CAP,
+        /** Family revoked because a rotated token was replayed. */
+        REUSE
     }
 
     // Equality based on unique tokenHash
@@ -77,10 +110,10 @@ public class RefreshToken {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof RefreshToken other)) return false;
-        return Objects.equals(tokenHash, other.tokenHash);
+        return Arrays.equals(tokenHash, other.tokenHash);
     }
     @Override
     public int hashCode() {
-        return Objects.hash(tokenHash);
+        return Arrays.hashCode(tokenHash);
     }
 }
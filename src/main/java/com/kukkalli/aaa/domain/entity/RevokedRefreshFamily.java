@@ -0,0 +1,51 @@
+package com.kukkalli.aaa.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Denylist entry for a revoked refresh-token family. Needed for stateless (JWE) refresh tokens,
+ * which have no row of their own to revoke.
+ */
+@Entity
+@Table(name = "refresh_family_denylist",
+        indexes = {
+                @Index(name = "idx_refresh_family_denylist_expires", columnList = "expires_at")
+        })
+@IdClass(RevokedRefreshFamily.Key.class)
+@Getter @Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RevokedRefreshFamily {
+
+    @Id
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "family_id", nullable = false, columnDefinition = "binary(16)")
+    private UUID familyId;
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /** No token of the family can outlive this; the row is purged afterwards. */
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    @Column(name = "created_at", nullable = false, insertable = false, updatable = false)
+    private Instant createdAt;
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private UUID familyId;
+        private Long userId;
+    }
+}
@@ -62,6 +62,21 @@ public class User {
     @Column(name = "credentials_non_expired", nullable = false)
     private boolean credentialsNonExpired = true;
 
+    // --- Lockout (maintained by LoginAttemptService) ---
+    @Column(name = "failed_login_count", nullable = false)
+    private int failedLoginCount;
+
+    @Column(name = "last_failed_login_at")
+    private Instant lastFailedLoginAt;
+
+    /** End of a timed lockout; null with accountNonLocked=false means an admin lock. */
+    @Column(name = "locked_until")
+    private Instant lockedUntil;
+
+    /** Embedded in stateless refresh tokens; bumping it revokes all of them (see TokenService). */
+    @Column(name = "refresh_epoch", nullable = false)
+    private int refreshEpoch;
+
     @Size(max = 100)
     @Column(name = "first_name", length = 100)
     private String firstName;
@@ -0,0 +1,192 @@
+package com.kukkalli.aaa.domain.partition;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+ * Application-managed RANGE partitioning of a table on {@code UNIX_TIMESTAMP(<timestamp column>)},
+ * one partition per day / week / month (UTC), plus a trailing {@code pmax} catch-all.
+ *
+ * - {@link #partitionTable} converts an unpartitioned table once (full rebuild).
+ * - {@link #ensureAhead} splits {@code pmax} so partitions exist for the coming periods
+ *   ({@code pmax} is kept empty, so the REORGANIZE is metadata-only in practice).
+ * - {@link #dropBefore} drops partitions whose whole range is older than a cutoff:
+ *   one DDL per period instead of deleting rows one by one.
+ *
+ * Partitioned InnoDB tables cannot have foreign keys and every unique key must contain the
+ * partition column; callers drop the former and pass the key changes to {@link #partitionTable}.
+ */
+public class RangePartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(RangePartitionManager.class);
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_]+");
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMMdd").withZone(ZoneOffset.UTC);
+    private static final String MAX_PARTITION = "pmax";
+
+    public enum Granularity {
+        DAY, WEEK, MONTH;
+
+        /** Start (UTC) of the period containing {@code t}. */
+        Instant floor(Instant t) {
+            LocalDate d = t.atZone(ZoneOffset.UTC).toLocalDate();
+            LocalDate start = switch (this) {
+                case DAY -> d;
+                case WEEK -> d.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH -> d.withDayOfMonth(1);
+            };
+            return start.atStartOfDay(ZoneOffset.UTC).toInstant();
+        }
+
+        Instant next(Instant periodStart) {
+            ZonedDateTime z = periodStart.atZone(ZoneOffset.UTC);
+            ZonedDateTime end = switch (this) {
+                case DAY -> z.plusDays(1);
+                case WEEK -> z.plusWeeks(1);
+                case MONTH -> z.plusMonths(1);
+            };
+            return end.toInstant();
+        }
+    }
+
+    /** A range partition; {@code upperBound} is exclusive and null for MAXVALUE. */
+    public record Partition(String name, Instant upperBound) { }
+
+    private final JdbcTemplate jdbc;
+    private final String table;
+    private final String column;
+    private final Granularity granularity;
+    private final Clock clock;
+
+    public RangePartitionManager(JdbcTemplate jdbc, String table, String column, Granularity granularity, Clock clock) {
+        this.jdbc = Objects.requireNonNull(jdbc);
+        this.table = requireIdentifier(table);
+        this.column = requireIdentifier(column);
+        this.granularity = Objects.requireNonNull(granularity);
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    // ---------------------------------------------------------------------
+    // Inspection
+    // ---------------------------------------------------------------------
+
+    public boolean isPartitioned() {
+        return !partitions().isEmpty();
+    }
+
+    /** Current partitions in ascending bound order (empty if the table is not partitioned). */
+    public List<Partition> partitions() {
+        return jdbc.query("""
+                SELECT partition_name, partition_description
+                  FROM information_schema.partitions
+                 WHERE table_schema = DATABASE() AND table_name = ? AND partition_name IS NOT NULL
+                 ORDER BY partition_ordinal_position""",
+                (rs, i) -> {
+                    String desc = rs.getString(2);
+                    Instant bound = "MAXVALUE".equalsIgnoreCase(desc) ? null : Instant.ofEpochSecond(Long.parseLong(desc));
+                    return new Partition(rs.getString(1), bound);
+                }, table);
+    }
+
+    // ---------------------------------------------------------------------
+    // Maintenance
+    // ---------------------------------------------------------------------
+
+    /**
+     * Partitions an unpartitioned table: one partition for everything before the current period,
+     * one per period up to {@code periodsAhead}, and {@code pmax}. Rebuilds the table.
+     */
+    public void partitionTable(int periodsAhead) {
+        partitionTable(periodsAhead, List.of());
+    }
+
+    /**
+     * Same as {@link #partitionTable(int)}, applying {@code keyChanges} (ALTER TABLE specifications,
+     * e.g. widening unique keys to the partition column) in the same statement, so the table is
+     * rebuilt once and is never left with the weaker keys but no partitions.
+     */
+    public void partitionTable(int periodsAhead, List<String> keyChanges) {
+        if (isPartitioned()) return;
+        Instant current = granularity.floor(clock.instant());
+        StringJoiner defs = new StringJoiner(",\n  ", "(\n  ", "\n)");
+        defs.add(definition("p_before", current));
+        Instant start = current;
+        for (int i = 0; i <= periodsAhead; i++) {
+            Instant end = granularity.next(start);
+            defs.add(definition(NAME.format(start), end));
+            start = end;
+        }
+        defs.add(MAX_PARTITION + " VALUES LESS THAN MAXVALUE");
+
+        log.warn("Partitioning table {} by {} on {} (one-time table rebuild)", table, granularity, column);
+        String changes = keyChanges.isEmpty() ? "" : String.join(", ", keyChanges) + " ";
+        jdbc.execute("ALTER TABLE " + table + " " + changes
+                + "PARTITION BY RANGE (UNIX_TIMESTAMP(" + column + ")) " + defs);
+    }
+
+    /**
+     * Makes sure partitions exist through {@code periodsAhead} periods after the current one.
+     * @return number of partitions created
+     */
+    public int ensureAhead(int periodsAhead) {
+        List<Partition> parts = partitions();
+        if (parts.isEmpty()) return 0;
+        Instant highest = parts.stream().map(Partition::upperBound).filter(Objects::nonNull)
+                .max(Instant::compareTo).orElse(granularity.floor(clock.instant()));
+        Instant target = granularity.floor(clock.instant());
+        for (int i = 0; i <= periodsAhead; i++) target = granularity.next(target);
+
+        List<String> defs = new ArrayList<>();
+        for (Instant start = highest; start.isBefore(target); start = granularity.next(start)) {
+            defs.add(definition(NAME.format(start), granularity.next(start)));
+        }
+        if (defs.isEmpty()) return 0;
+        defs.add(MAX_PARTITION + " VALUES LESS THAN MAXVALUE");
+        jdbc.execute("ALTER TABLE " + table + " REORGANIZE PARTITION " + MAX_PARTITION
+                + " INTO (" + String.join(", ", defs) + ")");
+        log.info("Created {} partition(s) ahead on {}", defs.size() - 1, table);
+        return defs.size() - 1;
+    }
+
+    /**
+     * Drops every partition whose upper bound is at or before {@code cutoff}
+     * (i.e. all rows in it have {@code column < cutoff}).
+     * @return names of dropped partitions
+     */
+    public List<String> dropBefore(Instant cutoff) {
+        List<String> droppable = partitions().stream()
+                .filter(p -> p.upperBound() != null && !p.upperBound().isAfter(cutoff))
+                .map(Partition::name)
+                .toList();
+        if (droppable.isEmpty()) return droppable;
+        jdbc.execute("ALTER TABLE " + table + " DROP PARTITION " + String.join(", ", droppable));
+        log.info("Dropped partition(s) {} from {}", droppable, table);
+        return droppable;
+    }
+
+    // ---------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------
+
+    private static String definition(String name, Instant upperBound) {
+        return name + " VALUES LESS THAN (" + upperBound.truncatedTo(ChronoUnit.SECONDS).getEpochSecond() + ")";
+    }
+
+    private static String requireIdentifier(String s) {
+        if (s == null || !IDENTIFIER.matcher(s).matches()) {
+            throw new IllegalArgumentException("Invalid SQL identifier: " + s);
+        }
+        return s;
+    }
+}
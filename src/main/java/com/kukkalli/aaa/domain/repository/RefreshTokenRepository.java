@@ -1,18 +1,155 @@
 package com.kukkalli.aaa.domain.repository;
 
 import com.kukkalli.aaa.domain.entity.RefreshToken;
+import com.kukkalli.aaa.domain.entity.RefreshToken.RevokeReason;
 import com.kukkalli.aaa.domain.entity.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Repository
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
 
-    Optional<RefreshToken> findByTokenHash(String tokenHash);
+    // Lookups by hash. Self-verifying tokens carry their expires_at, so the *ExpiringAt variants pin it
+    // and a partitioned table is probed in one partition; legacy tokens (no embedded expiry) fall back
+    // to the hash alone. The default methods pick the variant: pass the token's expiry or null.
+
+    Optional<RefreshToken> findByTokenHash(byte[] tokenHash);
+
+    Optional<RefreshToken> findByTokenHashAndExpiresAt(byte[] tokenHash, Instant expiresAt);
+
+    default Optional<RefreshToken> findByToken(byte[] tokenHash, Instant expiresAt) {
+        return expiresAt == null ? findByTokenHash(tokenHash) : findByTokenHashAndExpiresAt(tokenHash, expiresAt);
+    }
+
+    /** Token with its owner, roles and permissions in one query (for rebuilding authorities). */
+    @EntityGraph(attributePaths = {"user", "user.roles", "user.roles.permissions"})
+    Optional<RefreshToken> findWithUserByTokenHash(byte[] tokenHash);
+
+    @EntityGraph(attributePaths = {"user", "user.roles", "user.roles.permissions"})
+    Optional<RefreshToken> findWithUserByTokenHashAndExpiresAt(byte[] tokenHash, Instant expiresAt);
+
+    default Optional<RefreshToken> findWithUserByToken(byte[] tokenHash, Instant expiresAt) {
+        return expiresAt == null ? findWithUserByTokenHash(tokenHash)
+                : findWithUserByTokenHashAndExpiresAt(tokenHash, expiresAt);
+    }
+
+    /**
+     * Compare-and-set revocation for rotation: flips an active token to revoked ({@code ROTATED})
+     * in a single statement.
+     * @return 1 if this caller won the token, 0 if it was unknown, expired or already revoked
+     */
+    @Modifying
+    @Query("""
+            update RefreshToken t
+               set t.revoked = true, t.revokedAt = :now, t.revokeReason = :reason
+             where t.tokenHash = :tokenHash and t.revoked = false and t.expiresAt > :now""")
+    int revokeIfActive(@Param("tokenHash") byte[] tokenHash, @Param("now") Instant now,
+                       @Param("reason") RevokeReason reason);
+
+    @Modifying
+    @Query("""
+            update RefreshToken t
+               set t.revoked = true, t.revokedAt = :now, t.revokeReason = :reason
+             where t.tokenHash = :tokenHash and t.expiresAt = :expiresAt and t.revoked = false and t.expiresAt > :now""")
+    int revokeIfActiveExpiringAt(@Param("tokenHash") byte[] tokenHash, @Param("expiresAt") Instant expiresAt,
+                                 @Param("now") Instant now, @Param("reason") RevokeReason reason);
+
+    default int revokeIfActive(byte[] tokenHash, Instant expiresAt, Instant now) {
+        return expiresAt == null ? revokeIfActive(tokenHash, now, RevokeReason.ROTATED)
+                : revokeIfActiveExpiringAt(tokenHash, expiresAt, now, RevokeReason.ROTATED);
+    }
+
+    /**
+     * Family of a token rotated before {@code revokedBefore} but not yet expired (reuse detection).
+     * Tokens revoked for any other reason (sign-out, session cap) don't match.
+     */
+    @Query("""
+            select t.familyId from RefreshToken t
+             where t.tokenHash = :tokenHash and t.revoked = true
+               and t.revokeReason = :reason
+               and t.revokedAt < :revokedBefore and t.expiresAt > :now""")
+    Optional<UUID> findRevokedFamilyId(@Param("tokenHash") byte[] tokenHash,
+                                       @Param("now") Instant now,
+                                       @Param("revokedBefore") Instant revokedBefore,
+                                       @Param("reason") RevokeReason reason);
+
+    @Query("""
+            select t.familyId from RefreshToken t
+             where t.tokenHash = :tokenHash and t.expiresAt = :expiresAt and t.revoked = true
+               and t.revokeReason = :reason
+               and t.revokedAt < :revokedBefore and t.expiresAt > :now""")
+    Optional<UUID> findRevokedFamilyIdExpiringAt(@Param("tokenHash") byte[] tokenHash,
+                                                 @Param("expiresAt") Instant expiresAt,
+                                                 @Param("now") Instant now,
+                                                 @Param("revokedBefore") Instant revokedBefore,
+                                                 @Param("reason") RevokeReason reason);
+
+    default Optional<UUID> findRevokedFamilyId(byte[] tokenHash, Instant expiresAt, Instant now, Instant revokedBefore) {
+        return expiresAt == null ? findRevokedFamilyId(tokenHash, now, revokedBefore, RevokeReason.ROTATED)
+                : findRevokedFamilyIdExpiringAt(tokenHash, expiresAt, now, revokedBefore, RevokeReason.ROTATED);
+    }
+
+    /** Set-based revocation of every live token in a family (served by idx_refresh_tokens_family). */
+    @Modifying
+    @Query("""
+            update RefreshToken t
+               set t.revoked = true, t.revokedAt = :now, t.revokeReason = :reason
+             where t.familyId = :familyId and t.revoked = false""")
+    int revokeFamily(@Param("familyId") UUID familyId, @Param("now") Instant now, @Param("reason") RevokeReason reason);
+
+    /** Same as {@link #revokeFamily} but scoped to an owner (self-service "sign out this device"). */
+    @Modifying
+    @Query("""
+            update RefreshToken t
+               set t.revoked = true, t.revokedAt = :now, t.revokeReason = :reason
+             where t.familyId = :familyId and t.user.id = :userId and t.revoked = false""")
+    int revokeFamilyOfUser(@Param("familyId") UUID familyId, @Param("userId") Long userId, @Param("now") Instant now,
+                           @Param("reason") RevokeReason reason);
+
+    default int revokeFamilyOfUser(UUID familyId, Long userId, Instant now) {
+        return revokeFamilyOfUser(familyId, userId, now, RevokeReason.REVOKED);
+    }
+
+    /** Ownership check for a family (served by idx_refresh_tokens_family). */
+    boolean existsByFamilyIdAndUserId(UUID familyId, Long userId);
+
+    /** Live token per family = one row per signed-in device (served by idx_refresh_tokens_user_revoked). */
+    @Query("""
+            select t from RefreshToken t
+             where t.user.id = :userId and t.revoked = false and t.expiresAt > :now
+             order by t.issuedAt desc""")
+    List<RefreshToken> findActiveByUserId(@Param("userId") Long userId, @Param("now") Instant now);
+
+    /** Unrevoked tokens of a user; index-only on idx_refresh_tokens_user_revoked. */
+    @Query("select count(t) from RefreshToken t where t.user.id = :userId and t.revoked = false")
+    long countUnrevokedByUserId(@Param("userId") Long userId);
+
+    /**
+     * Revokes ({@code SESSION_CAP}) the {@code limit} oldest unrevoked tokens of a user. Walks idx_refresh_tokens_user_revoked,
+     * whose entries are already in id order per (user_id, revoked), so there is no scan or filesort.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE refresh_tokens
+               SET revoked = 1, revoked_at = :now, revoke_reason = 'SESSION_CAP'
+             WHERE user_id = :userId AND revoked = 0
+             ORDER BY id
+             LIMIT :limit""", nativeQuery = true)
+    int revokeOldestUnrevoked(@Param("userId") Long userId, @Param("limit") int limit, @Param("now") Instant now);
+
+    /** Single set-based DELETE (a derived deleteBy would load and remove rows one by one). */
+    @Modifying
+    @Query("delete from RefreshToken t where t.user.id = :userId")
+    int deleteAllByUserId(@Param("userId") Long userId);
 
     List<RefreshToken> findByUser(User user);
 
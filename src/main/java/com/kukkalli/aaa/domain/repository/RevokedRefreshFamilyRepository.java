@@ -0,0 +1,28 @@
+package com.kukkalli.aaa.domain.repository;
+
+import com.kukkalli.aaa.domain.entity.RevokedRefreshFamily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Repository
+public interface RevokedRefreshFamilyRepository extends JpaRepository<RevokedRefreshFamily, RevokedRefreshFamily.Key> {
+
+    /** Primary-key probe on every stateless rotation. */
+    boolean existsByFamilyIdAndUserId(UUID familyId, Long userId);
+
+    /**
+     * Idempotent insert (revoking an already revoked family is a no-op).
+     * @return 1 if newly denied, 0 if it already was
+     */
+    @Modifying
+    @Query(value = """
+            INSERT IGNORE INTO refresh_family_denylist (family_id, user_id, expires_at)
+            VALUES (:familyId, :userId, :expiresAt)""", nativeQuery = true)
+    int deny(@Param("familyId") byte[] familyId, @Param("userId") Long userId, @Param("expiresAt") Instant expiresAt);
+}
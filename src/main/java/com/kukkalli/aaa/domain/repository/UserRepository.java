@@ -5,6 +5,9 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -16,6 +19,14 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByEmailIgnoreCase(String email);
 
+    /** Id only (no entity load). Column collation is case-insensitive, so plain '=' keeps the unique index usable. */
+    @Query("select u.id from User u where u.username = :username")
+    Optional<Long> findIdByUsername(@Param("username") String username);
+
+    /** Row lock on the user (serializes per-user operations such as session-cap enforcement). */
+    @Query(value = "SELECT id FROM users WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockById(@Param("id") Long id);
+
     boolean existsByUsernameIgnoreCase(String username);
 
     boolean existsByEmailIgnoreCase(String email);
@@ -27,4 +38,12 @@ public interface UserRepository extends JpaRepository<User, Long> {
     /** Load user with roles (and permissions) for authorization checks. */
     @EntityGraph(attributePaths = {"roles", "roles.permissions"})
     Optional<User> findOneWithRolesByUsernameIgnoreCase(String username);
+
+    @EntityGraph(attributePaths = {"roles", "roles.permissions"})
+    Optional<User> findOneWithRolesById(Long id);
+
+    /** Invalidates every stateless refresh token of the user in one UPDATE. */
+    @Modifying
+    @Query("update User u set u.refreshEpoch = u.refreshEpoch + 1 where u.id = :id")
+    int bumpRefreshEpoch(@Param("id") Long id);
 }
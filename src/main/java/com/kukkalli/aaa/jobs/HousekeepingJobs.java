@@ -1,32 +1,132 @@
 package com.kukkalli.aaa.jobs;
 
+import com.kukkalli.aaa.audit.AuditFloodControl;
+import com.kukkalli.aaa.security.ratelimit.LoginRateLimiter;
+import com.kukkalli.aaa.service.AuditLogPartitions;
 import com.kukkalli.aaa.service.AuditService;
-import com.kukkalli.aaa.service.TokenService;
+import com.kukkalli.aaa.service.AuditStatsService;
+import com.kukkalli.aaa.service.LoginAttemptService;
+import com.kukkalli.aaa.service.RefreshGraceCache;
+import com.kukkalli.aaa.service.RefreshTokenPartitions;
+import com.kukkalli.aaa.service.RefreshTokenPurger;
 import lombok.RequiredArgsConstructor;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * Nightly maintenance jobs.
  * Make sure @EnableScheduling is present (it is, in AaaServiceApplication).
+ * They run on a pool of {@code spring.task.scheduling.pool.size} threads, so a long partition or
+ * archive run does not hold up the second-scale sweeps.
  */
 @Component
 @RequiredArgsConstructor
 public class HousekeepingJobs {
 
-    private final TokenService tokenService;
+    private final RefreshTokenPurger refreshTokenPurger;
+    private final RefreshTokenPartitions refreshTokenPartitions;
+    private final AuditLogPartitions auditLogPartitions;
+    private final AuditStatsService auditStatsService;
+    private final AuditFloodControl auditFloodControl;
+    private final RefreshGraceCache refreshGraceCache;
     private final AuditService auditService;
+    private final LoginRateLimiter loginRateLimiter;
+    private final LoginAttemptService loginAttemptService;
 
     /**
-     * Clean up expired refresh tokens hourly (tweak as desired).
+     * Purge expired and long-revoked refresh tokens continuously in small chunks
+     * (throttled by batch-size / max-chunks-per-run per interval).
+     */
+    @Scheduled(fixedDelayString = "${security.jwt.refresh-token.purge.interval:PT10S}")
+    public void purgeRefreshTokens() {
+        refreshTokenPurger.purge();
+    }
+
+    /**
+     * When refresh_tokens is partitioned: create upcoming partitions and drop fully expired ones.
+     */
+    @Scheduled(fixedDelayString = "${security.jwt.refresh-token.partitioning.maintenance-interval:PT1H}")
+    public void maintainRefreshTokenPartitions() {
+        List<String> dropped = refreshTokenPartitions.maintain();
+        if (!dropped.isEmpty()) {
+            auditService.auditSystem("REFRESH_TOKEN_PARTITION_DROP", Map.of("partitions", dropped));
+        }
+    }
+
+    /**
+     * When audit_log is partitioned: create upcoming months and drop months past retention.
+     */
+    @Scheduled(fixedDelayString = "${aaa.audit.partitioning.maintenance-interval:PT6H}")
+    public void maintainAuditLogPartitions() {
+        List<String> dropped = auditLogPartitions.maintain();
+        if (!dropped.isEmpty()) {
+            auditService.auditSystem("AUDIT_LOG_PARTITION_DROP", Map.of("partitions", dropped));
+        }
+    }
+
+    /**
+     * Delete audit rollup buckets past their retention (minute and hourly counters).
+     */
+    @Scheduled(fixedDelayString = "${aaa.audit.rollups.purge-interval:PT1H}")
+    public void purgeAuditRollups() {
+        auditStatsService.purge();
+    }
+
+    /**
+     * Close audit coalescing windows that have ended and write their summary rows.
+     */
+    @Scheduled(fixedDelayString = "${aaa.audit.flood.sweep-interval:PT1S}")
+    public void flushAuditFloodWindows() {
+        auditFloodControl.flushExpired();
+    }
+
+    /**
+     * Hourly audit summary of the purge.
      * Cron format: second minute hour day-of-month month day-of-week
      * "0 0 * * * *" = at minute 0 of every hour.
      */
     @Scheduled(cron = "0 0 * * * *")
-    public void cleanupExpiredRefreshTokens() {
-        long removed = tokenService.cleanupExpired();
-        auditService.auditSystem("REFRESH_TOKEN_CLEANUP", Map.of("removed", removed));
+    public void auditRefreshTokenCleanup() {
+        long[] removed = refreshTokenPurger.drainTotals();
+        auditService.auditSystem("REFRESH_TOKEN_CLEANUP",
+                Map.of("removed", removed[0] + removed[1], "expired", removed[0], "revoked", removed[1]));
+    }
+
+    /**
+     * Evict login rate-limit buckets that have fully refilled, keeping limiter memory bounded.
+     */
+    @Scheduled(fixedDelayString = "${security.login.rate-limit.sweep-interval:PT1M}")
+    public void evictIdleLoginRateLimits() {
+        loginRateLimiter.evictIdle();
+    }
+
+    /**
+     * Drop refresh grace-window entries past their window, keeping the cache bounded.
+     */
+    @Scheduled(fixedDelayString = "${security.jwt.refresh-token.grace.sweep-interval:PT30S}")
+    public void evictExpiredRefreshGrace() {
+        refreshGraceCache.evictExpired();
+    }
+
+    /**
+     * Persist coalesced failed-login / lockout state in one batch.
+     */
+    @Scheduled(fixedDelayString = "${security.login.lockout.flush-interval:PT5S}")
+    public void flushLoginAttempts() {
+        loginAttemptService.flush();
+    }
+
+    /**
+     * Lift timed lockouts that have elapsed (single set-based UPDATE).
+     */
+    @Scheduled(fixedDelayString = "${security.login.lockout.unlock-sweep-interval:PT1M}")
+    public void unlockExpiredLockouts() {
+        int unlocked = loginAttemptService.unlockExpired();
+        if (unlocked > 0) {
+            auditService.auditSystem("ACCOUNT_AUTO_UNLOCK", Map.of("unlocked", unlocked));
+        }
     }
 }
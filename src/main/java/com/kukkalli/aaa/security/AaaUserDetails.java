@@ -0,0 +1,46 @@
+package com.kukkalli.aaa.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Spring Security principal that also carries the numeric {@code users.id}, so code holding the
+ * authentication (auditing, ownership checks) never has to look the user up by name again.
+ */
+public class AaaUserDetails extends User {
+
+    private final Long userId;
+
+    public AaaUserDetails(Long userId,
+                          String username,
+                          String password,
+                          boolean enabled,
+                          boolean accountNonExpired,
+                          boolean credentialsNonExpired,
+                          boolean accountNonLocked,
+                          Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, enabled, accountNonExpired, credentialsNonExpired, accountNonLocked, authorities);
+        this.userId = userId;
+    }
+
+    /** Principal for a domain user with already-resolved authorities. */
+    public static AaaUserDetails of(com.kukkalli.aaa.domain.entity.User user,
+                                    Collection<? extends GrantedAuthority> authorities) {
+        return new AaaUserDetails(user.getId(), user.getUsername(), user.getPasswordHash(),
+                user.isEnabled(), user.isAccountNonExpired(), user.isCredentialsNonExpired(),
+                user.isAccountNonLocked(), authorities);
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    /** The user id of an authenticated principal, or null if it isn't one of ours. */
+    public static Long userIdOf(Object principal) {
+        return principal instanceof AaaUserDetails d ? d.getUserId() : null;
+    }
+
+    // equals/hashCode stay username-based (inherited), as Spring's session registry expects
+}
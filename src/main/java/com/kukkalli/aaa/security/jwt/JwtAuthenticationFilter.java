@@ -1,6 +1,8 @@
 package com.kukkalli.aaa.security.jwt;
 
+import com.kukkalli.aaa.security.AaaUserDetails;
 import com.kukkalli.aaa.service.AuditService;
+import com.nimbusds.jwt.JWTClaimsSet;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -11,6 +13,7 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.AntPathMatcher;
@@ -19,6 +22,7 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -65,28 +69,41 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         if (header != null && header.startsWith("Bearer ")) {
             String token = header.substring(7).trim();
 
-            boolean valid = tokenProvider.validate(token);
-            if (!valid) {
+            Optional<JWTClaimsSet> claims = tokenProvider.parseValidClaims(token);
+            if (claims.isEmpty()) {
                 // audit once for invalid token (don’t log the token itself)
                 auditService.audit("AUTH_TOKEN_INVALID",
                         java.util.Map.of("reason", "signature/expiry", "path", request.getRequestURI()));
             } else if (SecurityContextHolder.getContext().getAuthentication() == null) {
-                tokenProvider.extractUsername(token).ifPresent(username -> {
-                    try {
-                        UserDetails user = userDetailsService.loadUserByUsername(username);
-                        var auth = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
-                        auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                        SecurityContextHolder.getContext().setAuthentication(auth);
-                    } catch (Exception ex) {
-                        // If the user no longer exists or is disabled, clear context and audit once
-                        SecurityContextHolder.clearContext();
-                        auditService.audit("AUTH_TOKEN_USERLOAD_FAIL",
-                                java.util.Map.of("path", request.getRequestURI(), "username", username));
-                    }
-                });
+                authenticate(claims.get(), request);
             }
         }
 
         filterChain.doFilter(request, response);
     }
+
+    private void authenticate(JWTClaimsSet claims, HttpServletRequest request) {
+        String username = claims.getSubject();
+        UserDetails user = loadUser(username);
+        // a token minted for a since-deleted account must not authenticate a new one with the same name
+        Long tokenUserId = JwtTokenProvider.userIdOf(claims);
+        if (user == null || (tokenUserId != null && !tokenUserId.equals(AaaUserDetails.userIdOf(user)))) {
+            SecurityContextHolder.clearContext();
+            auditService.audit("AUTH_TOKEN_USERLOAD_FAIL",
+                    java.util.Map.of("path", request.getRequestURI(), "username", String.valueOf(username)));
+            return;
+        }
+        var auth = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+        auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        SecurityContextHolder.getContext().setAuthentication(auth);
+    }
+
+    private UserDetails loadUser(String username) {
+        if (username == null) return null;
+        try {
+            return userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException ex) {
+            return null;
+        }
+    }
 }
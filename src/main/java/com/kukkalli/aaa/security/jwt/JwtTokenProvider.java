@@ -1,5 +1,6 @@
 package com.kukkalli.aaa.security.jwt;
 
+import com.kukkalli.aaa.security.AaaUserDetails;
 import com.nimbusds.jose.*;
 import com.nimbusds.jose.crypto.MACSigner;
 import com.nimbusds.jose.crypto.MACVerifier;
@@ -22,11 +23,15 @@ import java.util.stream.Collectors;
  * JWT provider using HMAC-SHA256 (HS256).
  * - Reads settings from application.yml: security.jwt.*
  * - Encodes authorities as a space-delimited "scope" claim.
+ * - Carries the numeric user id as "uid" when the principal knows it.
  * - Uses issuer + jti to help with audit/tracing.
  */
 @Component
 public class JwtTokenProvider {
 
+    /** Numeric users.id of the subject. */
+    public static final String USER_ID_CLAIM = "uid";
+
     private final String issuer;
     private final byte[] secretBytes;
     private final Duration accessTtl;
@@ -59,33 +64,32 @@ public class JwtTokenProvider {
         Instant now = clock.instant();
         Instant exp = now.plus(accessTtl);
 
-        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder()
                 .subject(username)
                 .issuer(issuer)
                 .issueTime(Date.from(now))
                 .expirationTime(Date.from(exp))
                 .jwtID(UUID.randomUUID().toString())
-                .claim("scope", scope)  // space-delimited authorities (roles + permissions)
-                .build();
+                .claim("scope", scope);  // space-delimited authorities (roles + permissions)
+        Long userId = AaaUserDetails.userIdOf(principal);
+        if (userId != null) claims.claim(USER_ID_CLAIM, userId);
 
-        return sign(claims);
+        return sign(claims.build());
     }
 
     // ---------- Parse / Validate ---------------------------------------
 
     public boolean validate(String token) {
-        try {
-            SignedJWT jwt = SignedJWT.parse(token);
-            if (verify(jwt)) {
-                Date exp = jwt.getJWTClaimsSet().getExpirationTime();
-                return exp != null && exp.toInstant().isAfter(clock.instant());
-            }
-            return false;
-        } catch (Exception e) {
-            return false;
-        }
+        return parseValidClaims(token).isPresent();
     }
 
+    /** Claims of a token whose signature, issuer and expiry all check out; one parse. */
+    public Optional<JWTClaimsSet> parseValidClaims(String token) {
+        return parseClaims(token).filter(c -> {
+            Date exp = c.getExpirationTime();
+            return exp != null && exp.toInstant().isAfter(clock.instant());
+        });
+    }
 
     public Optional<JWTClaimsSet> parseClaims(String token) {
         try {
@@ -102,6 +106,11 @@ public class JwtTokenProvider {
         return parseClaims(token).map(JWTClaimsSet::getSubject);
     }
 
+    /** The "uid" claim; null for tokens issued before it existed. */
+    static Long userIdOf(JWTClaimsSet claims) {
+        return claims.getClaim(USER_ID_CLAIM) instanceof Number n ? n.longValue() : null;
+    }
+
     public List<String> extractAuthorities(String token) {
         return parseClaims(token)
                 .map(c -> {
@@ -0,0 +1,168 @@
+package com.kukkalli.aaa.security.jwt;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Self-verifying format for opaque refresh tokens:
+ * <pre>
+ *   rt_&lt;kid&gt;.&lt;exp&gt;.&lt;body&gt;.&lt;tag&gt;
+ *   kid  : signing key id ([A-Za-z0-9]{1,8})
+ *   exp  : expiry, epoch seconds in base 36
+ *   body : 256 random bits, Base64 URL-safe (no padding)
+ *   tag  : HMAC-SHA256("rt_kid.exp.body") truncated to 128 bits, Base64 URL-safe
+ * </pre>
+ * Malformed, expired and forged tokens are rejected in memory, before hashing and any DB query.
+ * The DB row stays the source of truth for revocation. Retired keys keep verifying tokens minted
+ * before a key rollover. Legacy {@code rt_<body>} tokens carry no MAC and always cost a lookup, so
+ * they are accepted only until {@code accept-legacy-until} (set it to the upgrade time plus one
+ * refresh TTL, after which none of them can still be valid); unset means never.
+ */
+@Component
+public class RefreshTokenCodec {
+
+    static final String PREFIX = "rt_";
+    private static final int TAG_BYTES = 16;
+    private static final int BODY_CHARS = 43;            // 32 bytes, unpadded Base64
+    private static final int MAX_LENGTH = 128;
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+
+    public enum Verdict { VALID, LEGACY, MALFORMED, EXPIRED, FORGED }
+
+    private final SigningKey current;
+    private final Map<String, SigningKey> keys;
+    private final Instant acceptLegacyUntil;
+    private final Map<Verdict, Counter> rejected = new EnumMap<>(Verdict.class);
+    private final Counter legacyAccepted;
+
+    public RefreshTokenCodec(
+            @Value("${security.jwt.refresh-token.signing.key-id:k1}") String keyId,
+            @Value("${security.jwt.refresh-token.signing.secret:${security.jwt.secret:please-change-in-prod}}") String secret,
+            @Value("${security.jwt.refresh-token.signing.retired-keys:}") String retiredKeys,
+            @Value("${security.jwt.refresh-token.accept-legacy-until:}") String acceptLegacyUntil,
+            MeterRegistry meters) {
+        this.current = new SigningKey(keyId, secret);
+        Map<String, SigningKey> all = new HashMap<>();
+        all.put(current.id, current);
+        // "kid=secret,kid=secret"
+        for (String entry : StringUtils.commaDelimitedListToStringArray(retiredKeys)) {
+            int eq = entry.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("retired-keys entries must be kid=secret");
+            SigningKey k = new SigningKey(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim());
+            all.putIfAbsent(k.id, k);
+        }
+        this.keys = Map.copyOf(all);
+        this.acceptLegacyUntil = StringUtils.hasText(acceptLegacyUntil) ? Instant.parse(acceptLegacyUntil.trim()) : null;
+        for (Verdict v : List.of(Verdict.MALFORMED, Verdict.EXPIRED, Verdict.FORGED, Verdict.LEGACY)) {
+            rejected.put(v, Counter.builder("aaa.refresh_tokens.rejected")
+                    .tag("reason", v.name().toLowerCase(Locale.ROOT))
+                    .description("Refresh tokens rejected in memory, before any DB lookup")
+                    .register(meters));
+        }
+        this.legacyAccepted = Counter.builder("aaa.refresh_tokens.legacy.accepted")
+                .description("Legacy rt_<body> refresh tokens accepted before accept-legacy-until")
+                .register(meters);
+    }
+
+    /** Encodes 32 random bytes and an expiry (whole seconds) with the current key. */
+    public String encode(byte[] body, Instant expiresAt) {
+        String payload = PREFIX + current.id + '.' + Long.toString(expiresAt.getEpochSecond(), 36)
+                + '.' + B64.encodeToString(body);
+        return payload + '.' + B64.encodeToString(current.tag(payload));
+    }
+
+    /** True if the token may exist: well-formed, unexpired and authentic (or a legacy token before the cutoff). */
+    public boolean isAcceptable(String raw, Instant now) {
+        Verdict v = check(raw, now);
+        if (v == Verdict.VALID) return true;
+        if (v == Verdict.LEGACY && acceptLegacyUntil != null && now.isBefore(acceptLegacyUntil)) {
+            legacyAccepted.increment();
+            return true;
+        }
+        rejected.get(v).increment();
+        return false;
+    }
+
+    /**
+     * Expiry embedded in a token that passed {@link #isAcceptable}; empty for legacy tokens.
+     * Equals the row's {@code expires_at}, which lets lookups prune to one partition.
+     */
+    public Optional<Instant> expiresAt(String raw) {
+        int d1 = raw.indexOf('.', PREFIX.length());
+        int d2 = d1 < 0 ? -1 : raw.indexOf('.', d1 + 1);
+        if (d2 < 0) return Optional.empty();
+        try {
+            return Optional.of(Instant.ofEpochSecond(Long.parseLong(raw, d1 + 1, d2, 36)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public Verdict check(String raw, Instant now) {
+        if (raw == null || raw.length() > MAX_LENGTH || !raw.startsWith(PREFIX)) return Verdict.MALFORMED;
+
+        int d1 = raw.indexOf('.', PREFIX.length());
+        if (d1 < 0) {
+            return raw.length() == PREFIX.length() + BODY_CHARS ? Verdict.LEGACY : Verdict.MALFORMED;
+        }
+        int d2 = raw.indexOf('.', d1 + 1);
+        int d3 = d2 < 0 ? -1 : raw.indexOf('.', d2 + 1);
+        if (d3 < 0 || raw.indexOf('.', d3 + 1) >= 0 || d3 - d2 - 1 != BODY_CHARS) return Verdict.MALFORMED;
+
+        SigningKey key = keys.get(raw.substring(PREFIX.length(), d1));
+        if (key == null) return Verdict.FORGED;
+
+        long exp;
+        byte[] tag;
+        try {
+            exp = Long.parseLong(raw, d1 + 1, d2, 36);
+            tag = Base64.getUrlDecoder().decode(raw.substring(d3 + 1));
+        } catch (IllegalArgumentException e) {
+            return Verdict.MALFORMED;
+        }
+        if (tag.length != TAG_BYTES) return Verdict.MALFORMED;
+        if (exp <= now.getEpochSecond()) return Verdict.EXPIRED;
+
+        return MessageDigest.isEqual(tag, key.tag(raw.substring(0, d3))) ? Verdict.VALID : Verdict.FORGED;
+    }
+
+    // ---------------------------------------------------------------------
+
+    private static final class SigningKey {
+        final String id;
+        private final ThreadLocal<Mac> mac;
+
+        SigningKey(String id, String secret) {
+            if (id == null || !id.matches("[A-Za-z0-9]{1,8}")) {
+                throw new IllegalArgumentException("Refresh token key id must be 1-8 alphanumerics: " + id);
+            }
+            if (!StringUtils.hasText(secret)) throw new IllegalArgumentException("Empty secret for key " + id);
+            this.id = id;
+            SecretKeySpec spec = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+            this.mac = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac m = Mac.getInstance("HmacSHA256");
+                    m.init(spec);
+                    return m;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("HmacSHA256 not available", e);
+                }
+            });
+        }
+
+        byte[] tag(String payload) {
+            return Arrays.copyOf(mac.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII)), TAG_BYTES);
+        }
+    }
+}
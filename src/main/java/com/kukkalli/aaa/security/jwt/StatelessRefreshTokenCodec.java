@@ -0,0 +1,126 @@
+package com.kukkalli.aaa.security.jwt;
+
+import com.nimbusds.jose.*;
+import com.nimbusds.jose.crypto.DirectDecrypter;
+import com.nimbusds.jose.crypto.DirectEncrypter;
+import com.nimbusds.jwt.EncryptedJWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Self-contained refresh tokens for the stateless mode: a compact JWE (dir + A256GCM) carrying
+ * user id, family id, the user's refresh epoch and the expiry. Nothing is stored per token;
+ * revocation is by epoch (all of a user's tokens) or by family denylist (one device).
+ *
+ * The key comes from {@code security.jwt.refresh-token.jwe.key} (Base64, 32 bytes) or, when unset,
+ * is derived from {@code security.jwt.secret}, so JWE tokens stay decryptable in both modes.
+ * Retired keys (comma-separated Base64) keep tokens minted before a rollover valid.
+ */
+@Component
+public class StatelessRefreshTokenCodec {
+
+    private static final JOSEObjectType TYPE = new JOSEObjectType("rt+jwe");
+
+    /** Decrypted, unexpired claims of a stateless refresh token. */
+    public record Claims(long userId, UUID familyId, int epoch, Instant expiresAt) { }
+
+    private final String currentKid;
+    private final JWEEncrypter encrypter;
+    private final Map<String, JWEDecrypter> decrypters;
+
+    public StatelessRefreshTokenCodec(
+            @Value("${security.jwt.refresh-token.jwe.key:}") String key,
+            @Value("${security.jwt.refresh-token.jwe.retired-keys:}") String retiredKeys,
+            @Value("${security.jwt.secret:please-change-in-prod}") String jwtSecret) throws JOSEException {
+        byte[] current = StringUtils.hasText(key)
+                ? Base64.getDecoder().decode(key.trim())
+                : sha256("aaa-refresh-jwe:" + jwtSecret);
+        if (current.length != 32) throw new IllegalArgumentException("refresh-token.jwe.key must be 32 bytes (Base64)");
+
+        this.currentKid = kid(current);
+        this.encrypter = new DirectEncrypter(current);
+        Map<String, JWEDecrypter> all = new HashMap<>();
+        all.put(currentKid, new DirectDecrypter(current));
+        for (String retired : StringUtils.commaDelimitedListToStringArray(retiredKeys)) {
+            byte[] k = Base64.getDecoder().decode(retired.trim());
+            all.putIfAbsent(kid(k), new DirectDecrypter(k));
+        }
+        this.decrypters = Map.copyOf(all);
+    }
+
+    /** Cheap shape test used to route a presented token (compact JWE = 5 parts). */
+    public static boolean looksLikeJwe(String raw) {
+        if (raw == null || !raw.startsWith("eyJ")) return false;
+        int dots = 0;
+        for (int i = 0; i < raw.length(); i++) if (raw.charAt(i) == '.') dots++;
+        return dots == 4;
+    }
+
+    public String encode(Claims claims) {
+        JWTClaimsSet set = new JWTClaimsSet.Builder()
+                .claim("uid", claims.userId())
+                .claim("fam", claims.familyId().toString())
+                .claim("ep", claims.epoch())
+                .expirationTime(Date.from(claims.expiresAt()))
+                .build();
+        JWEHeader header = new JWEHeader.Builder(JWEAlgorithm.DIR, EncryptionMethod.A256GCM)
+                .type(TYPE)
+                .keyID(currentKid)
+                .build();
+        EncryptedJWT jwt = new EncryptedJWT(header, set);
+        try {
+            jwt.encrypt(encrypter);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Unable to encrypt refresh token", e);
+        }
+        return jwt.serialize();
+    }
+
+    /** Claims of an authentic, unexpired token; empty for anything else. */
+    public Optional<Claims> decode(String raw, Instant now) {
+        try {
+            EncryptedJWT jwt = EncryptedJWT.parse(raw);
+            JWEHeader header = jwt.getHeader();
+            JWEDecrypter decrypter = decrypters.get(header.getKeyID());
+            if (decrypter == null || !TYPE.equals(header.getType())
+                    || !JWEAlgorithm.DIR.equals(header.getAlgorithm())) {
+                return Optional.empty();
+            }
+            jwt.decrypt(decrypter);
+            JWTClaimsSet c = jwt.getJWTClaimsSet();
+            Date exp = c.getExpirationTime();
+            Long uid = c.getLongClaim("uid");
+            String fam = c.getStringClaim("fam");
+            Integer ep = c.getIntegerClaim("ep");
+            if (exp == null || uid == null || fam == null || ep == null || !exp.toInstant().isAfter(now)) {
+                return Optional.empty();
+            }
+            return Optional.of(new Claims(uid, UUID.fromString(fam), ep, exp.toInstant()));
+        } catch (ParseException | JOSEException | IllegalArgumentException | IllegalStateException e) {
+            return Optional.empty();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+
+    private static String kid(byte[] key) {
+        return HexFormat.of().formatHex(sha256(Base64.getEncoder().encodeToString(key)), 0, 4);
+    }
+
+    private static byte[] sha256(String s) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.kukkalli.aaa.security.password;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only Bloom filter over SHA-1 digests, memory-mapped from a file.
+ * The bit array stays in the page cache (off-heap); opening is O(1) and a lookup touches
+ * at most {@code numHashes} pages.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   0  int   magic  'AABF'
+ *   4  int   version (1)
+ *   8  long  numBits
+ *  16  int   numHashes
+ *  20  long  entries
+ *  28  ...   zero padding up to HEADER_SIZE
+ *  64  byte[ceil(numBits / 8)] bit array
+ * </pre>
+ * Bit positions use double hashing over the (already uniform) digest bytes.
+ */
+public final class BloomFilterFile implements Closeable {
+
+    static final int MAGIC = 0x41414246; // "AABF"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int SEGMENT_SHIFT = 30;                 // 1 GiB mappings (MappedByteBuffer is int-indexed)
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long numBits;
+    private final int numHashes;
+    private final long entries;
+
+    private BloomFilterFile(FileChannel channel, MappedByteBuffer[] segments, long numBits, int numHashes, long entries) {
+        this.channel = channel;
+        this.segments = segments;
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.entries = entries;
+    }
+
+    public static BloomFilterFile open(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && ch.read(header) >= 0) { /* fill */ }
+            header.flip();
+            if (header.remaining() < 28 || header.getInt() != MAGIC) {
+                throw new IOException("Not a breached-password filter file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported filter version " + version + ": " + path);
+            long numBits = header.getLong();
+            int numHashes = header.getInt();
+            long entries = header.getLong();
+
+            long bytes = byteLength(numBits);
+            if (ch.size() < HEADER_SIZE + bytes) throw new IOException("Truncated filter file: " + path);
+            return new BloomFilterFile(ch, map(ch, FileChannel.MapMode.READ_ONLY, bytes), numBits, numHashes, entries);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** @param sha1 20-byte SHA-1 digest */
+    public boolean mightContain(byte[] sha1) {
+        long h1 = readLong(sha1, 0);
+        long h2 = readLong(sha1, 8) | 1L;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            if (!isSet(segments, bit)) return false;
+        }
+        return true;
+    }
+
+    public long numBits() { return numBits; }
+    public int numHashes() { return numHashes; }
+    public long entries() { return entries; }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ---------------------------------------------------------------------
+    // Shared with BreachedPasswordCompiler
+    // ---------------------------------------------------------------------
+
+    static long byteLength(long numBits) {
+        return (numBits + 7) >>> 3;
+    }
+
+    static MappedByteBuffer[] map(FileChannel ch, FileChannel.MapMode mode, long bytes) throws IOException {
+        int count = (int) ((bytes + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] out = new MappedByteBuffer[Math.max(count, 1)];
+        for (int i = 0; i < out.length; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            long len = Math.min(SEGMENT_SIZE, bytes - start);
+            out[i] = ch.map(mode, HEADER_SIZE + start, Math.max(len, 0));
+        }
+        return out;
+    }
+
+    static boolean isSet(MappedByteBuffer[] segments, long bit) {
+        long byteIdx = bit >>> 3;
+        byte b = segments[(int) (byteIdx >>> SEGMENT_SHIFT)].get((int) (byteIdx & (SEGMENT_SIZE - 1)));
+        return (b & (1 << (bit & 7))) != 0;
+    }
+
+    static void set(MappedByteBuffer[] segments, long bit) {
+        long byteIdx = bit >>> 3;
+        MappedByteBuffer seg = segments[(int) (byteIdx >>> SEGMENT_SHIFT)];
+        int off = (int) (byteIdx & (SEGMENT_SIZE - 1));
+        seg.put(off, (byte) (seg.get(off) | (1 << (bit & 7))));
+    }
+
+    static long readLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) v = (v << 8) | (b[off + i] & 0xFFL);
+        return v;
+    }
+}
@@ -0,0 +1,90 @@
+package com.kukkalli.aaa.security.password;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Screens candidate passwords against a local breached-password corpus
+ * (compiled by {@link BreachedPasswordCompiler}). Disabled when no filter path is configured.
+ * A hit may be a false positive at the configured rate; misses are exact.
+ */
+@Component
+public class BreachedPasswordChecker {
+
+    private static final Logger log = LoggerFactory.getLogger(BreachedPasswordChecker.class);
+
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    });
+
+    private final String filterPath;
+    private final boolean failOnMissing;
+    private volatile BloomFilterFile filter;
+
+    public BreachedPasswordChecker(
+            @Value("${security.password.breach-filter.path:}") String filterPath,
+            @Value("${security.password.breach-filter.fail-on-missing:false}") boolean failOnMissing) {
+        this.filterPath = filterPath;
+        this.failOnMissing = failOnMissing;
+    }
+
+    @PostConstruct
+    void load() throws IOException {
+        if (!StringUtils.hasText(filterPath)) {
+            log.info("Breached-password screening disabled (security.password.breach-filter.path not set)");
+            return;
+        }
+        Path path = Path.of(filterPath);
+        if (!Files.isReadable(path)) {
+            if (failOnMissing) throw new IOException("Breached-password filter not found: " + path);
+            log.warn("Breached-password filter not found at {}; screening disabled", path);
+            return;
+        }
+        filter = BloomFilterFile.open(path);
+        log.info("Loaded breached-password filter {} ({} entries, {} bits, k={})",
+                path, filter.entries(), filter.numBits(), filter.numHashes());
+    }
+
+    public boolean isEnabled() {
+        return filter != null;
+    }
+
+    /** True if the password's SHA-1 is (probably) in the breached corpus. */
+    public boolean isBreached(String rawPassword) {
+        BloomFilterFile f = filter;
+        if (f == null || rawPassword == null) return false;
+        MessageDigest md = SHA1.get();
+        return f.mightContain(md.digest(rawPassword.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** @throws IllegalArgumentException if the password appears in the breached corpus */
+    public void ensureNotBreached(String rawPassword) {
+        if (isBreached(rawPassword)) {
+            throw new IllegalArgumentException(
+                    "Password appears in a known data breach; please choose a different password");
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        BloomFilterFile f = filter;
+        filter = null;
+        if (f != null) f.close();
+    }
+}
@@ -0,0 +1,129 @@
+package com.kukkalli.aaa.security.password;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Compiles a raw breached-password corpus into the {@link BloomFilterFile} format.
+ * Accepted inputs (HIBP "Pwned Passwords" layouts):
+ * - a single file with one {@code SHA1HEX[:count]} per line, or
+ * - a directory of k-anonymity range files named by their 5-hex-char prefix,
+ *   each line being {@code SUFFIX35HEX[:count]}.
+ *
+ * The bit array is built directly in a memory-mapped output file, so heap usage stays flat
+ * regardless of corpus size. Run via Maven:
+ * <pre>
+ *   mvn -Pbreach-filter process-classes -Dbreach.input=pwned-passwords -Dbreach.output=breached.bloom
+ * </pre>
+ */
+public final class BreachedPasswordCompiler {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private BreachedPasswordCompiler() { }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BreachedPasswordCompiler <input file|dir> <output file> [false-positive-rate]");
+            System.exit(2);
+        }
+        double fpp = args.length > 2 ? Double.parseDouble(args[2]) : 1e-6;
+        long start = System.nanoTime();
+        long n = compile(Path.of(args[0]), Path.of(args[1]), fpp);
+        System.out.printf("Compiled %,d hashes into %s in %,d ms%n",
+                n, args[1], (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @return number of digests inserted
+     */
+    public static long compile(Path input, Path output, double fpp) throws IOException {
+        if (!(fpp > 0 && fpp < 1)) throw new IllegalArgumentException("false-positive rate must be in (0,1)");
+
+        long[] count = {0};
+        forEachDigest(input, d -> count[0]++);
+        long n = Math.max(count[0], 1);
+
+        long numBits = Math.max(64, (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        int numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        long bytes = BloomFilterFile.byteLength(numBits);
+
+        Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(BloomFilterFile.HEADER_SIZE)
+                    .putInt(BloomFilterFile.MAGIC)
+                    .putInt(BloomFilterFile.VERSION)
+                    .putLong(numBits)
+                    .putInt(numHashes)
+                    .putLong(count[0]);
+            header.clear();
+            while (header.hasRemaining()) ch.write(header);
+
+            MappedByteBuffer[] segments = BloomFilterFile.map(ch, FileChannel.MapMode.READ_WRITE, bytes);
+            forEachDigest(input, d -> {
+                long h1 = BloomFilterFile.readLong(d, 0);
+                long h2 = BloomFilterFile.readLong(d, 8) | 1L;
+                for (int i = 0; i < numHashes; i++) {
+                    BloomFilterFile.set(segments, Math.floorMod(h1 + i * h2, numBits));
+                }
+            });
+            for (MappedByteBuffer seg : segments) seg.force();
+        }
+        Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count[0];
+    }
+
+    // ---------------------------------------------------------------------
+    // Input parsing
+    // ---------------------------------------------------------------------
+
+    static void forEachDigest(Path input, Consumer<byte[]> sink) throws IOException {
+        if (Files.isDirectory(input)) {
+            List<Path> files;
+            try (Stream<Path> s = Files.list(input)) {
+                files = s.filter(Files::isRegularFile).sorted().toList();
+            }
+            for (Path f : files) {
+                String prefix = stem(f.getFileName().toString());
+                if (prefix.length() != 5 || !isHex(prefix)) continue;
+                readLines(f, prefix, sink);
+            }
+        } else {
+            readLines(input, "", sink);
+        }
+    }
+
+    private static void readLines(Path file, String prefix, Consumer<byte[]> sink) throws IOException {
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                int colon = line.indexOf(':');
+                String hex = prefix + (colon >= 0 ? line.substring(0, colon) : line).trim();
+                if (hex.length() != 40 || !isHex(hex)) continue;   // skip headers, comments, junk
+                sink.accept(HEX.parseHex(hex));
+            }
+        }
+    }
+
+    private static String stem(String name) {
+        int dot = name.indexOf('.');
+        return dot >= 0 ? name.substring(0, dot) : name;
+    }
+
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,57 @@
+package com.kukkalli.aaa.security.ratelimit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * In-memory throttle for password logins, keyed by client IP and by normalized account name.
+ * Checked before any DB lookup or password hashing, so rejected attempts cost only a map lookup.
+ */
+@Component
+public class LoginRateLimiter {
+
+    private final boolean enabled;
+    private final TokenBucketLimiter perIp;
+    private final TokenBucketLimiter perAccount;
+
+    public LoginRateLimiter(
+            @Value("${security.login.rate-limit.enabled:true}") boolean enabled,
+            @Value("${security.login.rate-limit.per-ip.capacity:20}") int ipCapacity,
+            @Value("${security.login.rate-limit.per-ip.refill-period:PT1M}") Duration ipRefill,
+            @Value("${security.login.rate-limit.per-account.capacity:10}") int accountCapacity,
+            @Value("${security.login.rate-limit.per-account.refill-period:PT5M}") Duration accountRefill,
+            @Value("${security.login.rate-limit.max-keys:100000}") int maxKeys,
+            Clock clock
+    ) {
+        this.enabled = enabled;
+        this.perIp = new TokenBucketLimiter(ipCapacity, ipRefill, maxKeys, clock);
+        this.perAccount = new TokenBucketLimiter(accountCapacity, accountRefill, maxKeys, clock);
+    }
+
+    /**
+     * Consumes one attempt for the IP and, if the IP still has quota, one for the account.
+     * An IP that is already throttled does not drain the account bucket.
+     */
+    public RateLimitDecision tryAcquire(String clientIp, String usernameOrEmail) {
+        if (!enabled) return RateLimitDecision.UNLIMITED;
+
+        RateLimitDecision ip = perIp.tryAcquire(clientIp == null ? "unknown" : clientIp);
+        if (!ip.allowed()) return ip;
+
+        RateLimitDecision account = perAccount.tryAcquire(normalize(usernameOrEmail));
+        return RateLimitDecision.mostRestrictive(ip, account);
+    }
+
+    /** Drops fully refilled buckets (called periodically from housekeeping). */
+    public int evictIdle() {
+        return perIp.evictIdle() + perAccount.evictIdle();
+    }
+
+    static String normalize(String usernameOrEmail) {
+        return usernameOrEmail == null ? "" : usernameOrEmail.trim().toLowerCase(Locale.ROOT);
+    }
+}
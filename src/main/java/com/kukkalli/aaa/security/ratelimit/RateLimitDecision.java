@@ -0,0 +1,34 @@
+package com.kukkalli.aaa.security.ratelimit;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Outcome of a rate-limit check, expressed with the fields of the IETF
+ * {@code RateLimit-*} response headers.
+ */
+public record RateLimitDecision(
+        boolean allowed,
+        int limit,
+        int remaining,
+        long resetSeconds
+) {
+
+    public static final RateLimitDecision UNLIMITED = new RateLimitDecision(true, Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+
+    /** Picks the decision a client should see when several limits apply (denials first, then the tightest). */
+    public static RateLimitDecision mostRestrictive(RateLimitDecision a, RateLimitDecision b) {
+        if (a.allowed != b.allowed) return a.allowed ? b : a;
+        if (!a.allowed) return a.resetSeconds >= b.resetSeconds ? a : b;
+        return a.remaining <= b.remaining ? a : b;
+    }
+
+    public HttpHeaders toHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        if (this == UNLIMITED) return headers;
+        headers.add("RateLimit-Limit", Integer.toString(limit));
+        headers.add("RateLimit-Remaining", Integer.toString(remaining));
+        headers.add("RateLimit-Reset", Long.toString(resetSeconds));
+        if (!allowed) headers.add(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, resetSeconds)));
+        return headers;
+    }
+}
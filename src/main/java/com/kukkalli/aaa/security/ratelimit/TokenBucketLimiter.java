@@ -0,0 +1,130 @@
+package com.kukkalli.aaa.security.ratelimit;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keyed token buckets held in memory.
+ * - Each key owns its own bucket (and its own monitor), so contention is per key, never global.
+ * - Buckets idle long enough to be full again are evicted; they are indistinguishable from new ones.
+ *   Eviction is a full scan and only runs from {@link #evictIdle()} (housekeeping), never on the
+ *   request path, so a flood of new keys costs a map lookup each.
+ * - At {@code maxKeys} distinct keys, a new key evicts the fullest of a few sampled buckets (an idle
+ *   one if the sample has one), so every key keeps a bucket of its own: a spray of new keys cannot
+ *   make tracked and untracked keys share one limit. A recreated bucket starts full, and drained
+ *   buckets (the ones doing the limiting) are the last to go.
+ */
+public class TokenBucketLimiter {
+
+    static final int EVICTION_SAMPLE = 8;
+
+    private final int capacity;
+    private final long refillPeriodMillis;
+    private final int maxKeys;
+    private final Clock clock;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public TokenBucketLimiter(int capacity, Duration refillPeriod, int maxKeys, Clock clock) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        if (refillPeriod == null || refillPeriod.isZero() || refillPeriod.isNegative()) {
+            throw new IllegalArgumentException("refillPeriod must be > 0");
+        }
+        this.capacity = capacity;
+        this.refillPeriodMillis = refillPeriod.toMillis();
+        this.maxKeys = maxKeys;
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    /** Takes one token for {@code key}; the result carries the header values either way. */
+    public RateLimitDecision tryAcquire(String key) {
+        long now = clock.millis();
+        return bucketFor(key, now).tryAcquire(now);
+    }
+
+    /**
+     * Drops buckets that have fully refilled.
+     * @return number of buckets removed
+     */
+    public int evictIdle() {
+        long now = clock.millis();
+        int before = buckets.size();
+        buckets.values().removeIf(b -> b.isIdle(now));
+        return before - buckets.size();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    // ---------------------------------------------------------------------
+    // Internals
+    // ---------------------------------------------------------------------
+
+    private Bucket bucketFor(String key, long now) {
+        Bucket b = buckets.get(key);
+        if (b != null) return b;
+        if (buckets.size() >= maxKeys) evictFullest(now);
+        return buckets.computeIfAbsent(key, k -> new Bucket(now));
+    }
+
+    /** Removes the bucket with the most tokens among the first {@link #EVICTION_SAMPLE} (stops at a full one). */
+    private void evictFullest(long now) {
+        String victim = null;
+        double most = -1;
+        int seen = 0;
+        for (Map.Entry<String, Bucket> e : buckets.entrySet()) {
+            double tokens = e.getValue().tokens(now);
+            if (tokens > most) {
+                most = tokens;
+                victim = e.getKey();
+            }
+            if (tokens >= capacity || ++seen >= EVICTION_SAMPLE) break;
+        }
+        if (victim != null) buckets.remove(victim);
+    }
+
+    private final class Bucket {
+        private double tokens;
+        private long lastRefill;
+
+        Bucket(long now) {
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        synchronized RateLimitDecision tryAcquire(long now) {
+            refill(now);
+            boolean allowed = tokens >= 1.0;
+            if (allowed) tokens -= 1.0;
+            long resetSeconds = allowed
+                    ? secondsUntil(capacity - tokens)   // until fully replenished
+                    : secondsUntil(1.0 - tokens);       // until the next token
+            return new RateLimitDecision(allowed, capacity, (int) Math.floor(tokens), resetSeconds);
+        }
+
+        synchronized boolean isIdle(long now) {
+            return tokens(now) >= capacity;
+        }
+
+        synchronized double tokens(long now) {
+            refill(now);
+            return tokens;
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefill;
+            if (elapsed <= 0) return;
+            tokens = Math.min(capacity, tokens + (double) elapsed * capacity / refillPeriodMillis);
+            lastRefill = now;
+        }
+
+        private long secondsUntil(double missingTokens) {
+            if (missingTokens <= 0) return 0;
+            double millis = missingTokens * refillPeriodMillis / capacity;
+            return (long) Math.ceil(millis / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.kukkalli.aaa.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kukkalli.aaa.audit.AuditReadPool;
+import com.kukkalli.aaa.audit.archive.AuditArchive;
+import com.kukkalli.aaa.audit.archive.AuditNdjson;
+import com.kukkalli.aaa.audit.archive.AuditSegment;
+import com.kukkalli.aaa.web.dto.AuditLogEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams audit rows straight from a forward-only, read-only JDBC cursor to an output stream, as NDJSON
+ * or CSV, optionally gzip-compressed. Nothing is materialized: each row is encoded and written as it
+ * arrives, so memory stays flat for any range.
+ *
+ * With a positive fetch size MariaDB Connector/J streams the result set instead of buffering it. The
+ * statement runs with a raised {@code net_write_timeout} so a slow client (TCP backpressure through
+ * the HTTP response) doesn't make the server abort a long export. If the client goes away the query
+ * is cancelled rather than drained. Exports hold a connection for their whole duration, so they run
+ * on the {@link AuditReadPool} rather than the application pool, and only {@code max-concurrent}
+ * may run at once.
+ *
+ * Archived months ({@link AuditArchive}) come first, being older. A segment that lies wholly inside
+ * the range of an unfiltered gzip NDJSON export is sent as it is stored (its blocks are gzip members
+ * of exactly these lines) with {@code FileChannel.transferTo}; other segments are decoded, filtered
+ * and re-encoded row by row.
+ */
+@Service
+public class AuditExportService {
+
+    public enum Format { NDJSON, CSV }
+
+    private static final String[] COLUMNS = {"id", "occurred_at", "actor_user_id", "actor_client_id", "action",
+            "target_type", "target_id", "request_id", "ip_address", "user_agent", "details"};
+    /** First characters that make a CSV cell a formula in spreadsheet software. */
+    private static final String FORMULA_LEADS = "=+-@\t\r";
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper json;
+    private final AuditArchive archive;
+    private final Semaphore slots;
+    private final int fetchSize;
+    private final long netWriteTimeoutSeconds;
+
+    public AuditExportService(AuditReadPool reads,
+                              ObjectMapper json,
+                              AuditArchive archive,
+                              @Value("${aaa.audit.export.max-concurrent:1}") int maxConcurrent,
+                              @Value("${aaa.audit.export.fetch-size:1000}") int fetchSize,
+                              @Value("${aaa.audit.export.net-write-timeout:PT1H}") Duration netWriteTimeout) {
+        this(reads.jdbc(), json, archive, maxConcurrent, fetchSize, netWriteTimeout);
+    }
+
+    AuditExportService(JdbcTemplate jdbc, ObjectMapper json, AuditArchive archive,
+                       int maxConcurrent, int fetchSize, Duration netWriteTimeout) {
+        if (maxConcurrent <= 0 || fetchSize <= 0) {
+            throw new IllegalArgumentException("audit export max-concurrent and fetch-size must be positive");
+        }
+        this.jdbc = Objects.requireNonNull(jdbc);
+        this.json = Objects.requireNonNull(json);
+        this.archive = Objects.requireNonNull(archive);
+        this.slots = new Semaphore(maxConcurrent);
+        this.fetchSize = fetchSize;
+        this.netWriteTimeoutSeconds = Math.max(1, netWriteTimeout.toSeconds());
+    }
+
+    /**
+     * Reserves an export slot; call {@link Export#writeTo} and always close the result.
+     * @throws IllegalStateException if {@code max-concurrent} exports are already running
+     */
+    public Export open(AuditQueryService.Filter filter, Format format, boolean gzip) {
+        if (filter.from() == null || filter.to() == null || !filter.from().isBefore(filter.to())) {
+            throw new IllegalArgumentException("export needs a time range with from < to");
+        }
+        var params = new MapSqlParameterSource();
+        String where = AuditQueryService.where(filter, params);
+        AuditArchive.Snapshot archived = archive.snapshot();
+        Instant archivedUntil = archived.archivedUntil();
+        if (archivedUntil != null) {
+            where += " AND occurred_at >= :archivedUntil";
+            params.addValue("archivedUntil", Timestamp.from(archivedUntil));
+        }
+        String sql = "SET STATEMENT net_write_timeout = " + netWriteTimeoutSeconds + " FOR "
+                + AuditQueryService.SELECT + where + " ORDER BY occurred_at, id";
+        if (!slots.tryAcquire()) {
+            throw new IllegalStateException("Too many audit exports running; try again later");
+        }
+        return new Export(filter, archived.overlapping(filter.from(), filter.to()), sql, params, format, gzip);
+    }
+
+    /** One reserved export. */
+    public final class Export implements AutoCloseable {
+
+        private final AuditQueryService.Filter filter;
+        private final List<AuditSegment> segments;
+        private final String sql;
+        private final MapSqlParameterSource params;
+        private final Format format;
+        private final boolean gzip;
+        private long rows;
+        private boolean closed;
+
+        private Export(AuditQueryService.Filter filter, List<AuditSegment> segments,
+                       String sql, MapSqlParameterSource params, Format format, boolean gzip) {
+            this.filter = filter;
+            this.segments = segments;
+            this.sql = sql;
+            this.params = params;
+            this.format = format;
+            this.gzip = gzip;
+        }
+
+        /** Streams all matching rows, oldest first, into {@code out} (not closed). @return rows written */
+        public long writeTo(OutputStream out) throws IOException {
+            var members = new MemberStream(out, gzip);
+            var buffered = new BufferedOutputStream(members, BUFFER_BYTES);   // flushes in 64 KiB chunks
+            RowWriter writer = format == Format.NDJSON ? new NdjsonWriter(buffered) : new CsvWriter(buffered);
+            boolean whole = gzip && format == Format.NDJSON && AuditArchive.timeOnly(filter);
+            try {
+                for (AuditSegment segment : segments) {
+                    if (whole && segment.within(filter.from(), filter.to())) {
+                        writer.finish();
+                        buffered.flush();
+                        rows += members.transfer(segment);
+                    } else {
+                        archive.scan(segment, filter, (e, line, off, len) -> {
+                            writer.archived(e, line, off, len);
+                            rows++;
+                        });
+                    }
+                }
+                stream(writer);
+                writer.finish();
+                buffered.flush();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            members.finish();
+            out.flush();
+            return rows;
+        }
+
+        /** Rows handed to the output so far; after a failed {@link #writeTo}, how far it got. */
+        public long rows() {
+            return rows;
+        }
+
+        private void stream(RowWriter writer) {
+            ParsedSql parsed = NamedParameterUtils.parseSqlStatement(sql);
+            String jdbcSql = NamedParameterUtils.substituteNamedParameters(parsed, params);
+            Object[] args = NamedParameterUtils.buildValueArray(parsed, params, null);
+            jdbc.execute((ConnectionCallback<Void>) con -> {
+                try (PreparedStatement ps = con.prepareStatement(jdbcSql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setFetchSize(fetchSize);
+                    new ArgumentPreparedStatementSetter(args).setValues(ps);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            try {
+                                writer.row(rs);
+                            } catch (IOException e) {
+                                ps.cancel();   // client gone: kill the query instead of draining the rest
+                                throw new UncheckedIOException(e);
+                            }
+                            rows++;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                slots.release();
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Row encoders
+    // ---------------------------------------------------------------------
+
+    private interface RowWriter {
+        void row(ResultSet rs) throws SQLException, IOException;
+
+        /** An archived row, with its NDJSON encoding (newline included). */
+        void archived(AuditLogEntry entry, byte[] line, int off, int len) throws IOException;
+
+        default void finish() throws IOException { }
+    }
+
+    /** One JSON object per line, as {@link AuditNdjson}; archived lines are copied verbatim. */
+    private final class NdjsonWriter implements RowWriter {
+
+        private final OutputStream out;
+        private final JsonGenerator gen;
+
+        NdjsonWriter(OutputStream out) throws IOException {
+            this.out = out;
+            this.gen = AuditNdjson.generator(json, out);
+        }
+
+        @Override
+        public void row(ResultSet rs) throws SQLException, IOException {
+            AuditNdjson.writeRow(gen, rs);
+        }
+
+        @Override
+        public void archived(AuditLogEntry entry, byte[] line, int off, int len) throws IOException {
+            gen.flush();
+            out.write(line, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            gen.flush();
+        }
+    }
+
+    /** RFC 4180 CSV with a header row; details as its JSON text. */
+    private final class CsvWriter implements RowWriter {
+
+        private final Writer out;
+
+        CsvWriter(OutputStream out) throws IOException {
+            this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            this.out.write(String.join(",", COLUMNS));
+            this.out.write("\r\n");
+        }
+
+        @Override
+        public void row(ResultSet rs) throws SQLException, IOException {
+            for (int c = 1; c <= COLUMNS.length; c++) {
+                if (c > 1) out.write(',');
+                if (c == 2) {
+                    Timestamp ts = rs.getTimestamp(c);
+                    out.write(ts.toInstant().toString());
+                } else {
+                    field(rs.getString(c));
+                }
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        public void archived(AuditLogEntry e, byte[] line, int off, int len) throws IOException {
+            String details = e.details() == null ? null : json.writeValueAsString(e.details());
+            String[] values = {String.valueOf(e.id()), e.occurredAt().toString(), str(e.actorUserId()),
+                    str(e.actorClientId()), e.action(), e.targetType(), e.targetId(), e.requestId(),
+                    e.ipAddress(), e.userAgent(), details};
+            for (int c = 0; c < values.length; c++) {
+                if (c > 0) out.write(',');
+                field(values[c]);
+            }
+            out.write("\r\n");
+        }
+
+        private static String str(Long v) {
+            return v == null ? null : v.toString();
+        }
+
+        private void field(String v) throws IOException {
+            if (v == null) return;
+            // a leading = + - @ (or tab/CR) makes spreadsheets evaluate the cell: defuse it with '
+            if (!v.isEmpty() && FORMULA_LEADS.indexOf(v.charAt(0)) >= 0) v = "'" + v;
+            boolean quote = false;
+            for (int i = 0; i < v.length() && !quote; i++) {
+                char ch = v.charAt(i);
+                quote = ch == ',' || ch == '"' || ch == '\r' || ch == '\n';
+            }
+            if (!quote) {
+                out.write(v);
+                return;
+            }
+            out.write('"');
+            out.write(v.replace("\"", "\"\""));
+            out.write('"');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends output through gzip members opened on demand (or straight through without gzip), so whole
+     * archived segments, themselves a run of gzip members, can be spliced in between: consecutive
+     * members decompress as one stream.
+     */
+    private static final class MemberStream extends OutputStream {
+
+        private final OutputStream out;
+        private final boolean gzip;
+        private GZIPOutputStream member;
+        private boolean started;
+
+        MemberStream(OutputStream out, boolean gzip) {
+            this.out = out;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) target().write(b, off, len);
+        }
+
+        /** Ends the open member and copies the segment's blocks to the underlying stream. */
+        long transfer(AuditSegment segment) throws IOException {
+            endMember();
+            started = true;
+            return segment.transferTo(Channels.newChannel(out));
+        }
+
+        /** Ends the output; an empty gzip export is still one (empty) member. */
+        void finish() throws IOException {
+            if (gzip && !started) target();
+            endMember();
+        }
+
+        private void endMember() throws IOException {
+            if (member != null) {
+                member.finish();
+                member = null;
+            }
+        }
+
+        private OutputStream target() throws IOException {
+            started = true;
+            if (!gzip) return out;
+            if (member == null) member = new GZIPOutputStream(out, BUFFER_BYTES);
+            return member;
+        }
+    }
+
+    /** Export request for the audit trail, recorded before any row is sent. */
+    public static Map<String, Object> describe(AuditQueryService.Filter filter, Format format) {
+        return Map.of("from", filter.from().toString(), "to", filter.to().toString(), "format", format.name());
+    }
+
+    /** Export outcome for the audit trail: rows sent and whether the stream completed. */
+    public static Map<String, Object> describe(AuditQueryService.Filter filter, Format format, long rows,
+                                               boolean completed) {
+        return Map.of("from", filter.from().toString(), "to", filter.to().toString(),
+                "format", format.name(), "rows", rows, "outcome", completed ? "completed" : "aborted");
+    }
+}
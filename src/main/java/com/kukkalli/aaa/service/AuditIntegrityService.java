@@ -0,0 +1,295 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.audit.AuditMerkle;
+import com.kukkalli.aaa.audit.AuditReadPool;
+import com.kukkalli.aaa.audit.archive.AuditArchive;
+import com.kukkalli.aaa.web.dto.AuditProof;
+import com.kukkalli.aaa.web.dto.AuditVerification;
+import com.kukkalli.aaa.web.dto.AuditVerification.Failure;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read side of the tamper-evident audit batches (V13, {@link AuditMerkle}): inclusion proofs for
+ * single events and verification of a time range. A proof re-hashes the event's batch (at most
+ * {@code max-batch} rows) and returns the log2(n) sibling hashes leading to the stored root.
+ *
+ * Verification checks the hash chain over the contiguous run of batches covering the range (cheap,
+ * metadata only), then re-hashes the rows of every batch still in the table on
+ * {@code verify-parallelism} worker threads, {@value #BATCHES_PER_TASK} batches per query. Row reads
+ * go through the {@link AuditReadPool}, not the application pool, so a large range can't starve
+ * request handling of connections.
+ * Batches whose rows were moved to the {@link AuditArchive}, or dropped by retention without an
+ * archive ({@code audit_batch_head.dropped_before}, V14), only get the chain check.
+ */
+@Service
+public class AuditIntegrityService {
+
+    static final Duration MAX_VERIFY_RANGE = Duration.ofDays(31);
+    static final int MAX_FAILURES = 100;
+    static final int BATCHES_PER_TASK = 64;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static final String ROWS =
+            "SELECT id, occurred_at, actor_user_id, actor_client_id, action, target_type, target_id, " +
+            "request_id, ip_address, user_agent, details, batch_id FROM audit_log";
+    private static final String BATCHES =
+            "SELECT seq, batch_id, leaf_count, first_at, last_at, merkle_root, prev_hash, chain_hash FROM audit_batches";
+    private static final String DROPPED_BEFORE = "SELECT dropped_before FROM audit_batch_head WHERE id = 1";
+    private static final String MARK_DROPPED = "UPDATE audit_batch_head SET dropped_before = :before " +
+            "WHERE id = 1 AND (dropped_before IS NULL OR dropped_before < :before)";
+
+    /** One row of {@code audit_batches}. */
+    record Batch(long seq, long batchId, int leafCount, Instant firstAt, Instant lastAt,
+                 byte[] root, byte[] prevHash, byte[] chainHash) { }
+
+    /** An audit row reduced to its leaf hash. */
+    record Leaf(long id, Long batchId, byte[] hash) { }
+
+    private static final RowMapper<Batch> BATCH = (rs, n) -> new Batch(
+            rs.getLong("seq"),
+            rs.getLong("batch_id"),
+            rs.getInt("leaf_count"),
+            rs.getTimestamp("first_at").toInstant(),
+            rs.getTimestamp("last_at").toInstant(),
+            rs.getBytes("merkle_root"),
+            rs.getBytes("prev_hash"),
+            rs.getBytes("chain_hash"));
+
+    private static final RowMapper<Leaf> LEAF = AuditIntegrityService::leaf;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate rows;
+    private final AuditArchive archive;
+    private final ExecutorService workers;
+
+    public AuditIntegrityService(NamedParameterJdbcTemplate jdbc,
+                                 AuditReadPool reads,
+                                 AuditArchive archive,
+                                 @Value("${aaa.audit.integrity.verify-parallelism:2}") int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("aaa.audit.integrity.verify-parallelism must be positive");
+        this.jdbc = Objects.requireNonNull(jdbc);
+        this.rows = reads.namedJdbc();
+        this.archive = Objects.requireNonNull(archive);
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "audit-verify-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    // ---------------------------------------------------------------------
+    // Inclusion proof
+    // ---------------------------------------------------------------------
+
+    /** Proof that event {@code id} is part of its batch's stored Merkle root. */
+    public AuditProof proof(long id) {
+        List<Leaf> found = jdbc.query(ROWS + " WHERE id = :id", Map.of("id", id), LEAF);
+        if (found.isEmpty()) throw new EntityNotFoundException("Audit event " + id + " not found");
+        Long batchId = found.get(0).batchId();
+        if (batchId == null) throw new IllegalStateException("Audit event " + id + " predates integrity batches");
+        List<Batch> batches = jdbc.query(BATCHES + " WHERE batch_id = :batchId", Map.of("batchId", batchId), BATCH);
+        if (batches.isEmpty()) throw new IllegalStateException("No integrity batch recorded for audit event " + id);
+        Batch batch = batches.get(0);
+
+        List<Leaf> leaves = leavesOf(List.of(batch)).getOrDefault(batchId, List.of());
+        int index = 0;
+        while (index < leaves.size() && leaves.get(index).id() != id) index++;
+        if (index == leaves.size()) {
+            throw new IllegalStateException("Audit event " + id + " no longer lies within its batch's time range");
+        }
+        List<byte[]> hashes = leaves.stream().map(Leaf::hash).toList();
+        List<AuditMerkle.Step> steps = AuditMerkle.proof(hashes, index);
+
+        byte[] leaf = hashes.get(index);
+        boolean verified = leaves.size() == batch.leafCount()
+                && AuditMerkle.equal(AuditMerkle.rootFromProof(leaf, steps), batch.root())
+                && AuditMerkle.equal(AuditMerkle.chain(batch.prevHash(), batch.root()), batch.chainHash());
+        return new AuditProof(id, batch.seq(), index, leaves.size(), HEX.formatHex(leaf),
+                steps.stream().map(s -> new AuditProof.Step(s.left() ? "LEFT" : "RIGHT", HEX.formatHex(s.hash()))).toList(),
+                HEX.formatHex(batch.root()), HEX.formatHex(batch.prevHash()), HEX.formatHex(batch.chainHash()), verified);
+    }
+
+    // ---------------------------------------------------------------------
+    // Range verification
+    // ---------------------------------------------------------------------
+
+    /** Verifies every batch with rows in [from, to). */
+    public AuditVerification verify(Instant from, Instant to) {
+        if (from == null || to == null) throw new IllegalArgumentException("from and to are required");
+        if (!from.isBefore(to)) throw new IllegalArgumentException("from must be before to");
+        if (Duration.between(from, to).compareTo(MAX_VERIFY_RANGE) > 0) {
+            throw new IllegalArgumentException("verification covers at most " + MAX_VERIFY_RANGE.toDays() + " days");
+        }
+        var params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.from(from))
+                .addValue("to", Timestamp.from(to));
+        List<Batch> batches = jdbc.query(BATCHES + " WHERE last_at >= :from AND first_at < :to ORDER BY seq", params, BATCH);
+        var failures = new Failures();
+        if (batches.isEmpty()) return new AuditVerification(from, to, 0, 0, 0, true, List.of());
+
+        checkChain(batches.get(0).seq(), batches.get(batches.size() - 1).seq(), failures);
+
+        Instant rowsFrom = rowsFrom();
+        List<Batch> inTable = batches.stream()
+                .filter(b -> rowsFrom == null || !b.firstAt().isBefore(rowsFrom))
+                .toList();
+        List<Future<Long>> tasks = new ArrayList<>();
+        for (int i = 0; i < inTable.size(); i += BATCHES_PER_TASK) {
+            List<Batch> chunk = inTable.subList(i, Math.min(inTable.size(), i + BATCHES_PER_TASK));
+            tasks.add(workers.submit(() -> checkRows(chunk, failures)));
+        }
+        long events = 0;
+        try {
+            for (Future<Long> task : tasks) events += task.get();
+        } catch (InterruptedException e) {
+            tasks.forEach(t -> t.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("audit verification interrupted");
+        } catch (ExecutionException e) {
+            tasks.forEach(t -> t.cancel(true));
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        }
+        return new AuditVerification(from, to, batches.size(), events, batches.size() - inTable.size(),
+                failures.count.get() == 0, failures.sorted());
+    }
+
+    /**
+     * Records that audit_log rows before {@code before} were dropped by retention (not archived), so
+     * verification stops expecting them. Only ever moves forward.
+     */
+    public void rowsDroppedBefore(Instant before) {
+        jdbc.update(MARK_DROPPED, Map.of("before", Timestamp.from(before)));
+    }
+
+    /** Start of the rows still in the table: the later of the archive's end and the retention horizon. */
+    private Instant rowsFrom() {
+        Instant archivedUntil = archive.snapshot().archivedUntil();
+        Timestamp dropped = jdbc.queryForObject(DROPPED_BEFORE, Map.of(), Timestamp.class);
+        if (dropped == null) return archivedUntil;
+        Instant droppedBefore = dropped.toInstant();
+        return archivedUntil == null || droppedBefore.isAfter(archivedUntil) ? droppedBefore : archivedUntil;
+    }
+
+    /** Walks the chain over seq [lo - 1, hi]: no gaps, each link to its predecessor, each hash recomputed. */
+    private void checkChain(long lo, long hi, Failures failures) {
+        var params = new MapSqlParameterSource().addValue("lo", Math.max(1, lo - 1)).addValue("hi", hi);
+        List<Batch> chain = jdbc.query(BATCHES + " WHERE seq BETWEEN :lo AND :hi ORDER BY seq", params, BATCH);
+        long expectedSeq = lo == 1 ? 1 : lo - 1;
+        byte[] expectedPrev = lo == 1 ? AuditMerkle.genesis() : null;
+        for (Batch b : chain) {
+            if (b.seq() != expectedSeq) {
+                failures.add(b.seq(), "MISSING_BATCH", "batches " + expectedSeq + ".." + (b.seq() - 1) + " are missing");
+                expectedPrev = null;
+            }
+            if (expectedPrev != null && !AuditMerkle.equal(expectedPrev, b.prevHash())) {
+                failures.add(b.seq(), "CHAIN_BROKEN", "prev_hash does not match the chain hash of batch " + (b.seq() - 1));
+            }
+            if (!AuditMerkle.equal(AuditMerkle.chain(b.prevHash(), b.root()), b.chainHash())) {
+                failures.add(b.seq(), "CHAIN_MISMATCH", "chain_hash is not H(prev_hash || merkle_root)");
+            }
+            expectedPrev = b.chainHash();
+            expectedSeq = b.seq() + 1;
+        }
+        if (expectedSeq <= hi) {
+            failures.add(expectedSeq, "MISSING_BATCH", "batches " + expectedSeq + ".." + hi + " are missing");
+        }
+    }
+
+    /** Re-hashes the rows of the batches (one query) and compares with the stored roots. */
+    private long checkRows(List<Batch> batches, Failures failures) {
+        Map<Long, List<Leaf>> leaves = leavesOf(batches);
+        long events = 0;
+        for (Batch b : batches) {
+            List<Leaf> rows = leaves.getOrDefault(b.batchId(), List.of());
+            events += rows.size();
+            if (rows.size() != b.leafCount()) {
+                failures.add(b.seq(), "ROW_COUNT", "expected " + b.leafCount() + " rows, found " + rows.size());
+            } else if (!AuditMerkle.equal(AuditMerkle.root(rows.stream().map(Leaf::hash).toList()), b.root())) {
+                failures.add(b.seq(), "ROOT_MISMATCH", "rows do not hash to the stored merkle_root");
+            }
+        }
+        return events;
+    }
+
+    /** Leaves of the given batches, grouped by batch id and ordered by row id. */
+    private Map<Long, List<Leaf>> leavesOf(List<Batch> batches) {
+        Instant first = batches.stream().map(Batch::firstAt).min(Comparator.naturalOrder()).orElseThrow();
+        Instant last = batches.stream().map(Batch::lastAt).max(Comparator.naturalOrder()).orElseThrow();
+        var params = new MapSqlParameterSource()
+                .addValue("first", Timestamp.from(first))
+                .addValue("last", Timestamp.from(last))
+                .addValue("ids", batches.stream().map(Batch::batchId).toList());
+        // idx_audit_log_time narrows to the batches' time span; batch_id filters within it
+        List<Leaf> found = rows.query(ROWS + " WHERE occurred_at >= :first AND occurred_at <= :last" +
+                " AND batch_id IN (:ids)", params, LEAF);
+        Map<Long, List<Leaf>> byBatch = new HashMap<>();
+        for (Leaf l : found) byBatch.computeIfAbsent(l.batchId(), k -> new ArrayList<>()).add(l);
+        byBatch.values().forEach(l -> l.sort(Comparator.comparingLong(Leaf::id)));
+        return byBatch;
+    }
+
+    private static Leaf leaf(ResultSet rs, int rowNum) throws SQLException {
+        long id = rs.getLong("id");
+        return new Leaf(id, rs.getObject("batch_id", Long.class), AuditMerkle.leaf(
+                id,
+                rs.getTimestamp("occurred_at").toInstant().getEpochSecond(),
+                rs.getObject("actor_user_id", Long.class),
+                rs.getObject("actor_client_id", Long.class),
+                rs.getString("action"),
+                rs.getString("target_type"),
+                rs.getString("target_id"),
+                rs.getString("request_id"),
+                rs.getString("ip_address"),
+                rs.getString("user_agent"),
+                rs.getString("details")));
+    }
+
+    /** Failures from all workers: counted in full, the first {@link #MAX_FAILURES} kept. */
+    private static final class Failures {
+        final AtomicLong count = new AtomicLong();
+        final List<Failure> kept = Collections.synchronizedList(new ArrayList<>());
+
+        void add(long seq, String reason, String detail) {
+            if (count.incrementAndGet() <= MAX_FAILURES) kept.add(new Failure(seq, reason, detail));
+        }
+
+        List<Failure> sorted() {
+            synchronized (kept) {
+                return kept.stream().sorted(Comparator.comparingLong(Failure::batchSeq)).toList();
+            }
+        }
+    }
+}
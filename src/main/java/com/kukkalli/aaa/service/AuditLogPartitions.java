@@ -0,0 +1,110 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.audit.archive.AuditArchive;
+import com.kukkalli.aaa.domain.partition.RangePartitionManager;
+import com.kukkalli.aaa.domain.partition.RangePartitionManager.Granularity;
+import com.kukkalli.aaa.domain.partition.RangePartitionManager.Partition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Optional monthly RANGE partitioning of {@code audit_log} on {@code occurred_at}, with retention by
+ * partition drop: a month is removed in one metadata operation once all of it is older than
+ * {@code retention}, instead of being deleted row by row. Time-range queries (audit API, export)
+ * prune to the months they touch.
+ *
+ * With the {@link AuditArchive} enabled, months older than {@code aaa.audit.archive.after} are copied
+ * to archive segments first and dropped right after; retention then deletes segment files instead.
+ * Without it, dropped months are first recorded as gone for {@link AuditIntegrityService}.
+ */
+@Service
+public class AuditLogPartitions {
+
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final Duration retention;
+    private final RangePartitionManager manager;
+    private final AuditArchive archive;
+    private final AuditIntegrityService integrity;
+    private final Clock clock;
+
+    public AuditLogPartitions(JdbcTemplate jdbc,
+                              Clock clock,
+                              AuditArchive archive,
+                              AuditIntegrityService integrity,
+                              @Value("${aaa.audit.partitioning.enabled:false}") boolean enabled,
+                              @Value("${aaa.audit.partitioning.months-ahead:3}") int monthsAhead,
+                              @Value("${aaa.audit.retention:P400D}") Duration retention) {
+        if (retention.isNegative() || retention.isZero()) {
+            throw new IllegalArgumentException("aaa.audit.retention must be positive");
+        }
+        this.enabled = enabled;
+        this.monthsAhead = monthsAhead;
+        this.retention = retention;
+        this.clock = Objects.requireNonNull(clock);
+        this.archive = Objects.requireNonNull(archive);
+        this.integrity = Objects.requireNonNull(integrity);
+        this.manager = new RangePartitionManager(jdbc, "audit_log", "occurred_at", Granularity.MONTH, clock);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Partitions the table on first run, creates upcoming months and drops months past retention
+     * (or, with the archive, archives and drops months past {@code archive.after}).
+     * @return names of dropped partitions
+     */
+    public List<String> maintain() {
+        if (!enabled) return List.of();
+        manager.partitionTable(monthsAhead);
+        manager.ensureAhead(monthsAhead);
+        Instant now = clock.instant();
+        if (!archive.isEnabled()) return dropExpired(now.minus(retention));
+
+        Instant cutoff = now.minus(archive.after());
+        try {
+            // the first partition starts where the archive ends (rows before that are no longer read
+            // from the table); without an archive yet, it covers everything older
+            Instant archivedUntil = archive.snapshot().archivedUntil();
+            Instant lower = archivedUntil;
+            for (Partition p : manager.partitions()) {
+                if (p.upperBound() == null || p.upperBound().isAfter(cutoff)) break;
+                // archived by an earlier run that stopped before the drop: just drop it now
+                if (archivedUntil != null && !p.upperBound().isAfter(archivedUntil)) continue;
+                archive.archive(p.name(), lower, p.upperBound());
+                lower = p.upperBound();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Archiving audit_log partitions failed; nothing was dropped", e);
+        }
+        List<String> dropped = manager.dropBefore(cutoff);
+        try {
+            archive.deleteBefore(now.minus(retention));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Deleting expired audit segments failed", e);
+        }
+        return dropped;
+    }
+
+    /** Drops months past retention, marking them for integrity checks first (their rows are not archived). */
+    private List<String> dropExpired(Instant cutoff) {
+        manager.partitions().stream()
+                .map(Partition::upperBound)
+                .filter(b -> b != null && !b.isAfter(cutoff))
+                .max(Comparator.naturalOrder())
+                .ifPresent(integrity::rowsDroppedBefore);
+        return manager.dropBefore(cutoff);
+    }
+}
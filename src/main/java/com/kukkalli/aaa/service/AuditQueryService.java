@@ -0,0 +1,187 @@
+package com.kukkalli.aaa.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kukkalli.aaa.audit.archive.AuditArchive;
+import com.kukkalli.aaa.web.dto.AuditLogEntry;
+import com.kukkalli.aaa.web.dto.AuditPage;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Read side of the audit log. Plain SQL projections (no entities, so the lazy actor associations are
+ * never involved) with keyset pagination on (occurred_at, id), newest first: every page is an index
+ * range read of {@code limit + 1} rows, however deep, and there is no COUNT(*).
+ * Each filter is backed by a composite index from V10. Months moved to the {@link AuditArchive} are
+ * read from its segments once the table has no more matching rows, so paging continues seamlessly
+ * into the archive.
+ */
+@Service
+public class AuditQueryService {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    /** Column order shared with {@code AuditNdjson.writeRow}. */
+    public static final String SELECT =
+            "SELECT id, occurred_at, actor_user_id, actor_client_id, action, target_type, target_id, " +
+            "request_id, ip_address, user_agent, details FROM audit_log";
+    private static final TypeReference<Map<String, Object>> DETAILS_TYPE = new TypeReference<>() { };
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final ObjectMapper json;
+    private final AuditArchive archive;
+    private final RowMapper<AuditLogEntry> rowMapper = this::toEntry;
+
+    public AuditQueryService(NamedParameterJdbcTemplate jdbc, ObjectMapper json, AuditArchive archive) {
+        this.jdbc = Objects.requireNonNull(jdbc);
+        this.json = Objects.requireNonNull(json);
+        this.archive = Objects.requireNonNull(archive);
+    }
+
+    /** Optional filters; null / blank = no restriction. {@code from} inclusive, {@code to} exclusive. */
+    public record Filter(Long actorUserId,
+                         Long actorClientId,
+                         String action,
+                         String targetType,
+                         String targetId,
+                         Instant from,
+                         Instant to) {
+    }
+
+    public AuditPage search(Filter filter, String cursor, Integer limit) {
+        int size = limit == null ? DEFAULT_LIMIT : limit;
+        if (size < 1 || size > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        var params = new MapSqlParameterSource();
+        var sql = new StringBuilder(SELECT).append(where(filter, params));
+        AuditArchive.Snapshot archived = archive.snapshot();
+        Instant archivedUntil = archived.archivedUntil();
+        if (archivedUntil != null) {
+            sql.append(" AND occurred_at >= :archivedUntil");
+            params.addValue("archivedUntil", Timestamp.from(archivedUntil));
+        }
+        Cursor c = StringUtils.hasText(cursor) ? Cursor.decode(cursor) : null;
+        if (c != null) {
+            // expanded row comparison: (occurred_at, id) < (:ts, :id) stays an index range scan
+            sql.append(" AND (occurred_at < :cursorTs OR (occurred_at = :cursorTs AND id < :cursorId))");
+            params.addValue("cursorTs", Timestamp.from(c.occurredAt()));
+            params.addValue("cursorId", c.id());
+        }
+        sql.append(" ORDER BY occurred_at DESC, id DESC LIMIT :limit");
+        params.addValue("limit", size + 1);
+
+        List<AuditLogEntry> rows = jdbc.query(sql.toString(), params, rowMapper);
+        if (rows.size() <= size && archivedUntil != null) {
+            // table exhausted: continue with older, archived rows (all of them sort after the table's)
+            rows = new ArrayList<>(rows);
+            rows.addAll(archive.search(archived, filter, c == null ? null : c.occurredAt(),
+                    c == null ? null : c.id(), size + 1 - rows.size()));
+        }
+        if (rows.size() <= size) return new AuditPage(rows, null);
+
+        List<AuditLogEntry> page = rows.subList(0, size);
+        AuditLogEntry last = page.get(size - 1);
+        return new AuditPage(List.copyOf(page), new Cursor(last.occurredAt(), last.id()).encode());
+    }
+
+    // ---------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------
+
+    /** WHERE clause for {@code filter} (always present, so callers can append "AND ..."). */
+    static String where(Filter filter, MapSqlParameterSource params) {
+        if (StringUtils.hasText(filter.targetId()) && !StringUtils.hasText(filter.targetType())) {
+            throw new IllegalArgumentException("targetId requires targetType");
+        }
+        var sql = new StringBuilder(" WHERE 1 = 1");
+        if (filter.actorUserId() != null) {
+            sql.append(" AND actor_user_id = :actorUserId");
+            params.addValue("actorUserId", filter.actorUserId());
+        }
+        if (filter.actorClientId() != null) {
+            sql.append(" AND actor_client_id = :actorClientId");
+            params.addValue("actorClientId", filter.actorClientId());
+        }
+        if (StringUtils.hasText(filter.action())) {
+            sql.append(" AND action = :action");
+            params.addValue("action", filter.action());
+        }
+        if (StringUtils.hasText(filter.targetType())) {
+            sql.append(" AND target_type = :targetType");
+            params.addValue("targetType", filter.targetType());
+        }
+        if (StringUtils.hasText(filter.targetId())) {
+            sql.append(" AND target_id = :targetId");
+            params.addValue("targetId", filter.targetId());
+        }
+        if (filter.from() != null) {
+            sql.append(" AND occurred_at >= :from");
+            params.addValue("from", Timestamp.from(filter.from()));
+        }
+        if (filter.to() != null) {
+            sql.append(" AND occurred_at < :to");
+            params.addValue("to", Timestamp.from(filter.to()));
+        }
+        return sql.toString();
+    }
+
+    private AuditLogEntry toEntry(ResultSet rs, int rowNum) throws SQLException {
+        return new AuditLogEntry(
+                rs.getLong("id"),
+                rs.getTimestamp("occurred_at").toInstant(),
+                rs.getObject("actor_user_id", Long.class),
+                rs.getObject("actor_client_id", Long.class),
+                rs.getString("action"),
+                rs.getString("target_type"),
+                rs.getString("target_id"),
+                rs.getString("request_id"),
+                rs.getString("ip_address"),
+                rs.getString("user_agent"),
+                details(rs.getString("details")));
+    }
+
+    private Map<String, Object> details(String raw) {
+        if (raw == null) return null;
+        try {
+            return json.readValue(raw, DETAILS_TYPE);
+        } catch (Exception e) {
+            return Map.of("_raw", raw);
+        }
+    }
+
+    /** Opaque page token: base64url of "epochSecond.nano.id" of the last row returned. */
+    record Cursor(Instant occurredAt, long id) {
+
+        String encode() {
+            String s = occurredAt.getEpochSecond() + "." + occurredAt.getNano() + "." + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(s.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        static Cursor decode(String token) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII).split("\\.");
+                if (parts.length != 3) throw new IllegalArgumentException();
+                return new Cursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])),
+                        Long.parseLong(parts[2]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+}
@@ -1,33 +1,45 @@
 package com.kukkalli.aaa.service;
 
+import com.kukkalli.aaa.audit.AuditEnvelope;
+import com.kukkalli.aaa.audit.AuditFloodControl;
+import com.kukkalli.aaa.audit.AuditPipeline;
 import com.kukkalli.aaa.domain.entity.ApiClient;
-import com.kukkalli.aaa.domain.entity.AuditLog;
 import com.kukkalli.aaa.domain.entity.User;
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
 import com.kukkalli.aaa.domain.repository.ApiClientRepository;
-import com.kukkalli.aaa.domain.repository.AuditLogRepository;
 import com.kukkalli.aaa.domain.repository.UserRepository;
+import com.kukkalli.aaa.security.AaaUserDetails;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpHeaders;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.time.Clock;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
-
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Captures audit events on the caller's thread as immutable {@link AuditEnvelope}s and hands them to
+ * the {@link AuditPipeline} (through {@link AuditFloodControl}), which batches them onto its own
+ * connections. Everything request-scoped (headers, remote address, security context) is read here,
+ * synchronously; nothing waits for the database write. The envelope clips header values to their
+ * column widths.
+ */
 @Service
 @RequiredArgsConstructor
 public class AuditService {
 
-    private final AuditLogRepository auditRepo;
+    private final AuditFloodControl floodControl;
     private final UserRepository userRepo;
     private final ApiClientRepository apiClientRepo;
     private final Clock clock;
@@ -36,116 +48,104 @@ public class AuditService {
     // Public API (simple entry points)
     // ---------------------------------------------------------------------
 
-    /** Minimal: just action and optional details; pulls an actor from SecurityContext (if any). */
-    @Async
-    @Transactional
+    /** Minimal: action and optional details; actor from SecurityContext, IP / UA from the current request (if any). */
     public void audit(String action, Map<String, Object> details) {
         var auth = SecurityContextHolder.getContext().getAuthentication();
-        save(build(action, null, null, null, null, null, details, auth));
+        HttpServletRequest req = currentRequest();
+        if (req == null) {
+            submit(action, null, null, null, null, null, details, auth);
+        } else {
+            submit(action, null, null, requestId(req), clientIp(req), userAgent(req), details, auth);
+        }
     }
 
     /** From a servlet request (captures IP / UA / X-Request-Id) + SecurityContext actor. */
-    @Async
-    @Transactional
     public void audit(String action, HttpServletRequest req, Map<String, Object> details) {
         var auth = SecurityContextHolder.getContext().getAuthentication();
-        String ip = clientIp(req);
-        String ua = userAgent(req);
-        String rid = requestId(req);
-        save(build(action, null, null, rid, ip, ua, details, auth));
+        submit(action, null, null, requestId(req), clientIp(req), userAgent(req), details, auth);
     }
 
     /** Explicit actor: user entity. Useful in services when you already loaded the user. */
-    @Async
-    @Transactional
     public void auditForUser(String action, User user, HttpServletRequest req, Map<String, Object> details) {
-        String ip = clientIp(req);
-        String ua = userAgent(req);
-        String rid = requestId(req);
-        save(build(action, user, null, rid, ip, ua, details, null));
+        submit(action, idOf(user), null, requestId(req), clientIp(req), userAgent(req), details, null);
     }
 
-    /** Explicit actor: by username (resolved to User if present). */
-    @Async
-    @Transactional
+    /** Explicit actor: by username (id taken from the authenticated principal when it is that user). */
     public void auditForUsername(String action, String username, HttpServletRequest req, Map<String, Object> details) {
-        User user = userRepo.findByUsernameIgnoreCase(username).orElse(null);
-        String ip = clientIp(req);
-        String ua = userAgent(req);
-        String rid = requestId(req);
-        save(build(action, user, null, rid, ip, ua, details, null));
+        var auth = SecurityContextHolder.getContext().getAuthentication();
+        Long userId = auth != null && username != null && username.equalsIgnoreCase(auth.getName())
+                ? AaaUserDetails.userIdOf(auth.getPrincipal())
+                : null;
+        if (userId == null && username != null) userId = userRepo.findIdByUsername(username).orElse(null);
+        submit(action, userId, null, requestId(req), clientIp(req), userAgent(req), details, null);
     }
 
     /** Explicit actor: API client (M2M). */
-    @Async
-    @Transactional
     public void auditForClient(String action, ApiClient client, HttpServletRequest req, Map<String, Object> details) {
-        String ip = clientIp(req);
-        String ua = userAgent(req);
-        String rid = requestId(req);
-        save(build(action, null, client, rid, ip, ua, details, null));
+        Long clientId = client != null ? client.getId() : null;
+        submit(action, null, clientId, requestId(req), clientIp(req), userAgent(req), details, null);
     }
 
     /** System-initiated events without a user/client (maintenance jobs, etc.). */
-    @Async
-    @Transactional
     public void auditSystem(String action, Map<String, Object> details) {
-        save(build(action, null, null, null, null, null, details, null));
+        submit(action, null, null, null, null, null, details, null);
     }
 
     // ---------------------------------------------------------------------
-    // Builder + helpers
+    // Envelope + helpers
     // ---------------------------------------------------------------------
 
-    private AuditLog build(String action,
-                           User user,
-                           ApiClient client,
-                           String requestId,
-                           String ip,
-                           String ua,
-                           Map<String, Object> details,
-                           Authentication fallbackAuth) {
-
-        // If no explicit user/client passed, try resolving from SecurityContext
-        if (user == null && client == null && fallbackAuth != null && fallbackAuth.isAuthenticated()) {
-            String principalName = fallbackAuth.getName();
-            // Try to map the principalName to a User; if not found, leave actor null (system/M2M).
-            user = userRepo.findByUsernameIgnoreCase(principalName).orElse(null);
-            // If you maintain distinct principal prefixes for M2M (e.g., "client:<id>"),
-            // you could resolve ApiClient here as well.
+    private void submit(String action,
+                        Long userId,
+                        Long clientId,
+                        String requestId,
+                        String ip,
+                        String ua,
+                        Map<String, Object> details,
+                        Authentication fallbackAuth) {
+
+        // If no explicit user/client passed, take the id the authenticated principal carries (no query).
+        // Other principals (anonymous, M2M, test doubles) leave the actor null.
+        if (userId == null && clientId == null && fallbackAuth != null && fallbackAuth.isAuthenticated()) {
+            userId = AaaUserDetails.userIdOf(fallbackAuth.getPrincipal());
         }
 
-        return AuditLog.builder()
-                .occurredAt(Instant.now(clock))
-                .actorUser(user)
-                .actorClient(client)
-                .action(Objects.requireNonNull(action, "action must not be null"))
-                .requestId(defaultIfBlank(requestId, UUID.randomUUID().toString()))
-                .ipAddress(ip)
-                .userAgent(ua)
-                .details(copy(details))
-                .build();
+        floodControl.submit(new AuditEnvelope(
+                TimeOrderedIds.next(),
+                Instant.now(clock),
+                userId,
+                clientId,
+                Objects.requireNonNull(action, "action must not be null"),
+                null,
+                null,
+                StringUtils.hasText(requestId) ? requestId : randomRequestId(),
+                ip,
+                ua,
+                copy(details)));
     }
 
-    private void save(AuditLog log) {
-        auditRepo.save(log);
+    private static Long idOf(User user) {
+        return user != null ? user.getId() : null;
     }
 
     // ---------------------------------------------------------------------
     // HTTP extraction helpers
     // ---------------------------------------------------------------------
 
+    /** The request bound to this thread by the DispatcherServlet / RequestContextFilter, if any. */
+    private static HttpServletRequest currentRequest() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attrs
+                ? attrs.getRequest()
+                : null;
+    }
+
     private static String requestId(HttpServletRequest http) {
         String rid = http.getHeader("X-Request-Id");
-        return StringUtils.hasText(rid) ? rid : UUID.randomUUID().toString();
+        return StringUtils.hasText(rid) ? rid : null;
     }
 
+    /** Resolved by the container; X-Forwarded-For is honoured from trusted proxies only. */
     private static String clientIp(HttpServletRequest http) {
-        String h = http.getHeader("X-Forwarded-For");
-        if (StringUtils.hasText(h)) {
-            int comma = h.indexOf(',');
-            return comma > 0 ? h.substring(0, comma).trim() : h.trim();
-        }
         return http.getRemoteAddr();
     }
 
@@ -154,11 +154,15 @@ public class AuditService {
         return ua != null ? ua : "unknown";
     }
 
-    private static String defaultIfBlank(String value, String fallback) {
-        return (value == null || value.isBlank()) ? fallback : value;
+    /** Version-4 shaped UUID from ThreadLocalRandom: correlation only, so no SecureRandom contention. */
+    private static String randomRequestId() {
+        var rnd = ThreadLocalRandom.current();
+        long msb = (rnd.nextLong() & ~0xF000L) | 0x4000L;
+        long lsb = (rnd.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb).toString();
     }
 
     private static Map<String, Object> copy(Map<String, Object> details) {
-        return details == null ? null : new LinkedHashMap<>(details);
+        return details == null ? null : Collections.unmodifiableMap(new LinkedHashMap<>(details));
     }
 }
@@ -0,0 +1,116 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.web.dto.AuditStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Dashboard counts from the rollup tables that the audit writer maintains (V12): events per
+ * (action, minute) and per (action, ip, hour). A query reads one row per bucket, never audit_log,
+ * so its cost depends on the range and granularity, not on the event volume.
+ */
+@Service
+public class AuditStatsService {
+
+    public enum By { MINUTE, HOUR, IP }
+
+    public static final int DEFAULT_TOP = 20;
+    public static final int MAX_TOP = 500;
+    static final Duration MAX_MINUTE_RANGE = Duration.ofDays(7);
+    static final Duration MAX_HOUR_RANGE = Duration.ofDays(93);
+    private static final int PURGE_CHUNK = 10_000;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final Clock clock;
+    private final Duration minuteRetention;
+    private final Duration hourRetention;
+
+    public AuditStatsService(NamedParameterJdbcTemplate jdbc,
+                             Clock clock,
+                             @Value("${aaa.audit.rollups.minute-retention:P30D}") Duration minuteRetention,
+                             @Value("${aaa.audit.rollups.hour-retention:P400D}") Duration hourRetention) {
+        this.jdbc = Objects.requireNonNull(jdbc);
+        this.clock = Objects.requireNonNull(clock);
+        this.minuteRetention = minuteRetention;
+        this.hourRetention = hourRetention;
+    }
+
+    /**
+     * Counts in [from, to), {@code from} rounded down to the bucket size; defaults to the last hour.
+     * With {@code action} null, every action is reported separately. {@link By#IP} returns the
+     * {@code top} (action, ip) pairs by events over the whole range.
+     */
+    public AuditStats stats(String action, By by, Instant from, Instant to, Integer top) {
+        Instant end = to != null ? to : clock.instant();
+        Instant start = from != null ? from : end.minus(Duration.ofHours(1));
+        ChronoUnit unit = by == By.MINUTE ? ChronoUnit.MINUTES : ChronoUnit.HOURS;
+        start = start.truncatedTo(unit);
+        if (!start.isBefore(end)) throw new IllegalArgumentException("from must be before to");
+        Duration max = by == By.MINUTE ? MAX_MINUTE_RANGE : MAX_HOUR_RANGE;
+        if (Duration.between(start, end).compareTo(max) > 0) {
+            throw new IllegalArgumentException(by + " stats cover at most " + max.toDays() + " days");
+        }
+        int limit = top == null ? DEFAULT_TOP : top;
+        if (limit < 1 || limit > MAX_TOP) throw new IllegalArgumentException("top must be between 1 and " + MAX_TOP);
+
+        var params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.from(start))
+                .addValue("to", Timestamp.from(end))
+                .addValue("top", limit);
+        String where = " WHERE bucket >= :from AND bucket < :to";
+        if (StringUtils.hasText(action)) {
+            where += " AND action = :action";   // leading primary-key column: a range read per action
+            params.addValue("action", action);
+        }
+        String sql = switch (by) {
+            case MINUTE -> "SELECT action, bucket, events FROM audit_rollup_minute" + where
+                    + " ORDER BY action, bucket";
+            case HOUR -> "SELECT action, bucket, SUM(events) AS events FROM audit_rollup_ip_hour" + where
+                    + " GROUP BY action, bucket ORDER BY action, bucket";
+            case IP -> "SELECT action, ip_address, SUM(events) AS events FROM audit_rollup_ip_hour" + where
+                    + " GROUP BY action, ip_address ORDER BY events DESC, action, ip_address LIMIT :top";
+        };
+        List<AuditStats.Bucket> buckets = jdbc.query(sql, params, (rs, i) -> by == By.IP
+                ? new AuditStats.Bucket(rs.getString("action"), null, emptyToNull(rs.getString("ip_address")), rs.getLong("events"))
+                : new AuditStats.Bucket(rs.getString("action"), rs.getTimestamp("bucket").toInstant(), null, rs.getLong("events")));
+        return new AuditStats(StringUtils.hasText(action) ? action : null, by.name(), start, end, buckets);
+    }
+
+    /**
+     * Deletes minute buckets past {@code minute-retention} and hourly ones past {@code hour-retention},
+     * in chunks so no single statement holds locks for long.
+     * @return rows deleted
+     */
+    public long purge() {
+        Instant now = clock.instant();
+        JdbcTemplate plain = jdbc.getJdbcTemplate();
+        return purge(plain, "audit_rollup_minute", now.minus(minuteRetention))
+                + purge(plain, "audit_rollup_ip_hour", now.minus(hourRetention));
+    }
+
+    private static long purge(JdbcTemplate jdbc, String table, Instant cutoff) {
+        long total = 0;
+        int n;
+        do {
+            n = jdbc.update("DELETE FROM " + table + " WHERE bucket < ? LIMIT " + PURGE_CHUNK, Timestamp.from(cutoff));
+            total += n;
+        } while (n == PURGE_CHUNK);
+        return total;
+    }
+
+    private static String emptyToNull(String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+}
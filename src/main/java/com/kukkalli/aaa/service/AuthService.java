@@ -3,16 +3,19 @@ package com.kukkalli.aaa.service;
 import com.kukkalli.aaa.domain.entity.Permission;
 import com.kukkalli.aaa.domain.entity.User;
 import com.kukkalli.aaa.domain.repository.UserRepository;
+import com.kukkalli.aaa.security.AaaUserDetails;
 import com.kukkalli.aaa.security.jwt.JwtTokenProvider;
 import com.kukkalli.aaa.web.dto.AuthResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.StringUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.Clock;
 import java.time.Instant;
@@ -28,19 +31,25 @@ public class AuthService {
     private final TokenService tokenService;
     private final Clock clock;
     private final AuditService auditService;
+    private final LoginAttemptService loginAttemptService;
+    private final RefreshGraceCache graceCache;
 
     public AuthService(UserRepository userRepository,
                        PasswordEncoder passwordEncoder,
                        JwtTokenProvider jwtTokenProvider,
                        TokenService tokenService,
                        Clock clock,
-                       AuditService auditService) {
+                       AuditService auditService,
+                       LoginAttemptService loginAttemptService,
+                       RefreshGraceCache graceCache) {
         this.userRepository = Objects.requireNonNull(userRepository);
         this.passwordEncoder = Objects.requireNonNull(passwordEncoder);
         this.jwtTokenProvider = Objects.requireNonNull(jwtTokenProvider);
         this.tokenService = Objects.requireNonNull(tokenService);
         this.clock = Objects.requireNonNull(clock);
         this.auditService = Objects.requireNonNull(auditService);
+        this.loginAttemptService = Objects.requireNonNull(loginAttemptService);
+        this.graceCache = Objects.requireNonNull(graceCache);
     }
 
     // ---------------------------------------------------------------------
@@ -58,23 +67,26 @@ public class AuthService {
                 .orElseThrow(() -> new BadCredentialsException("Invalid credentials"));
 
         if (!passwordEncoder.matches(rawPassword, user.getPasswordHash())) {
+            loginAttemptService.recordFailure(user);
             // audit failed attempt (captures IP/UA/Request-ID from request)
             auditService.auditForUser("AUTH_LOGIN_FAIL", user, request,
                     Map.of("reason", "bad_password"));
             throw new BadCredentialsException("Invalid credentials");
         }
 
+        // The lock is checked only after the password, and answered like a bad password (see
+        // GlobalExceptionHandler), so neither the response nor its timing tells a guesser that the
+        // account exists and is locked.
+        if (loginAttemptService.isLocked(user)) {
+            auditService.auditForUser("AUTH_LOGIN_FAIL", user, request,
+                    Map.of("reason", "account_locked"));
+            throw new LockedException("Account is locked");
+        }
+        loginAttemptService.recordSuccess(user);
+
         // Build Spring Security principal for JWT authority embedding
         var authorities = toAuthorities(user);
-        var principal = org.springframework.security.core.userdetails.User
-                .withUsername(user.getUsername())
-                .password(user.getPasswordHash())
-                .authorities(authorities)
-                .accountExpired(!user.isAccountNonExpired())
-                .accountLocked(!user.isAccountNonLocked())
-                .credentialsExpired(!user.isCredentialsNonExpired())
-                .disabled(!user.isEnabled())
-                .build();
+        var principal = AaaUserDetails.of(user, authorities);
 
         // Access token
         String accessToken = jwtTokenProvider.generateAccessToken(principal);
@@ -102,37 +114,59 @@ public class AuthService {
     @Transactional
     public Optional<AuthResponse> refresh(String rawRefreshToken,
                                           HttpServletRequest request) {
+        String ip = clientIp(request);
+        String ua = userAgent(request);
+
+        // a retry of a rotation we just answered gets the same response (no rotate)
+        byte[] oldHash = graceCache.isEnabled() ? TokenService.sha256(rawRefreshToken) : null;
+        if (oldHash != null) {
+            Optional<AuthResponse> replayed = replay(oldHash, ip, ua);
+            if (replayed.isPresent()) return replayed;
+        }
+
+        // rotate refresh token (single-use); the conditional revoke decides concurrent races
+        Optional<AuthResponse> refreshed = tokenService.rotate(rawRefreshToken, ip, ua).map(rotated -> {
+            User user = rotated.user();
 
-        return tokenService.validateAndGetUser(rawRefreshToken).flatMap(user -> {
             // Rebuild authorities for a new access token
             var authorities = toAuthorities(user);
-            var principal = org.springframework.security.core.userdetails.User
-                    .withUsername(user.getUsername())
-                    .password(user.getPasswordHash())
-                    .authorities(authorities)
-                    .accountExpired(!user.isAccountNonExpired())
-                    .accountLocked(!user.isAccountNonLocked())
-                    .credentialsExpired(!user.isCredentialsNonExpired())
-                    .disabled(!user.isEnabled())
-                    .build();
+            var principal = AaaUserDetails.of(user, authorities);
 
             String accessToken = jwtTokenProvider.generateAccessToken(principal);
             var exp = jwtTokenProvider.parseClaims(accessToken)
                     .map(c -> c.getExpirationTime().toInstant())
                     .orElse(Instant.now(clock).plusSeconds(900));
 
-            // rotate refresh token (single-use)
-            var rotated = tokenService.rotate(
-                    rawRefreshToken,
-                    clientIp(request),
-                    userAgent(request)
-            );
-
-            rotated.ifPresent(newRt -> auditService.auditForUser("AUTH_REFRESH", user, request,
-                    Map.of("rotated", true)));
+            auditService.auditForUser("AUTH_REFRESH", user, request,
+                    Map.of("rotated", true));
 
-            return rotated.map(newRt -> new AuthResponse(accessToken, newRt, exp));
+            return new AuthResponse(accessToken, rotated.refreshToken(), exp);
         });
+
+        if (oldHash == null) return refreshed;
+        if (refreshed.isPresent()) {
+            // only remember rotations that actually committed
+            AuthResponse response = refreshed.get();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    graceCache.remember(oldHash, ip, ua, response);
+                }
+            });
+            return refreshed;
+        }
+        // lost a race against a concurrent retry that has committed in the meantime
+        return replay(oldHash, ip, ua);
+    }
+
+    /**
+     * Grace-window answer for a retry, bound to the peer address (X-Forwarded-For only counts from
+     * trusted proxies, so it cannot be copied from the victim's request) and only while the session
+     * is still live: a logout, session revoke or reuse revocation inside the window ends replays.
+     */
+    private Optional<AuthResponse> replay(byte[] oldHash, String ip, String ua) {
+        return graceCache.replay(oldHash, ip, ua)
+                .filter(response -> tokenService.isLive(response.refreshToken()));
     }
 
     // ---------------------------------------------------------------------
@@ -166,12 +200,8 @@ public class AuthService {
                 .collect(Collectors.toSet());
     }
 
+    /** Peer address as resolved by the container (forwarded headers are honoured from trusted proxies only). */
     private static String clientIp(HttpServletRequest http) {
-        String h = http.getHeader("X-Forwarded-For");
-        if (StringUtils.hasText(h)) {
-            int comma = h.indexOf(',');
-            return comma > 0 ? h.substring(0, comma).trim() : h.trim();
-        }
         return http.getRemoteAddr();
     }
 
@@ -0,0 +1,242 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.domain.entity.User;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Failed-login tracking and automatic account lockout.
+ * - Failures are counted in memory with a sliding-window counter per user.
+ * - State changes are coalesced per user and written to {@code users} in one JDBC batch
+ *   per flush (see {@link #flush()}), so a brute-force burst costs one UPDATE per user per flush.
+ * - Lock checks use the in-memory state or the already-loaded {@link User}; no extra query.
+ */
+@Service
+public class LoginAttemptService {
+
+    private static final Logger log = LoggerFactory.getLogger(LoginAttemptService.class);
+
+    private static final String UPDATE_SQL = """
+            UPDATE users
+               SET failed_login_count = ?, last_failed_login_at = ?, account_non_locked = ?, locked_until = ?
+             WHERE id = ?""";
+
+    private static final String UNLOCK_EXPIRED_SQL = """
+            UPDATE users
+               SET account_non_locked = 1, locked_until = NULL, failed_login_count = 0
+             WHERE account_non_locked = 0 AND locked_until IS NOT NULL AND locked_until <= ?""";
+
+    private final JdbcTemplate jdbc;
+    private final Clock clock;
+    private final boolean enabled;
+    private final int maxFailures;
+    private final long windowMillis;
+    private final Duration lockDuration;
+
+    private final ConcurrentHashMap<Long, Attempts> attempts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, PendingWrite> dirty = new ConcurrentHashMap<>();
+
+    public LoginAttemptService(JdbcTemplate jdbc,
+                               Clock clock,
+                               @Value("${security.login.lockout.enabled:true}") boolean enabled,
+                               @Value("${security.login.lockout.max-failures:5}") int maxFailures,
+                               @Value("${security.login.lockout.window:PT15M}") Duration window,
+                               @Value("${security.login.lockout.lock-duration:PT15M}") Duration lockDuration) {
+        this.jdbc = Objects.requireNonNull(jdbc);
+        this.clock = Objects.requireNonNull(clock);
+        this.enabled = enabled;
+        this.maxFailures = maxFailures;
+        this.windowMillis = window.toMillis();
+        this.lockDuration = Objects.requireNonNull(lockDuration);
+    }
+
+    // ---------------------------------------------------------------------
+    // Login path
+    // ---------------------------------------------------------------------
+
+    /** True if the account is locked (admin lock or an unexpired timed lockout). */
+    public boolean isLocked(User user) {
+        if (!enabled) return !user.isAccountNonLocked();
+        Instant now = clock.instant();
+
+        Attempts a = attempts.get(user.getId());
+        if (a != null) {
+            Instant until = a.lockedUntil();
+            if (until != null) {
+                if (until.isAfter(now)) return true;
+                unlock(user.getId(), a);
+                return false;
+            }
+        }
+        if (user.isAccountNonLocked()) return false;
+        if (user.getLockedUntil() == null) return true;          // admin lock
+        if (user.getLockedUntil().isAfter(now)) return true;
+        // timed lock elapsed: let the user in and persist the unlock with the next flush
+        markDirty(user.getId(), new PendingWrite(0, user.getLastFailedLoginAt(), true, null));
+        return false;
+    }
+
+    /** Counts one failed attempt; locks the account once the window threshold is reached. */
+    public void recordFailure(User user) {
+        if (!enabled) return;
+        long now = clock.millis();
+        Attempts a = attempts.computeIfAbsent(user.getId(), id -> Attempts.seed(user, now, windowMillis));
+        PendingWrite write;
+        synchronized (a) {
+            int failures = a.increment(now, windowMillis);
+            Instant lastFailed = Instant.ofEpochMilli(now);
+            if (failures >= maxFailures && a.lockedUntil == null) {
+                a.lockedUntil = lastFailed.plus(lockDuration);
+                log.info("Locking user id={} until {} after {} failed logins", user.getId(), a.lockedUntil, failures);
+            }
+            write = new PendingWrite(failures, lastFailed, a.lockedUntil == null, a.lockedUntil);
+        }
+        markDirty(user.getId(), write);
+    }
+
+    /** Clears failure state after a successful login; writes only if there was something to clear. */
+    public void recordSuccess(User user) {
+        if (!enabled) return;
+        Attempts removed = attempts.remove(user.getId());
+        if (removed != null || user.getFailedLoginCount() > 0) {
+            markDirty(user.getId(), new PendingWrite(0, user.getLastFailedLoginAt(), true, null));
+        }
+    }
+
+    /** Forgets in-memory state after an admin changed the lock flag directly. */
+    public void reset(Long userId) {
+        attempts.remove(userId);
+        dirty.remove(userId);
+    }
+
+    // ---------------------------------------------------------------------
+    // Background persistence (driven by HousekeepingJobs)
+    // ---------------------------------------------------------------------
+
+    /**
+     * Writes the latest state of every dirty user in a single JDBC batch.
+     * @return number of users written
+     */
+    public int flush() {
+        if (dirty.isEmpty()) return 0;
+        List<Map.Entry<Long, PendingWrite>> batch = new ArrayList<>(dirty.size());
+        dirty.forEach((id, w) -> batch.add(Map.entry(id, w)));
+
+        jdbc.batchUpdate(UPDATE_SQL, batch, batch.size(), (ps, e) -> {
+            PendingWrite w = e.getValue();
+            ps.setInt(1, w.failedCount());
+            ps.setTimestamp(2, toTimestamp(w.lastFailedAt()));
+            ps.setBoolean(3, w.nonLocked());
+            ps.setTimestamp(4, toTimestamp(w.lockedUntil()));
+            ps.setLong(5, e.getKey());
+        });
+        // keep entries that changed again while we were writing
+        batch.forEach(e -> dirty.remove(e.getKey(), e.getValue()));
+        return batch.size();
+    }
+
+    /**
+     * Clears timed lockouts that have elapsed (set-based) and drops idle in-memory counters.
+     * @return number of users unlocked in the DB
+     */
+    public int unlockExpired() {
+        long now = clock.millis();
+        attempts.entrySet().removeIf(e -> e.getValue().isIdle(now, windowMillis));
+        return jdbc.update(UNLOCK_EXPIRED_SQL, new Timestamp(now));
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.warn("Could not flush {} pending lockout updates on shutdown", dirty.size(), ex);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------
+
+    private void unlock(Long userId, Attempts a) {
+        if (attempts.remove(userId, a)) {
+            markDirty(userId, new PendingWrite(0, null, true, null));
+        }
+    }
+
+    private void markDirty(Long userId, PendingWrite write) {
+        dirty.put(userId, write);
+    }
+
+    private static Timestamp toTimestamp(Instant i) {
+        return i == null ? null : Timestamp.from(i);
+    }
+
+    /** Latest state to persist for one user (immutable so flush can compare-and-remove). */
+    private record PendingWrite(int failedCount, Instant lastFailedAt, boolean nonLocked, Instant lockedUntil) { }
+
+    /** Sliding-window counter: previous + current fixed window, weighted by overlap. */
+    private static final class Attempts {
+        private long windowStart;
+        private int previous;
+        private int current;
+        private volatile Instant lockedUntil;
+
+        static Attempts seed(User user, long now, long windowMillis) {
+            Attempts a = new Attempts();
+            a.windowStart = now - now % windowMillis;
+            Instant last = user.getLastFailedLoginAt();
+            // carry persisted failures over a restart only if they are still within the window
+            if (last != null && now - last.toEpochMilli() < windowMillis) {
+                a.previous = user.getFailedLoginCount();
+            }
+            if (!user.isAccountNonLocked() && user.getLockedUntil() != null) {
+                a.lockedUntil = user.getLockedUntil();
+            }
+            return a;
+        }
+
+        int increment(long now, long windowMillis) {
+            roll(now, windowMillis);
+            current++;
+            return estimate(now, windowMillis);
+        }
+
+        Instant lockedUntil() {
+            return lockedUntil;
+        }
+
+        synchronized boolean isIdle(long now, long windowMillis) {
+            Instant until = lockedUntil;
+            if (until != null && until.toEpochMilli() > now) return false;
+            return now - windowStart >= 2 * windowMillis;
+        }
+
+        private void roll(long now, long windowMillis) {
+            long start = now - now % windowMillis;
+            if (start == windowStart) return;
+            previous = (start - windowStart == windowMillis) ? current : 0;
+            current = 0;
+            windowStart = start;
+        }
+
+        private int estimate(long now, long windowMillis) {
+            double weight = 1.0 - (double) (now - windowStart) / windowMillis;
+            return (int) Math.ceil(previous * weight) + current;
+        }
+    }
+}
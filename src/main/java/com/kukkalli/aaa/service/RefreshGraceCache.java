@@ -0,0 +1,88 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.web.dto.AuthResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short-lived memory of refresh rotations, keyed by the hash of the token that was rotated.
+ * A client retrying {@code /auth/refresh} with the same old token from the same fingerprint
+ * (peer address + User-Agent) within {@code window} gets the response it already received, instead
+ * of a 401 (or a family revocation once past the reuse leeway). The caller passes the address the
+ * container resolved, not a raw X-Forwarded-For value, and checks the session is still live.
+ *
+ * Bounded by {@code max-entries}: when full, new rotations are simply not remembered until
+ * {@link #evictExpired()} makes room. Per instance; a retry landing on another node falls back
+ * to the normal rotate path.
+ */
+@Component
+public class RefreshGraceCache {
+
+    private record Entry(byte[] fingerprint, AuthResponse response, Instant expiresAt) { }
+
+    private final Duration window;
+    private final int maxEntries;
+    private final Clock clock;
+    private final Counter replays;
+    private final ConcurrentHashMap<ByteBuffer, Entry> entries = new ConcurrentHashMap<>();
+
+    public RefreshGraceCache(@Value("${security.jwt.refresh-token.grace.window:PT10S}") Duration window,
+                             @Value("${security.jwt.refresh-token.grace.max-entries:10000}") int maxEntries,
+                             Clock clock,
+                             MeterRegistry meters) {
+        this.window = Objects.requireNonNull(window);
+        this.maxEntries = maxEntries;
+        this.clock = Objects.requireNonNull(clock);
+        this.replays = Counter.builder("aaa.refresh_tokens.grace_replays")
+                .description("Refresh retries answered from the grace cache").register(meters);
+        meters.gaugeMapSize("aaa.refresh_tokens.grace_entries", List.of(), entries);
+    }
+
+    public boolean isEnabled() {
+        return !window.isZero() && !window.isNegative() && maxEntries > 0;
+    }
+
+    /** The response already returned for {@code oldTokenHash}, if within the window and from the same client. */
+    public Optional<AuthResponse> replay(byte[] oldTokenHash, String ipAddress, String userAgent) {
+        if (!isEnabled()) return Optional.empty();
+        Entry e = entries.get(ByteBuffer.wrap(oldTokenHash));
+        if (e == null || !e.expiresAt().isAfter(clock.instant())
+                || !MessageDigest.isEqual(e.fingerprint(), fingerprint(ipAddress, userAgent))) {
+            return Optional.empty();
+        }
+        replays.increment();
+        return Optional.of(e.response());
+    }
+
+    /** Remembers a committed rotation. */
+    public void remember(byte[] oldTokenHash, String ipAddress, String userAgent, AuthResponse response) {
+        if (!isEnabled() || entries.size() >= maxEntries) return;
+        entries.put(ByteBuffer.wrap(oldTokenHash.clone()),
+                new Entry(fingerprint(ipAddress, userAgent), response, clock.instant().plus(window)));
+    }
+
+    public void evictExpired() {
+        Instant now = clock.instant();
+        entries.values().removeIf(e -> !e.expiresAt().isAfter(now));
+    }
+
+    private static byte[] fingerprint(String ipAddress, String userAgent) {
+        return TokenService.sha256(ipAddress + '\n' + userAgent);
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
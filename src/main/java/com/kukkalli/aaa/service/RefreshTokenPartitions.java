@@ -0,0 +1,69 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.domain.partition.RangePartitionManager;
+import com.kukkalli.aaa.domain.partition.RangePartitionManager.Granularity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Optional RANGE partitioning of {@code refresh_tokens} on {@code expires_at}.
+ * When enabled, expired tokens are removed by dropping whole partitions once their range has
+ * passed, and {@link RefreshTokenPurger} only handles revoked rows.
+ * The table is partitioned RANGE on {@code UNIX_TIMESTAMP(expires_at)} the first time {@link #maintain}
+ * runs with partitioning enabled. A partitioned InnoDB table allows no foreign keys, and each of its
+ * unique keys must contain the partition column:
+ * <ul>
+ *   <li>The user FK is gone in every deployment (V15), the same policy as audit_log's actor FKs
+ *       (V11); UserService.delete removes a user's tokens explicitly, so deletes behave the same
+ *       partitioned or not.</li>
+ *   <li>The PK and {@code uk_refresh_tokens_token_hash} are widened to include expires_at only
+ *       here, in the partitioning rebuild; unpartitioned tables keep token hashes unique on their own.</li>
+ * </ul>
+ * Token lookups by hash carry the expiry embedded in the token, so they prune to one partition.
+ */
+@Service
+public class RefreshTokenPartitions {
+
+    /** Key changes MariaDB requires of a partitioned table, applied in the partitioning rebuild. */
+    private static final List<String> KEY_CHANGES = List.of(
+            "DROP PRIMARY KEY",
+            "ADD PRIMARY KEY (id, expires_at)",
+            "DROP INDEX uk_refresh_tokens_token_hash",
+            "ADD UNIQUE KEY uk_refresh_tokens_token_hash (token_hash, expires_at)");
+
+    private final boolean enabled;
+    private final int periodsAhead;
+    private final RangePartitionManager manager;
+    private final Clock clock;
+
+    public RefreshTokenPartitions(JdbcTemplate jdbc,
+                                  Clock clock,
+                                  @Value("${security.jwt.refresh-token.partitioning.enabled:false}") boolean enabled,
+                                  @Value("${security.jwt.refresh-token.partitioning.granularity:DAY}") Granularity granularity,
+                                  @Value("${security.jwt.refresh-token.partitioning.periods-ahead:10}") int periodsAhead) {
+        this.enabled = enabled;
+        this.periodsAhead = periodsAhead;
+        this.clock = Objects.requireNonNull(clock);
+        this.manager = new RangePartitionManager(Objects.requireNonNull(jdbc), "refresh_tokens", "expires_at", granularity, clock);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Partitions the table on first run, creates upcoming partitions and drops fully expired ones.
+     * @return names of dropped partitions
+     */
+    public List<String> maintain() {
+        if (!enabled) return List.of();
+        if (!manager.isPartitioned()) manager.partitionTable(periodsAhead, KEY_CHANGES);
+        manager.ensureAhead(periodsAhead);
+        return manager.dropBefore(clock.instant());
+    }
+}
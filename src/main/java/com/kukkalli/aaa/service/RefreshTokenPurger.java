@@ -0,0 +1,160 @@
+package com.kukkalli.aaa.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Continuous, throttled purge of dead refresh tokens:
+ * - expired tokens (skipped when the table is partitioned: whole partitions are dropped instead), and
+ * - revoked tokens whose revocation is older than the grace period (kept that long for reuse detection),
+ * - family denylist entries (stateless mode) that no token can outlive any more.
+ *
+ * Each chunk is one {@code DELETE ... LIMIT n} in its own short transaction, so row locks and undo
+ * stay bounded. A run stops when a chunk comes back short or after {@code max-chunks-per-run},
+ * so throughput is capped at {@code batch-size * max-chunks-per-run} rows per {@code interval}.
+ *
+ * Metrics: {@code aaa.refresh_tokens.purged} (counter, tag {@code reason}; rate = rows/sec) and
+ * {@code aaa.refresh_tokens.purge.lag} (gauge, seconds the oldest purgeable row has been waiting).
+ */
+@Service
+public class RefreshTokenPurger {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenPurger.class);
+
+    private static final String DELETE_EXPIRED_SQL =
+            "DELETE FROM refresh_tokens WHERE expires_at < ? LIMIT ?";
+    // revoked_at is only ever set together with revoked = 1; range on it uses idx_refresh_tokens_revoked_at
+    private static final String DELETE_REVOKED_SQL =
+            "DELETE FROM refresh_tokens WHERE revoked_at < ? LIMIT ?";
+    private static final String DELETE_DENYLIST_SQL =
+            "DELETE FROM refresh_family_denylist WHERE expires_at < ? LIMIT ?";
+    private static final String OLDEST_EXPIRED_SQL =
+            "SELECT MIN(expires_at) FROM refresh_tokens";
+    private static final String OLDEST_REVOKED_SQL =
+            "SELECT MIN(revoked_at) FROM refresh_tokens";
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final Clock clock;
+    private final boolean enabled;
+    private final boolean purgeExpired;
+    private final int batchSize;
+    private final int maxChunksPerRun;
+    private final Duration revokedGrace;
+
+    private final Counter expiredCounter;
+    private final Counter revokedCounter;
+    private final Counter denylistCounter;
+    private final AtomicLong expiredLagSeconds = new AtomicLong();
+    private final AtomicLong revokedLagSeconds = new AtomicLong();
+
+    /** Rows removed since the last {@link #drainTotals()} (for the periodic audit summary). */
+    private final AtomicLong expiredSinceDrain = new AtomicLong();
+    private final AtomicLong revokedSinceDrain = new AtomicLong();
+
+    public RefreshTokenPurger(JdbcTemplate jdbc,
+                              PlatformTransactionManager txManager,
+                              MeterRegistry meters,
+                              Clock clock,
+                              @Value("${security.jwt.refresh-token.purge.enabled:true}") boolean enabled,
+                              @Value("${security.jwt.refresh-token.partitioning.enabled:false}") boolean partitioned,
+                              @Value("${security.jwt.refresh-token.purge.batch-size:1000}") int batchSize,
+                              @Value("${security.jwt.refresh-token.purge.max-chunks-per-run:20}") int maxChunksPerRun,
+                              @Value("${security.jwt.refresh-token.purge.revoked-grace:PT24H}") Duration revokedGrace) {
+        if (batchSize <= 0 || maxChunksPerRun <= 0) {
+            throw new IllegalArgumentException("purge batch-size and max-chunks-per-run must be positive");
+        }
+        this.jdbc = Objects.requireNonNull(jdbc);
+        this.tx = new TransactionTemplate(Objects.requireNonNull(txManager));
+        this.clock = Objects.requireNonNull(clock);
+        this.enabled = enabled;
+        this.purgeExpired = !partitioned;
+        this.batchSize = batchSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.revokedGrace = Objects.requireNonNull(revokedGrace);
+
+        this.expiredCounter = Counter.builder("aaa.refresh_tokens.purged").tag("reason", "expired")
+                .description("Rows deleted by the refresh-token purge").register(meters);
+        this.revokedCounter = Counter.builder("aaa.refresh_tokens.purged").tag("reason", "revoked")
+                .description("Rows deleted by the refresh-token purge").register(meters);
+        this.denylistCounter = Counter.builder("aaa.refresh_tokens.purged").tag("reason", "denylist")
+                .description("Rows deleted by the refresh-token purge").register(meters);
+        Gauge.builder("aaa.refresh_tokens.purge.lag", expiredLagSeconds, AtomicLong::get).tag("reason", "expired")
+                .baseUnit("seconds").description("Age of the oldest purgeable refresh token").register(meters);
+        Gauge.builder("aaa.refresh_tokens.purge.lag", revokedLagSeconds, AtomicLong::get).tag("reason", "revoked")
+                .baseUnit("seconds").description("Age of the oldest purgeable refresh token").register(meters);
+    }
+
+    /**
+     * One throttled purge run (expired first, then revoked past grace, then stale denylist entries).
+     * @return rows deleted in this run
+     */
+    public long purge() {
+        if (!enabled) return 0;
+        Instant now = clock.instant();
+        Instant revokedCutoff = now.minus(revokedGrace);
+
+        long expired = purgeExpired ? purgeChunks(DELETE_EXPIRED_SQL, now, maxChunksPerRun) : 0;
+        int chunksLeft = maxChunksPerRun - (int) Math.ceil((double) expired / batchSize);
+        long revoked = chunksLeft > 0 ? purgeChunks(DELETE_REVOKED_SQL, revokedCutoff, chunksLeft) : 0;
+        chunksLeft -= (int) Math.ceil((double) revoked / batchSize);
+        long denied = chunksLeft > 0 ? purgeChunks(DELETE_DENYLIST_SQL, now, chunksLeft) : 0;
+
+        expiredCounter.increment(expired);
+        revokedCounter.increment(revoked);
+        denylistCounter.increment(denied);
+        expiredSinceDrain.addAndGet(expired);
+        revokedSinceDrain.addAndGet(revoked);
+
+        if (purgeExpired) expiredLagSeconds.set(lagSeconds(OLDEST_EXPIRED_SQL, now));
+        revokedLagSeconds.set(lagSeconds(OLDEST_REVOKED_SQL, revokedCutoff));
+
+        if (expired + revoked + denied > 0) {
+            log.debug("Purged {} expired and {} revoked refresh tokens, {} denylist entries", expired, revoked, denied);
+        }
+        return expired + revoked + denied;
+    }
+
+    /** Rows purged since the previous call, as {expired, revoked}; resets the totals. */
+    public long[] drainTotals() {
+        return new long[]{expiredSinceDrain.getAndSet(0), revokedSinceDrain.getAndSet(0)};
+    }
+
+    // ---------------------------------------------------------------------
+    // Internals
+    // ---------------------------------------------------------------------
+
+    private long purgeChunks(String sql, Instant cutoff, int maxChunks) {
+        Timestamp ts = Timestamp.from(cutoff);
+        long total = 0;
+        for (int i = 0; i < maxChunks; i++) {
+            Integer n = tx.execute(status -> jdbc.update(sql, ts, batchSize));
+            int deleted = n == null ? 0 : n;
+            total += deleted;
+            if (deleted < batchSize) break;
+        }
+        return total;
+    }
+
+    /** Seconds the oldest row has been eligible for deletion (past {@code cutoff}); 0 when caught up. */
+    private long lagSeconds(String sql, Instant cutoff) {
+        Timestamp oldest = jdbc.queryForObject(sql, Timestamp.class);
+        if (oldest == null || !oldest.toInstant().isBefore(cutoff)) return 0;
+        return Duration.between(oldest.toInstant(), cutoff).toSeconds();
+    }
+}
@@ -1,41 +1,109 @@
 package com.kukkalli.aaa.service;
 
 import com.kukkalli.aaa.domain.entity.RefreshToken;
+import com.kukkalli.aaa.domain.entity.RefreshToken.RevokeReason;
 import com.kukkalli.aaa.domain.entity.User;
 import com.kukkalli.aaa.domain.repository.RefreshTokenRepository;
+import com.kukkalli.aaa.domain.repository.RevokedRefreshFamilyRepository;
 import com.kukkalli.aaa.domain.repository.UserRepository;
+import com.kukkalli.aaa.security.jwt.RefreshTokenCodec;
+import com.kukkalli.aaa.security.jwt.StatelessRefreshTokenCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Base64;
-import java.util.HexFormat;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 
+/**
+ * Refresh-token lifecycle. Two modes ({@code security.jwt.refresh-token.mode}):
+ * - OPAQUE (default): one {@code refresh_tokens} row per token; single-use rotation with reuse
+ *   detection, per-device listing and instant revocation.
+ * - JWE: self-contained encrypted tokens ({@link StatelessRefreshTokenCodec}); login and refresh
+ *   write nothing. Revocation is per user (refresh epoch) or per family (denylist); tokens are
+ *   not single-use and sessions cannot be listed.
+ * Both token kinds are accepted in either mode and rotated into the configured one,
+ * so switching modes never logs anybody out. In OPAQUE mode a JWE token is single-use too:
+ * rotating it denylists its family.
+ */
 @Service
 public class TokenService {
 
+    public enum Mode { OPAQUE, JWE }
+
+    private static final Logger log = LoggerFactory.getLogger(TokenService.class);
+
+    /** Thread-confined digest, reused across calls ({@code digest()} resets it). */
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    /**
+     * One independently seeded DRBG per request thread: no lock shared across threads,
+     * each instance reseeds itself from the system entropy source.
+     */
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(() -> {
+        try {
+            return SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("DRBG not available", e);
+        }
+    });
+
     private final RefreshTokenRepository refreshTokenRepo;
     private final UserRepository userRepo;
     private final Duration refreshTtl;
+    private final Duration reuseLeeway;
+    private final int maxActivePerUser;
     private final Clock clock;
-    private final SecureRandom secureRandom = new SecureRandom();
+    private final AuditService auditService;
+    private final RefreshTokenCodec codec;
+    private final Mode mode;
+    private final StatelessRefreshTokenCodec statelessCodec;
+    private final RevokedRefreshFamilyRepository revokedFamilyRepo;
 
     public TokenService(RefreshTokenRepository refreshTokenRepo,
                         UserRepository userRepo,
+                        RevokedRefreshFamilyRepository revokedFamilyRepo,
                         @Value("${security.jwt.refresh-token.ttl:P7D}") Duration refreshTtl,
-                        Clock clock) {
+                        @Value("${security.jwt.refresh-token.reuse-leeway:PT5S}") Duration reuseLeeway,
+                        @Value("${security.jwt.refresh-token.max-active-per-user:20}") int maxActivePerUser,
+                        Clock clock,
+                        AuditService auditService,
+                        RefreshTokenCodec codec,
+                        StatelessRefreshTokenCodec statelessCodec,
+                        @Value("${security.jwt.refresh-token.mode:OPAQUE}") Mode mode) {
         this.refreshTokenRepo = Objects.requireNonNull(refreshTokenRepo);
         this.userRepo = Objects.requireNonNull(userRepo);
         this.refreshTtl = Objects.requireNonNull(refreshTtl);
+        this.reuseLeeway = Objects.requireNonNull(reuseLeeway);
+        this.maxActivePerUser = maxActivePerUser;
         this.clock = Objects.requireNonNull(clock);
+        this.auditService = Objects.requireNonNull(auditService);
+        this.codec = Objects.requireNonNull(codec);
+        this.statelessCodec = Objects.requireNonNull(statelessCodec);
+        this.revokedFamilyRepo = Objects.requireNonNull(revokedFamilyRepo);
+        this.mode = Objects.requireNonNull(mode);
     }
 
     // ------------------------------------------------------------------
@@ -43,20 +111,34 @@ public class TokenService {
     // ------------------------------------------------------------------
 
     /**
-     * Issues a new opaque refresh token for a user and persists its hash.
+     * Issues a new refresh token for a user, starting a new family / device session.
+     * OPAQUE: persists its hash; if the user is at {@code max-active-per-user}, the oldest tokens are
+     * revoked in the same transaction to make room. JWE: no DB write.
      * @return the raw refresh token string (caller must return it to a client).
      */
     @Transactional
     public String issue(User user, String ipAddress, String userAgent) {
+        if (mode == Mode.OPAQUE) enforceSessionCap(user.getId());
+        return issue(user, UUID.randomUUID(), null, ipAddress, userAgent);
+    }
+
+    private String issue(User user, UUID familyId, Long parentId, String ipAddress, String userAgent) {
         Instant now = clock.instant();
-        String raw = generateOpaqueToken();          // raw to give to a client
-        String hash = sha256(raw);                   // only hash stored
+        if (mode == Mode.JWE) {
+            return statelessCodec.encode(new StatelessRefreshTokenCodec.Claims(
+                    user.getId(), familyId, user.getRefreshEpoch(), now.plus(refreshTtl).truncatedTo(ChronoUnit.SECONDS)));
+        }
+        Instant expiresAt = now.plus(refreshTtl).truncatedTo(ChronoUnit.SECONDS);   // embedded in the token
+        String raw = generateOpaqueToken(expiresAt); // raw to give to a client
+        byte[] hash = sha256(raw);                   // only hash stored
 
         RefreshToken entity = RefreshToken.builder()
                 .user(user)
+                .familyId(familyId)
+                .parentId(parentId)
                 .tokenHash(hash)
                 .issuedAt(now)
-                .expiresAt(now.plus(refreshTtl))
+                .expiresAt(expiresAt)
                 .revoked(false)
                 .ipAddress(ipAddress)
                 .userAgent(userAgent)
@@ -72,71 +154,191 @@ public class TokenService {
      */
     @Transactional(readOnly = true)
     public Optional<User> validateAndGetUser(String rawToken) {
-        String hash = sha256(rawToken);
-        return refreshTokenRepo.findByTokenHash(hash)
+        if (!codec.isAcceptable(rawToken, clock.instant())) return Optional.empty();
+        byte[] hash = sha256(rawToken);
+        return refreshTokenRepo.findByToken(hash, codec.expiresAt(rawToken).orElse(null))
                 .filter(rt -> !rt.isRevoked() && !rt.isExpired())
                 .map(RefreshToken::getUser);
     }
 
+    /**
+     * True while a token can still be rotated: an unrevoked, unexpired opaque row, or a stateless
+     * token whose family is not denied and whose epoch is current. Reads only.
+     */
+    @Transactional(readOnly = true)
+    public boolean isLive(String rawToken) {
+        Instant now = clock.instant();
+        if (StatelessRefreshTokenCodec.looksLikeJwe(rawToken)) {
+            return statelessCodec.decode(rawToken, now)
+                    .filter(c -> !revokedFamilyRepo.existsByFamilyIdAndUserId(c.familyId(), c.userId()))
+                    .flatMap(c -> userRepo.findById(c.userId()).map(u -> u.getRefreshEpoch() == c.epoch()))
+                    .orElse(false);
+        }
+        return validateAndGetUser(rawToken).isPresent();
+    }
+
     /**
      * Rotates (single-use) a refresh token:
-     * - marks the old one revoked
-     * - issues a brand new one and returns it
+     * - revokes the old one with a conditional UPDATE; the affected-row count picks the single winner
+     *   among concurrent callers presenting the same token
+     * - loads the owner (with roles) and inserts the replacement
+     * - the replacement joins the old token's family with the old token as parent
+     * Presenting a token that was rotated more than {@code reuse-leeway} ago while still unexpired
+     * is treated as reuse (stolen or replayed token): the whole family is revoked in one statement.
+     * The leeway keeps losers of a concurrent rotation race from revoking the winner's new token.
+     * Tokens revoked by sign-out or the session cap are only rejected ({@link RevokeReason}).
+     * Malformed, expired or forged tokens are rejected by {@link RefreshTokenCodec} without a query.
+     * Stateless (JWE) tokens are handled by {@link #rotateStateless}.
      */
     @Transactional
-    public Optional<String> rotate(String rawToken, String ipAddress, String userAgent) {
-        String oldHash = sha256(rawToken);
-        return refreshTokenRepo.findByTokenHash(oldHash)
-                .filter(rt -> !rt.isRevoked() && !rt.isExpired())
-                .map(rt -> {
-                    // revoke old
-                    rt.revoke();
-                    refreshTokenRepo.save(rt);
-                    // issue new
-                    return issue(rt.getUser(), ipAddress, userAgent);
-                });
+    public Optional<RotatedToken> rotate(String rawToken, String ipAddress, String userAgent) {
+        Instant now = clock.instant();
+        if (StatelessRefreshTokenCodec.looksLikeJwe(rawToken)) return rotateStateless(rawToken, ipAddress, userAgent, now);
+        if (!codec.isAcceptable(rawToken, now)) return Optional.empty();
+        byte[] oldHash = sha256(rawToken);
+        Instant expiresAt = codec.expiresAt(rawToken).orElse(null);   // null: legacy token, no pruning
+        if (refreshTokenRepo.revokeIfActive(oldHash, expiresAt, now) != 1) {
+            refreshTokenRepo.findRevokedFamilyId(oldHash, expiresAt, now, now.minus(reuseLeeway))
+                    .ifPresent(this::revokeReusedFamily);
+            return Optional.empty();
+        }
+        return refreshTokenRepo.findWithUserByToken(oldHash, expiresAt)
+                .map(old -> new RotatedToken(old.getUser(),
+                        issue(old.getUser(), old.getFamilyId(), old.getId(), ipAddress, userAgent)));
     }
 
     /**
-     * Revokes ALL refresh tokens for a user (e.g., on password change or logout-all).
-     * @return number of tokens deleted
+     * Stateless rotation: decrypt, then check the user's epoch and the family denylist
+     * (one PK probe). JWE mode reads only; the replacement stays in the same family. In OPAQUE mode
+     * the token is consumed by denylisting its family, whose INSERT IGNORE picks the single winner
+     * among concurrent callers (without it a leaked JWE token could mint opaque sessions until it
+     * expires); the opaque replacement starts a new family, as the old one is now denied.
+     */
+    private Optional<RotatedToken> rotateStateless(String rawToken, String ipAddress, String userAgent, Instant now) {
+        return statelessCodec.decode(rawToken, now)
+                .filter(c -> !revokedFamilyRepo.existsByFamilyIdAndUserId(c.familyId(), c.userId()))
+                .flatMap(c -> userRepo.findOneWithRolesById(c.userId())
+                        .filter(u -> u.getRefreshEpoch() == c.epoch())
+                        .filter(u -> mode == Mode.JWE
+                                || revokedFamilyRepo.deny(uuidBytes(c.familyId()), u.getId(), now.plus(refreshTtl)) == 1)
+                        .map(u -> new RotatedToken(u, issue(u, mode == Mode.JWE ? c.familyId() : UUID.randomUUID(),
+                                null, ipAddress, userAgent))));
+    }
+
+    /**
+     * Active sessions (one live token per family/device) of a user, newest first.
+     * Only opaque tokens can be listed; stateless ones leave no trace.
+     */
+    @Transactional(readOnly = true)
+    public List<RefreshToken> listSessions(String username) {
+        return refreshTokenRepo.findActiveByUserId(requireUserId(username), clock.instant());
+    }
+
+    /**
+     * Revokes one device session of a user: all live opaque tokens of the family, plus a denylist
+     * entry that outlives every stateless token the family can still have (written in both modes,
+     * so tokens minted before a mode switch are covered too).
+     * Only families with an opaque row of this user qualify; anything else is a no-op, so callers
+     * cannot grow the denylist with made-up ids. Stateless families are revoked with
+     * {@link #revokeSessionOf(String, String)}.
+     * @return number of tokens revoked; in JWE mode plus 1 if the family was newly denied (0 = not found)
      */
     @Transactional
-    public long revokeAllForUser(String username) {
-        var user = userRepo.findByUsernameIgnoreCase(username)
-                .orElseThrow(() -> new IllegalArgumentException("User not found: " + username));
-        return refreshTokenRepo.deleteByUser(user);
+    public int revokeSession(String username, UUID familyId) {
+        Long userId = requireUserId(username);
+        Instant now = clock.instant();
+        int revoked = refreshTokenRepo.revokeFamilyOfUser(familyId, userId, now);
+        if (revoked == 0 && !refreshTokenRepo.existsByFamilyIdAndUserId(familyId, userId)) return 0;
+        return deny(familyId, userId, revoked, now);
     }
 
     /**
-     * Deletes expired tokens (housekeeping job).
-     * @return number of tokens removed
+     * Revokes the session a refresh token belongs to, given the token itself (either kind).
+     * The token must be genuine (MAC / decryption) and belong to {@code username}; this is the
+     * only way to end a stateless session short of logout-all, since those cannot be listed.
+     * @return as {@link #revokeSession(String, UUID)}; 0 if the token is invalid or not the user's
      */
     @Transactional
-    public long cleanupExpired() {
-        return refreshTokenRepo.deleteByExpiresAtBefore(clock.instant());
+    public int revokeSessionOf(String username, String rawToken) {
+        Long userId = requireUserId(username);
+        Instant now = clock.instant();
+        if (StatelessRefreshTokenCodec.looksLikeJwe(rawToken)) {
+            return statelessCodec.decode(rawToken, now)
+                    .filter(c -> c.userId() == userId)
+                    .map(c -> deny(c.familyId(), userId,
+                            refreshTokenRepo.revokeFamilyOfUser(c.familyId(), userId, now), now))
+                    .orElse(0);
+        }
+        if (!codec.isAcceptable(rawToken, now)) return 0;
+        return refreshTokenRepo.findByToken(sha256(rawToken), codec.expiresAt(rawToken).orElse(null))
+                .filter(rt -> rt.getUser().getId().equals(userId))
+                .map(rt -> revokeSession(username, rt.getFamilyId()))
+                .orElse(0);
+    }
+
+    /**
+     * Revokes ALL refresh tokens for a user (e.g., on password change or logout-all):
+     * deletes the opaque rows and bumps the refresh epoch, which invalidates every stateless token.
+     * @return number of opaque tokens deleted
+     */
+    @Transactional
+    public long revokeAllForUser(String username) {
+        Long userId = requireUserId(username);
+        userRepo.bumpRefreshEpoch(userId);
+        return refreshTokenRepo.deleteAllByUserId(userId);
+    }
+
+    public Mode mode() {
+        return mode;
     }
 
+    /** Result of a successful rotation: the token owner (roles loaded) and the new raw token. */
+    public record RotatedToken(User user, String refreshToken) { }
+
     // ------------------------------------------------------------------
     // Helpers
     // ------------------------------------------------------------------
 
-    private String generateOpaqueToken() {
-        // 256-bit random, Base64 URL-safe without padding, prefixed with a short version for UX
+    /** Rotation replaces a token one-for-one, so only new families (logins) count against the cap. */
+    private void enforceSessionCap(Long userId) {
+        if (maxActivePerUser <= 0) return;
+        userRepo.lockById(userId);   // concurrent logins of one user evict one at a time
+        long live = refreshTokenRepo.countUnrevokedByUserId(userId);
+        if (live < maxActivePerUser) return;
+        int evicted = refreshTokenRepo.revokeOldestUnrevoked(userId,
+                (int) (live - maxActivePerUser + 1), clock.instant());
+        log.debug("Session cap reached for user {}; revoked {} oldest refresh token(s)", userId, evicted);
+    }
+
+    private int deny(UUID familyId, Long userId, int revoked, Instant now) {
+        int denied = revokedFamilyRepo.deny(uuidBytes(familyId), userId, now.plus(refreshTtl));
+        return mode == Mode.JWE ? revoked + denied : revoked;
+    }
+
+    private void revokeReusedFamily(UUID familyId) {
+        int revoked = refreshTokenRepo.revokeFamily(familyId, clock.instant(), RevokeReason.REUSE);
+        log.warn("Refresh token reuse detected; revoked family {} ({} live tokens)", familyId, revoked);
+        auditService.auditSystem("AUTH_REFRESH_REUSE",
+                Map.of("familyId", familyId.toString(), "revoked", revoked));
+    }
+
+    private Long requireUserId(String username) {
+        return userRepo.findIdByUsername(username)
+                .orElseThrow(() -> new IllegalArgumentException("User not found: " + username));
+    }
+
+    private String generateOpaqueToken(Instant expiresAt) {
+        // 256-bit random body; key id, expiry and a MAC tag make it verifiable without the DB
         byte[] bytes = new byte[32];
-        secureRandom.nextBytes(bytes);
-        String body = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
-        // optional: short prefix for quick recognition
-        return "rt_" + body;
+        RANDOM.get().nextBytes(bytes);
+        return codec.encode(bytes, expiresAt);
     }
 
-    private static String sha256(String value) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(value.getBytes(StandardCharsets.UTF_8));
-            return HexFormat.of().formatHex(digest);
-        } catch (Exception e) {
-            throw new IllegalStateException("Unable to hash refresh token", e);
-        }
+    private static byte[] uuidBytes(UUID id) {
+        return ByteBuffer.allocate(16).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).array();
+    }
+
+    static byte[] sha256(String value) {
+        return SHA256.get().digest(value.getBytes(StandardCharsets.UTF_8));
     }
 }
@@ -2,8 +2,10 @@ package com.kukkalli.aaa.service;
 
 import com.kukkalli.aaa.domain.entity.Role;
 import com.kukkalli.aaa.domain.entity.User;
+import com.kukkalli.aaa.domain.repository.RefreshTokenRepository;
 import com.kukkalli.aaa.domain.repository.RoleRepository;
 import com.kukkalli.aaa.domain.repository.UserRepository;
+import com.kukkalli.aaa.security.password.BreachedPasswordChecker;
 import com.kukkalli.aaa.web.dto.CreateUserRequest;
 import com.kukkalli.aaa.web.dto.UpdateUserRequest;
 import jakarta.persistence.EntityNotFoundException;
@@ -24,15 +26,24 @@ public class UserService {
     private final RoleRepository roleRepo;
     private final PasswordEncoder passwordEncoder;
     private final AuditService auditService;
+    private final LoginAttemptService loginAttemptService;
+    private final BreachedPasswordChecker breachedPasswords;
+    private final RefreshTokenRepository refreshTokenRepo;
 
     public UserService(UserRepository userRepo,
                        RoleRepository roleRepo,
                        PasswordEncoder passwordEncoder,
-                       AuditService auditService) {
+                       AuditService auditService,
+                       LoginAttemptService loginAttemptService,
+                       BreachedPasswordChecker breachedPasswords,
+                       RefreshTokenRepository refreshTokenRepo) {
         this.userRepo = Objects.requireNonNull(userRepo);
         this.roleRepo = Objects.requireNonNull(roleRepo);
         this.passwordEncoder = Objects.requireNonNull(passwordEncoder);
         this.auditService = Objects.requireNonNull(auditService);
+        this.loginAttemptService = Objects.requireNonNull(loginAttemptService);
+        this.breachedPasswords = Objects.requireNonNull(breachedPasswords);
+        this.refreshTokenRepo = Objects.requireNonNull(refreshTokenRepo);
     }
 
     // ---------------------------------------------------------------------
@@ -65,6 +76,8 @@ public class UserService {
         if (userRepo.existsByEmailIgnoreCase(req.email())) {
             throw new IllegalArgumentException("Email already exists: " + req.email());
         }
+        // Reject passwords from known breaches (local Bloom filter; no network)
+        breachedPasswords.ensureNotBreached(req.password());
 
         var user = User.builder()
                 .username(req.username())
@@ -130,7 +143,11 @@ public class UserService {
             changed = true;
         }
         if (req.accountNonLocked() != null && user.isAccountNonLocked() != req.accountNonLocked()) {
+            // admin lock/unlock supersedes any timed lockout
             user.setAccountNonLocked(req.accountNonLocked());
+            user.setLockedUntil(null);
+            user.setFailedLoginCount(0);
+            loginAttemptService.reset(id);
             changed = true;
         }
         if (req.accountNonExpired() != null && user.isAccountNonExpired() != req.accountNonExpired()) {
@@ -177,6 +194,8 @@ public class UserService {
         if (!userRepo.existsById(id)) {
             throw new EntityNotFoundException("User not found: " + id);
         }
+        // explicit: refresh_tokens has no FK cascade (V15)
+        refreshTokenRepo.deleteAllByUserId(id);
         userRepo.deleteById(id);
         auditService.audit("USER_DELETE", Map.of("id", id));
     }
@@ -0,0 +1,117 @@
+package com.kukkalli.aaa.web.controller;
+
+import com.kukkalli.aaa.service.AuditExportService;
+import com.kukkalli.aaa.service.AuditIntegrityService;
+import com.kukkalli.aaa.service.AuditQueryService;
+import com.kukkalli.aaa.service.AuditService;
+import com.kukkalli.aaa.service.AuditStatsService;
+import com.kukkalli.aaa.web.dto.AuditPage;
+import com.kukkalli.aaa.web.dto.AuditProof;
+import com.kukkalli.aaa.web.dto.AuditStats;
+import com.kukkalli.aaa.web.dto.AuditVerification;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/audit")
+@RequiredArgsConstructor
+@Tag(name = "Audit", description = "Audit log queries")
+public class AuditController {
+
+    private final AuditQueryService auditQueryService;
+    private final AuditExportService auditExportService;
+    private final AuditStatsService auditStatsService;
+    private final AuditIntegrityService auditIntegrityService;
+    private final AuditService auditService;
+
+    @GetMapping
+    @PreAuthorize("hasAuthority('audit.read')")
+    @Operation(summary = "Search audit events, newest first (keyset-paged via 'cursor')")
+    public AuditPage search(@RequestParam(required = false) Long actorUserId,
+                            @RequestParam(required = false) Long actorClientId,
+                            @RequestParam(required = false) String action,
+                            @RequestParam(required = false) String targetType,
+                            @RequestParam(required = false) String targetId,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                            @RequestParam(required = false) String cursor,
+                            @RequestParam(required = false) Integer limit) {
+        var filter = new AuditQueryService.Filter(actorUserId, actorClientId, action, targetType, targetId, from, to);
+        return auditQueryService.search(filter, cursor, limit);
+    }
+
+    @GetMapping("/export")
+    @PreAuthorize("hasAuthority('audit.read')")
+    @Operation(summary = "Stream all audit events in [from, to) as NDJSON or CSV, gzip-compressed by default")
+    public void export(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                       @RequestParam(required = false) Long actorUserId,
+                       @RequestParam(required = false) Long actorClientId,
+                       @RequestParam(required = false) String action,
+                       @RequestParam(required = false) String targetType,
+                       @RequestParam(required = false) String targetId,
+                       @RequestParam(defaultValue = "NDJSON") AuditExportService.Format format,
+                       @RequestParam(defaultValue = "true") boolean gzip,
+                       HttpServletResponse response) throws IOException {
+        var filter = new AuditQueryService.Filter(actorUserId, actorClientId, action, targetType, targetId, from, to);
+        try (var export = auditExportService.open(filter, format, gzip)) {
+            String ext = (format == AuditExportService.Format.NDJSON ? ".ndjson" : ".csv") + (gzip ? ".gz" : "");
+            String type = gzip ? "application/gzip"
+                    : format == AuditExportService.Format.NDJSON ? "application/x-ndjson" : "text/csv";
+            response.setContentType(type);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename("audit-" + from.getEpochSecond() + "-" + to.getEpochSecond() + ext)
+                    .build().toString());
+            // audit the request up front, so an export cut off mid-stream still leaves a trace
+            auditService.audit("AUDIT_EXPORT_START", AuditExportService.describe(filter, format));
+            boolean completed = false;
+            try {
+                export.writeTo(response.getOutputStream());
+                completed = true;
+            } finally {
+                auditService.audit("AUDIT_EXPORT",
+                        AuditExportService.describe(filter, format, export.rows(), completed));
+            }
+        }
+    }
+
+    @GetMapping("/stats")
+    @PreAuthorize("hasAuthority('audit.read')")
+    @Operation(summary = "Event counts per minute, per hour or top IPs, from rollups (default: last hour)")
+    public AuditStats stats(@RequestParam(required = false) String action,
+                            @RequestParam(defaultValue = "MINUTE") AuditStatsService.By by,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                            @RequestParam(required = false) Integer top) {
+        return auditStatsService.stats(action, by, from, to, top);
+    }
+
+    @GetMapping("/{id}/proof")
+    @PreAuthorize("hasAuthority('audit.read')")
+    @Operation(summary = "Merkle inclusion proof of one event in its batch, with the batch's chain link")
+    public AuditProof proof(@PathVariable long id) {
+        return auditIntegrityService.proof(id);
+    }
+
+    @GetMapping("/verify")
+    @PreAuthorize("hasAuthority('audit.read')")
+    @Operation(summary = "Check the hash chain and re-hash the rows of all batches in [from, to) (at most 31 days)")
+    public AuditVerification verify(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                    @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        AuditVerification result = auditIntegrityService.verify(from, to);
+        auditService.audit("AUDIT_VERIFY", Map.of("from", from.toString(), "to", to.toString(),
+                "batches", result.batches(), "valid", result.valid()));
+        return result;
+    }
+}
@@ -1,5 +1,7 @@
 package com.kukkalli.aaa.web.controller;
 
+import com.kukkalli.aaa.security.ratelimit.LoginRateLimiter;
+import com.kukkalli.aaa.security.ratelimit.RateLimitDecision;
 import com.kukkalli.aaa.service.AuthService;
 import com.kukkalli.aaa.web.dto.AuthRequest;
 import com.kukkalli.aaa.web.dto.AuthResponse;
@@ -26,16 +28,25 @@ import java.util.UUID;
 public class AuthController {
 
     private final AuthService authService;
+    private final LoginRateLimiter loginRateLimiter;
 
     @PostMapping("/login")
-    public ResponseEntity<AuthResponse> login(@Valid @RequestBody AuthRequest request,
-                                              HttpServletRequest http) {
+    public ResponseEntity<?> login(@Valid @RequestBody AuthRequest request,
+                                   HttpServletRequest http) {
+        // Throttle before any DB lookup or BCrypt work
+        RateLimitDecision limit = loginRateLimiter.tryAcquire(clientIp(http), request.usernameOrEmail());
+        if (!limit.allowed()) {
+            return ResponseEntity.status(429)
+                    .headers(limit.toHeaders())
+                    .body(Map.of("error", "too_many_login_attempts"));
+        }
+
         AuthResponse response = authService.login(
                 request.usernameOrEmail(),
                 request.password(),
                 http
         );
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok().headers(limit.toHeaders()).body(response);
     }
 
     @PostMapping("/refresh")
@@ -72,13 +83,12 @@ public class AuthController {
         // read B3/traceparent headers here for correlation.
     }
 
+    /**
+     * The peer address as resolved by the container. X-Forwarded-For is honoured only when the
+     * immediate peer is a trusted proxy (server.forward-headers-strategy / remoteip.internal-proxies),
+     * so a client cannot pick its own rate-limit key by sending the header itself.
+     */
     private static String clientIp(HttpServletRequest http) {
-        String h = http.getHeader("X-Forwarded-For");
-        if (StringUtils.hasText(h)) {
-            // take the first IP in the list
-            int comma = h.indexOf(',');
-            return comma > 0 ? h.substring(0, comma).trim() : h.trim();
-        }
         return http.getRemoteAddr();
     }
 
@@ -0,0 +1,53 @@
+package com.kukkalli.aaa.web.controller;
+
+import com.kukkalli.aaa.service.TokenService;
+import com.kukkalli.aaa.web.dto.RefreshTokenRequest;
+import com.kukkalli.aaa.web.dto.SessionResponse;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/v1/sessions")
+@RequiredArgsConstructor
+@Tag(name = "Sessions", description = "Signed-in devices of the current user")
+public class SessionController {
+
+    private final TokenService tokenService;
+
+    @GetMapping
+    @PreAuthorize("isAuthenticated()")
+    @Operation(summary = "List active sessions (one per device / refresh-token family)")
+    public List<SessionResponse> list(Authentication auth) {
+        return tokenService.listSessions(auth.getName()).stream()
+                .map(t -> new SessionResponse(t.getFamilyId(), t.getIssuedAt(), t.getExpiresAt(),
+                        t.getIpAddress(), t.getUserAgent()))
+                .toList();
+    }
+
+    @DeleteMapping("/{familyId}")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(summary = "Sign out one device (revokes its refresh-token family)")
+    public ResponseEntity<Void> revoke(Authentication auth, @PathVariable UUID familyId) {
+        return tokenService.revokeSession(auth.getName(), familyId) > 0
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/revoke")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(summary = "Sign out the device holding this refresh token (works for stateless tokens too)")
+    public ResponseEntity<Void> revokeByToken(Authentication auth, @Valid @RequestBody RefreshTokenRequest request) {
+        return tokenService.revokeSessionOf(auth.getName(), request.refreshToken()) > 0
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
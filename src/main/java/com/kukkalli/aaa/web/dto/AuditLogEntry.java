@@ -0,0 +1,30 @@
+package com.kukkalli.aaa.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Schema(name = "AuditLogEntry", description = "One audit event (actors by id only)")
+public record AuditLogEntry(
+        Long id,
+
+        @Schema(description = "Event time (UTC ISO-8601)")
+        Instant occurredAt,
+
+        @Schema(description = "users.id of the acting user, if any")
+        Long actorUserId,
+
+        @Schema(description = "api_clients.id of the acting client, if any")
+        Long actorClientId,
+
+        @Schema(example = "AUTH_LOGIN")
+        String action,
+
+        String targetType,
+        String targetId,
+        String requestId,
+        String ipAddress,
+        String userAgent,
+        Map<String, Object> details
+) {}
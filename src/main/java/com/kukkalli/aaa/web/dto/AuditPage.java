@@ -0,0 +1,14 @@
+package com.kukkalli.aaa.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(name = "AuditPage", description = "A page of audit events, newest first")
+public record AuditPage(
+
+        List<AuditLogEntry> items,
+
+        @Schema(description = "Pass as 'cursor' to get the next (older) page; null on the last page")
+        String nextCursor
+) {}
@@ -0,0 +1,47 @@
+package com.kukkalli.aaa.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(name = "AuditProof", description = "Merkle inclusion proof of one audit event in its batch; hashes are hex SHA-256")
+public record AuditProof(
+
+        long eventId,
+
+        @Schema(description = "Position of the batch in the hash chain")
+        long batchSeq,
+
+        @Schema(description = "Index of the event among the batch's rows, ordered by id")
+        int leafIndex,
+
+        int leafCount,
+
+        @Schema(description = "Leaf hash of the event row as stored")
+        String leaf,
+
+        @Schema(description = "Sibling hashes from the leaf up to the root")
+        List<Step> path,
+
+        @Schema(description = "Root stored for the batch")
+        String merkleRoot,
+
+        @Schema(description = "Chain hash of the previous batch")
+        String prevHash,
+
+        @Schema(description = "H(0x02 || prevHash || merkleRoot)")
+        String chainHash,
+
+        @Schema(description = "Whether leaf + path lead to the stored root and the chain hash matches")
+        boolean verified
+) {
+
+    @Schema(name = "AuditProofStep", description = "One level: hash the sibling on the given side with the running hash")
+    public record Step(
+
+            @Schema(description = "LEFT or RIGHT: the sibling's side", example = "RIGHT")
+            String side,
+
+            String hash
+    ) {}
+}
@@ -0,0 +1,39 @@
+package com.kukkalli.aaa.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.List;
+
+@Schema(name = "AuditStats", description = "Audit event counts from the rollup tables")
+public record AuditStats(
+
+        @Schema(description = "Action counted; null = all actions", example = "AUTH_LOGIN_FAILED")
+        String action,
+
+        @Schema(description = "MINUTE, HOUR or IP (top IPs over the range)")
+        String by,
+
+        @Schema(description = "Start of the first bucket (UTC ISO-8601)")
+        Instant from,
+
+        @Schema(description = "End of the range, exclusive (UTC ISO-8601)")
+        Instant to,
+
+        List<Bucket> buckets
+) {
+
+    @Schema(name = "AuditStatsBucket", description = "One counter; fields that are not grouped on are null")
+    public record Bucket(
+
+            String action,
+
+            @Schema(description = "Bucket start (UTC ISO-8601); null when grouped by IP")
+            Instant bucket,
+
+            @Schema(description = "Client IP; only when grouped by IP (null = events without one)")
+            String ipAddress,
+
+            long events
+    ) {}
+}
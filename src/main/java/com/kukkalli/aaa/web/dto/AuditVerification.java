@@ -0,0 +1,40 @@
+package com.kukkalli.aaa.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.List;
+
+@Schema(name = "AuditVerification", description = "Integrity check of the audit batches overlapping [from, to)")
+public record AuditVerification(
+
+        Instant from,
+
+        Instant to,
+
+        @Schema(description = "Batches checked (hash chain and, unless archived, their rows)")
+        long batches,
+
+        @Schema(description = "Rows re-hashed")
+        long events,
+
+        @Schema(description = "Batches whose rows were moved to the archive or dropped by retention; only their chain links are checked")
+        long archivedBatches,
+
+        boolean valid,
+
+        @Schema(description = "Problems found, first 100")
+        List<Failure> failures
+) {
+
+    @Schema(name = "AuditVerificationFailure")
+    public record Failure(
+
+            long batchSeq,
+
+            @Schema(example = "ROOT_MISMATCH")
+            String reason,
+
+            String detail
+    ) {}
+}
@@ -0,0 +1,25 @@
+package com.kukkalli.aaa.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Schema(name = "SessionResponse", description = "A signed-in device (refresh-token family)")
+public record SessionResponse(
+
+        @Schema(description = "Refresh-token family id; stable across rotations")
+        UUID familyId,
+
+        @Schema(description = "When the current token of the family was issued (UTC ISO-8601)")
+        Instant issuedAt,
+
+        @Schema(description = "When the current token of the family expires (UTC ISO-8601)")
+        Instant expiresAt,
+
+        @Schema(description = "Client IP at last rotation", example = "203.0.113.5")
+        String ipAddress,
+
+        @Schema(description = "Client user agent at last rotation")
+        String userAgent
+) {}
@@ -9,6 +9,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.validation.BindException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.MissingServletRequestParameterException;
@@ -40,6 +41,13 @@ public class GlobalExceptionHandler {
         return build(HttpStatus.UNAUTHORIZED, "unauthorized", "Invalid credentials", req);
     }
 
+    // 401 — locked account: same body as bad credentials so the lock is not disclosed.
+    // AuthService has already written AUTH_LOGIN_FAIL (reason account_locked); no second row here.
+    @ExceptionHandler(LockedException.class)
+    public ResponseEntity<Object> handleLocked(LockedException ex, HttpServletRequest req) {
+        return build(HttpStatus.UNAUTHORIZED, "unauthorized", "Invalid credentials", req);
+    }
+
     // 403 — access denied
     @ExceptionHandler(AccessDeniedException.class)
     public ResponseEntity<Object> handleForbidden(AccessDeniedException ex, HttpServletRequest req) {
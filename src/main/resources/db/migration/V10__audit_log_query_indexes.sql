@@ -0,0 +1,29 @@
+-- =====================================================================
+-- V10: Composite indexes for the audit query API (GET /api/v1/audit)
+-- Applies to: audit_log
+-- Notes:
+--   * Results are ordered by (occurred_at DESC, id DESC) and paged by keyset.
+--     Every filter column gets an index that continues with occurred_at;
+--     InnoDB appends the primary key (id) to secondary indexes, so each one
+--     is effectively (filter..., occurred_at, id). A page is then a short
+--     range read that stops after LIMIT rows, at any depth.
+--   * The new actor indexes start with the FK column, so they replace the
+--     single-column ones the foreign keys used to rely on.
+--   * idx_audit_log_time (occurred_at [, id]) stays for unfiltered and
+--     time-range-only queries.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+CREATE INDEX IF NOT EXISTS idx_audit_log_actor_user_time   ON audit_log (actor_user_id, occurred_at);
+CREATE INDEX IF NOT EXISTS idx_audit_log_actor_client_time ON audit_log (actor_client_id, occurred_at);
+CREATE INDEX IF NOT EXISTS idx_audit_log_action_time       ON audit_log (action, occurred_at);
+CREATE INDEX IF NOT EXISTS idx_audit_log_target_time       ON audit_log (target_type, target_id, occurred_at);
+
+DROP INDEX IF EXISTS idx_audit_log_actor_user   ON audit_log;
+DROP INDEX IF EXISTS idx_audit_log_actor_client ON audit_log;
+DROP INDEX IF EXISTS idx_audit_log_action       ON audit_log;
+
+-- =====================================================================
+-- End of V10
+-- =====================================================================
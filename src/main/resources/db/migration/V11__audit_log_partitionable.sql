@@ -0,0 +1,30 @@
+-- =====================================================================
+-- V11: Make audit_log partitionable by month on occurred_at
+-- Applies to: audit_log
+-- Notes:
+--   * The table itself is partitioned by the application when
+--     aaa.audit.partitioning.enabled=true (RANGE on UNIX_TIMESTAMP(occurred_at),
+--     one partition per month, see AuditLogPartitions); retention then drops
+--     whole months instead of deleting rows.
+--   * Partitioned InnoDB tables allow no foreign keys: fk_audit_log_actor_user
+--     and fk_audit_log_actor_client are dropped here, whether or not
+--     partitioning is enabled (same policy as refresh_tokens, V15). Actor ids of deleted users /
+--     clients are kept as recorded (previously ON DELETE SET NULL), which is
+--     what an audit trail should do anyway.
+--   * Every unique key must contain the partition column:
+--       PRIMARY KEY (id) -> (id, occurred_at). Ids are application-generated
+--     and unique on their own (V9); the wider key is only a partitioning rule.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE audit_log DROP FOREIGN KEY IF EXISTS fk_audit_log_actor_user;
+ALTER TABLE audit_log DROP FOREIGN KEY IF EXISTS fk_audit_log_actor_client;
+
+ALTER TABLE audit_log
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, occurred_at);
+
+-- =====================================================================
+-- End of V11
+-- =====================================================================
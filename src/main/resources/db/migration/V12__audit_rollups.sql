@@ -0,0 +1,39 @@
+-- =====================================================================
+-- V12: Audit rollup counters for dashboard queries
+-- Applies to: audit_rollup_minute (new), audit_rollup_ip_hour (new)
+-- Notes:
+--   * Maintained by the audit batch writer in the same transaction as the
+--     audit rows (INSERT ... ON DUPLICATE KEY UPDATE events = events + n),
+--     so "logins per minute" or "failed logins by IP, last hour" read
+--     O(buckets) rows instead of scanning audit_log.
+--   * bucket is the start (UTC) of the minute / hour. It has an explicit
+--     DEFAULT so MariaDB does not attach an implicit ON UPDATE
+--     CURRENT_TIMESTAMP to it (the writer always sets it).
+--   * ip_address is '' for events without one (primary key column).
+--   * idx_*_bucket serves retention deletes (see AuditStatsService).
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+CREATE TABLE IF NOT EXISTS audit_rollup_minute (
+    action      VARCHAR(128)    NOT NULL,
+    bucket      TIMESTAMP       NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    events      BIGINT UNSIGNED NOT NULL,
+
+    PRIMARY KEY (action, bucket),
+    KEY idx_audit_rollup_minute_bucket (bucket)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS audit_rollup_ip_hour (
+    action      VARCHAR(128)    NOT NULL,
+    bucket      TIMESTAMP       NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    ip_address  VARCHAR(64)     NOT NULL,
+    events      BIGINT UNSIGNED NOT NULL,
+
+    PRIMARY KEY (action, bucket, ip_address),
+    KEY idx_audit_rollup_ip_hour_bucket (bucket)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================================
+-- End of V12
+-- =====================================================================
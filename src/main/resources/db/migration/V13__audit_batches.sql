@@ -0,0 +1,52 @@
+-- =====================================================================
+-- V13: Tamper-evident audit batches (per-batch Merkle roots, hash-chained)
+-- Applies to: audit_log (new column), audit_batches (new), audit_batch_head (new)
+-- Notes:
+--   * The audit writer hashes each batch it inserts into a SHA-256 Merkle
+--     tree over its rows (ordered by id) and stores only the root, one row
+--     per batch, in the same transaction as the rows (see AuditMerkle).
+--   * chain_hash = H(prev_hash || merkle_root): altering, removing or
+--     inserting a batch breaks every later link. audit_batch_head holds the
+--     tip; writers lock that single row only for the two statements that
+--     append a batch, so row inserts themselves stay concurrent.
+--   * audit_log.batch_id ties a row to its batch (NULL for rows written
+--     before V13). It is added last and nullable, which MariaDB does
+--     in place without rebuilding the table. It is not indexed: a batch's
+--     rows are found through idx_audit_log_time within [first_at, last_at].
+--   * idx_audit_batches_last_at serves range verification.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE audit_log
+    ADD COLUMN IF NOT EXISTS batch_id BIGINT UNSIGNED NULL;
+
+CREATE TABLE IF NOT EXISTS audit_batches (
+    seq          BIGINT UNSIGNED NOT NULL,      -- position in the chain: 1, 2, ...
+    batch_id     BIGINT UNSIGNED NOT NULL,      -- audit_log.batch_id of its rows
+    leaf_count   INT UNSIGNED    NOT NULL,
+    first_at     TIMESTAMP       NOT NULL DEFAULT CURRENT_TIMESTAMP,   -- min / max occurred_at of its rows
+    last_at      TIMESTAMP       NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    merkle_root  BINARY(32)      NOT NULL,
+    prev_hash    BINARY(32)      NOT NULL,
+    chain_hash   BINARY(32)      NOT NULL,
+    created_at   TIMESTAMP       NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    PRIMARY KEY (seq),
+    UNIQUE KEY uk_audit_batches_batch (batch_id),
+    KEY idx_audit_batches_last_at (last_at)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS audit_batch_head (
+    id           TINYINT UNSIGNED NOT NULL,
+    seq          BIGINT UNSIGNED  NOT NULL,
+    chain_hash   BINARY(32)       NOT NULL,
+
+    PRIMARY KEY (id)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+INSERT IGNORE INTO audit_batch_head (id, seq, chain_hash) VALUES (1, 0, UNHEX(REPEAT('00', 32)));
+
+-- =====================================================================
+-- End of V13
+-- =====================================================================
@@ -0,0 +1,23 @@
+-- =====================================================================
+-- V14: Retention horizon for audit integrity checks
+-- Applies to: audit_batch_head (new column)
+-- Notes:
+--   * dropped_before: audit_log rows older than this were removed by a
+--     retention partition drop without being archived (NULL = none).
+--     Range verification only checks the chain links of batches that
+--     start before it, like batches whose rows were archived; their rows
+--     are gone, so re-hashing them would report ROW_COUNT failures.
+--   * audit_batches itself is never pruned: the chain stays verifiable
+--     end to end.
+--   * Explicit DEFAULT NULL keeps MariaDB from attaching an implicit
+--     ON UPDATE CURRENT_TIMESTAMP to the column.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE audit_batch_head
+    ADD COLUMN IF NOT EXISTS dropped_before TIMESTAMP NULL DEFAULT NULL;
+
+-- =====================================================================
+-- End of V14
+-- =====================================================================
@@ -0,0 +1,23 @@
+-- =====================================================================
+-- V15: Drop the refresh_tokens -> users foreign key
+-- Applies to: refresh_tokens
+-- Notes:
+--   * Policy for tables the application may partition (audit_log, V11;
+--     refresh_tokens): their foreign keys are dropped by migration in
+--     every deployment, since a partitioned InnoDB table allows none, so
+--     the schema and delete behaviour don't depend on whether
+--     partitioning is switched on.
+--   * UserService.delete removes a user's refresh tokens explicitly in
+--     place of the ON DELETE CASCADE.
+--   * Unique keys are only widened to include expires_at when the table
+--     is actually partitioned (RefreshTokenPartitions): the wider key
+--     would let two rows share a token hash.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE refresh_tokens DROP FOREIGN KEY IF EXISTS fk_refresh_tokens_user;
+
+-- =====================================================================
+-- End of V15
+-- =====================================================================
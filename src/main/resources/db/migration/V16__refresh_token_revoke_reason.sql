@@ -0,0 +1,29 @@
+-- =====================================================================
+-- V16: Record why a refresh token was revoked
+-- Applies to: refresh_tokens
+-- Notes:
+--   * revoke_reason: ROTATED (replaced by its successor), REVOKED (sign-out
+--     of the session), SESSION_CAP (evicted by max-active-per-user) or
+--     REUSE (family revoked after a replay); NULL while live.
+--   * Only a ROTATED token presented again after reuse-leeway counts as
+--     reuse. A signed-out or evicted session replayed later is just
+--     rejected, without revoking its family or auditing AUTH_REFRESH_REUSE.
+--   * Backfill: a revoked row with a successor (parent_id) was rotated;
+--     any other revoked row is taken as explicitly revoked.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE refresh_tokens
+    ADD COLUMN IF NOT EXISTS revoke_reason VARCHAR(16) NULL AFTER revoked_at;
+
+UPDATE refresh_tokens t
+    JOIN refresh_tokens c ON c.parent_id = t.id
+   SET t.revoke_reason = 'ROTATED'
+ WHERE t.revoked = 1 AND t.revoke_reason IS NULL;
+
+UPDATE refresh_tokens SET revoke_reason = 'REVOKED' WHERE revoked = 1 AND revoke_reason IS NULL;
+
+-- =====================================================================
+-- End of V16
+-- =====================================================================
@@ -0,0 +1,22 @@
+-- =====================================================================
+-- V4: Failed-login tracking and automatic account lockout
+-- Applies to: users
+-- Notes:
+--   * Written in coalesced batches by LoginAttemptService (not per failure).
+--   * locked_until NULL + account_non_locked = 0 means an admin lock
+--     (never auto-unlocked); a non-NULL value is a timed lockout.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE users
+    ADD COLUMN IF NOT EXISTS failed_login_count   INT UNSIGNED NOT NULL DEFAULT 0 AFTER credentials_non_expired,
+    ADD COLUMN IF NOT EXISTS last_failed_login_at TIMESTAMP    NULL AFTER failed_login_count,
+    ADD COLUMN IF NOT EXISTS locked_until         TIMESTAMP    NULL AFTER last_failed_login_at;
+
+-- Supports the periodic auto-unlock sweep
+CREATE INDEX IF NOT EXISTS idx_users_locked_until ON users (locked_until);
+
+-- =====================================================================
+-- End of V4
+-- =====================================================================
@@ -0,0 +1,32 @@
+-- =====================================================================
+-- V5: Refresh-token families (rotation lineage) + reuse detection
+-- Applies to: refresh_tokens
+-- Notes:
+--   * family_id: one per login/device; every rotated descendant keeps it.
+--   * parent_id: the token this one was rotated from (NULL for the root).
+--   * Existing tokens become single-token families.
+--   * idx_refresh_tokens_user is replaced by (user_id, revoked) so
+--     "list devices" only walks live rows; it still backs the FK.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE refresh_tokens
+    ADD COLUMN IF NOT EXISTS family_id BINARY(16)      NULL AFTER user_id,
+    ADD COLUMN IF NOT EXISTS parent_id BIGINT UNSIGNED NULL AFTER family_id;
+
+-- UUID() is evaluated per row
+UPDATE refresh_tokens SET family_id = UNHEX(REPLACE(UUID(), '-', '')) WHERE family_id IS NULL;
+
+ALTER TABLE refresh_tokens MODIFY family_id BINARY(16) NOT NULL;
+
+-- Family-wide revocation / reuse detection: O(family size)
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_family ON refresh_tokens (family_id, revoked);
+
+-- Per-user live sessions
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_user_revoked ON refresh_tokens (user_id, revoked);
+DROP INDEX IF EXISTS idx_refresh_tokens_user ON refresh_tokens;
+
+-- =====================================================================
+-- End of V5
+-- =====================================================================
@@ -0,0 +1,31 @@
+-- =====================================================================
+-- V6: Store refresh-token hashes as raw bytes
+-- Applies to: refresh_tokens
+-- Notes:
+--   * token_hash CHAR(64) utf8mb4 (hex) -> BINARY(32) (raw SHA-256).
+--     Unique index key shrinks from up to 256 bytes to 32 bytes per row.
+--   * Existing rows are converted in place with UNHEX, so their hashes
+--     still match. Tokens issued in the old rt_<body> format are accepted
+--     only while security.jwt.refresh-token.accept-legacy-until
+--     (JWT_REFRESH_ACCEPT_LEGACY_UNTIL) lies in the future; it is unset by
+--     default, so set it when upgrading (see README, Upgrading) or every
+--     such session has to log in again.
+--   * Done via a shadow column so the conversion is a single table rebuild.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE refresh_tokens
+    ADD COLUMN IF NOT EXISTS token_hash_bin BINARY(32) NULL AFTER token_hash;
+
+UPDATE refresh_tokens SET token_hash_bin = UNHEX(token_hash) WHERE token_hash_bin IS NULL;
+
+ALTER TABLE refresh_tokens
+    DROP INDEX uk_refresh_tokens_token_hash,
+    DROP COLUMN token_hash,
+    CHANGE COLUMN token_hash_bin token_hash BINARY(32) NOT NULL,
+    ADD UNIQUE KEY uk_refresh_tokens_token_hash (token_hash);
+
+-- =====================================================================
+-- End of V6
+-- =====================================================================
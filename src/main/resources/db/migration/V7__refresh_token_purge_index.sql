@@ -0,0 +1,16 @@
+-- =====================================================================
+-- V7: Index for purging revoked refresh tokens
+-- Applies to: refresh_tokens
+-- Notes:
+--   * RefreshTokenPurger deletes rows with revoked_at older than the grace
+--     period in LIMIT-ed chunks; without this index every chunk scans.
+--   * revoked_at is NULL for live tokens, so the range skips them.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_revoked_at ON refresh_tokens (revoked_at);
+
+-- =====================================================================
+-- End of V7
+-- =====================================================================
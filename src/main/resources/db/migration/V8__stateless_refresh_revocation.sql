@@ -0,0 +1,30 @@
+-- =====================================================================
+-- V8: Revocation state for stateless (JWE) refresh tokens
+-- Applies to: users, refresh_family_denylist (new)
+-- Notes:
+--   * users.refresh_epoch: embedded in every stateless refresh token;
+--     logout-all bumps it, invalidating all of a user's tokens at once.
+--   * refresh_family_denylist: one row per revoked device session (family),
+--     kept until every token of the family has expired, then purged.
+--   * Opaque tokens keep using refresh_tokens; both kinds are accepted
+--     whichever mode is configured, so switching modes is safe.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE users
+    ADD COLUMN IF NOT EXISTS refresh_epoch INT UNSIGNED NOT NULL DEFAULT 0 AFTER locked_until;
+
+CREATE TABLE IF NOT EXISTS refresh_family_denylist (
+    family_id   BINARY(16)      NOT NULL,
+    user_id     BIGINT UNSIGNED NOT NULL,
+    expires_at  TIMESTAMP       NOT NULL,   -- latest possible expiry of any token in the family
+    created_at  TIMESTAMP       NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    PRIMARY KEY (family_id, user_id),
+    KEY idx_refresh_family_denylist_expires (expires_at)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================================
+-- End of V8
+-- =====================================================================
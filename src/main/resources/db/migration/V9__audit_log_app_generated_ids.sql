@@ -0,0 +1,19 @@
+-- =====================================================================
+-- V9: Application-generated audit_log ids
+-- Applies to: audit_log
+-- Notes:
+--   * Ids are now time-ordered 64-bit values assigned before insert
+--     (TimeOrderedIds), so rows can be written in multi-row batches
+--     without waiting for an AUTO_INCREMENT value per row.
+--   * New ids start far above any existing AUTO_INCREMENT value, so id
+--     order still follows insertion order across the switch.
+-- =====================================================================
+
+SET SESSION sql_mode = 'STRICT_TRANS_TABLES,ERROR_FOR_DIVISION_BY_ZERO,NO_ENGINE_SUBSTITUTION';
+
+ALTER TABLE audit_log
+    MODIFY COLUMN id BIGINT UNSIGNED NOT NULL;
+
+-- =====================================================================
+-- End of V9
+-- =====================================================================
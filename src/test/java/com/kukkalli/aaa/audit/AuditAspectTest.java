@@ -0,0 +1,94 @@
+package com.kukkalli.aaa.audit;
+
+import com.kukkalli.aaa.service.AuditService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AuditAspectTest {
+
+    record Thing(long id, String code) { }
+
+    static class Things {
+        @Audited(action = "THING_CREATE", targetType = "THING")
+        public Thing create(String code) {
+            return new Thing(1, code);
+        }
+
+        @Audited(action = "THING_UPDATE", targetType = "THING", targetId = "#result.id")
+        public Thing update(long id, Thing patch) {
+            return new Thing(id, patch.code());
+        }
+
+        @Audited(action = "THING_RENAME", targetType = "THING", targetId = "#patch.code")
+        public void rename(long id, Thing patch) { }
+
+        @Audited(action = "THING_TOUCH", targetId = "#p0")
+        public void touch(long id) { }
+
+        @Audited(action = "THING_FAIL")
+        public void fail() {
+            throw new IllegalStateException("nope");
+        }
+    }
+
+    private final AuditService auditService = mock(AuditService.class);
+    private final AuditAspect aspect = new AuditAspect(auditService);
+    private final Things things = proxy();
+
+    private Things proxy() {
+        var factory = new AspectJProxyFactory(new Things());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+
+    @Test
+    @DisplayName("Literals, #result, #paramName and #p0 resolve as before, across repeated (compiled) calls")
+    void resolves_attributes_repeatedly() {
+        for (int i = 0; i < 300; i++) {   // past the MIXED-mode compile threshold
+            things.update(i, new Thing(0, "c" + i));
+            verify(auditService).audit("THING_UPDATE", Map.of("method", "Things.update(..)",
+                    "targetType", "THING", "targetId", String.valueOf(i)));
+            things.rename(i, new Thing(0, "n" + i));
+            verify(auditService).audit("THING_RENAME", Map.of("method", "Things.rename(..)",
+                    "targetType", "THING", "targetId", "n" + i));
+        }
+        things.create("x");
+        verify(auditService).audit("THING_CREATE", Map.of("method", "Things.create(..)", "targetType", "THING"));
+        things.touch(42);
+        verify(auditService).audit("THING_TOUCH", Map.of("method", "Things.touch(..)", "targetId", "42"));
+    }
+
+    @Test
+    @DisplayName("Failed calls are not audited")
+    void no_audit_on_exception() {
+        assertThatThrownBy(things::fail).isInstanceOf(IllegalStateException.class);
+        verify(auditService, never()).audit(anyString(), anyMap());
+    }
+
+    @Test
+    @DisplayName("Expressions are read-only: no type references")
+    void restricted_context() throws Exception {
+        var plan = AuditAspect.Plan.of(Things.class.getMethod("touch", long.class),
+                new AuditedLiteral("#p0 + T(java.lang.Runtime).getRuntime().availableProcessors()"), "x");
+        assertThatThrownBy(() -> plan.targetId().resolve(plan.context(new Object[]{1L}, null)))
+                .isInstanceOf(org.springframework.expression.EvaluationException.class);
+        assertThat(plan.action().expression()).isNull();
+    }
+
+    /** An {@link Audited} instance with a given targetId. */
+    @SuppressWarnings("ClassExplicitlyAnnotation")
+    private record AuditedLiteral(String targetId) implements Audited {
+        @Override public String action() { return "A"; }
+        @Override public String targetType() { return ""; }
+        @Override public Class<? extends java.lang.annotation.Annotation> annotationType() { return Audited.class; }
+    }
+}
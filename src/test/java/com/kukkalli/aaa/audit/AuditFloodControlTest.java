@@ -0,0 +1,143 @@
+package com.kukkalli.aaa.audit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditFloodControlTest {
+
+    static final class MutableClock extends Clock {
+        private volatile Instant now = Instant.parse("2030-01-01T00:00:00Z");
+        void advance(Duration d) { now = now.plus(d); }
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { return this; }
+        @Override public Instant instant() { return now; }
+    }
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock();
+    private final List<AuditEnvelope> written = new ArrayList<>();
+    private long nextId = 1;
+
+    private AuditFloodControl flood(Set<String> coalesce, Map<String, Integer> sampleRates, Map<String, Integer> caps) {
+        var flood = new AuditFloodControl(written::add, meters, clock, true, Duration.ofSeconds(10), 100,
+                coalesce, sampleRates, caps);
+        flood.start();
+        return flood;
+    }
+
+    private AuditEnvelope event(String action, String ip, String path) {
+        return new AuditEnvelope(nextId++, clock.instant(), null, null, action, null, null, null, ip, null,
+                Map.of("path", path));
+    }
+
+    private double suppressed(String action, String reason) {
+        return meters.get("aaa.audit.suppressed").tag("action", action).tag("reason", reason).counter().count();
+    }
+
+    @Test
+    @DisplayName("Coalescing: first event written, the rest folded into one summary row per (action, actor, path)")
+    void coalesces_per_key() {
+        var flood = flood(Set.of("HTTP_404_NOT_FOUND"), Map.of(), Map.of());
+        Instant start = clock.instant();
+        for (int i = 0; i < 50; i++) {
+            flood.submit(event("HTTP_404_NOT_FOUND", "203.0.113.1", "/wp-admin"));
+            clock.advance(Duration.ofMillis(100));
+        }
+        flood.submit(event("HTTP_404_NOT_FOUND", "203.0.113.2", "/wp-admin"));   // other IP: own window
+        flood.submit(event("USER_CREATE", "203.0.113.1", "/wp-admin"));          // no rule: untouched
+        assertThat(written).extracting(AuditEnvelope::action)
+                .containsExactly("HTTP_404_NOT_FOUND", "HTTP_404_NOT_FOUND", "USER_CREATE");
+
+        clock.advance(Duration.ofSeconds(10));
+        assertThat(flood.flushExpired()).isEqualTo(1);                           // the second window folded nothing
+        AuditEnvelope summary = written.get(3);
+        assertThat(summary.ipAddress()).isEqualTo("203.0.113.1");
+        assertThat(summary.details())
+                .containsEntry("path", "/wp-admin")
+                .containsEntry("coalesced", 49L)
+                .containsEntry("firstAt", start.plusMillis(100).toString())
+                .containsEntry("lastAt", start.plusMillis(4900).toString());
+        assertThat(summary.id()).isEqualTo(50);
+        assertThat(AuditFloodControl.weight(summary)).isEqualTo(49);
+        assertThat(suppressed("HTTP_404_NOT_FOUND", "coalesced")).isEqualTo(49);
+        assertThat(meters.get("aaa.audit.flood.windows").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("A closed window is summarised by the next event for its key; stop() flushes the open ones")
+    void next_event_and_stop_close_windows() {
+        var flood = flood(Set.of("AUTH_TOKEN_INVALID"), Map.of(), Map.of());
+        flood.submit(event("AUTH_TOKEN_INVALID", "198.51.100.7", "/api/v1/me"));
+        flood.submit(event("AUTH_TOKEN_INVALID", "198.51.100.7", "/api/v1/me"));
+        clock.advance(Duration.ofSeconds(11));
+        flood.submit(event("AUTH_TOKEN_INVALID", "198.51.100.7", "/api/v1/me"));   // summary, then a new window
+        flood.submit(event("AUTH_TOKEN_INVALID", "198.51.100.7", "/api/v1/me"));
+        assertThat(written).hasSize(3);
+        assertThat(written.get(1).details()).containsEntry("coalesced", 1L);
+        assertThat(written.get(2).details()).doesNotContainKey("coalesced");
+
+        flood.stop();
+        assertThat(written).hasSize(4);
+        assertThat(written.get(3).details()).containsEntry("coalesced", 1L);
+        flood.submit(event("AUTH_TOKEN_INVALID", "198.51.100.7", "/api/v1/me"));   // stopped: passes through
+        assertThat(written).hasSize(5);
+    }
+
+    @Test
+    @DisplayName("Caps limit rows per action per minute; sampling keeps 1 in N and records the rate")
+    void caps_and_sampling() {
+        var flood = flood(Set.of(), Map.of("HTTP_401_UNAUTHORIZED", 4), Map.of("HTTP_403_FORBIDDEN", 3));
+        for (int i = 0; i < 10; i++) flood.submit(event("HTTP_403_FORBIDDEN", "203.0.113." + i, "/x"));
+        assertThat(written).hasSize(3);
+        assertThat(suppressed("HTTP_403_FORBIDDEN", "capped")).isEqualTo(7);
+        clock.advance(Duration.ofMinutes(1));
+        flood.submit(event("HTTP_403_FORBIDDEN", "203.0.113.1", "/x"));
+        assertThat(written).hasSize(4);
+
+        written.clear();
+        for (int i = 0; i < 20; i++) flood.submit(event("HTTP_401_UNAUTHORIZED", "203.0.113." + i, "/x"));
+        assertThat(written).hasSize(5).allSatisfy(e -> {
+            assertThat(e.details()).containsEntry("sampleRate", 4);
+            assertThat(AuditFloodControl.weight(e)).isEqualTo(4);
+        });
+        assertThat(suppressed("HTTP_401_UNAUTHORIZED", "sampled")).isEqualTo(15);
+    }
+
+    @Test
+    @DisplayName("Window table is bounded; disabled flood control passes everything; config is validated")
+    void bounds_disabled_and_config() {
+        var bounded = new AuditFloodControl(written::add, meters, clock, true, Duration.ofSeconds(10), 2,
+                Set.of("HTTP_404_NOT_FOUND"), Map.of(), Map.of());
+        bounded.start();
+        for (int ip = 0; ip < 4; ip++) {
+            bounded.submit(event("HTTP_404_NOT_FOUND", "203.0.113." + ip, "/x"));
+            bounded.submit(event("HTTP_404_NOT_FOUND", "203.0.113." + ip, "/x"));
+        }
+        assertThat(written).hasSize(6);   // two keys coalesced, two over the bound written in full
+
+        written.clear();
+        var off = new AuditFloodControl(written::add, new SimpleMeterRegistry(), clock, false, Duration.ofSeconds(10),
+                100, Set.of("A"), Map.of("A", 10), Map.of("A", 1));
+        off.start();
+        for (int i = 0; i < 5; i++) off.submit(event("A", "203.0.113.1", "/x"));
+        assertThat(written).hasSize(5);
+
+        assertThat(AuditFloodControl.perAction(" A=10, B = 2 ,")).containsExactlyInAnyOrderEntriesOf(Map.of("A", 10, "B", 2));
+        assertThatThrownBy(() -> AuditFloodControl.perAction("A=0")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AuditFloodControl.perAction("A")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,64 @@
+package com.kukkalli.aaa.audit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditMerkleTest {
+
+    private static List<byte[]> leaves(int n) {
+        List<byte[]> leaves = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            leaves.add(AuditMerkle.leaf(i, 1_900_000_000L + i, (long) i, null, "AUTH_LOGIN", null, null,
+                    "r" + i, "203.0.113.9", "JUnit", "{\"n\":" + i + "}"));
+        }
+        return leaves;
+    }
+
+    @Test
+    @DisplayName("Every leaf of trees of 1..33 leaves proves into the root with at most ceil(log2 n) hashes")
+    void proofs_lead_to_root() {
+        for (int n = 1; n <= 33; n++) {
+            List<byte[]> leaves = leaves(n);
+            byte[] root = AuditMerkle.root(leaves);
+            int maxSteps = 32 - Integer.numberOfLeadingZeros(n - 1);
+            for (int i = 0; i < n; i++) {
+                var proof = AuditMerkle.proof(leaves, i);
+                assertThat(proof.size()).isLessThanOrEqualTo(maxSteps);
+                assertThat(AuditMerkle.rootFromProof(leaves.get(i), proof)).isEqualTo(root);
+                if (n > 1) assertThat(AuditMerkle.rootFromProof(leaves.get((i + 1) % n), proof)).isNotEqualTo(root);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Any changed field, reordering or dropped row changes the root; the chain depends on every root")
+    void tampering_changes_hashes() {
+        List<byte[]> leaves = leaves(10);
+        byte[] root = AuditMerkle.root(leaves);
+
+        var changed = new ArrayList<>(leaves);
+        changed.set(4, AuditMerkle.leaf(4, 1_900_000_004L, 4L, null, "AUTH_LOGIN", null, null,
+                "r4", "203.0.113.9", "JUnit", "{\"n\":5}"));
+        assertThat(AuditMerkle.root(changed)).isNotEqualTo(root);
+
+        var swapped = new ArrayList<>(leaves);
+        swapped.set(2, leaves.get(3));
+        swapped.set(3, leaves.get(2));
+        assertThat(AuditMerkle.root(swapped)).isNotEqualTo(root);
+        assertThat(AuditMerkle.root(leaves.subList(0, 9))).isNotEqualTo(root);
+
+        // null and empty strings hash differently
+        assertThat(AuditMerkle.leaf(1, 0, null, null, "A", null, null, null, null, null, null))
+                .isNotEqualTo(AuditMerkle.leaf(1, 0, null, null, "A", "", null, null, null, null, null));
+
+        byte[] first = AuditMerkle.chain(AuditMerkle.genesis(), root);
+        byte[] second = AuditMerkle.chain(first, AuditMerkle.root(leaves(3)));
+        assertThat(AuditMerkle.chain(AuditMerkle.chain(AuditMerkle.genesis(), AuditMerkle.root(changed)),
+                AuditMerkle.root(leaves(3)))).isNotEqualTo(second);
+    }
+}
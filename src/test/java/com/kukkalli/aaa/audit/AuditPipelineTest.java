@@ -0,0 +1,251 @@
+package com.kukkalli.aaa.audit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditPipelineTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    private static AuditEnvelope event(int n) {
+        return new AuditEnvelope(n, Instant.now(), null, null, "E" + n, null, null, null, null, null, null);
+    }
+
+    private AuditPipeline pipeline(Consumer<List<AuditEnvelope>> sink, int capacity, AuditOverflowPolicy policy) {
+        return new AuditPipeline(sink, null, null, meters, capacity, 2, 50, Duration.ofMillis(5), policy,
+                Duration.ofMillis(20), 0.5, 4, Duration.ofSeconds(5));
+    }
+
+    private double dropped(String reason) {
+        return meters.get("aaa.audit.dropped").tag("reason", reason).counter().count();
+    }
+
+    @Test
+    @DisplayName("Ring buffer: FIFO, bounded, capacity rounded to a power of two")
+    void ring_buffer_basics() {
+        var rb = new MpmcRingBuffer<Integer>(5);
+        assertThat(rb.capacity()).isEqualTo(8);
+        for (int i = 0; i < 8; i++) assertThat(rb.offer(i)).isTrue();
+        assertThat(rb.offer(99)).isFalse();
+        assertThat(rb.size()).isEqualTo(8);
+
+        assertThat(rb.poll()).isZero();
+        assertThat(rb.offer(8)).isTrue();                 // wraps into the freed slot
+        var out = new ArrayList<Integer>();
+        assertThat(rb.drainTo(out, 100)).isEqualTo(8);
+        assertThat(out).containsExactly(1, 2, 3, 4, 5, 6, 7, 8);
+        assertThat(rb.poll()).isNull();
+    }
+
+    @Test
+    @DisplayName("Ring buffer: concurrent producers lose and duplicate nothing")
+    void ring_buffer_concurrent_producers() throws Exception {
+        int producers = 8, perProducer = 20_000;
+        var rb = new MpmcRingBuffer<Integer>(1024);
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(producers + 1);
+        var done = new CountDownLatch(producers);
+        try {
+            for (int p = 0; p < producers; p++) {
+                int base = p * perProducer;
+                pool.submit(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!rb.offer(base + i)) Thread.onSpinWait();
+                    }
+                    done.countDown();
+                });
+            }
+            var consumer = pool.submit(() -> {
+                var batch = new ArrayList<Integer>();
+                while (seen.size() < producers * perProducer) {
+                    rb.drainTo(batch, 256);
+                    batch.forEach(v -> assertThat(seen.add(v)).isTrue());
+                    batch.clear();
+                }
+                return null;
+            });
+            assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+            consumer.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(seen).hasSize(producers * perProducer);
+    }
+
+    @Test
+    @DisplayName("Events are written in batches and flush() waits for them")
+    void batches_and_flush() {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        var p = pipeline(b -> {
+            batchSizes.add(b.size());
+            b.forEach(e -> written.add(e.action()));
+        }, 1024, AuditOverflowPolicy.BLOCK);
+
+        for (int i = 0; i < 300; i++) p.submit(event(i));   // queued before the writers start
+        p.start();
+        try {
+            assertThat(p.flush(Duration.ofSeconds(5))).isTrue();
+        } finally {
+            p.stop();
+        }
+        assertThat(written).hasSize(300).doesNotHaveDuplicates();
+        assertThat(batchSizes).allMatch(n -> n <= 50);
+        assertThat(batchSizes.size()).isLessThan(300);
+        assertThat(meters.get("aaa.audit.written").counter().count()).isEqualTo(300);
+    }
+
+    @Test
+    @DisplayName("Overflow: BLOCK drops after the timeout, DROP_OLDEST evicts, SAMPLE thins above high water")
+    void overflow_policies() {
+        var block = pipeline(b -> { }, 4, AuditOverflowPolicy.BLOCK);      // never started: nothing drains
+        for (int i = 0; i < 6; i++) block.submit(event(i));
+        assertThat(dropped("overflow")).isEqualTo(2);
+
+        var meters2 = new SimpleMeterRegistry();
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        var oldest = new AuditPipeline(b -> b.forEach(e -> written.add(e.action())), null, null, meters2, 4, 1, 50,
+                Duration.ofMillis(5), AuditOverflowPolicy.DROP_OLDEST, Duration.ZERO, 0.5, 4, Duration.ofSeconds(5));
+        for (int i = 0; i < 6; i++) oldest.submit(event(i));
+        oldest.start();
+        assertThat(oldest.flush(Duration.ofSeconds(5))).isTrue();
+        oldest.stop();
+        assertThat(written).containsExactly("E2", "E3", "E4", "E5");
+
+        var meters3 = new SimpleMeterRegistry();
+        var sample = new AuditPipeline(b -> { }, null, null, meters3, 16, 1, 50, Duration.ofMillis(5),
+                AuditOverflowPolicy.SAMPLE, Duration.ZERO, 0.5, 4, Duration.ofSeconds(5));
+        for (int i = 0; i < 16; i++) sample.submit(event(i));
+        // first 8 fill to high water, then 1 in 4 of the next 8 gets in
+        assertThat(meters3.get("aaa.audit.queue.depth").gauge().value()).isEqualTo(10);
+        assertThat(meters3.get("aaa.audit.dropped").tag("reason", "sampled").counter().count()).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("A failing sink is retried, then the batch is counted as dropped")
+    void write_errors_are_counted() {
+        int[] calls = {0};
+        var p = pipeline(b -> {
+            calls[0]++;
+            throw new IllegalStateException("db down");
+        }, 64, AuditOverflowPolicy.BLOCK);
+        p.submit(event(1));
+        p.start();
+        try {
+            assertThat(p.flush(Duration.ofSeconds(5))).isTrue();
+        } finally {
+            p.stop();
+        }
+        assertThat(calls[0]).isEqualTo(3);
+        assertThat(dropped("write_error")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A batch failing on one bad row is written in halves: only that row is dropped")
+    void poison_row_is_isolated() {
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        var p = new AuditPipeline(b -> {
+            if (b.stream().anyMatch(e -> e.id() == 13)) {
+                throw new DataIntegrityViolationException("Data too long for column 'user_agent'");
+            }
+            b.forEach(e -> written.add((int) e.id()));
+        }, null, null, meters, 64, 1, 50, Duration.ofMillis(50), AuditOverflowPolicy.BLOCK,
+                Duration.ofMillis(20), 0.5, 4, Duration.ofSeconds(5));
+        for (int i = 0; i < 40; i++) p.submit(event(i));
+        p.start();
+        try {
+            assertThat(p.flush(Duration.ofSeconds(10))).isTrue();
+        } finally {
+            p.stop();
+        }
+        assertThat(written).hasSize(39).doesNotContain(13).doesNotHaveDuplicates();
+        assertThat(dropped("write_error")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("stop() interrupts a writer busy past shutdown-timeout and closes the pool only after it exits")
+    void stop_waits_for_writers_before_closing() throws Exception {
+        var inSink = new CountDownLatch(1);
+        var writing = new AtomicBoolean();
+        var closedWhileWriting = new AtomicBoolean();
+        var closed = new CountDownLatch(1);
+        var p = new AuditPipeline(b -> {
+            writing.set(true);
+            inSink.countDown();
+            try {
+                new CountDownLatch(1).await();                // a statement that never returns on its own
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted");
+            } finally {
+                writing.set(false);
+            }
+        }, () -> {
+            closedWhileWriting.set(writing.get());
+            closed.countDown();
+        }, null, meters, 64, 1, 50, Duration.ofMillis(5), AuditOverflowPolicy.BLOCK,
+                Duration.ofMillis(20), 0.5, 4, Duration.ofMillis(100));
+        p.submit(event(1));
+        p.start();
+        assertThat(inSink.await(5, TimeUnit.SECONDS)).isTrue();
+        p.stop();
+        assertThat(closed.getCount()).isZero();
+        assertThat(closedWhileWriting.get()).isFalse();
+    }
+
+    @Test
+    @DisplayName("stop() leaves the pool open while a writer ignores the interrupt")
+    void stop_keeps_pool_open_for_stuck_writer() throws Exception {
+        var inSink = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var closed = new CountDownLatch(1);
+        var p = new AuditPipeline(b -> {
+            inSink.countDown();
+            while (true) {
+                try {
+                    if (release.await(10, TimeUnit.SECONDS)) return;
+                } catch (InterruptedException ignored) {
+                    // a driver call that doesn't honour interrupts
+                }
+            }
+        }, closed::countDown, null, meters, 64, 1, 50, Duration.ofMillis(5), AuditOverflowPolicy.BLOCK,
+                Duration.ofMillis(20), 0.5, 4, Duration.ofMillis(100));
+        p.submit(event(1));
+        p.start();
+        try {
+            assertThat(inSink.await(5, TimeUnit.SECONDS)).isTrue();
+            p.stop();
+            assertThat(closed.getCount()).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("Envelopes clip client-supplied strings to their column widths")
+    void envelope_clips_to_columns() {
+        var e = new AuditEnvelope(1, Instant.now(), null, null, "A", null, null, "r".repeat(100),
+                "1".repeat(80), "x".repeat(254) + "\uD83D\uDE00", null);
+        assertThat(e.requestId()).hasSize(64);
+        assertThat(e.ipAddress()).hasSize(64);
+        assertThat(e.userAgent()).isEqualTo("x".repeat(254));   // no half surrogate pair left behind
+    }
+}
@@ -0,0 +1,40 @@
+package com.kukkalli.aaa.audit;
+
+import com.kukkalli.aaa.audit.AuditRollups.IpHourKey;
+import com.kukkalli.aaa.audit.AuditRollups.MinuteKey;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditRollupsTest {
+
+    private static AuditEnvelope event(String action, String at, String ip) {
+        return new AuditEnvelope(1, Instant.parse(at), null, null, action, null, null, null, ip, null, null);
+    }
+
+    @Test
+    @DisplayName("A batch folds into sorted (action, minute) and (action, ip, hour) counts")
+    void folds_batch_into_buckets() {
+        var minutes = new TreeMap<MinuteKey, long[]>(AuditRollups.MINUTE_ORDER);
+        var ipHours = new TreeMap<IpHourKey, long[]>(AuditRollups.IP_HOUR_ORDER);
+        AuditRollups.count(List.of(
+                event("B", "2030-01-01T10:00:01Z", "203.0.113.1"),
+                event("B", "2030-01-01T10:00:59Z", "203.0.113.1"),
+                event("B", "2030-01-01T10:59:00Z", null),
+                event("A", "2030-01-01T11:00:00Z", "203.0.113.1")), minutes, ipHours);
+
+        Instant ten = Instant.parse("2030-01-01T10:00:00Z");
+        Instant eleven = Instant.parse("2030-01-01T11:00:00Z");
+        assertThat(minutes.keySet()).containsExactly(
+                new MinuteKey("A", eleven), new MinuteKey("B", ten), new MinuteKey("B", Instant.parse("2030-01-01T10:59:00Z")));
+        assertThat(minutes.get(new MinuteKey("B", ten))[0]).isEqualTo(2);
+        assertThat(ipHours.keySet()).containsExactly(
+                new IpHourKey("A", eleven, "203.0.113.1"), new IpHourKey("B", ten, ""), new IpHourKey("B", ten, "203.0.113.1"));
+        assertThat(ipHours.get(new IpHourKey("B", ten, "203.0.113.1"))[0]).isEqualTo(2);
+    }
+}
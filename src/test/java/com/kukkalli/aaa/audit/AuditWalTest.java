@@ -0,0 +1,164 @@
+package com.kukkalli.aaa.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditWalTest {
+
+    private final ObjectMapper json = JsonMapper.builder().findAndAddModules().build();
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    @TempDir Path dir;
+
+    private AuditWal wal(DataSize maxSize) {
+        return wal(maxSize, Duration.ofMillis(200));
+    }
+
+    private AuditWal wal(DataSize maxSize, Duration commitTimeout) {
+        return new AuditWal(json, meters, true, dir.toString(), DataSize.ofKilobytes(16), maxSize, commitTimeout);
+    }
+
+    private AuditPipeline pipeline(Consumer<List<AuditEnvelope>> sink, AuditWal wal) {
+        return new AuditPipeline(sink, null, wal, meters, 1024, 1, 100, Duration.ofMillis(5),
+                AuditOverflowPolicy.BLOCK, Duration.ofMillis(20), 0.5, 4, Duration.ofSeconds(5));
+    }
+
+    private static AuditEnvelope event(long n) {
+        return new AuditEnvelope(n, Instant.parse("2030-01-01T00:00:00Z").plusMillis(n), n, null, "AUTH_LOGIN",
+                null, null, "r" + n, "203.0.113.9", "JUnit", Map.of("n", n));
+    }
+
+    /** A sink that fails like an unreachable database while {@code down} is set. */
+    private static Consumer<List<AuditEnvelope>> sink(AtomicBoolean down, List<Long> written) {
+        return batch -> {
+            if (down.get()) throw new CannotGetJdbcConnectionException("database down");
+            batch.forEach(e -> written.add(e.id()));
+        };
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+
+    private double dropped(String reason) {
+        return meters.get("aaa.audit.dropped").tag("reason", reason).counter().count();
+    }
+
+    @Test
+    @DisplayName("Outage: events wait in the WAL (overflow in memory) and are all written once the database is back")
+    void holds_events_through_an_outage() throws Exception {
+        var down = new AtomicBoolean(true);
+        List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        var pipeline = pipeline(sink(down, written), wal(DataSize.ofKilobytes(64)));
+        pipeline.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            int base = t * 250;
+            pool.submit(() -> LongStream.range(base, base + 250).forEach(n -> pipeline.submit(event(n))));
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(written).isEmpty();
+        assertThat(segments().size()).isGreaterThan(1);
+        assertThat(meters.get("aaa.audit.wal.bypassed").counter().count()).isPositive();   // 64 KB holds a few hundred
+        assertThat(meters.get("aaa.audit.wal.group.size").summary().count()).isPositive();
+
+        down.set(false);
+        assertThat(pipeline.flush(Duration.ofSeconds(20))).isTrue();
+        assertThat(written).hasSize(1000).doesNotHaveDuplicates();
+        assertThat(dropped("overflow") + dropped("write_error")).isZero();
+        assertThat(segments()).hasSize(1);   // drained segments are deleted; the current one stays
+        pipeline.stop();
+    }
+
+    @Test
+    @DisplayName("Restart: undrained records are replayed in order; a torn tail is cut off")
+    void replays_after_restart() throws Exception {
+        var down = new AtomicBoolean(true);
+        List<Long> none = Collections.synchronizedList(new ArrayList<>());
+        var first = pipeline(sink(down, none), wal(DataSize.ofMegabytes(8)));
+        first.start();
+        for (long n = 0; n < 300; n++) first.submit(event(n));
+        first.stop();
+        assertThat(none).isEmpty();
+        assertThat(dropped("shutdown")).isZero();
+
+        // a crash in the middle of a write: a header promising more bytes than follow
+        Path last = segments().get(segments().size() - 1);
+        try (var ch = FileChannel.open(last, StandardOpenOption.APPEND)) {
+            ch.write(ByteBuffer.allocate(12).putInt(500).putInt(42).putInt(7).flip());
+        }
+
+        List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        var second = pipeline(sink(new AtomicBoolean(false), written), wal(DataSize.ofMegabytes(8)));
+        second.start();
+        second.submit(event(300));
+        assertThat(second.flush(Duration.ofSeconds(10))).isTrue();
+        assertThat(written).containsExactlyElementsOf(LongStream.rangeClosed(0, 300).boxed().toList());
+        second.stop();
+
+        // a third start has nothing left to replay
+        List<Long> again = Collections.synchronizedList(new ArrayList<>());
+        var third = pipeline(sink(new AtomicBoolean(false), again), wal(DataSize.ofMegabytes(8)));
+        third.start();
+        assertThat(third.flush(Duration.ofSeconds(5))).isTrue();
+        assertThat(again).isEmpty();
+        third.stop();
+        assertThat(segments()).hasSize(1).allSatisfy(p -> assertThat(Files.size(p)).isZero());
+    }
+
+    @Test
+    @DisplayName("A failed WAL write loses nothing: waiting producers fall back, queued records are handed back")
+    void write_failure_loses_nothing() throws Exception {
+        List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        // no commit wait: producers return before their record is forced, so the failure must hand them back
+        var pipeline = pipeline(sink(new AtomicBoolean(false), written), wal(DataSize.ofMegabytes(8), Duration.ZERO));
+        pipeline.start();
+        // the segment the WAL rolls to next already exists, so the roll fails like a full disk would
+        Files.createFile(dir.resolve("0000000000000002.wal"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            int base = t * 250;
+            pool.submit(() -> LongStream.range(base, base + 250).forEach(n -> pipeline.submit(event(n))));
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(pipeline.flush(Duration.ofSeconds(20))).isTrue();
+        assertThat(meters.get("aaa.audit.wal.bypassed").counter().count()).isPositive();
+        assertThat(written).hasSize(1000).doesNotHaveDuplicates();
+        assertThat(dropped("overflow") + dropped("write_error")).isZero();
+        pipeline.stop();
+    }
+}
@@ -0,0 +1,188 @@
+package com.kukkalli.aaa.audit.archive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.kukkalli.aaa.service.AuditQueryService.Filter;
+import com.kukkalli.aaa.web.dto.AuditLogEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditArchiveTest {
+
+    private static final Instant JAN = Instant.parse("2030-01-01T00:00:00Z");
+    private static final Instant FEB = Instant.parse("2030-02-01T00:00:00Z");
+    private static final Instant MAR = Instant.parse("2030-03-01T00:00:00Z");
+    private static final int PER_MONTH = 5_000;   // one row every ~9 minutes
+
+    private final ObjectMapper json = JsonMapper.builder().findAndAddModules().build();
+
+    @TempDir Path dir;
+    private AuditArchive archive;
+    private long nextId = 1;
+
+    /** Writes a month of rows; every 10th is AUTH_LOGIN_FAILED, the rest AUTH_LOGIN. */
+    private List<AuditLogEntry> writeMonth(String name, Instant from, Instant to) throws IOException {
+        List<AuditLogEntry> rows = new ArrayList<>();
+        long step = Duration.between(from, to).toSeconds() / PER_MONTH;
+        Path file = dir.resolve("audit-" + name + "-000.seg");
+        try (var w = new AuditSegmentWriter(file, AuditNdjson.micros(from), AuditNdjson.micros(to), 128)) {
+            for (int i = 0; i < PER_MONTH; i++) {
+                var e = new AuditLogEntry(nextId++, from.plusSeconds(i * step), (long) (i % 7), null,
+                        i % 10 == 0 ? "AUTH_LOGIN_FAILED" : "AUTH_LOGIN", null, null, "r" + i, "203.0.113.9",
+                        "JUnit", Map.of("n", i));
+                byte[] line = (json.writeValueAsString(e) + "\n").getBytes(StandardCharsets.UTF_8);
+                w.append(AuditNdjson.micros(e.occurredAt()), e.id(), e.action(), line, 0, line.length);
+                rows.add(e);
+            }
+            w.finish();
+        }
+        return rows;
+    }
+
+    @BeforeEach
+    void setUp() {
+        archive = new AuditArchive(new JdbcTemplate(), json, true, dir.toString(), Duration.ofDays(90), 128,
+                DataSize.ofMegabytes(64));
+    }
+
+    @Test
+    @DisplayName("Search pages newest first across segments, resuming strictly after the cursor key")
+    void search_descending_across_segments() throws Exception {
+        var jan = writeMonth("p20300101", JAN, FEB);
+        var feb = writeMonth("p20300201", FEB, MAR);
+        archive.load();
+        var snapshot = archive.snapshot();
+        assertThat(snapshot.archivedUntil()).isEqualTo(MAR);
+
+        var all = new Filter(null, null, null, null, null, null, null);
+        List<AuditLogEntry> seen = new ArrayList<>();
+        Instant ts = null;
+        Long id = null;
+        while (true) {
+            var page = archive.search(snapshot, all, ts, id, 333);
+            if (page.isEmpty()) break;
+            seen.addAll(page);
+            ts = page.get(page.size() - 1).occurredAt();
+            id = page.get(page.size() - 1).id();
+        }
+        List<AuditLogEntry> expected = new ArrayList<>(jan);
+        expected.addAll(feb);
+        assertThat(seen).hasSize(2 * PER_MONTH);
+        assertThat(seen).extracting(AuditLogEntry::id)
+                .containsExactlyElementsOf(expected.reversed().stream().map(AuditLogEntry::id).toList());
+        assertThat(seen.get(0).details()).containsEntry("n", PER_MONTH - 1);
+    }
+
+    @Test
+    @DisplayName("Filters match like the SQL; the action Bloom filter skips segments without that action")
+    void filters_and_bloom() throws Exception {
+        writeMonth("p20300101", JAN, FEB);
+        writeMonth("p20300201", FEB, MAR);
+        archive.load();
+        var snapshot = archive.snapshot();
+
+        Instant from = Instant.parse("2030-01-20T00:00:00Z");
+        Instant to = Instant.parse("2030-02-10T00:00:00Z");
+        var failed = archive.search(snapshot, new Filter(3L, null, "auth_login_failed", null, null, from, to),
+                null, null, 500);
+        assertThat(failed).isNotEmpty().allSatisfy(e -> {
+            assertThat(e.action()).isEqualTo("AUTH_LOGIN_FAILED");
+            assertThat(e.actorUserId()).isEqualTo(3L);
+            assertThat(e.occurredAt()).isBetween(from, to.minusNanos(1));
+        });
+
+        AuditSegment seg = snapshot.segments().get(0);
+        assertThat(seg.mightContainAction("AUTH_LOGIN")).isTrue();
+        assertThat(seg.mightContainAction("USER_DELETE")).isFalse();
+        assertThat(archive.search(snapshot, new Filter(null, null, "USER_DELETE", null, null, null, null),
+                null, null, 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("scan() is ascending and range-bounded; transferTo() yields the segment as one gzip NDJSON stream")
+    void scan_and_transfer() throws Exception {
+        var jan = writeMonth("p20300101", JAN, FEB);
+        archive.load();
+        AuditSegment seg = archive.snapshot().segments().get(0);
+        assertThat(seg.within(JAN, FEB)).isTrue();
+        assertThat(seg.within(JAN.plusSeconds(1), FEB)).isFalse();
+
+        Instant from = Instant.parse("2030-01-10T00:00:00Z");
+        List<Long> ids = new ArrayList<>();
+        long n = archive.scan(seg, new Filter(null, null, null, null, null, from, FEB), (e, buf, off, len) -> {
+            assertThat(buf[off + len - 1]).isEqualTo((byte) '\n');
+            ids.add(e.id());
+        });
+        assertThat(n).isEqualTo(ids.size());
+        assertThat(ids).containsExactlyElementsOf(jan.stream()
+                .filter(e -> !e.occurredAt().isBefore(from)).map(AuditLogEntry::id).toList());
+
+        var out = new ByteArrayOutputStream();
+        assertThat(seg.transferTo(Channels.newChannel(out))).isEqualTo(PER_MONTH);
+        String text;
+        try (var in = new GZIPInputStream(new java.io.ByteArrayInputStream(out.toByteArray()))) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        var lines = text.split("\n");
+        assertThat(lines).hasSize(PER_MONTH);
+        assertThat(json.readValue(lines[PER_MONTH - 1], AuditLogEntry.class)).isEqualTo(jan.get(PER_MONTH - 1));
+    }
+
+    @Test
+    @DisplayName("Unfinished segments are rejected; leftover temp files are removed on load; retention deletes by range")
+    void recovery_and_retention() throws Exception {
+        Path partial = dir.resolve("audit-p20300301-000.seg");
+        try (var w = new AuditSegmentWriter(partial, AuditNdjson.micros(MAR), AuditNdjson.micros(MAR.plusSeconds(60)), 8)) {
+            byte[] line = "{}\n".getBytes(StandardCharsets.UTF_8);
+            w.append(AuditNdjson.micros(MAR), 1, "X", line, 0, line.length);
+        }
+        assertThatThrownBy(() -> AuditSegment.open(partial)).isInstanceOf(IOException.class);
+        Files.delete(partial);
+
+        Path tmp = Files.writeString(dir.resolve("audit-p20300201-000.seg.tmp"), "half-written");
+        writeMonth("p20300101", JAN, FEB);
+        writeMonth("p20300201", FEB, MAR);
+        archive.load();
+        assertThat(tmp).doesNotExist();
+        assertThat(archive.snapshot().segments()).hasSize(2);
+
+        assertThat(archive.deleteBefore(MAR.minusSeconds(1))).containsExactly("audit-p20300101-000.seg");
+        assertThat(archive.snapshot().segments()).extracting(AuditSegment::rangeTo).containsExactly(MAR);
+        assertThat(dir.resolve("audit-p20300101-000.seg")).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("A month archived by a run that stopped before the drop keeps its segment when archived again")
+    void rerun_after_archive_without_drop() throws Exception {
+        writeMonth("p20300101", JAN, FEB);
+        archive.load();
+
+        // the rerun starts at archivedUntil, which is the partition's upper bound: an empty range
+        assertThat(archive.archive("p20300101", archive.snapshot().archivedUntil(), FEB)).isZero();
+        assertThat(archive.snapshot().segments()).singleElement().satisfies(seg -> {
+            assertThat(seg.rows()).isEqualTo(PER_MONTH);
+            assertThat(seg.rangeFrom()).isEqualTo(JAN);
+        });
+        assertThat(dir.resolve("audit-p20300101-000.seg")).exists();
+    }
+}
@@ -0,0 +1,92 @@
+package com.kukkalli.aaa.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kukkalli.aaa.audit.AuditBatchWriter;
+import com.kukkalli.aaa.audit.AuditEnvelope;
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * audit_log insert throughput (rows/s) with app-assigned ids and multi-row statements, by batch size.
+ * The writer runs on its own pool configured like the pipeline's ({@code useAffectedRows}, autocommit).
+ * Results are printed; the assertion only guards the direction (batching must beat single rows).
+ */
+class AuditInsertBenchmarkIT extends SpringBootITBase {
+
+    private static final int ROWS = 20_000;
+    private static final int[] BATCH_SIZES = {1, 50, 500};
+
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private ObjectMapper json;
+    @Value("${spring.datasource.url}") private String url;
+    @Value("${spring.datasource.username:}") private String username;
+    @Value("${spring.datasource.password:}") private String password;
+
+    @Test
+    @DisplayName("Rows per second at batch sizes 1, 50 and 500")
+    void insert_throughput_by_batch_size() {
+        try (var ds = writerPool()) {
+            run(new AuditBatchWriter(new JdbcTemplate(ds), json, true, new SimpleMeterRegistry()));
+        }
+    }
+
+    private void run(AuditBatchWriter writer) {
+        writer.write(events(500, "BENCH_WARMUP"));
+
+        Map<Integer, Double> rates = new LinkedHashMap<>();
+        for (int batch : BATCH_SIZES) {
+            List<AuditEnvelope> rows = events(ROWS, "BENCH_" + batch);
+            long start = System.nanoTime();
+            for (int i = 0; i < rows.size(); i += batch) {
+                writer.write(rows.subList(i, Math.min(i + batch, rows.size())));
+            }
+            rates.put(batch, ROWS / ((System.nanoTime() - start) / 1e9));
+            assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM audit_log WHERE action = ?", Long.class, "BENCH_" + batch))
+                    .isEqualTo(ROWS);
+        }
+        jdbc.update("DELETE FROM audit_log WHERE action LIKE 'BENCH\\_%'");
+
+        rates.forEach((batch, rate) ->
+                System.out.printf("[bench] audit_log insert, batch %3d: %,10.0f rows/s%n", batch, rate));
+        assertThat(rates.get(50)).isGreaterThan(rates.get(1));
+    }
+
+    /** Same settings as the audit pipeline's writer pool. */
+    private HikariDataSource writerPool() {
+        var cfg = new HikariConfig();
+        cfg.setPoolName("audit-writer-bench");
+        cfg.setJdbcUrl(url);
+        cfg.setUsername(username);
+        cfg.setPassword(password);
+        cfg.setMaximumPoolSize(1);
+        cfg.setAutoCommit(true);
+        cfg.addDataSourceProperty("useAffectedRows", "true");
+        return new HikariDataSource(cfg);
+    }
+
+    private static List<AuditEnvelope> events(int n, String action) {
+        List<AuditEnvelope> out = new ArrayList<>(n);
+        Instant now = Instant.now();
+        for (int i = 0; i < n; i++) {
+            out.add(new AuditEnvelope(TimeOrderedIds.next(), now, null, null, action, null, null,
+                    "bench-" + i, "203.0.113.1", "bench", Map.of("i", i, "path", "/api/v1/users")));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,115 @@
+package com.kukkalli.aaa.bench;
+
+import com.kukkalli.aaa.domain.entity.User;
+import com.kukkalli.aaa.domain.repository.UserRepository;
+import com.kukkalli.aaa.service.TokenService;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import com.kukkalli.aaa.testsupport.TestUsers;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Storage and throughput numbers for refresh tokens. Results are printed; assertions only
+ * guard the direction of the change (binary keys must not be larger than hex keys).
+ * The per-user session cap is off: the throughput test issues thousands of tokens for one user
+ * and rotates all of them, which the cap would have revoked (and serialised on the user row).
+ */
+@TestPropertySource(properties = "security.jwt.refresh-token.max-active-per-user=0")
+class RefreshTokenStorageBenchmarkIT extends SpringBootITBase {
+
+    private static final int ROWS = 50_000;
+    private static final int THREADS = 8;
+    private static final int OPS_PER_THREAD = 500;
+
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private TokenService tokenService;
+    @Autowired private UserRepository userRepo;
+
+    @Test
+    @DisplayName("Unique index on BINARY(32) vs CHAR(64) utf8mb4 hex")
+    void index_size_binary_vs_hex() throws Exception {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS bench_hash_hex (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "h CHAR(64) NOT NULL, UNIQUE KEY uk_h (h)) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci");
+        jdbc.execute("CREATE TABLE IF NOT EXISTS bench_hash_bin (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "h BINARY(32) NOT NULL, UNIQUE KEY uk_h (h)) ENGINE=InnoDB");
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            List<Object[]> hex = new ArrayList<>(ROWS);
+            List<Object[]> bin = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                byte[] d = md.digest(("token-" + i).getBytes(StandardCharsets.UTF_8));
+                hex.add(new Object[]{HexFormat.of().formatHex(d)});
+                bin.add(new Object[]{d});
+            }
+            jdbc.batchUpdate("INSERT INTO bench_hash_hex (h) VALUES (?)", hex);
+            jdbc.batchUpdate("INSERT INTO bench_hash_bin (h) VALUES (?)", bin);
+            jdbc.execute("ANALYZE TABLE bench_hash_hex, bench_hash_bin");
+
+            long hexBytes = indexLength("bench_hash_hex");
+            long binBytes = indexLength("bench_hash_bin");
+            System.out.printf("[bench] unique index, %,d rows: CHAR(64) utf8mb4 = %,d bytes, BINARY(32) = %,d bytes (%.1fx)%n",
+                    ROWS, hexBytes, binBytes, (double) hexBytes / Math.max(binBytes, 1));
+            assertThat(binBytes).isLessThan(hexBytes);
+        } finally {
+            jdbc.execute("DROP TABLE IF EXISTS bench_hash_hex, bench_hash_bin");
+        }
+    }
+
+    @Test
+    @DisplayName("issue() and rotate() throughput under concurrency")
+    void issue_and_rotate_throughput() throws Exception {
+        User u = TestUsers.newUser(userRepo, "bench_tokens");
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<String> issued = new CopyOnWriteArrayList<>();
+            double issueRate = run(pool, () -> issued.add(tokenService.issue(u, "203.0.113.1", "bench")));
+
+            ConcurrentLinkedQueue<String> toRotate = new ConcurrentLinkedQueue<>(issued);
+            double rotateRate = run(pool, () -> {
+                String raw = toRotate.poll();
+                if (raw != null) tokenService.rotate(raw, "203.0.113.1", "bench").orElseThrow();
+            });
+            System.out.printf("[bench] %d threads: issue = %,.0f ops/s, rotate = %,.0f ops/s%n",
+                    THREADS, issueRate, rotateRate);
+            assertThat(issued).hasSize(THREADS * OPS_PER_THREAD);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private long indexLength(String table) {
+        Long v = jdbc.queryForObject(
+                "SELECT index_length FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?",
+                Long.class, table);
+        return v == null ? 0 : v;
+    }
+
+    private static double run(ExecutorService pool, Runnable op) throws Exception {
+        var go = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                go.await();
+                for (int i = 0; i < OPS_PER_THREAD; i++) op.run();
+                return null;
+            }));
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Future<?> f : futures) f.get(5, TimeUnit.MINUTES);
+        return THREADS * OPS_PER_THREAD / ((System.nanoTime() - start) / 1e9);
+    }
+}
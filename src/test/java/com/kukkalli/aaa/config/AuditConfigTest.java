@@ -0,0 +1,23 @@
+package com.kukkalli.aaa.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditConfigTest {
+
+    @Test
+    @DisplayName("Node id comes from a StatefulSet pod ordinal, never from a Deployment pod hash")
+    void pod_ordinal_from_hostname() {
+        assertThat(AuditConfig.podOrdinal("aaa-service-0")).hasValue(0);
+        assertThat(AuditConfig.podOrdinal("aaa-service-17")).hasValue(17);
+        assertThat(AuditConfig.podOrdinal("aaa-service-1023")).hasValue(1023);
+
+        assertThat(AuditConfig.podOrdinal("aaa-service-1024")).isEmpty();              // beyond the node id range
+        assertThat(AuditConfig.podOrdinal("aaa-service-7d9f8c6b5-24567")).isEmpty();    // ReplicaSet pod suffix
+        assertThat(AuditConfig.podOrdinal("3f4e2a1b9c0d")).isEmpty();                   // container id
+        assertThat(AuditConfig.podOrdinal("aaa-service")).isEmpty();
+        assertThat(AuditConfig.podOrdinal(null)).isEmpty();
+    }
+}
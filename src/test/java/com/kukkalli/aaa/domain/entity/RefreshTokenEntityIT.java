@@ -9,9 +9,12 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -21,6 +24,15 @@ class RefreshTokenEntityIT extends SpringBootITBase {
     @Autowired private UserRepository userRepo;
     @Autowired private EntityManager em;
 
+    /** 32-byte digest of a readable label (column is BINARY(32)). */
+    private static byte[] hash(String label) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(label.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private User newUser(String username) {
         return userRepo.save(User.builder()
                 .username(username)
@@ -40,8 +52,8 @@ class RefreshTokenEntityIT extends SpringBootITBase {
         var now = Instant.now();
 
         var rt = RefreshToken.builder()
-                .user(u)
-                .tokenHash("abc123hash")
+                .user(u).familyId(UUID.randomUUID())
+                .tokenHash(hash("abc123hash"))
                 .issuedAt(now)
                 .expiresAt(now.plus(7, ChronoUnit.DAYS))
                 .revoked(false)
@@ -58,7 +70,7 @@ class RefreshTokenEntityIT extends SpringBootITBase {
 
         var found = repo.findById(saved.getId()).orElseThrow();
         assertThat(found.getUser().getUsername()).isEqualTo("rachel");
-        assertThat(found.getTokenHash()).isEqualTo("abc123hash");
+        assertThat(found.getTokenHash()).isEqualTo(hash("abc123hash"));
         assertThat(found.getExpiresAt()).isAfter(now);
         assertThat(found.isRevoked()).isFalse();
     }
@@ -68,8 +80,8 @@ class RefreshTokenEntityIT extends SpringBootITBase {
     void expiry_and_revoke_helpers() {
         var u = newUser("sam");
         var rt = repo.save(RefreshToken.builder()
-                .user(u)
-                .tokenHash("hash_exp")
+                .user(u).familyId(UUID.randomUUID())
+                .tokenHash(hash("hash_exp"))
                 .issuedAt(Instant.now())
                 .expiresAt(Instant.now().minusSeconds(5)) // already expired
                 .revoked(false)
@@ -88,11 +100,11 @@ class RefreshTokenEntityIT extends SpringBootITBase {
     void unique_token_hash() {
         var u = newUser("tony");
         repo.save(RefreshToken.builder()
-                .user(u).tokenHash("dupHash").issuedAt(Instant.now())
+                .user(u).familyId(UUID.randomUUID()).tokenHash(hash("dupHash")).issuedAt(Instant.now())
                 .expiresAt(Instant.now().plusSeconds(60)).revoked(false).build());
 
         repo.save(RefreshToken.builder()
-                .user(u).tokenHash("dupHash").issuedAt(Instant.now())
+                .user(u).familyId(UUID.randomUUID()).tokenHash(hash("dupHash")).issuedAt(Instant.now())
                 .expiresAt(Instant.now().plusSeconds(120)).revoked(false).build());
 
         assertThatThrownBy(() -> em.flush()).isInstanceOf(PersistenceException.class);
@@ -105,19 +117,19 @@ class RefreshTokenEntityIT extends SpringBootITBase {
         var u2 = newUser("victor");
 
         var a = repo.save(RefreshToken.builder()
-                .user(u1).tokenHash("h1").issuedAt(Instant.now()).expiresAt(Instant.now().plusSeconds(60)).build());
+                .user(u1).familyId(UUID.randomUUID()).tokenHash(hash("h1")).issuedAt(Instant.now()).expiresAt(Instant.now().plusSeconds(60)).build());
         var b = repo.save(RefreshToken.builder()
-                .user(u1).tokenHash("h2").issuedAt(Instant.now()).expiresAt(Instant.now().plusSeconds(60)).build());
+                .user(u1).familyId(UUID.randomUUID()).tokenHash(hash("h2")).issuedAt(Instant.now()).expiresAt(Instant.now().plusSeconds(60)).build());
         var c = repo.save(RefreshToken.builder()
-                .user(u2).tokenHash("h3").issuedAt(Instant.now()).expiresAt(Instant.now().plusSeconds(60)).build());
+                .user(u2).familyId(UUID.randomUUID()).tokenHash(hash("h3")).issuedAt(Instant.now()).expiresAt(Instant.now().plusSeconds(60)).build());
 
-        assertThat(repo.findByTokenHash("h2")).isPresent().get().extracting(RefreshToken::getId).isEqualTo(b.getId());
+        assertThat(repo.findByTokenHash(hash("h2"))).isPresent().get().extracting(RefreshToken::getId).isEqualTo(b.getId());
 
         List<RefreshToken> u1Tokens = repo.findByUser(u1);
-        assertThat(u1Tokens).extracting(RefreshToken::getTokenHash).containsExactlyInAnyOrder("h1","h2");
+        assertThat(u1Tokens).extracting(RefreshToken::getTokenHash).containsExactlyInAnyOrder(hash("h1"), hash("h2"));
 
         List<RefreshToken> u2Tokens = repo.findByUser(u2);
-        assertThat(u2Tokens).extracting(RefreshToken::getTokenHash).containsExactly("h3");
+        assertThat(u2Tokens).extracting(RefreshToken::getTokenHash).containsExactly(hash("h3"));
     }
 
     @Test
@@ -128,10 +140,10 @@ class RefreshTokenEntityIT extends SpringBootITBase {
 
         // expired
         repo.save(RefreshToken.builder()
-                .user(u).tokenHash("old").issuedAt(now.minusSeconds(120)).expiresAt(now.minusSeconds(60)).build());
+                .user(u).familyId(UUID.randomUUID()).tokenHash(hash("old")).issuedAt(now.minusSeconds(120)).expiresAt(now.minusSeconds(60)).build());
         // valid
         repo.save(RefreshToken.builder()
-                .user(u).tokenHash("new").issuedAt(now).expiresAt(now.plusSeconds(3600)).build());
+                .user(u).familyId(UUID.randomUUID()).tokenHash(hash("new")).issuedAt(now).expiresAt(now.plusSeconds(3600)).build());
 
         long pruned = repo.deleteByExpiresAtBefore(now);
         assertThat(pruned).isEqualTo(1);
@@ -148,15 +160,15 @@ class RefreshTokenEntityIT extends SpringBootITBase {
 
         // active
         repo.save(RefreshToken.builder()
-                .user(u).tokenHash("active").issuedAt(now).expiresAt(now.plusSeconds(600)).revoked(false).build());
+                .user(u).familyId(UUID.randomUUID()).tokenHash(hash("active")).issuedAt(now).expiresAt(now.plusSeconds(600)).revoked(false).build());
         // revoked
         repo.save(RefreshToken.builder()
-                .user(u).tokenHash("revoked").issuedAt(now).expiresAt(now.plusSeconds(600)).revoked(true).build());
+                .user(u).familyId(UUID.randomUUID()).tokenHash(hash("revoked")).issuedAt(now).expiresAt(now.plusSeconds(600)).revoked(true).build());
         // expired
         repo.save(RefreshToken.builder()
-                .user(u).tokenHash("expired").issuedAt(now).expiresAt(now.minusSeconds(1)).revoked(false).build());
+                .user(u).familyId(UUID.randomUUID()).tokenHash(hash("expired")).issuedAt(now).expiresAt(now.minusSeconds(1)).revoked(false).build());
 
         var active = repo.findByRevokedFalseAndExpiresAtAfter(now);
-        assertThat(active).extracting(RefreshToken::getTokenHash).containsExactly("active");
+        assertThat(active).extracting(RefreshToken::getTokenHash).containsExactly(hash("active"));
     }
 }
\ No newline at end of file
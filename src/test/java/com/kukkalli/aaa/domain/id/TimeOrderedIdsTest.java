@@ -0,0 +1,68 @@
+package com.kukkalli.aaa.domain.id;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimeOrderedIdsTest {
+
+    @Test
+    @DisplayName("Ids are positive, strictly increasing and encode the current time")
+    void monotonic_and_time_ordered() {
+        Instant before = Instant.now().minusMillis(1);
+        long prev = 0;
+        for (int i = 0; i < 100_000; i++) {              // far more than 4096 per ms: exercises the wait
+            long id = TimeOrderedIds.next();
+            assertThat(id).isPositive().isGreaterThan(prev);
+            prev = id;
+        }
+        Instant ts = TimeOrderedIds.timestampOf(prev);
+        assertThat(ts).isAfter(before).isBefore(Instant.now().plus(Duration.ofMillis(1)));
+    }
+
+    @Test
+    @DisplayName("Concurrent callers never receive the same id")
+    void unique_under_contention() throws Exception {
+        int threads = 8, perThread = 50_000;
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) assertThat(seen.add(TimeOrderedIds.next())).isTrue();
+                }));
+            }
+            for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(seen).hasSize(threads * perThread);
+    }
+
+    @Test
+    @DisplayName("Node id lands in its own bits and is range-checked")
+    void node_bits() {
+        TimeOrderedIds.setNodeId(513);
+        try {
+            long id = TimeOrderedIds.next();
+            assertThat((id >>> TimeOrderedIds.SEQUENCE_BITS) & TimeOrderedIds.MAX_NODE).isEqualTo(513);
+            assertThatThrownBy(() -> TimeOrderedIds.setNodeId(1024)).isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            TimeOrderedIds.setNodeId(0);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.kukkalli.aaa.domain.partition;
+
+import com.kukkalli.aaa.domain.partition.RangePartitionManager.Granularity;
+import com.kukkalli.aaa.domain.partition.RangePartitionManager.Partition;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RangePartitionManagerIT extends SpringBootITBase {
+
+    private static final Instant T0 = Instant.parse("2030-03-10T12:00:00Z");
+
+    @Autowired private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void createTable() {
+        jdbc.execute("""
+                CREATE TABLE part_probe (
+                    id BIGINT NOT NULL AUTO_INCREMENT,
+                    expires_at TIMESTAMP NOT NULL,
+                    PRIMARY KEY (id, expires_at)
+                ) ENGINE=InnoDB""");
+    }
+
+    @AfterEach
+    void dropTable() {
+        jdbc.execute("DROP TABLE IF EXISTS part_probe");
+    }
+
+    private RangePartitionManager at(Instant now) {
+        return new RangePartitionManager(jdbc, "part_probe", "expires_at", Granularity.DAY,
+                Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private void insert(Instant expiresAt) {
+        jdbc.update("INSERT INTO part_probe (expires_at) VALUES (?)", Timestamp.from(expiresAt));
+    }
+
+    @Test
+    @DisplayName("partitionTable → ensureAhead → dropBefore lifecycle by day")
+    void lifecycle() {
+        var m = at(T0);
+        assertThat(m.isPartitioned()).isFalse();
+
+        m.partitionTable(2);
+        assertThat(m.partitions()).extracting(Partition::name)
+                .containsExactly("p_before", "p20300310", "p20300311", "p20300312", "pmax");
+
+        insert(T0.minusSeconds(86_400 * 3));   // p_before
+        insert(T0);                             // p20300310
+        insert(T0.plusSeconds(86_400));         // p20300311
+
+        // Two days later: two more partitions ahead, nothing rebuilt
+        var later = at(T0.plusSeconds(86_400 * 2));
+        assertThat(later.ensureAhead(2)).isEqualTo(2);
+        assertThat(later.ensureAhead(2)).isZero();
+        assertThat(later.partitions()).extracting(Partition::name)
+                .endsWith("p20300313", "p20300314", "pmax");
+
+        // Everything whose whole range ended before 2030-03-11T00:00 goes
+        assertThat(later.dropBefore(Instant.parse("2030-03-11T06:00:00Z")))
+                .containsExactly("p_before", "p20300310");
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM part_probe", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Key changes are applied in the partitioning rebuild (unique key widened to the partition column)")
+    void partition_with_key_changes() {
+        jdbc.execute("ALTER TABLE part_probe ADD COLUMN h INT NULL, ADD UNIQUE KEY uk_probe_h (h)");
+        var m = at(T0);
+
+        m.partitionTable(1, List.of("DROP INDEX uk_probe_h", "ADD UNIQUE KEY uk_probe_h (h, expires_at)"));
+        assertThat(m.isPartitioned()).isTrue();
+        assertThat(jdbc.queryForList("""
+                SELECT column_name FROM information_schema.statistics
+                 WHERE table_schema = DATABASE() AND table_name = 'part_probe' AND index_name = 'uk_probe_h'
+                 ORDER BY seq_in_index""", String.class)).containsExactly("h", "expires_at");
+    }
+
+    @Test
+    @DisplayName("Identifiers are validated")
+    void rejects_bad_identifiers() {
+        assertThatThrownBy(() -> new RangePartitionManager(jdbc, "t; DROP TABLE users", "c",
+                Granularity.DAY, Clock.systemUTC())).isInstanceOf(IllegalArgumentException.class);
+    }
+}
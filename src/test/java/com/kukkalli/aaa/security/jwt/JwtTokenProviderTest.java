@@ -0,0 +1,40 @@
+package com.kukkalli.aaa.security.jwt;
+
+import com.kukkalli.aaa.security.AaaUserDetails;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtTokenProviderTest {
+
+    private final JwtTokenProvider provider = new JwtTokenProvider("aaa-test", "a-test-secret-of-at-least-32-bytes!!",
+            Duration.ofMinutes(15), Duration.ofDays(7), Clock.systemUTC());
+
+    @Test
+    @DisplayName("Access tokens carry the numeric user id when the principal knows it")
+    void uid_claim_round_trip() {
+        var principal = new AaaUserDetails(42L, "alice", "x", true, true, true, true,
+                List.of(new SimpleGrantedAuthority("user.read")));
+        String token = provider.generateAccessToken(principal);
+
+        assertThat(provider.validate(token)).isTrue();
+        assertThat(provider.extractUsername(token)).contains("alice");
+        assertThat(JwtTokenProvider.userIdOf(provider.parseValidClaims(token).orElseThrow())).isEqualTo(42L);
+        assertThat(provider.extractAuthorities(token)).containsExactly("user.read");
+    }
+
+    @Test
+    @DisplayName("Plain UserDetails principals produce tokens without a uid claim")
+    void no_uid_for_plain_principal() {
+        String token = provider.generateAccessToken(User.withUsername("bob").password("x").authorities("r").build());
+        assertThat(JwtTokenProvider.userIdOf(provider.parseValidClaims(token).orElseThrow())).isNull();
+        assertThat(AaaUserDetails.userIdOf("bob")).isNull();
+    }
+}
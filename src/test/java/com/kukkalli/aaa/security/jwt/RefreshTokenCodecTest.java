@@ -0,0 +1,89 @@
+package com.kukkalli.aaa.security.jwt;
+
+import com.kukkalli.aaa.security.jwt.RefreshTokenCodec.Verdict;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RefreshTokenCodecTest {
+
+    private static final Instant NOW = Instant.parse("2030-01-01T00:00:00Z");
+    private static final Instant EXP = NOW.plusSeconds(3600);
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final RefreshTokenCodec codec = new RefreshTokenCodec("k2", "current-secret", "k1=old-secret",
+            "2030-01-02T00:00:00Z", meters);
+
+    private static byte[] body() {
+        byte[] b = new byte[32];
+        for (int i = 0; i < b.length; i++) b[i] = (byte) i;
+        return b;
+    }
+
+    @Test
+    @DisplayName("Encoded token verifies until its embedded expiry, which is readable for lookups")
+    void round_trip() {
+        String raw = codec.encode(body(), EXP);
+        assertThat(raw).startsWith("rt_k2.");
+        assertThat(codec.check(raw, NOW)).isEqualTo(Verdict.VALID);
+        assertThat(codec.check(raw, EXP)).isEqualTo(Verdict.EXPIRED);
+        assertThat(codec.isAcceptable(raw, NOW)).isTrue();
+        assertThat(codec.expiresAt(raw)).contains(EXP);
+        assertThat(codec.expiresAt("rt_" + "A".repeat(43))).isEmpty();   // legacy: no embedded expiry
+    }
+
+    @Test
+    @DisplayName("Tampering with any part, or an unknown key id, is a forgery")
+    void rejects_forgeries() {
+        String raw = codec.encode(body(), EXP);
+        String[] p = raw.split("\\.");
+        String laterExp = Long.toString(EXP.plusSeconds(86_400).getEpochSecond(), 36);
+        String otherBody = Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[32]);
+
+        assertThat(codec.check(p[0] + "." + laterExp + "." + p[2] + "." + p[3], NOW)).isEqualTo(Verdict.FORGED);
+        assertThat(codec.check(p[0] + "." + p[1] + "." + otherBody + "." + p[3], NOW)).isEqualTo(Verdict.FORGED);
+        assertThat(codec.check("rt_k9." + p[1] + "." + p[2] + "." + p[3], NOW)).isEqualTo(Verdict.FORGED);
+
+        assertThat(codec.isAcceptable(p[0] + "." + laterExp + "." + p[2] + "." + p[3], NOW)).isFalse();
+        assertThat(meters.get("aaa.refresh_tokens.rejected").tag("reason", "forged").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Tokens minted with a retired key still verify")
+    void retired_key() {
+        var old = new RefreshTokenCodec("k1", "old-secret", "", "", new SimpleMeterRegistry());
+        assertThat(codec.check(old.encode(body(), EXP), NOW)).isEqualTo(Verdict.VALID);
+    }
+
+    @Test
+    @DisplayName("Garbage is malformed; legacy rt_<body> is accepted only before the cutoff, and counted")
+    void malformed_and_legacy() {
+        assertThat(codec.check(null, NOW)).isEqualTo(Verdict.MALFORMED);
+        assertThat(codec.check("rt_garbage", NOW)).isEqualTo(Verdict.MALFORMED);
+        assertThat(codec.check("rt_a.b.c.d", NOW)).isEqualTo(Verdict.MALFORMED);
+        assertThat(codec.check("x".repeat(500), NOW)).isEqualTo(Verdict.MALFORMED);
+
+        String legacy = "rt_" + Base64.getUrlEncoder().withoutPadding().encodeToString(body());
+        assertThat(codec.check(legacy, NOW)).isEqualTo(Verdict.LEGACY);
+        assertThat(codec.isAcceptable(legacy, NOW)).isTrue();
+        assertThat(codec.isAcceptable(legacy, Instant.parse("2030-01-02T00:00:00Z"))).isFalse();
+        assertThat(meters.get("aaa.refresh_tokens.legacy.accepted").counter().count()).isEqualTo(1);
+        assertThat(meters.get("aaa.refresh_tokens.rejected").tag("reason", "legacy").counter().count()).isEqualTo(1);
+
+        var strict = new RefreshTokenCodec("k2", "current-secret", "", "", new SimpleMeterRegistry());
+        assertThat(strict.isAcceptable(legacy, NOW)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Key ids are restricted to short alphanumerics")
+    void validates_key_id() {
+        assertThatThrownBy(() -> new RefreshTokenCodec("bad.kid", "s", "", "", new SimpleMeterRegistry()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
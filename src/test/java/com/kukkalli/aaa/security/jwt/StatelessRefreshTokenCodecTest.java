@@ -0,0 +1,61 @@
+package com.kukkalli.aaa.security.jwt;
+
+import com.kukkalli.aaa.security.jwt.StatelessRefreshTokenCodec.Claims;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatelessRefreshTokenCodecTest {
+
+    private static final Instant NOW = Instant.parse("2030-01-01T00:00:00Z");
+    private static final String KEY_A = Base64.getEncoder().encodeToString(new byte[32]);
+    private static final String KEY_B = Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes());
+
+    @Test
+    @DisplayName("Round-trips claims until expiry; recognisable as a JWE")
+    void round_trip() throws Exception {
+        var codec = new StatelessRefreshTokenCodec(KEY_A, "", "unused");
+        var claims = new Claims(42L, UUID.randomUUID(), 3, NOW.plusSeconds(60));
+
+        String raw = codec.encode(claims);
+        assertThat(StatelessRefreshTokenCodec.looksLikeJwe(raw)).isTrue();
+        assertThat(StatelessRefreshTokenCodec.looksLikeJwe("rt_k1.abc.def.ghi")).isFalse();
+        assertThat(codec.decode(raw, NOW)).contains(claims);
+        assertThat(codec.decode(raw, NOW.plusSeconds(60))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Tampered ciphertext and unknown keys are rejected; retired keys still decrypt")
+    void keys_and_tampering() throws Exception {
+        var oldCodec = new StatelessRefreshTokenCodec(KEY_A, "", "unused");
+        var newCodec = new StatelessRefreshTokenCodec(KEY_B, KEY_A, "unused");
+        var strangerCodec = new StatelessRefreshTokenCodec(KEY_B, "", "unused");
+        var claims = new Claims(7L, UUID.randomUUID(), 0, NOW.plusSeconds(60));
+
+        String raw = oldCodec.encode(claims);
+        assertThat(newCodec.decode(raw, NOW)).contains(claims);
+        assertThat(strangerCodec.decode(raw, NOW)).isEmpty();
+
+        String[] p = raw.split("\\.");
+        char c = p[3].charAt(0);
+        p[3] = (c == 'A' ? 'B' : 'A') + p[3].substring(1);
+        assertThat(oldCodec.decode(String.join(".", p), NOW)).isEmpty();
+        assertThat(oldCodec.decode("eyJ.garbage.x.y.z", NOW)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Without an explicit key, the key is derived from the JWT secret")
+    void derived_key() throws Exception {
+        var a = new StatelessRefreshTokenCodec("", "", "secret-1");
+        var b = new StatelessRefreshTokenCodec("", "", "secret-1");
+        var other = new StatelessRefreshTokenCodec("", "", "secret-2");
+        String raw = a.encode(new Claims(1L, UUID.randomUUID(), 0, NOW.plusSeconds(60)));
+        assertThat(b.decode(raw, NOW)).isPresent();
+        assertThat(other.decode(raw, NOW)).isEmpty();
+    }
+}
@@ -0,0 +1,79 @@
+package com.kukkalli.aaa.security.password;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterFileTest {
+
+    private static final List<String> BREACHED = List.of("password", "123456", "P@ssw0rd!", "qwerty", "letmein");
+
+    private static String sha1Hex(String s) throws Exception {
+        return HexFormat.of().withUpperCase()
+                .formatHex(MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @DisplayName("Full-hash list compiles to a filter that finds every member and rejects others")
+    void compile_full_hash_list(@TempDir Path dir) throws Exception {
+        Path raw = dir.resolve("pwned.txt");
+        var lines = new StringBuilder("# header line is ignored\n");
+        for (String p : BREACHED) lines.append(sha1Hex(p)).append(":42\n");
+        Files.writeString(raw, lines);
+
+        Path out = dir.resolve("breached.bloom");
+        assertThat(BreachedPasswordCompiler.compile(raw, out, 1e-6)).isEqualTo(BREACHED.size());
+
+        var checker = new BreachedPasswordChecker(out.toString(), true);
+        checker.load();
+        try {
+            assertThat(checker.isEnabled()).isTrue();
+            BREACHED.forEach(p -> assertThat(checker.isBreached(p)).as(p).isTrue());
+            assertThat(checker.isBreached("correct horse battery staple 9f2c")).isFalse();
+            assertThatThrownBy(() -> checker.ensureNotBreached("qwerty"))
+                    .isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            checker.close();
+        }
+    }
+
+    @Test
+    @DisplayName("k-anonymity range directory (PREFIX file of SUFFIX:count lines) is accepted")
+    void compile_range_directory(@TempDir Path dir) throws Exception {
+        Path ranges = Files.createDirectory(dir.resolve("ranges"));
+        for (String p : BREACHED) {
+            String h = sha1Hex(p);
+            Files.writeString(ranges.resolve(h.substring(0, 5) + ".txt"), h.substring(5) + ":7\r\n",
+                    java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
+        }
+        Path out = dir.resolve("ranges.bloom");
+        BreachedPasswordCompiler.compile(ranges, out, 1e-4);
+
+        try (var filter = BloomFilterFile.open(out)) {
+            assertThat(filter.entries()).isEqualTo(BREACHED.size());
+            for (String p : BREACHED) {
+                byte[] d = MessageDigest.getInstance("SHA-1").digest(p.getBytes(StandardCharsets.UTF_8));
+                assertThat(filter.mightContain(d)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Checker without a configured path is a no-op")
+    void disabled_without_path() throws Exception {
+        var checker = new BreachedPasswordChecker("", false);
+        checker.load();
+        assertThat(checker.isEnabled()).isFalse();
+        assertThat(checker.isBreached("password")).isFalse();
+    }
+}
@@ -0,0 +1,125 @@
+package com.kukkalli.aaa.security.ratelimit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketLimiterTest {
+
+    /** Minimal adjustable clock for deterministic refill. */
+    static final class MutableClock extends Clock {
+        private volatile Instant now = Instant.parse("2025-01-01T00:00:00Z");
+        void advance(Duration d) { now = now.plus(d); }
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { return this; }
+        @Override public Instant instant() { return now; }
+    }
+
+    @Test
+    @DisplayName("Allows a burst up to capacity, then rejects with Retry-After; refills over time")
+    void burst_then_reject_then_refill() {
+        var clock = new MutableClock();
+        var limiter = new TokenBucketLimiter(3, Duration.ofSeconds(30), 100, clock);
+
+        assertThat(limiter.tryAcquire("ip").remaining()).isEqualTo(2);
+        assertThat(limiter.tryAcquire("ip").remaining()).isEqualTo(1);
+        assertThat(limiter.tryAcquire("ip").remaining()).isZero();
+
+        var denied = limiter.tryAcquire("ip");
+        assertThat(denied.allowed()).isFalse();
+        assertThat(denied.resetSeconds()).isEqualTo(10);
+        assertThat(denied.toHeaders().getFirst("Retry-After")).isEqualTo("10");
+
+        clock.advance(Duration.ofSeconds(10));
+        assertThat(limiter.tryAcquire("ip").allowed()).isTrue();
+        // other keys are unaffected
+        assertThat(limiter.tryAcquire("other").remaining()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Idle buckets are evicted by the sweep once full")
+    void eviction_by_sweep() {
+        var clock = new MutableClock();
+        var limiter = new TokenBucketLimiter(2, Duration.ofSeconds(10), 100, clock);
+
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+        assertThat(limiter.evictIdle()).isZero();        // both still refilling
+
+        clock.advance(Duration.ofSeconds(5));
+        limiter.tryAcquire("b");
+        limiter.tryAcquire("b");
+        clock.advance(Duration.ofSeconds(5));
+        assertThat(limiter.evictIdle()).isEqualTo(1);    // a is full again, b is still refilling
+        assertThat(limiter.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("At maxKeys a new key evicts the fullest bucket and still gets a limit of its own")
+    void full_map_evicts_instead_of_sharing() {
+        var clock = new MutableClock();
+        var limiter = new TokenBucketLimiter(2, Duration.ofSeconds(10), 2, clock);
+
+        limiter.tryAcquire("a");                         // 1 token left
+        limiter.tryAcquire("b");
+        limiter.tryAcquire("b");                         // drained
+        assertThat(limiter.tryAcquire("c").remaining()).isEqualTo(1);   // evicted a, not b
+        assertThat(limiter.size()).isEqualTo(2);
+        assertThat(limiter.tryAcquire("b").allowed()).isFalse();        // the drained bucket survived
+
+        // a spray of new keys never makes them share one bucket
+        for (int i = 0; i < 50; i++) {
+            assertThat(limiter.tryAcquire("spray-" + i).allowed()).isTrue();
+            assertThat(limiter.size()).isLessThanOrEqualTo(2);
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent callers on one key never exceed capacity")
+    void concurrent_acquire_is_exact() throws Exception {
+        var limiter = new TokenBucketLimiter(100, Duration.ofHours(1), 10, new MutableClock());
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        var start = new CountDownLatch(1);
+        var granted = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            pool.submit(() -> {
+                start.await();
+                if (limiter.tryAcquire("k").allowed()) granted.incrementAndGet();
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(granted.get()).isEqualTo(100);
+    }
+
+    @Test
+    @DisplayName("LoginRateLimiter: throttled IP does not drain the account bucket; account names are normalized")
+    void login_limiter_combines_ip_and_account() {
+        var clock = new MutableClock();
+        var limiter = new LoginRateLimiter(true, 2, Duration.ofMinutes(1), 3, Duration.ofMinutes(1), 100, clock);
+
+        assertThat(limiter.tryAcquire("10.0.0.1", "Alice").allowed()).isTrue();
+        assertThat(limiter.tryAcquire("10.0.0.1", " alice ").allowed()).isTrue();
+        assertThat(limiter.tryAcquire("10.0.0.1", "alice").allowed()).isFalse(); // IP exhausted
+
+        // account still has exactly one attempt left from another IP
+        assertThat(limiter.tryAcquire("10.0.0.2", "ALICE").allowed()).isTrue();
+        var denied = limiter.tryAcquire("10.0.0.3", "alice");
+        assertThat(denied.allowed()).isFalse();
+        assertThat(denied.limit()).isEqualTo(3);
+    }
+}
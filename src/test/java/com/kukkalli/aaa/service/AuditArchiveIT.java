@@ -0,0 +1,103 @@
+package com.kukkalli.aaa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kukkalli.aaa.audit.archive.AuditArchive;
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import com.kukkalli.aaa.web.dto.AuditLogEntry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Archive round trip against the table: January is archived and removed from audit_log, February
+ * stays; queries and exports must see both months exactly once, in order.
+ */
+class AuditArchiveIT extends SpringBootITBase {
+
+    private static final Instant JAN = Instant.parse("2001-01-01T00:00:00Z");
+    private static final Instant FEB = Instant.parse("2001-02-01T00:00:00Z");
+    private static final Instant MAR = Instant.parse("2001-03-01T00:00:00Z");
+    private static final int PER_MONTH = 1_000;
+
+    @TempDir static Path dir;
+
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private NamedParameterJdbcTemplate namedJdbc;
+    @Autowired private ObjectMapper json;
+
+    private AuditArchive archive;
+    private final List<Long> ids = new ArrayList<>();   // ascending (occurred_at, id)
+
+    @BeforeAll
+    void seedAndArchive() throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        for (Instant month : List.of(JAN, FEB)) {
+            for (int i = 0; i < PER_MONTH; i++) {
+                long id = TimeOrderedIds.next();
+                ids.add(id);
+                rows.add(new Object[]{id, Timestamp.from(month.plusSeconds(i * 60L)), "{\"i\": " + i + "}"});
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO audit_log (id, occurred_at, action, target_type, details) " +
+                "VALUES (?, ?, 'ARCHIVE_IT', 'ARCHIVE_IT', ?)", rows);
+
+        archive = new AuditArchive(jdbc, json, true, dir.toString(), Duration.ofDays(90), 64, DataSize.ofMegabytes(64));
+        assertThat(archive.archive("p20010201", JAN, FEB)).isEqualTo(PER_MONTH);
+        jdbc.update("DELETE FROM audit_log WHERE occurred_at < ? AND action = 'ARCHIVE_IT'", Timestamp.from(FEB));
+    }
+
+    @Test
+    @DisplayName("Search pages from the table into the archive, newest first, without gaps or repeats")
+    void search_spans_table_and_archive() {
+        var query = new AuditQueryService(namedJdbc, json, archive);
+        var filter = new AuditQueryService.Filter(null, null, null, "ARCHIVE_IT", null, null, null);
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            var page = query.search(filter, cursor, 300);
+            page.items().stream().map(AuditLogEntry::id).forEach(seen::add);
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        assertThat(seen).containsExactlyElementsOf(ids.reversed());
+    }
+
+    @Test
+    @DisplayName("Export: the archived month is spliced in as stored; output is one valid gzip NDJSON stream")
+    void export_spans_archive_and_table() throws Exception {
+        var exports = new AuditExportService(jdbc, json, archive, 1, 1000, Duration.ofHours(1));
+        var filter = new AuditQueryService.Filter(null, null, null, null, null, JAN, MAR);
+        var out = new ByteArrayOutputStream();
+        try (var export = exports.open(filter, AuditExportService.Format.NDJSON, true)) {
+            assertThat(export.writeTo(out)).isEqualTo(2L * PER_MONTH);
+        }
+        String[] lines;
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+        }
+        assertThat(lines).hasSize(2 * PER_MONTH);
+        for (int i = 0; i < lines.length; i++) {
+            Map<?, ?> row = json.readValue(lines[i], Map.class);
+            assertThat(((Number) row.get("id")).longValue()).isEqualTo(ids.get(i));
+        }
+    }
+}
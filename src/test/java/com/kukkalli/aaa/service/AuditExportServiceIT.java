@@ -0,0 +1,97 @@
+package com.kukkalli.aaa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditExportServiceIT extends SpringBootITBase {
+
+    private static final int EVENTS = 3_000;   // > fetch size: the cursor must stream several fetches
+    private static final Instant BASE = Instant.now().truncatedTo(ChronoUnit.SECONDS).minus(2, ChronoUnit.DAYS);
+
+    @Autowired private AuditExportService exportService;
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private ObjectMapper json;
+
+    @BeforeAll
+    void seed() {
+        List<Object[]> rows = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            rows.add(new Object[]{TimeOrderedIds.next(), Timestamp.from(BASE.plusSeconds(i)),
+                    i == 0 ? "has,comma \"and\" quotes" : i == 1 ? "=HYPERLINK(\"x\")" : "agent-" + i,
+                    "{\"i\": " + i + "}"});
+        }
+        jdbc.batchUpdate("INSERT INTO audit_log (id, occurred_at, action, target_type, user_agent, details) " +
+                "VALUES (?, ?, 'EXPORT_IT', 'EXPORT_IT', ?, ?)", rows);
+    }
+
+    private static AuditQueryService.Filter range() {
+        return new AuditQueryService.Filter(null, null, null, "EXPORT_IT", null, BASE, BASE.plusSeconds(EVENTS));
+    }
+
+    private byte[] export(AuditExportService.Format format, boolean gzip) throws Exception {
+        var out = new ByteArrayOutputStream();
+        try (var export = exportService.open(range(), format, gzip)) {
+            assertThat(export.writeTo(out)).isEqualTo(EVENTS);
+        }
+        if (!gzip) return out.toByteArray();
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    @DisplayName("NDJSON (gzip): one object per row, oldest first, details embedded as JSON")
+    void ndjson_gzip() throws Exception {
+        String[] lines = new String(export(AuditExportService.Format.NDJSON, true), StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(EVENTS);
+        for (int i = 0; i < EVENTS; i += 499) {
+            Map<?, ?> row = json.readValue(lines[i], Map.class);
+            assertThat(row.get("occurredAt")).isEqualTo(BASE.plusSeconds(i).toString());
+            assertThat(((Map<?, ?>) row.get("details")).get("i")).isEqualTo(i);
+            assertThat(row.containsKey("actorUserId")).isFalse();
+        }
+    }
+
+    @Test
+    @DisplayName("CSV: header, RFC 4180 quoting, formula-leading cells defused")
+    void csv_plain() throws Exception {
+        String[] lines = new String(export(AuditExportService.Format.CSV, false), StandardCharsets.UTF_8).split("\r\n");
+        assertThat(lines).hasSize(EVENTS + 1);
+        assertThat(lines[0]).startsWith("id,occurred_at,actor_user_id");
+        assertThat(lines[1]).contains(",\"has,comma \"\"and\"\" quotes\",");
+        assertThat(lines[2]).contains(",\"'=HYPERLINK(\"\"x\"\")\",");
+    }
+
+    @Test
+    @DisplayName("Open ranges and too many concurrent exports are refused")
+    void limits() {
+        assertThatThrownBy(() -> exportService.open(new AuditQueryService.Filter(null, null, null, null, null,
+                BASE, null), AuditExportService.Format.CSV, false)).isInstanceOf(IllegalArgumentException.class);
+
+        try (var a = exportService.open(range(), AuditExportService.Format.CSV, false)) {   // max-concurrent: 1
+            assertThatThrownBy(() -> exportService.open(range(), AuditExportService.Format.CSV, false))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+        exportService.open(range(), AuditExportService.Format.CSV, false).close();   // slot released
+    }
+}
@@ -0,0 +1,108 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.audit.AuditEnvelope;
+import com.kukkalli.aaa.audit.AuditPipeline;
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import com.kukkalli.aaa.web.dto.AuditVerification;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Batches written by the real pipeline get a Merkle root in the chain; proofs and range
+ * verification hold for untouched rows and catch an edited row and a removed batch.
+ */
+class AuditIntegrityIT extends SpringBootITBase {
+
+    private static final Instant CLEAN = Instant.parse("2003-03-01T00:00:00Z");
+    private static final Instant TAMPERED = Instant.parse("2004-03-01T00:00:00Z");
+    private static final Instant RETIRED = Instant.parse("2002-03-01T00:00:00Z");   // before CLEAN: the mark only moves forward
+
+    @Autowired private AuditPipeline pipeline;
+    @Autowired private AuditIntegrityService integrity;
+    @Autowired private JdbcTemplate jdbc;
+
+    private final List<Long> clean = new ArrayList<>();
+    private final List<Long> tampered = new ArrayList<>();
+
+    private long event(Instant at, int n) {
+        long id = TimeOrderedIds.next();
+        pipeline.submit(new AuditEnvelope(id, at.plusMillis(n * 1500L), (long) n, null, "INTEGRITY_IT", "USER",
+                String.valueOf(n), "rid-" + n, "203.0.113.7", "JUnit", Map.of("n", n, "note", "é ü")));
+        return id;
+    }
+
+    @BeforeAll
+    void seed() {
+        for (int n = 0; n < 2_000; n++) clean.add(event(CLEAN, n));
+        assertThat(pipeline.flush(Duration.ofSeconds(20))).isTrue();
+        for (int n = 0; n < 2_000; n++) tampered.add(event(TAMPERED, n));
+        assertThat(pipeline.flush(Duration.ofSeconds(20))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Every stored row has a verifiable inclusion proof of logarithmic size")
+    void proofs() {
+        for (long id : List.of(clean.get(0), clean.get(777), clean.get(clean.size() - 1))) {
+            var proof = integrity.proof(id);
+            assertThat(proof.verified()).isTrue();
+            assertThat(proof.path().size()).isLessThanOrEqualTo(32 - Integer.numberOfLeadingZeros(proof.leafCount() - 1));
+        }
+        assertThatThrownBy(() -> integrity.proof(-1)).isInstanceOf(jakarta.persistence.EntityNotFoundException.class);
+    }
+
+    @Test
+    @DisplayName("Range verification passes untouched; flags an edited row and a deleted batch")
+    void verify_range() {
+        AuditVerification ok = integrity.verify(CLEAN, CLEAN.plus(Duration.ofDays(1)));
+        assertThat(ok.valid()).isTrue();
+        assertThat(ok.events()).isGreaterThanOrEqualTo(clean.size());
+
+        long victim = tampered.get(1234);
+        jdbc.update("UPDATE audit_log SET target_id = 'someone-else' WHERE id = ?", victim);
+        AuditVerification edited = integrity.verify(TAMPERED, TAMPERED.plus(Duration.ofDays(1)));
+        assertThat(edited.valid()).isFalse();
+        assertThat(edited.failures()).extracting(AuditVerification.Failure::reason).contains("ROOT_MISMATCH");
+        assertThat(integrity.proof(victim).verified()).isFalse();
+
+        long seq = integrity.proof(tampered.get(0)).batchSeq();
+        jdbc.update("DELETE FROM audit_batches WHERE seq = ?", seq + 1);
+        AuditVerification gap = integrity.verify(TAMPERED, TAMPERED.plus(Duration.ofDays(1)));
+        assertThat(gap.failures()).extracting(AuditVerification.Failure::reason).contains("MISSING_BATCH");
+
+        assertThatThrownBy(() -> integrity.verify(CLEAN, CLEAN.plus(Duration.ofDays(40))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Rows dropped by retention are reported until marked, then only their chain links are checked")
+    void retention_drop() {
+        for (int n = 0; n < 600; n++) event(RETIRED, n);
+        assertThat(pipeline.flush(Duration.ofSeconds(20))).isTrue();
+        Instant end = RETIRED.plus(Duration.ofDays(1));
+        jdbc.update("DELETE FROM audit_log WHERE occurred_at >= ? AND occurred_at < ?",
+                Timestamp.from(RETIRED), Timestamp.from(end));
+
+        AuditVerification unmarked = integrity.verify(RETIRED, end);
+        assertThat(unmarked.failures()).extracting(AuditVerification.Failure::reason).contains("ROW_COUNT");
+
+        integrity.rowsDroppedBefore(end);
+        AuditVerification marked = integrity.verify(RETIRED, end);
+        assertThat(marked.valid()).isTrue();
+        assertThat(marked.archivedBatches()).isEqualTo(marked.batches());
+        assertThat(integrity.verify(CLEAN, CLEAN.plus(Duration.ofDays(1))).events()).isGreaterThanOrEqualTo(clean.size());
+    }
+}
@@ -0,0 +1,73 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
+import com.kukkalli.aaa.domain.partition.RangePartitionManager;
+import com.kukkalli.aaa.domain.partition.RangePartitionManager.Granularity;
+import com.kukkalli.aaa.domain.partition.RangePartitionManager.Partition;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * audit_log's schema (V11) must accept monthly partitioning; exercised on a structural copy so the
+ * shared table is left alone.
+ */
+class AuditLogPartitionsIT extends SpringBootITBase {
+
+    private static final Instant T0 = Instant.parse("2030-03-10T12:00:00Z");
+
+    @Autowired private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void createCopy() {
+        jdbc.execute("CREATE TABLE audit_probe LIKE audit_log");   // same columns, keys and indexes; no FKs to copy
+    }
+
+    @AfterEach
+    void dropCopy() {
+        jdbc.execute("DROP TABLE IF EXISTS audit_probe");
+    }
+
+    private void insert(Instant occurredAt) {
+        jdbc.update("INSERT INTO audit_probe (id, occurred_at, action) VALUES (?, ?, 'PROBE')",
+                TimeOrderedIds.next(), Timestamp.from(occurredAt));
+    }
+
+    @Test
+    @DisplayName("audit_log has no foreign keys left (partitioning forbids them)")
+    void no_foreign_keys() {
+        Integer fks = jdbc.queryForObject("""
+                SELECT COUNT(*) FROM information_schema.referential_constraints
+                 WHERE constraint_schema = DATABASE() AND table_name = 'audit_log'""", Integer.class);
+        assertThat(fks).isZero();
+    }
+
+    @Test
+    @DisplayName("Monthly partitions on occurred_at; retention drops whole months")
+    void monthly_retention() {
+        var m = new RangePartitionManager(jdbc, "audit_probe", "occurred_at", Granularity.MONTH,
+                Clock.fixed(T0, ZoneOffset.UTC));
+        m.partitionTable(3);
+        assertThat(m.partitions()).extracting(Partition::name)
+                .containsExactly("p_before", "p20300301", "p20300401", "p20300501", "p20300601", "pmax");
+
+        insert(Instant.parse("2029-12-24T08:00:00Z"));   // p_before
+        insert(Instant.parse("2030-03-31T23:59:59Z"));   // p20300301
+        insert(Instant.parse("2030-04-01T00:00:00Z"));   // p20300401
+
+        // retention cutoff in mid-April: March and everything before go, April stays
+        assertThat(m.dropBefore(Instant.parse("2030-04-15T00:00:00Z"))).containsExactly("p_before", "p20300301");
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM audit_probe", Integer.class)).isEqualTo(1);
+    }
+}
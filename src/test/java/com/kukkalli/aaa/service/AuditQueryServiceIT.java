@@ -0,0 +1,96 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import com.kukkalli.aaa.web.dto.AuditLogEntry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditQueryServiceIT extends SpringBootITBase {
+
+    private static final int EVENTS = 25;
+    private static final Instant BASE = Instant.now().truncatedTo(ChronoUnit.SECONDS).minus(1, ChronoUnit.DAYS);
+
+    @Autowired private AuditQueryService queryService;
+    @Autowired private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        // pairs of events share a second, so paging has to break ties on id
+        for (int i = 0; i < EVENTS; i++) {
+            jdbc.update("INSERT INTO audit_log (id, occurred_at, action, target_type, target_id, details) " +
+                            "VALUES (?, ?, ?, 'QUERY_IT', ?, '{\"i\": " + i + "}')",
+                    TimeOrderedIds.next(), Timestamp.from(BASE.plusSeconds(i / 2)),
+                    i % 5 == 0 ? "QUERY_IT_SPECIAL" : "QUERY_IT_EVENT", "t" + (i % 3));
+        }
+    }
+
+    private static AuditQueryService.Filter byTargetType() {
+        return new AuditQueryService.Filter(null, null, null, "QUERY_IT", null, null, null);
+    }
+
+    @Test
+    @DisplayName("Keyset pages walk every row exactly once, newest first")
+    void pages_cover_everything_in_order() {
+        List<AuditLogEntry> all = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var page = queryService.search(byTargetType(), cursor, 7);
+            all.addAll(page.items());
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(4);
+        assertThat(all).hasSize(EVENTS);
+        assertThat(all).extracting(AuditLogEntry::id).doesNotHaveDuplicates();
+        for (int i = 1; i < all.size(); i++) {
+            var prev = all.get(i - 1);
+            var cur = all.get(i);
+            assertThat(cur.occurredAt().isBefore(prev.occurredAt())
+                    || (cur.occurredAt().equals(prev.occurredAt()) && cur.id() < prev.id())).isTrue();
+        }
+        assertThat(all.get(0).details()).containsEntry("i", EVENTS - 1);
+    }
+
+    @Test
+    @DisplayName("Filters combine: action, target and time range")
+    void filters() {
+        var special = queryService.search(new AuditQueryService.Filter(null, null, "QUERY_IT_SPECIAL",
+                "QUERY_IT", null, null, null), null, 100);
+        assertThat(special.items()).hasSize(5).allMatch(e -> e.action().equals("QUERY_IT_SPECIAL"));
+        assertThat(special.nextCursor()).isNull();
+
+        var target = queryService.search(new AuditQueryService.Filter(null, null, null, "QUERY_IT", "t0",
+                null, null), null, 100);
+        assertThat(target.items()).hasSize(9).allMatch(e -> e.targetId().equals("t0"));
+
+        var window = queryService.search(new AuditQueryService.Filter(null, null, null, "QUERY_IT", null,
+                BASE.plusSeconds(2), BASE.plusSeconds(4)), null, 100);
+        assertThat(window.items()).hasSize(4);
+    }
+
+    @Test
+    @DisplayName("Bad limits and cursors are rejected as bad requests")
+    void validation() {
+        assertThatThrownBy(() -> queryService.search(byTargetType(), null, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> queryService.search(byTargetType(), "not-a-cursor", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> queryService.search(new AuditQueryService.Filter(null, null, null, null, "t0",
+                null, null), null, 10)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
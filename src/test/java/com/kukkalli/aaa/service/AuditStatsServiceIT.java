@@ -0,0 +1,78 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.audit.AuditEnvelope;
+import com.kukkalli.aaa.audit.AuditPipeline;
+import com.kukkalli.aaa.domain.id.TimeOrderedIds;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import com.kukkalli.aaa.web.dto.AuditStats;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditStatsServiceIT extends SpringBootITBase {
+
+    private static final Instant T0 = Instant.parse("2002-06-01T10:00:00Z");
+
+    @Autowired private AuditPipeline pipeline;
+    @Autowired private AuditStatsService statsService;
+
+    private void event(String action, Instant at, String ip) {
+        pipeline.submit(new AuditEnvelope(TimeOrderedIds.next(), at, null, null, action, null, null,
+                "rid", ip, "JUnit", null));
+    }
+
+    @BeforeAll
+    void seed() {
+        // 90 minutes: STATS_IT_LOGIN once a minute from 203.0.113.1, STATS_IT_FAIL 3x a minute from .2 and once from .3
+        for (int m = 0; m < 90; m++) {
+            Instant at = T0.plusSeconds(m * 60L + 5);
+            event("STATS_IT_LOGIN", at, "203.0.113.1");
+            for (int k = 0; k < 3; k++) event("STATS_IT_FAIL", at.plusSeconds(k), "203.0.113.2");
+            event("STATS_IT_FAIL", at, "203.0.113.3");
+        }
+        assertThat(pipeline.flush(Duration.ofSeconds(10))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Per-minute counts for one action")
+    void per_minute() {
+        AuditStats s = statsService.stats("STATS_IT_FAIL", AuditStatsService.By.MINUTE, T0, T0.plusSeconds(3600), null);
+        assertThat(s.buckets()).hasSize(60).allSatisfy(b -> assertThat(b.events()).isEqualTo(4));
+        assertThat(s.buckets().get(0).bucket()).isEqualTo(T0);
+    }
+
+    @Test
+    @DisplayName("Per-hour counts; from is rounded down to the hour")
+    void per_hour() {
+        AuditStats s = statsService.stats("STATS_IT_LOGIN", AuditStatsService.By.HOUR,
+                T0.plusSeconds(1800), T0.plusSeconds(7200), null);
+        assertThat(s.from()).isEqualTo(T0);
+        assertThat(s.buckets()).extracting(AuditStats.Bucket::events).containsExactly(60L, 30L);
+    }
+
+    @Test
+    @DisplayName("Top IPs for an action over the range")
+    void top_ips() {
+        AuditStats s = statsService.stats("STATS_IT_FAIL", AuditStatsService.By.IP, T0, T0.plusSeconds(7200), 1);
+        assertThat(s.buckets()).singleElement().satisfies(b -> {
+            assertThat(b.ipAddress()).isEqualTo("203.0.113.2");
+            assertThat(b.events()).isEqualTo(270);
+        });
+    }
+
+    @Test
+    @DisplayName("Ranges are validated per granularity")
+    void validation() {
+        assertThatThrownBy(() -> statsService.stats(null, AuditStatsService.By.MINUTE, T0, T0.plus(Duration.ofDays(8)), null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> statsService.stats(null, AuditStatsService.By.HOUR, T0, T0, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,77 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.domain.entity.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LoginAttemptServiceTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final Clock clock = Clock.fixed(Instant.parse("2025-01-01T00:00:00Z"), ZoneOffset.UTC);
+    private final LoginAttemptService service =
+            new LoginAttemptService(jdbc, clock, true, 3, Duration.ofMinutes(15), Duration.ofMinutes(10));
+
+    private static User user(long id) {
+        User u = User.builder().id(id).username("u" + id).email("u" + id + "@example.com")
+                .passwordHash("x").build();
+        u.setAccountNonLocked(true);
+        return u;
+    }
+
+    @Test
+    @DisplayName("Locks after max failures within the window; lock state needs no query")
+    void locks_after_threshold() {
+        var u = user(1);
+        service.recordFailure(u);
+        service.recordFailure(u);
+        assertThat(service.isLocked(u)).isFalse();
+        service.recordFailure(u);
+        assertThat(service.isLocked(u)).isTrue();
+        verifyNoInteractions(jdbc);
+    }
+
+    @Test
+    @DisplayName("A burst of failures for one user is coalesced into a single batched row")
+    @SuppressWarnings("unchecked")
+    void failures_are_coalesced_per_flush() {
+        var a = user(1);
+        var b = user(2);
+        for (int i = 0; i < 50; i++) service.recordFailure(a);
+        service.recordFailure(b);
+
+        assertThat(service.flush()).isEqualTo(2);
+        ArgumentCaptor<Collection<Object>> rows = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbc, times(1)).batchUpdate(anyString(), rows.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertThat(rows.getValue()).hasSize(2);
+
+        // nothing left to write
+        assertThat(service.flush()).isZero();
+    }
+
+    @Test
+    @DisplayName("Expired timed lock on the loaded entity is treated as unlocked; admin lock is not")
+    void entity_lock_states() {
+        var timed = user(1);
+        timed.setAccountNonLocked(false);
+        timed.setLockedUntil(clock.instant().minusSeconds(1));
+        assertThat(service.isLocked(timed)).isFalse();
+
+        var admin = user(2);
+        admin.setAccountNonLocked(false);
+        assertThat(service.isLocked(admin)).isTrue();
+    }
+}
@@ -1,5 +1,6 @@
 package com.kukkalli.aaa.service;
 
+import com.kukkalli.aaa.audit.AuditPipeline;
 import com.kukkalli.aaa.domain.entity.AuditLog;
 import com.kukkalli.aaa.domain.entity.Permission;
 import com.kukkalli.aaa.domain.repository.AuditLogRepository;
@@ -15,6 +16,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 
@@ -25,6 +27,7 @@ class PermissionServiceIT extends SpringBootITBase {
     @Autowired private PermissionService service;
     @Autowired private PermissionRepository permRepo;
     @Autowired private AuditLogRepository auditRepo;
+    @Autowired private AuditPipeline auditPipeline;
     @Autowired private EntityManager em;
 
     // ------------------------- helpers -------------------------
@@ -56,6 +59,7 @@ class PermissionServiceIT extends SpringBootITBase {
         assertThat(permRepo.findByCodeIgnoreCase("perm.create.it")).isPresent();
 
         // verify audit (action + SpEL targetId = req.code, targetType = PERMISSION)
+        assertThat(auditPipeline.flush(Duration.ofSeconds(5))).isTrue();
         var page = auditRepo.findByAction("PERMISSION_CREATE", PageRequest.of(0, 20));
         assertThat(page.getContent()).isNotEmpty();
 
@@ -92,6 +96,8 @@ class PermissionServiceIT extends SpringBootITBase {
         assertThat(updated.getName()).isEqualTo("New Name");
         assertThat(updated.getDescription()).isEqualTo("new desc");
 
+        assertThat(auditPipeline.flush(Duration.ofSeconds(5))).isTrue();
+
         var page = auditRepo.findByAction("PERMISSION_UPDATE", PageRequest.of(0, 20));
         var recent = page.getContent().stream()
                 .filter(a -> !a.getOccurredAt().isBefore(before))
@@ -125,6 +131,8 @@ class PermissionServiceIT extends SpringBootITBase {
 
         assertThat(permRepo.findById(id)).isEmpty();
 
+        assertThat(auditPipeline.flush(Duration.ofSeconds(5))).isTrue();
+
         var page = auditRepo.findByAction("PERMISSION_DELETE", PageRequest.of(0, 20));
         var recent = page.getContent().stream()
                 .filter(a -> !a.getOccurredAt().isBefore(before))
@@ -0,0 +1,67 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.web.dto.AuthResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RefreshGraceCacheTest {
+
+    static final class MutableClock extends Clock {
+        private volatile Instant now = Instant.parse("2025-01-01T00:00:00Z");
+        void advance(Duration d) { now = now.plus(d); }
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { return this; }
+        @Override public Instant instant() { return now; }
+    }
+
+    private static final AuthResponse RESPONSE = new AuthResponse("access", "rt_next", Instant.EPOCH);
+
+    @Test
+    @DisplayName("Replays within the window from the same fingerprint only")
+    void replay_window_and_fingerprint() {
+        var clock = new MutableClock();
+        var meters = new SimpleMeterRegistry();
+        var cache = new RefreshGraceCache(Duration.ofSeconds(10), 100, clock, meters);
+        byte[] old = TokenService.sha256("rt_old");
+
+        cache.remember(old, "203.0.113.1", "App/1.0", RESPONSE);
+
+        assertThat(cache.replay(TokenService.sha256("rt_old"), "203.0.113.1", "App/1.0")).contains(RESPONSE);
+        assertThat(cache.replay(old, "198.51.100.9", "App/1.0")).isEmpty();
+        assertThat(cache.replay(old, "203.0.113.1", "Other")).isEmpty();
+        assertThat(cache.replay(TokenService.sha256("rt_other"), "203.0.113.1", "App/1.0")).isEmpty();
+
+        clock.advance(Duration.ofSeconds(10));
+        assertThat(cache.replay(old, "203.0.113.1", "App/1.0")).isEmpty();
+        assertThat(meters.get("aaa.refresh_tokens.grace_replays").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Bounded: stops remembering when full until expired entries are evicted")
+    void bounded() {
+        var clock = new MutableClock();
+        var cache = new RefreshGraceCache(Duration.ofSeconds(5), 2, clock, new SimpleMeterRegistry());
+        for (int i = 0; i < 5; i++) cache.remember(TokenService.sha256("rt_" + i), "ip", "ua", RESPONSE);
+        assertThat(cache.size()).isEqualTo(2);
+
+        clock.advance(Duration.ofSeconds(6));
+        cache.evictExpired();
+        assertThat(cache.size()).isZero();
+        cache.remember(TokenService.sha256("rt_new"), "ip", "ua", RESPONSE);
+        assertThat(cache.replay(TokenService.sha256("rt_new"), "ip", "ua")).isPresent();
+    }
+
+    @Test
+    @DisplayName("A zero window disables the cache")
+    void disabled() {
+        var cache = new RefreshGraceCache(Duration.ZERO, 100, Clock.systemUTC(), new SimpleMeterRegistry());
+        cache.remember(TokenService.sha256("rt_x"), "ip", "ua", RESPONSE);
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.replay(TokenService.sha256("rt_x"), "ip", "ua")).isEmpty();
+    }
+}
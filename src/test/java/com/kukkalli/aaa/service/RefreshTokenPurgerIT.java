@@ -0,0 +1,99 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.domain.entity.RefreshToken;
+import com.kukkalli.aaa.domain.entity.User;
+import com.kukkalli.aaa.domain.repository.RefreshTokenRepository;
+import com.kukkalli.aaa.domain.repository.UserRepository;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import com.kukkalli.aaa.testsupport.TestUsers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RefreshTokenPurgerIT extends SpringBootITBase {
+
+    @Autowired private RefreshTokenRepository tokenRepo;
+    @Autowired private UserRepository userRepo;
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private PlatformTransactionManager txManager;
+    @Autowired private TokenService tokenService;
+
+    private RefreshToken token(User u, Instant expiresAt, Instant revokedAt) {
+        byte[] hash = new byte[32];
+        ThreadLocalRandom.current().nextBytes(hash);
+        return tokenRepo.save(RefreshToken.builder()
+                .user(u).familyId(UUID.randomUUID()).tokenHash(hash)
+                .issuedAt(Instant.now()).expiresAt(expiresAt)
+                .revoked(revokedAt != null).revokedAt(revokedAt)
+                .build());
+    }
+
+    @Test
+    @DisplayName("purge(): deletes expired and revoked-past-grace rows in chunks, keeps live and recently revoked")
+    void purges_in_chunks() {
+        jdbc.update("DELETE FROM refresh_tokens");
+        var u = TestUsers.newUser(userRepo, "purge_user");
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        for (int i = 0; i < 5; i++) token(u, now.minus(Duration.ofHours(2)), null);           // expired
+        for (int i = 0; i < 3; i++) token(u, now.plus(Duration.ofDays(1)), now.minus(Duration.ofHours(3))); // revoked, past grace
+        var recent = token(u, now.plus(Duration.ofDays(1)), now.minus(Duration.ofMinutes(5)));
+        var live = token(u, now.plus(Duration.ofDays(1)), null);
+
+        var meters = new SimpleMeterRegistry();
+        var purger = new RefreshTokenPurger(jdbc, txManager, meters, Clock.systemUTC(),
+                true, false, 2, 100, Duration.ofHours(1));
+
+        assertThat(purger.purge()).isEqualTo(8);
+        assertThat(tokenRepo.findAll()).extracting(RefreshToken::getId)
+                .containsExactlyInAnyOrder(recent.getId(), live.getId());
+        assertThat(meters.get("aaa.refresh_tokens.purged").tag("reason", "expired").counter().count()).isEqualTo(5);
+        assertThat(meters.get("aaa.refresh_tokens.purged").tag("reason", "revoked").counter().count()).isEqualTo(3);
+        assertThat(meters.get("aaa.refresh_tokens.purge.lag").tag("reason", "expired").gauge().value()).isZero();
+        assertThat(purger.drainTotals()).containsExactly(5, 3);
+        assertThat(purger.drainTotals()).containsExactly(0, 0);
+    }
+
+    @Test
+    @DisplayName("purge(): a run is capped at max-chunks-per-run and reports lag for what is left")
+    void run_is_throttled() {
+        jdbc.update("DELETE FROM refresh_tokens");
+        var u = TestUsers.newUser(userRepo, "purge_throttle");
+        Instant expired = Instant.now().minus(Duration.ofHours(1));
+        for (int i = 0; i < 7; i++) token(u, expired, null);
+
+        var meters = new SimpleMeterRegistry();
+        var purger = new RefreshTokenPurger(jdbc, txManager, meters, Clock.systemUTC(),
+                true, false, 2, 2, Duration.ofHours(1));
+
+        assertThat(purger.purge()).isEqualTo(4);
+        assertThat(meters.get("aaa.refresh_tokens.purge.lag").tag("reason", "expired").gauge().value())
+                .isGreaterThanOrEqualTo(3500);
+        assertThat(purger.purge()).isEqualTo(3);
+        assertThat(tokenRepo.count()).isZero();
+    }
+
+    @Test
+    @DisplayName("revokeAllForUser(): one set-based delete of the user's tokens only")
+    void revoke_all_for_user() {
+        var a = TestUsers.newUser(userRepo, "purge_all_a");
+        var b = TestUsers.newUser(userRepo, "purge_all_b");
+        tokenService.issue(a, "203.0.113.1", "JUnit");
+        tokenService.issue(a, "203.0.113.2", "JUnit");
+        tokenService.issue(b, "203.0.113.3", "JUnit");
+
+        assertThat(tokenService.revokeAllForUser("PURGE_ALL_A")).isEqualTo(2);
+        assertThat(tokenService.listSessions("purge_all_b")).hasSize(1);
+    }
+}
@@ -1,5 +1,6 @@
 package com.kukkalli.aaa.service;
 
+import com.kukkalli.aaa.audit.AuditPipeline;
 import com.kukkalli.aaa.domain.entity.AuditLog;
 import com.kukkalli.aaa.domain.repository.AuditLogRepository;
 import com.kukkalli.aaa.testsupport.SpringBootITBase;
@@ -7,6 +8,7 @@ import com.kukkalli.aaa.web.dto.CreateRoleRequest;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -15,13 +17,15 @@ class RoleServiceAuditingIT extends SpringBootITBase {
 
     @Autowired private RoleService roleService;
     @Autowired private AuditLogRepository auditRepo;
+    @Autowired private AuditPipeline auditPipeline;
 
     @Test
     void createRole_emitsAuditEvent() {
         var req = new CreateRoleRequest("ROLE_AUDIT_TEST", "Audit Test", "for tests", List.of("user.read"));
         var role = roleService.createRole(req);
 
-        // There should be a ROLE_CREATE audit entry
+        // There should be a ROLE_CREATE audit entry (once the pipeline has written it)
+        assertThat(auditPipeline.flush(Duration.ofSeconds(5))).isTrue();
         var last = auditRepo.findTop20ByOrderByCreatedAtDesc();
         assertThat(last.stream().map(AuditLog::getAction)).anyMatch("ROLE_CREATE"::equals);
         assertThat(role.getId()).isNotNull();
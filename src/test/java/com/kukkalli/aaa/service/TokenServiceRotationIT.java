@@ -0,0 +1,180 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.audit.AuditPipeline;
+import com.kukkalli.aaa.domain.entity.RefreshToken;
+import com.kukkalli.aaa.domain.entity.User;
+import com.kukkalli.aaa.domain.repository.RefreshTokenRepository;
+import com.kukkalli.aaa.domain.repository.UserRepository;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import com.kukkalli.aaa.testsupport.TestUsers;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenServiceRotationIT extends SpringBootITBase {
+
+    private static final int CONTENDERS = 16;
+
+    @Autowired private TokenService tokenService;
+    @Autowired private RefreshTokenRepository tokenRepo;
+    @Autowired private UserRepository userRepo;
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private AuditPipeline auditPipeline;
+
+    private List<RefreshToken> tokensOf(User u) {
+        return tokenRepo.findAll().stream()
+                .filter(t -> t.getUser().getId().equals(u.getId()))
+                .toList();
+    }
+
+    @Test
+    @DisplayName("rotate(): returns the owner and a new token; the old one can't be rotated again")
+    void rotate_single_use() {
+        var u = TestUsers.newUser(userRepo, "rot_single");
+        String raw = tokenService.issue(u, "203.0.113.5", "JUnit");
+
+        var rotated = tokenService.rotate(raw, "203.0.113.5", "JUnit");
+        assertThat(rotated).isPresent();
+        assertThat(rotated.get().user().getUsername()).isEqualTo("rot_single");
+        assertThat(rotated.get().refreshToken()).isNotEqualTo(raw);
+
+        assertThat(tokenService.rotate(raw, "203.0.113.5", "JUnit")).isEmpty();
+        assertThat(tokenService.rotate("rt_garbage", "203.0.113.5", "JUnit")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Replaying a rotated token (past the leeway) revokes the whole family, other families survive")
+    void reuse_revokes_family() {
+        var u = TestUsers.newUser(userRepo, "rot_reuse");
+        String phone = tokenService.issue(u, "203.0.113.8", "Phone");
+        String laptop = tokenService.issue(u, "203.0.113.9", "Laptop");
+
+        String phone2 = tokenService.rotate(phone, "203.0.113.8", "Phone").orElseThrow().refreshToken();
+        jdbc.update("update refresh_tokens set revoked_at = revoked_at - interval 1 hour where revoked = 1");
+
+        assertThat(tokenService.rotate(phone, "198.51.100.1", "Attacker")).isEmpty();   // replay
+        assertThat(tokenService.rotate(phone2, "203.0.113.8", "Phone")).isEmpty();      // family is dead
+        assertThat(tokenService.rotate(laptop, "203.0.113.9", "Laptop")).isPresent();   // other device unaffected
+
+        var phoneTokens = tokensOf(u).stream().filter(t -> "Phone".equals(t.getUserAgent())).toList();
+        assertThat(phoneTokens).hasSize(2).allMatch(RefreshToken::isRevoked);
+        assertThat(phoneTokens).extracting(RefreshToken::getFamilyId).containsOnly(phoneTokens.get(0).getFamilyId());
+        assertThat(tokenService.listSessions("rot_reuse")).extracting(RefreshToken::getUserAgent).containsExactly("Laptop");
+    }
+
+    @Test
+    @DisplayName("Replaying a signed-out or cap-evicted token is rejected, not treated as reuse")
+    void replay_of_revoked_session_is_not_reuse() {
+        var u = TestUsers.newUser(userRepo, "rot_signed_out");
+        String signedOut = tokenService.issue(u, "203.0.113.12", "Phone");
+        tokenService.revokeSession("rot_signed_out", tokenService.listSessions("rot_signed_out").get(0).getFamilyId());
+        String evicted = tokenService.issue(u, "203.0.113.13", "Tablet");
+        jdbc.update("UPDATE refresh_tokens SET revoked = 1, revoked_at = NOW(), revoke_reason = 'SESSION_CAP' " +
+                "WHERE user_id = ? AND revoked = 0", u.getId());   // as revokeOldestUnrevoked does
+        jdbc.update("update refresh_tokens set revoked_at = revoked_at - interval 1 hour where user_id = ?", u.getId());
+
+        assertThat(tokenService.rotate(signedOut, "198.51.100.1", "Attacker")).isEmpty();
+        assertThat(tokenService.rotate(evicted, "198.51.100.1", "Attacker")).isEmpty();
+
+        assertThat(tokensOf(u)).extracting(RefreshToken::getRevokeReason)
+                .containsExactlyInAnyOrder(RefreshToken.RevokeReason.REVOKED, RefreshToken.RevokeReason.SESSION_CAP);
+        assertThat(auditPipeline.flush(Duration.ofSeconds(10))).isTrue();
+        for (RefreshToken t : tokensOf(u)) {
+            assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM audit_log WHERE action = 'AUTH_REFRESH_REUSE' " +
+                    "AND JSON_VALUE(details, '$.familyId') = ?", Long.class, t.getFamilyId().toString())).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("revokeSession(): only the owner's family is revoked")
+    void revoke_session_scoped_to_owner() {
+        var owner = TestUsers.newUser(userRepo, "sess_owner");
+        var other = TestUsers.newUser(userRepo, "sess_other");
+        tokenService.issue(owner, "203.0.113.10", "Phone");
+        var family = tokenService.listSessions("sess_owner").get(0).getFamilyId();
+
+        assertThat(tokenService.revokeSession("sess_other", family)).isZero();
+        assertThat(tokenService.revokeSession("sess_owner", family)).isEqualTo(1);
+        assertThat(tokenService.listSessions("sess_owner")).isEmpty();
+        assertThat(tokensOf(other)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("isLive(): the rotated-to token stops being live on session revoke (ends grace replays)")
+    void live_until_session_revoked() {
+        var u = TestUsers.newUser(userRepo, "rot_live");
+        String next = tokenService.rotate(tokenService.issue(u, "203.0.113.11", "Phone"), "203.0.113.11", "Phone")
+                .orElseThrow().refreshToken();
+        assertThat(tokenService.isLive(next)).isTrue();
+
+        tokenService.revokeSession("rot_live", tokenService.listSessions("rot_live").get(0).getFamilyId());
+        assertThat(tokenService.isLive(next)).isFalse();
+        assertThat(tokenService.isLive("rt_garbage")).isFalse();
+    }
+
+    @Test
+    @DisplayName("issue(): logging in past the per-user cap revokes the oldest sessions")
+    void session_cap_evicts_oldest() {
+        var u = TestUsers.newUser(userRepo, "rot_cap");
+        jdbc.update("INSERT INTO refresh_tokens (user_id, family_id, token_hash, issued_at, expires_at, revoked) " +
+                "SELECT ?, UNHEX(REPLACE(UUID(), '-', '')), UNHEX(SHA2(UUID(), 256)), NOW(), NOW() + INTERVAL 1 DAY, 0 " +
+                "FROM seq_1_to_25", u.getId());   // 25 live rows, cap is 20
+
+        String raw = tokenService.issue(u, "203.0.113.20", "Newest");
+
+        var live = tokensOf(u).stream().filter(t -> !t.isRevoked()).toList();
+        assertThat(live).hasSize(20);
+        assertThat(live).extracting(RefreshToken::getUserAgent).contains("Newest");
+        long maxRevokedId = tokensOf(u).stream().filter(RefreshToken::isRevoked)
+                .mapToLong(RefreshToken::getId).max().orElseThrow();
+        assertThat(live).allMatch(t -> t.getId() > maxRevokedId);   // oldest went first
+        assertThat(tokenService.rotate(raw, "203.0.113.20", "Newest")).isPresent();
+    }
+
+    @RepeatedTest(5)
+    @DisplayName("Concurrent rotate() with the same token: exactly one winner, exactly one new token")
+    void concurrent_rotation_has_one_winner() throws Exception {
+        var u = TestUsers.newUser(userRepo, "rot_race_" + System.nanoTime());
+        String raw = tokenService.issue(u, "203.0.113.7", "JUnit");
+
+        ExecutorService pool = Executors.newFixedThreadPool(CONTENDERS);
+        var ready = new CountDownLatch(CONTENDERS);
+        var go = new CountDownLatch(1);
+        List<Future<Optional<TokenService.RotatedToken>>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < CONTENDERS; i++) {
+                results.add(pool.submit(() -> {
+                    ready.countDown();
+                    go.await();
+                    return tokenService.rotate(raw, "203.0.113.7", "JUnit");
+                }));
+            }
+            ready.await(10, TimeUnit.SECONDS);
+            go.countDown();
+
+            int winners = 0;
+            for (var f : results) {
+                if (f.get(30, TimeUnit.SECONDS).isPresent()) winners++;
+            }
+            assertThat(winners).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        var tokens = tokensOf(u);
+        assertThat(tokens).hasSize(2);  // original + exactly one replacement
+        assertThat(tokens.stream().filter(t -> !t.isRevoked() && t.getExpiresAt().isAfter(Instant.now())))
+                .hasSize(1);
+    }
+}
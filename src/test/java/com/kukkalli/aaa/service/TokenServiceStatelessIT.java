@@ -0,0 +1,105 @@
+package com.kukkalli.aaa.service;
+
+import com.kukkalli.aaa.domain.repository.RefreshTokenRepository;
+import com.kukkalli.aaa.domain.repository.RevokedRefreshFamilyRepository;
+import com.kukkalli.aaa.domain.repository.UserRepository;
+import com.kukkalli.aaa.security.jwt.RefreshTokenCodec;
+import com.kukkalli.aaa.security.jwt.StatelessRefreshTokenCodec;
+import com.kukkalli.aaa.testsupport.SpringBootITBase;
+import com.kukkalli.aaa.testsupport.TestUsers;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestPropertySource(properties = "security.jwt.refresh-token.mode=JWE")
+class TokenServiceStatelessIT extends SpringBootITBase {
+
+    @Autowired private TokenService tokenService;
+    @Autowired private StatelessRefreshTokenCodec statelessCodec;
+    @Autowired private RefreshTokenRepository tokenRepo;
+    @Autowired private UserRepository userRepo;
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private RevokedRefreshFamilyRepository revokedFamilyRepo;
+    @Autowired private RefreshTokenCodec codec;
+    @Autowired private AuditService auditService;
+    @Autowired private TransactionTemplate tx;
+
+    @Test
+    @DisplayName("JWE mode: issue and rotate write no refresh_tokens rows; family is kept")
+    void no_rows_written() {
+        long before = tokenRepo.count();
+        var u = TestUsers.newUser(userRepo, "jwe_rotate");
+
+        String raw = tokenService.issue(u, "203.0.113.1", "JUnit");
+        var rotated = tokenService.rotate(raw, "203.0.113.1", "JUnit").orElseThrow();
+
+        assertThat(rotated.user().getUsername()).isEqualTo("jwe_rotate");
+        var first = statelessCodec.decode(raw, Instant.now()).orElseThrow();
+        var second = statelessCodec.decode(rotated.refreshToken(), Instant.now()).orElseThrow();
+        assertThat(second.familyId()).isEqualTo(first.familyId());
+        assertThat(tokenRepo.count()).isEqualTo(before);
+    }
+
+    @Test
+    @DisplayName("JWE mode: logout-all bumps the epoch; revoking a session by its own token denylists its family")
+    void revocation() {
+        var u = TestUsers.newUser(userRepo, "jwe_revoke");
+        String phone = tokenService.issue(u, "203.0.113.2", "Phone");
+        String laptop = tokenService.issue(u, "203.0.113.3", "Laptop");
+
+        var phoneFamily = statelessCodec.decode(phone, Instant.now()).orElseThrow().familyId();
+        long denied = jdbc.queryForObject("SELECT COUNT(*) FROM refresh_family_denylist", Long.class);
+        assertThat(tokenService.revokeSession("jwe_revoke", phoneFamily)).isZero();       // no row: not provably owned
+        assertThat(tokenService.revokeSession("jwe_revoke", UUID.randomUUID())).isZero();
+        TestUsers.newUser(userRepo, "jwe_other");
+        assertThat(tokenService.revokeSessionOf("jwe_other", phone)).isZero();             // not theirs
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM refresh_family_denylist", Long.class)).isEqualTo(denied);
+
+        assertThat(tokenService.revokeSessionOf("jwe_revoke", phone)).isEqualTo(1);
+        assertThat(tokenService.revokeSessionOf("jwe_revoke", phone)).isZero();
+        assertThat(tokenService.rotate(phone, "203.0.113.2", "Phone")).isEmpty();
+        String laptop2 = tokenService.rotate(laptop, "203.0.113.3", "Laptop").orElseThrow().refreshToken();
+
+        tokenService.revokeAllForUser("jwe_revoke");
+        assertThat(tokenService.rotate(laptop2, "203.0.113.3", "Laptop")).isEmpty();
+
+        var fresh = userRepo.findById(u.getId()).orElseThrow();
+        assertThat(tokenService.rotate(tokenService.issue(fresh, "203.0.113.3", "Laptop"), "203.0.113.3", "Laptop"))
+                .isPresent();
+    }
+
+    /** A hand-built service has no transactional proxy; run the call in one like the bean would. */
+    private Optional<TokenService.RotatedToken> rotateIn(TokenService service, String raw) {
+        return tx.execute(status -> service.rotate(raw, "203.0.113.4", "JUnit"));
+    }
+
+    @Test
+    @DisplayName("After a switch back to OPAQUE, a JWE token rotates once into a new opaque family, then never again")
+    void opaque_mode_consumes_jwe_tokens() {
+        var u = TestUsers.newUser(userRepo, "jwe_to_opaque");
+        String jwe = tokenService.issue(u, "203.0.113.4", "JUnit");
+        var opaque = new TokenService(tokenRepo, userRepo, revokedFamilyRepo, Duration.ofDays(7), Duration.ofSeconds(5),
+                0, Clock.systemUTC(), auditService, codec, statelessCodec, TokenService.Mode.OPAQUE);
+
+        var rotated = rotateIn(opaque, jwe).orElseThrow();
+        assertThat(StatelessRefreshTokenCodec.looksLikeJwe(rotated.refreshToken())).isFalse();
+        var family = statelessCodec.decode(jwe, Instant.now()).orElseThrow().familyId();
+        assertThat(tokenRepo.findByToken(TokenService.sha256(rotated.refreshToken()),
+                codec.expiresAt(rotated.refreshToken()).orElse(null)).orElseThrow().getFamilyId()).isNotEqualTo(family);
+
+        assertThat(rotateIn(opaque, jwe)).isEmpty();   // replay: consumed
+        assertThat(tokenService.rotate(jwe, "203.0.113.4", "JUnit")).isEmpty();
+        assertThat(rotateIn(opaque, rotated.refreshToken())).isPresent();
+    }
+}
@@ -0,0 +1,23 @@
+package com.kukkalli.aaa.testsupport;
+
+import com.kukkalli.aaa.domain.entity.User;
+import com.kukkalli.aaa.domain.repository.UserRepository;
+
+/** Persisted, active users for ITs that only need an owner for tokens or audit rows. */
+public final class TestUsers {
+
+    private TestUsers() { }
+
+    /** Saves an enabled, unlocked user named {@code username} with a placeholder password hash. */
+    public static User newUser(UserRepository userRepo, String username) {
+        return userRepo.save(User.builder()
+                .username(username)
+                .email(username + "@example.com")
+                .passwordHash("x")
+                .enabled(true)
+                .accountNonLocked(true)
+                .accountNonExpired(true)
+                .credentialsNonExpired(true)
+                .build());
+    }
+}